@@ -0,0 +1,91 @@
+package net.tomoyamkung.library.benchmark;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.tomoyamkung.library.Command;
+import net.tomoyamkung.library.Validator;
+import net.tomoyamkung.library.size.Geometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 引数の妥当性の確認とコマンドの組み立てのベンチマーク。
+ *
+ * @author tomoyamkung
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgumentBenchmark {
+
+	@Param({ "200x100", "12000x8000" })
+	public String size;
+
+	/**
+	 * 繰り返し実行する <code>Command</code>。
+	 */
+	private final Command template = new Command("/usr/bin/convert")
+			.addPlaceholder("src").addParameter("-thumbnail")
+			.addPlaceholder("size").addParameter("-strip")
+			.addPlaceholder("dest");
+
+	/**
+	 * プレースホルダの値。
+	 */
+	private Map<String, String> values;
+
+	@Setup
+	public void setUp() {
+		values = new HashMap<String, String>();
+		values.put("src", "/path/to/src.jpg");
+		values.put("size", size);
+		values.put("dest", "/path/to/dest.jpg");
+	}
+
+	@Benchmark
+	public String validateSize() {
+		Validator.validateSize(size, "サムネイルサイズ");
+		return size;
+	}
+
+	@Benchmark
+	public Geometry parseGeometry() {
+		return Geometry.parse(size);
+	}
+
+	@Benchmark
+	public List<String> command() {
+		Command command = new Command("/usr/bin/convert")
+				.addParameter("/path/to/src.jpg").addParameter("-thumbnail")
+				.addParameter(size).addParameter("-strip")
+				.addParameter("/path/to/dest.jpg");
+		command.validate();
+		return command.getCommand();
+	}
+
+	/**
+	 * 一度組み立てた <code>Command</code> にプレースホルダの値を差し込む。
+	 */
+	@Benchmark
+	public List<String> commandTemplate() {
+		return template.getCommand(values);
+	}
+
+}
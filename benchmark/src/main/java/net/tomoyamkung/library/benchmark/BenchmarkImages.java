@@ -0,0 +1,162 @@
+package net.tomoyamkung.library.benchmark;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+/**
+ * ベンチマークで使用する画像ファイルと、ImageMagick の代わりに実行するスタブを作成するクラス。
+ *
+ * @author tomoyamkung
+ *
+ */
+final class BenchmarkImages {
+
+	/**
+	 * 画像の大きさ。
+	 */
+	enum Scale {
+
+		/**
+		 * サムネイル程度の画像。
+		 */
+		small(64, 48),
+
+		/**
+		 * Web に掲載する程度の画像。
+		 */
+		medium(1600, 1200),
+
+		/**
+		 * デジタルカメラで撮影した程度の画像。
+		 */
+		large(6000, 4000);
+
+		private final int width;
+
+		private final int height;
+
+		private Scale(int width, int height) {
+			this.width = width;
+			this.height = height;
+		}
+
+	}
+
+	private BenchmarkImages() {
+	}
+
+	/**
+	 * 一時ディレクトリを作成する。
+	 *
+	 * @return 一時ディレクトリ
+	 * @throws IOException
+	 *             作成に失敗した場合
+	 */
+	static File createWorkDir() throws IOException {
+		return Files.createTempDirectory("imagemagick-benchmark").toFile();
+	}
+
+	/**
+	 * グラデーションを描いた画像ファイルを作成する。
+	 *
+	 * @param dir
+	 *            作成先のディレクトリ
+	 * @param format
+	 *            形式（jpg、png、gif）
+	 * @param scale
+	 *            画像の大きさ
+	 * @return 作成した画像ファイル
+	 * @throws IOException
+	 *             作成に失敗した場合
+	 */
+	static File create(File dir, String format, Scale scale)
+			throws IOException {
+		return create(dir, scale.name() + "." + format, format, scale.width,
+				scale.height);
+	}
+
+	/**
+	 * グラデーションを描いた画像ファイルを作成する。
+	 *
+	 * @param dir
+	 *            作成先のディレクトリ
+	 * @param name
+	 *            ファイル名
+	 * @param format
+	 *            形式（jpg、png、gif）
+	 * @param width
+	 *            横幅
+	 * @param height
+	 *            高さ
+	 * @return 作成した画像ファイル
+	 * @throws IOException
+	 *             作成に失敗した場合
+	 */
+	static File create(File dir, String name, String format, int width,
+			int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height,
+					Color.BLUE));
+			g.fillRect(0, 0, width, height);
+		} finally {
+			g.dispose();
+		}
+
+		File file = new File(dir, name);
+		if (!ImageIO.write(image, format, file)) {
+			throw new IOException("画像ファイルを作成できません。 format:" + format);
+		}
+		return file;
+	}
+
+	/**
+	 * 何もせずに終了するスタブを作成する。
+	 *
+	 * ImageMagick の処理時間を含めずに、ラッパーが子プロセスを起動して待機するまでのコストを計測するために使用する。
+	 *
+	 * @param dir
+	 *            作成先のディレクトリ
+	 * @param name
+	 *            ファイル名
+	 * @return 作成したスタブ
+	 * @throws IOException
+	 *             作成に失敗した場合
+	 */
+	static File createStub(File dir, String name) throws IOException {
+		File stub = new File(dir, name);
+		Files.write(stub.toPath(), "#!/bin/sh\nexit 0\n"
+				.getBytes(StandardCharsets.UTF_8));
+		if (!stub.setExecutable(true)) {
+			throw new IOException("スタブに実行権限を設定できません。");
+		}
+		return stub;
+	}
+
+	/**
+	 * 一時ディレクトリとその中のファイルを削除する。
+	 *
+	 * @param dir
+	 *            一時ディレクトリ
+	 */
+	static void delete(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+}
@@ -0,0 +1,32 @@
+package net.tomoyamkung.library.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * ベンチマークを実行するクラス。
+ *
+ * スループットに加えて、<code>GCProfiler</code> で 1 回あたりのメモリ割り当て量（gc.alloc.rate.norm）を出力する。
+ * 引数は JMH のコマンドライン引数と同じ形式で指定する。
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar SizeBenchmark -p format=jpg
+ * java -jar target/benchmarks.jar ImageMagickBenchmark -p executable=stub
+ * </pre>
+ *
+ * @author tomoyamkung
+ *
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException,
+			CommandLineOptionException {
+		new Runner(new OptionsBuilder().parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class).build()).run();
+	}
+
+}
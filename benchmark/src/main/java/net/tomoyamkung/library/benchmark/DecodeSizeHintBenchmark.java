@@ -0,0 +1,124 @@
+package net.tomoyamkung.library.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.tomoyamkung.library.ImageMagick;
+import net.tomoyamkung.library.SquareSide;
+import net.tomoyamkung.library.process.ProcessResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * デコード時の大きさのヒント（<code>-define jpeg:size</code>）の有無で、大きな JPEG
+ * からサムネイルを作成する時間を比較するベンチマーク。
+ *
+ * <code>decodeSizeHintScale</code> に 0 を指定するとヒントを付けない。 <code>/usr/bin/time</code>
+ * （GNU time）がある場合は convert コマンドをラップして実行し、終了時に convert
+ * のプロセスの最大常駐メモリ（peak RSS）を標準出力に出力する。
+ *
+ * @author tomoyamkung
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeSizeHintBenchmark {
+
+	/**
+	 * GNU time のパス。
+	 */
+	private static final File GNU_TIME = new File("/usr/bin/time");
+
+	@Param({ "0", "2" })
+	public int decodeSizeHintScale;
+
+	@Param({ "/usr/bin/convert" })
+	public String convertPath;
+
+	private File workDir;
+
+	private String convert;
+
+	private File rssLog;
+
+	private File src;
+
+	private File dest;
+
+	@Setup
+	public void setUp() throws IOException {
+		workDir = BenchmarkImages.createWorkDir();
+		src = BenchmarkImages.create(workDir, "jpg",
+				BenchmarkImages.Scale.large);
+		dest = new File(workDir, "dest.jpg");
+		rssLog = new File(workDir, "rss.log");
+
+		convert = convertPath;
+		if (GNU_TIME.canExecute()) {
+			File wrapper = new File(workDir, "convert");
+			Files.write(wrapper.toPath(), String.format(
+					"#!/bin/sh\nexec %s -a -o '%s' -f %%M '%s' \"$@\"\n",
+					GNU_TIME.getAbsolutePath(), rssLog.getAbsolutePath(),
+					convertPath).getBytes(StandardCharsets.UTF_8));
+			if (!wrapper.setExecutable(true)) {
+				throw new IOException("実行権限を付与できません。 " + wrapper);
+			}
+			convert = wrapper.getAbsolutePath();
+		}
+
+		ImageMagick.setDecodeSizeHintScale(decodeSizeHintScale);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		ImageMagick
+				.setDecodeSizeHintScale(ImageMagick.DEFAULT_DECODE_SIZE_HINT_SCALE);
+		if (rssLog.exists()) {
+			long max = 0;
+			long sum = 0;
+			List<String> lines = Files.readAllLines(rssLog.toPath(),
+					StandardCharsets.UTF_8);
+			for (String line : lines) {
+				long kb = Long.parseLong(line.trim());
+				max = Math.max(max, kb);
+				sum += kb;
+			}
+			System.out.printf("%nconvert peak RSS (decodeSizeHintScale=%d): "
+					+ "max %d KB, mean %d KB, runs %d%n", decodeSizeHintScale,
+					max, lines.isEmpty() ? 0 : sum / lines.size(), lines.size());
+		}
+		BenchmarkImages.delete(workDir);
+	}
+
+	@Benchmark
+	public ProcessResult createThumbnail() throws IOException,
+			InterruptedException {
+		return ImageMagick.createThumbnail(convert, src, dest, "200x100");
+	}
+
+	@Benchmark
+	public ProcessResult resize() throws IOException, InterruptedException {
+		return ImageMagick.resize(convert, src, dest, SquareSide.landscape,
+				200);
+	}
+
+}
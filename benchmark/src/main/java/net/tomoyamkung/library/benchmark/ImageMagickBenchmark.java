@@ -0,0 +1,113 @@
+package net.tomoyamkung.library.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.tomoyamkung.library.ImageMagick;
+import net.tomoyamkung.library.SquareSide;
+import net.tomoyamkung.library.process.ProcessResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <code>ImageMagick</code> の操作を最初から最後まで実行するベンチマーク。
+ *
+ * <code>executable</code> に stub を指定すると何もせずに終了するスタブを実行し、
+ * ラッパー自身のコスト（引数の確認、画像の大きさの取得、子プロセスの起動と待機）のみを計測する。 real
+ * を指定すると ImageMagick を実行する。 ImageMagick のパスは <code>-p convertPath=...</code>
+ * と <code>-p montagePath=...</code> で変更する。
+ *
+ * @author tomoyamkung
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageMagickBenchmark {
+
+	@Param({ "stub", "real" })
+	public String executable;
+
+	@Param({ "/usr/bin/convert" })
+	public String convertPath;
+
+	@Param({ "/usr/bin/montage" })
+	public String montagePath;
+
+	private File workDir;
+
+	private String convert;
+
+	private String montage;
+
+	private File src;
+
+	private File dest;
+
+	private List<File> tiles;
+
+	@Setup
+	public void setUp() throws IOException {
+		workDir = BenchmarkImages.createWorkDir();
+		if (executable.equals("stub")) {
+			convert = BenchmarkImages.createStub(workDir, "convert")
+					.getAbsolutePath();
+			montage = BenchmarkImages.createStub(workDir, "montage")
+					.getAbsolutePath();
+		} else {
+			convert = convertPath;
+			montage = montagePath;
+		}
+
+		src = BenchmarkImages.create(workDir, "jpg",
+				BenchmarkImages.Scale.medium);
+		dest = new File(workDir, "dest.jpg");
+		tiles = Arrays.asList(
+				BenchmarkImages.create(workDir, "tile1.png", "png", 100, 100),
+				BenchmarkImages.create(workDir, "tile2.png", "png", 100, 100),
+				BenchmarkImages.create(workDir, "tile3.png", "png", 100, 100),
+				BenchmarkImages.create(workDir, "tile4.png", "png", 100, 100));
+	}
+
+	@TearDown
+	public void tearDown() {
+		BenchmarkImages.delete(workDir);
+	}
+
+	@Benchmark
+	public ProcessResult resize() throws IOException, InterruptedException {
+		return ImageMagick.resize(convert, src, dest, SquareSide.landscape,
+				400);
+	}
+
+	@Benchmark
+	public ProcessResult createThumbnail() throws IOException,
+			InterruptedException {
+		return ImageMagick.createThumbnail(convert, src, dest, "200x100");
+	}
+
+	@Benchmark
+	public ProcessResult createMontage() throws IOException,
+			InterruptedException {
+		return ImageMagick.createMontage(montage, tiles, "2x2", "100x100",
+				dest);
+	}
+
+}
@@ -0,0 +1,72 @@
+package net.tomoyamkung.library.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.tomoyamkung.library.SquareSide;
+import net.tomoyamkung.library.size.AspectRatio;
+import net.tomoyamkung.library.size.Size;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 画像の大きさを取得する処理のベンチマーク。
+ *
+ * JPEG、PNG、GIF のそれぞれについて、小さな画像から大きな画像まで計測する。
+ *
+ * @author tomoyamkung
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SizeBenchmark {
+
+	@Param({ "jpg", "png", "gif" })
+	public String format;
+
+	@Param({ "small", "medium", "large" })
+	public String scale;
+
+	private File workDir;
+
+	private File image;
+
+	@Setup
+	public void setUp() throws IOException {
+		workDir = BenchmarkImages.createWorkDir();
+		image = BenchmarkImages.create(workDir, format,
+				BenchmarkImages.Scale.valueOf(scale));
+	}
+
+	@TearDown
+	public void tearDown() {
+		BenchmarkImages.delete(workDir);
+	}
+
+	@Benchmark
+	public Size size() throws IOException {
+		return new Size(image);
+	}
+
+	@Benchmark
+	public Size measure() throws IOException {
+		return AspectRatio.measure(image, SquareSide.landscape, 400);
+	}
+
+}
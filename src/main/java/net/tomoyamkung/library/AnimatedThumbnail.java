@@ -0,0 +1,196 @@
+package net.tomoyamkung.library;
+
+import java.io.File;
+
+/**
+ * アニメーション（GIF、WebP）のサムネイルの指定を保持するクラス。
+ *
+ * サムネイルサイズ、生成先のファイル、同時に縮小するプロセス数、1 プロセスで縮小するフレーム数、
+ * プレビュー用に間引いた後のフレーム数の上限を指定する。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class AnimatedThumbnail {
+
+	/**
+	 * 生成先のファイル。拡張子（gif、webp など）の形式で作成する。
+	 */
+	private final File dest;
+
+	/**
+	 * サムネイルサイズ。[0-9]{1,}x[0-9]{1,} で指定する。
+	 */
+	private String size;
+
+	/**
+	 * 同時に実行する convert コマンドのプロセス数。
+	 */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * 1 つの convert コマンドで縮小するフレーム数。0 の場合はフレームをプロセス数で均等に分ける。
+	 */
+	private int framesPerChunk;
+
+	/**
+	 * フレーム数の上限。0 の場合は間引かない。
+	 */
+	private int maxFrames;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param dest
+	 *            生成先のファイル。このファイルにサムネイルを作成する
+	 */
+	public AnimatedThumbnail(File dest) {
+		this.dest = dest;
+	}
+
+	/**
+	 * サムネイルサイズを設定する。
+	 *
+	 * @param size
+	 *            サムネイルサイズ。[0-9]{1,}x[0-9]{1,} で指定する
+	 * @return
+	 */
+	public AnimatedThumbnail setSize(String size) {
+		this.size = size;
+
+		return this;
+	}
+
+	/**
+	 * 同時に実行する convert コマンドのプロセス数を設定する。既定値は CPU のコア数とする。
+	 *
+	 * @param parallelism
+	 *            同時に実行するプロセス数
+	 * @return
+	 */
+	public AnimatedThumbnail setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+
+		return this;
+	}
+
+	/**
+	 * 1 つの convert コマンドで縮小するフレーム数を設定する。
+	 *
+	 * @param framesPerChunk
+	 *            1 つの convert コマンドで縮小するフレーム数。0 の場合はフレームをプロセス数で均等に分ける
+	 * @return
+	 */
+	public AnimatedThumbnail setFramesPerChunk(int framesPerChunk) {
+		this.framesPerChunk = framesPerChunk;
+
+		return this;
+	}
+
+	/**
+	 * フレーム数の上限を設定する。
+	 *
+	 * 上限を超える場合は等間隔にフレームを間引き、間引いたフレームの表示時間は直前に残したフレームに加える。
+	 * 再生時間を保ったまま、プレビュー用の小さなサムネイルを作成する場合に使用する。
+	 *
+	 * @param maxFrames
+	 *            フレーム数の上限。0 の場合は間引かない
+	 * @return
+	 */
+	public AnimatedThumbnail setMaxFrames(int maxFrames) {
+		this.maxFrames = maxFrames;
+
+		return this;
+	}
+
+	public File getDest() {
+		return dest;
+	}
+
+	public String getSize() {
+		return size;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public int getFramesPerChunk() {
+		return framesPerChunk;
+	}
+
+	public int getMaxFrames() {
+		return maxFrames;
+	}
+
+	/**
+	 * 妥当性を確認する。
+	 *
+	 * 次の条件に当てはまる場合は不適切と見なし <code>IllegalArgumentException</code> を生成する。
+	 *
+	 * <ul>
+	 * <li>生成先のファイルが null である</li>
+	 * <li>サムネイルサイズが [0-9]{1,}x[0-9]{1,} に当てはまっていない</li>
+	 * <li>同時に実行するプロセス数が 0 以下である</li>
+	 * <li>1 つの convert コマンドで縮小するフレーム数が負である</li>
+	 * <li>フレーム数の上限が負である</li>
+	 * </ul>
+	 */
+	public void validate() {
+		Validator.validateDestFile(dest);
+		Validator.validateSize(size, "サムネイルサイズ");
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"同時に実行するプロセス数は 1 以上の値を指定してください。");
+		}
+		if (framesPerChunk < 0) {
+			throw new IllegalArgumentException(
+					"1 プロセスで縮小するフレーム数は 0 以上の値を指定してください。");
+		}
+		if (maxFrames < 0) {
+			throw new IllegalArgumentException(
+					"フレーム数の上限は 0 以上の値を指定してください。");
+		}
+	}
+
+	/**
+	 * 残すフレームの番号を取得する。
+	 *
+	 * フレーム数が上限を超える場合は、先頭のフレームを含めて等間隔に選ぶ。
+	 *
+	 * @param numOfFrames
+	 *            元画像のフレーム数
+	 * @return 残すフレームの番号（0 から）を昇順に格納した配列
+	 */
+	int[] sampleFrames(int numOfFrames) {
+		int count = maxFrames == 0 ? numOfFrames : Math.min(maxFrames,
+				numOfFrames);
+		int[] indexes = new int[count];
+		for (int i = 0; i < count; i++) {
+			indexes[i] = (int) ((long) i * numOfFrames / count);
+		}
+		return indexes;
+	}
+
+	/**
+	 * 1 つの convert コマンドで縮小するフレーム数を取得する。
+	 *
+	 * @param numOfFrames
+	 *            縮小するフレーム数
+	 * @return 1 つの convert コマンドで縮小するフレーム数
+	 */
+	int getFramesPerChunk(int numOfFrames) {
+		if (framesPerChunk > 0) {
+			return framesPerChunk;
+		}
+		return Math.max(1, (numOfFrames + parallelism - 1) / parallelism);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"dest:%s, size:%s, parallelism:%s, framesPerChunk:%s, maxFrames:%s",
+				dest, size, parallelism, framesPerChunk, maxFrames);
+	}
+
+}
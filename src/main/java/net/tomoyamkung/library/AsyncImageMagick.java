@@ -0,0 +1,456 @@
+package net.tomoyamkung.library;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.tomoyamkung.library.process.ProcessResult;
+import net.tomoyamkung.library.process.ResourceLimits;
+
+/**
+ * ImageMagick を非同期に操作する Wrapper クラス。
+ *
+ * 各操作は <code>ImageMagick</code> の同名メソッドをワーカースレッドで実行し、
+ * 結果を <code>CompletableFuture</code> で返す。 同時に実行する ImageMagick
+ * のプロセス数はワーカースレッド数で制限され、実行待ちの操作は上限付きのキューに格納される。
+ * キューが満杯の場合の振る舞いは <code>RejectionPolicy</code> で指定する。
+ *
+ * 各操作で実行する ImageMagick のコマンドには、既定で同時実行数から求めた資源の上限（
+ * <code>ResourceLimits#forConcurrency</code>）を適用し、同時に実行するプロセスのスレッド数の合計を CPU
+ * のコア数程度に抑える。
+ *
+ * <code>ImageMagick#isCoalescing</code> が true の場合、実行中もしくは実行待ちの操作と同じ引数の操作は投入せず、
+ * 同じ結果を受け取る <code>CompletableFuture</code> を返す。 まとめた操作はワーカースレッドを 1 つだけ使用する。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class AsyncImageMagick implements AutoCloseable {
+
+	/**
+	 * キューが満杯の場合の振る舞いを表すクラス。
+	 */
+	public enum RejectionPolicy {
+
+		/**
+		 * <code>RejectedExecutionException</code> を生成して受け付けない。
+		 */
+		abort,
+
+		/**
+		 * 呼び出し元のスレッドで実行する。
+		 */
+		callerRuns,
+
+		/**
+		 * キューに空きができるまで呼び出し元のスレッドを待機させる。
+		 */
+		block;
+
+	}
+
+	/**
+	 * ワーカースレッドの通し番号。
+	 */
+	private static final AtomicInteger threadNumber = new AtomicInteger();
+
+	/**
+	 * 操作を実行するスレッドプール。
+	 */
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * 実行中もしくは実行待ちの操作。同じ引数の操作を 1 回にまとめる。
+	 */
+	private final SingleFlight<List<Object>, ProcessResult> inFlight = new SingleFlight<List<Object>, ProcessResult>();
+
+	/**
+	 * 各操作に適用する資源の上限の既定値。
+	 */
+	private volatile ResourceLimits resourceLimits;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * 同時実行数は CPU のコア数、キューの容量は同時実行数の 16 倍、キューが満杯の場合は
+	 * <code>RejectionPolicy#block</code> とする。
+	 */
+	public AsyncImageMagick() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * キューの容量は同時実行数の 16 倍、キューが満杯の場合は <code>RejectionPolicy#block</code>
+	 * とする。
+	 *
+	 * @param maxConcurrency
+	 *            同時に実行する ImageMagick のプロセス数の上限
+	 */
+	public AsyncImageMagick(int maxConcurrency) {
+		this(maxConcurrency, maxConcurrency * 16, RejectionPolicy.block);
+	}
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param maxConcurrency
+	 *            同時に実行する ImageMagick のプロセス数の上限
+	 * @param queueCapacity
+	 *            実行待ちの操作を格納するキューの容量
+	 * @param rejectionPolicy
+	 *            キューが満杯の場合の振る舞い
+	 */
+	public AsyncImageMagick(int maxConcurrency, int queueCapacity,
+			RejectionPolicy rejectionPolicy) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException(
+					"maxConcurrency は 1 以上の値を指定してください。");
+		}
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException(
+					"queueCapacity は 1 以上の値を指定してください。");
+		}
+		if (rejectionPolicy == null) {
+			throw new IllegalArgumentException(
+					"rejectionPolicy may not be specified.");
+		}
+
+		executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 0L,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+						queueCapacity), new WorkerThreadFactory(),
+				createRejectedExecutionHandler(rejectionPolicy));
+		resourceLimits = ResourceLimits.forConcurrency(maxConcurrency);
+	}
+
+	/**
+	 * 同時に実行する ImageMagick のプロセス数の上限を取得する。
+	 *
+	 * @return 同時実行数の上限
+	 */
+	public int getMaxConcurrency() {
+		return executor.getMaximumPoolSize();
+	}
+
+	/**
+	 * 各操作に適用する資源の上限の既定値を取得する。
+	 *
+	 * @return <code>ResourceLimits</code> オブジェクト
+	 */
+	public ResourceLimits getResourceLimits() {
+		return resourceLimits.withDefaults(null);
+	}
+
+	/**
+	 * 各操作に適用する資源の上限の既定値を設定する。
+	 *
+	 * <code>ProcessExecutor#setResourceLimits</code> で指定した項目はそちらを優先する。
+	 * 設定した時点の値を複製して保持し、以降に投入した操作から適用する。
+	 *
+	 * @param resourceLimits
+	 *            <code>ResourceLimits</code> オブジェクト
+	 */
+	public void setResourceLimits(ResourceLimits resourceLimits) {
+		if (resourceLimits == null) {
+			throw new IllegalArgumentException(
+					"resourceLimits may not be specified.");
+		}
+		this.resourceLimits = resourceLimits.withDefaults(null);
+	}
+
+	/**
+	 * 実行待ちの操作の数を取得する。
+	 *
+	 * @return キューに格納されている操作の数
+	 */
+	public int getQueuedCount() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * 画像を非同期にリサイズする。
+	 *
+	 * @see ImageMagick#resize(String, File, File, SquareSide, int)
+	 */
+	public CompletableFuture<ProcessResult> resize(final String commandPath,
+			final File src, final File dest, final SquareSide side,
+			final int pixel) {
+		return coalesce(key("resize", commandPath, src, dest, side, pixel),
+				() -> ImageMagick.resize(commandPath, src, dest, side, pixel));
+	}
+
+	/**
+	 * サムネイル画像を非同期に作成する。
+	 *
+	 * @see ImageMagick#createThumbnail(String, File, File, String)
+	 */
+	public CompletableFuture<ProcessResult> createThumbnail(
+			final String commandPath, final File src, final File dest,
+			final String size) {
+		return coalesce(key("createThumbnail", commandPath, src, dest, size),
+				() -> ImageMagick.createThumbnail(commandPath, src, dest, size));
+	}
+
+	/**
+	 * Exif を非同期に削除する。
+	 *
+	 * @see ImageMagick#removeExif(String, File, File)
+	 */
+	public CompletableFuture<ProcessResult> removeExif(
+			final String commandPath, final File src, final File dest) {
+		return coalesce(key("removeExif", commandPath, src, dest),
+				() -> ImageMagick.removeExif(commandPath, src, dest));
+	}
+
+	/**
+	 * 画像を非同期にタイル状に結合する。
+	 *
+	 * @see ImageMagick#createMontage(String, List, String, String, File)
+	 */
+	public CompletableFuture<ProcessResult> createMontage(
+			final String commandPath, final List<File> srcFiles,
+			final String tile, final String geometry, final File dest) {
+		return coalesce(key("createMontage", commandPath, srcFiles, tile,
+				geometry, dest), () -> ImageMagick.createMontage(commandPath,
+				srcFiles, tile, geometry, dest));
+	}
+
+	/**
+	 * 1 つの元画像から複数の派生画像を非同期にまとめて作成する。
+	 *
+	 * @see ImageMagick#createRenditions(String, File, List)
+	 */
+	public CompletableFuture<ProcessResult> createRenditions(
+			final String commandPath, final File src,
+			final List<Rendition> renditions) {
+		return submit(() -> ImageMagick.createRenditions(commandPath, src,
+				renditions));
+	}
+
+	/**
+	 * ImageMagick のコマンドを非同期に直接実行する。
+	 *
+	 * @see ImageMagick#runProcessDirectly(Command)
+	 */
+	public CompletableFuture<ProcessResult> runProcessDirectly(
+			final Command command) {
+		return submit(() -> ImageMagick.runProcessDirectly(command));
+	}
+
+	/**
+	 * プレースホルダに値を差し込んで ImageMagick のコマンドを非同期に直接実行する。
+	 *
+	 * @see ImageMagick#runProcessDirectly(Command, Map)
+	 */
+	public CompletableFuture<ProcessResult> runProcessDirectly(
+			final Command command, final Map<String, String> values) {
+		return submit(() -> ImageMagick.runProcessDirectly(command, values));
+	}
+
+	/**
+	 * 同じ引数の操作が実行中もしくは実行待ちでなければ、操作をスレッドプールに投入する。
+	 *
+	 * @param key
+	 *            操作の種類と引数
+	 * @param task
+	 *            実行する操作
+	 * @return 操作の結果を受け取る <code>CompletableFuture</code>
+	 */
+	private CompletableFuture<ProcessResult> coalesce(List<Object> key,
+			Callable<ProcessResult> task) {
+		if (!ImageMagick.isCoalescing()) {
+			return submit(task);
+		}
+		return inFlight.submit(key, () -> submit(task));
+	}
+
+	/**
+	 * 操作の種類と引数から、操作をまとめるためのキーを作成する。
+	 *
+	 * ファイルは絶対パスを正規化して比較する。
+	 */
+	private static List<Object> key(Object... args) {
+		Object[] normalized = new Object[args.length];
+		for (int i = 0; i < args.length; i++) {
+			normalized[i] = normalize(args[i]);
+		}
+		return Arrays.asList(normalized);
+	}
+
+	private static Object normalize(Object arg) {
+		if (arg instanceof File) {
+			return ((File) arg).getAbsoluteFile().toPath().normalize();
+		}
+		if (arg instanceof List) {
+			List<Object> list = new ArrayList<Object>();
+			for (Object element : (List<?>) arg) {
+				list.add(normalize(element));
+			}
+			return list;
+		}
+		return arg;
+	}
+
+	/**
+	 * 操作をスレッドプールに投入する。
+	 *
+	 * 操作で発生した例外は <code>CompletableFuture</code> に格納される。
+	 * 終了処理後に投入された場合は、<code>RejectedExecutionException</code> を格納した
+	 * <code>CompletableFuture</code> を返す。
+	 *
+	 * @param task
+	 *            実行する操作
+	 * @return 操作の結果を受け取る <code>CompletableFuture</code>
+	 * @throws RejectedExecutionException
+	 *             <code>RejectionPolicy#abort</code> でキューが満杯の場合
+	 */
+	protected <T> CompletableFuture<T> submit(final Callable<T> task) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		final long enqueued = System.nanoTime();
+		final ResourceLimits limits = resourceLimits;
+		try {
+			executor.execute(() -> {
+				if (future.isDone()) {
+					return;
+				}
+				ImageMagick.setQueueWaitNanos(System.nanoTime() - enqueued);
+				try {
+					future.complete(ImageMagick.callWithResourceLimits(limits,
+							task));
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			if (!executor.isShutdown()) {
+				throw e;
+			}
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * 新しい操作の受け付けを停止し、実行中と実行待ちの操作が終了するまで待機する。
+	 *
+	 * @param timeout
+	 *            待機する時間
+	 * @param unit
+	 *            <code>timeout</code> の単位
+	 * @return 時間内に全ての操作が終了した場合は true
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合
+	 */
+	public boolean shutdown(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		executor.shutdown();
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * 新しい操作の受け付けを停止する。
+	 *
+	 * 実行中と実行待ちの操作は継続する。
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	/**
+	 * キューが満杯の場合の振る舞いを生成する。
+	 *
+	 * @param rejectionPolicy
+	 *            キューが満杯の場合の振る舞い
+	 * @return <code>RejectedExecutionHandler</code> オブジェクト
+	 */
+	private static RejectedExecutionHandler createRejectedExecutionHandler(
+			RejectionPolicy rejectionPolicy) {
+		switch (rejectionPolicy) {
+		case callerRuns:
+			return new CallerRunsPolicy();
+		case block:
+			return new BlockingPolicy();
+		default:
+			return new ThreadPoolExecutor.AbortPolicy();
+		}
+	}
+
+	/**
+	 * 呼び出し元のスレッドで実行するクラス。
+	 *
+	 * <code>ThreadPoolExecutor.CallerRunsPolicy</code> は終了処理後に投入された操作を黙って破棄し、
+	 * <code>CompletableFuture</code> が完了しなくなるため、<code>RejectedExecutionException</code>
+	 * を生成する。
+	 */
+	private static class CallerRunsPolicy implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("executor has been shut down.");
+			}
+			r.run();
+		}
+
+	}
+
+	/**
+	 * キューに空きができるまで呼び出し元のスレッドを待機させるクラス。
+	 *
+	 * 待機中に終了処理が行われた場合、格納した操作を実行するワーカースレッドが残っていないことがあるため、
+	 * 格納後に改めて確認し、取り除けた場合は <code>RejectedExecutionException</code> を生成する。
+	 */
+	private static class BlockingPolicy implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("executor has been shut down.");
+			}
+			try {
+				BlockingQueue<Runnable> queue = executor.getQueue();
+				queue.put(r);
+				if (executor.isShutdown() && queue.remove(r)) {
+					throw new RejectedExecutionException(
+							"executor has been shut down.");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException(e);
+			}
+		}
+
+	}
+
+	/**
+	 * ワーカースレッドを生成するクラス。
+	 *
+	 * ワーカースレッドはデーモンスレッドとして生成する。
+	 */
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "imagemagick-worker-"
+					+ threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
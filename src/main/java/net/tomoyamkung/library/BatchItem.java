@@ -0,0 +1,83 @@
+package net.tomoyamkung.library;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 一括処理する 1 件分の生成元と生成先のファイルを保持するクラス。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class BatchItem {
+
+	/**
+	 * 生成元のファイル。
+	 */
+	private final File src;
+
+	/**
+	 * 生成先のファイル。
+	 */
+	private final File dest;
+
+	/**
+	 * 生成元を取得できなかった原因。取得できた場合は null。
+	 */
+	private final IOException error;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param src
+	 *            生成元のファイル
+	 * @param dest
+	 *            生成先のファイル
+	 */
+	public BatchItem(File src, File dest) {
+		this(src, dest, null);
+	}
+
+	/**
+	 * 生成元を取得できなかった件のコンストラクタ。
+	 *
+	 * @param src
+	 *            取得できなかった生成元（読めなかったディレクトリなど）
+	 * @param dest
+	 *            生成先のファイル
+	 * @param error
+	 *            取得できなかった原因
+	 */
+	BatchItem(File src, File dest, IOException error) {
+		this.src = src;
+		this.dest = dest;
+		this.error = error;
+	}
+
+	public File getSrc() {
+		return src;
+	}
+
+	public File getDest() {
+		return dest;
+	}
+
+	IOException getError() {
+		return error;
+	}
+
+	/**
+	 * 生成先のファイルが生成元のファイル以降に更新されているかを判定する。
+	 *
+	 * @return 生成先のファイルが存在し、更新日時が生成元のファイル以降の場合は true
+	 */
+	boolean isUpToDate() {
+		return dest.exists() && src.lastModified() <= dest.lastModified();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("src:%s, dest:%s", src, dest);
+	}
+
+}
@@ -0,0 +1,189 @@
+package net.tomoyamkung.library;
+
+import java.io.File;
+
+/**
+ * 大量の画像を結合するコンタクトシートの指定を保持するクラス。
+ *
+ * 1 行に並べる画像の枚数、1 ページに並べる行数、結合元画像の大きさ、生成先のファイルを指定する。
+ * 1 ページに収まらない画像は次のページに並べる。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class BatchMontage {
+
+	/**
+	 * 生成先のファイル。複数ページになる場合はページ番号を付けたファイルに作成する。
+	 */
+	private final File dest;
+
+	/**
+	 * 1 行に並べる画像の枚数。
+	 */
+	private int columns;
+
+	/**
+	 * 1 ページに並べる行数。0 の場合は全ての画像を 1 ページに並べる。
+	 */
+	private int rowsPerPage;
+
+	/**
+	 * 結合元画像の大きさ。[0-9]{1,}x[0-9]{1,} で指定する。
+	 */
+	private String geometry;
+
+	/**
+	 * 同時に実行する montage コマンドのプロセス数。
+	 */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param dest
+	 *            生成先のファイル。複数ページになる場合は拡張子の前にページ番号（-1、-2 …）を付ける
+	 */
+	public BatchMontage(File dest) {
+		this.dest = dest;
+	}
+
+	/**
+	 * 1 行に並べる画像の枚数を設定する。
+	 *
+	 * @param columns
+	 *            1 行に並べる画像の枚数
+	 * @return
+	 */
+	public BatchMontage setColumns(int columns) {
+		this.columns = columns;
+
+		return this;
+	}
+
+	/**
+	 * 1 ページに並べる行数を設定する。
+	 *
+	 * @param rowsPerPage
+	 *            1 ページに並べる行数。0 の場合は全ての画像を 1 ページに並べる
+	 * @return
+	 */
+	public BatchMontage setRowsPerPage(int rowsPerPage) {
+		this.rowsPerPage = rowsPerPage;
+
+		return this;
+	}
+
+	/**
+	 * 結合元画像の大きさを設定する。
+	 *
+	 * @param geometry
+	 *            結合元画像の大きさ。[0-9]{1,}x[0-9]{1,} で指定する
+	 * @return
+	 */
+	public BatchMontage setGeometry(String geometry) {
+		this.geometry = geometry;
+
+		return this;
+	}
+
+	/**
+	 * 同時に実行する montage コマンドのプロセス数を設定する。既定値は CPU のコア数とする。
+	 *
+	 * @param parallelism
+	 *            同時に実行するプロセス数
+	 * @return
+	 */
+	public BatchMontage setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+
+		return this;
+	}
+
+	public File getDest() {
+		return dest;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public String getGeometry() {
+		return geometry;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * 妥当性を確認する。
+	 *
+	 * 次の条件に当てはまる場合は不適切と見なし <code>IllegalArgumentException</code> を生成する。
+	 *
+	 * <ul>
+	 * <li>生成先のファイルが null である</li>
+	 * <li>1 行に並べる画像の枚数が 0 以下である</li>
+	 * <li>1 ページに並べる行数が負である</li>
+	 * <li>結合元画像の大きさが [0-9]{1,}x[0-9]{1,} に当てはまっていない</li>
+	 * <li>同時に実行するプロセス数が 0 以下である</li>
+	 * </ul>
+	 */
+	public void validate() {
+		Validator.validateDestFile(dest);
+		if (columns < 1) {
+			throw new IllegalArgumentException(
+					"1 行に並べる画像の枚数は 1 以上の値を指定してください。");
+		}
+		if (rowsPerPage < 0) {
+			throw new IllegalArgumentException(
+					"1 ページに並べる行数は 0 以上の値を指定してください。");
+		}
+		Validator.validateSize(geometry, "結合元画像ファイルの大きさ");
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"同時に実行するプロセス数は 1 以上の値を指定してください。");
+		}
+	}
+
+	/**
+	 * 1 ページに並べる画像の枚数を取得する。
+	 *
+	 * @param numOfFiles
+	 *            結合する画像の枚数
+	 * @return 1 ページに並べる画像の枚数
+	 */
+	int getTilesPerPage(int numOfFiles) {
+		return rowsPerPage == 0 ? numOfFiles : columns * rowsPerPage;
+	}
+
+	/**
+	 * ページの生成先のファイルを取得する。
+	 *
+	 * 1 ページのみの場合は生成先のファイルをそのまま使用する。
+	 *
+	 * @param page
+	 *            ページ番号（1 から）
+	 * @param numOfPages
+	 *            ページ数
+	 * @return ページの生成先のファイル
+	 */
+	File getPageFile(int page, int numOfPages) {
+		if (numOfPages == 1) {
+			return dest;
+		}
+		String name = dest.getName();
+		int dot = name.lastIndexOf('.');
+		String pageName = dot <= 0 ? name + "-" + page : name.substring(0, dot)
+				+ "-" + page + name.substring(dot);
+		return new File(dest.getAbsoluteFile().getParentFile(), pageName);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"dest:%s, columns:%s, rowsPerPage:%s, geometry:%s, parallelism:%s",
+				dest, columns, rowsPerPage, geometry, parallelism);
+	}
+
+}
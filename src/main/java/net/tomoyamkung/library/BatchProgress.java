@@ -0,0 +1,100 @@
+package net.tomoyamkung.library;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一括処理のある時点の進捗を保持するクラス。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class BatchProgress {
+
+	/**
+	 * 成功した件数。
+	 */
+	private final long succeeded;
+
+	/**
+	 * 生成先のファイルが最新のためスキップした件数。
+	 */
+	private final long skipped;
+
+	/**
+	 * 失敗した件数。
+	 */
+	private final long failed;
+
+	/**
+	 * 開始からの経過時間（ナノ秒）。
+	 */
+	private final long elapsedNanos;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param succeeded
+	 *            成功した件数
+	 * @param skipped
+	 *            スキップした件数
+	 * @param failed
+	 *            失敗した件数
+	 * @param elapsedNanos
+	 *            開始からの経過時間（ナノ秒）
+	 */
+	BatchProgress(long succeeded, long skipped, long failed, long elapsedNanos) {
+		this.succeeded = succeeded;
+		this.skipped = skipped;
+		this.failed = failed;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public long getSucceeded() {
+		return succeeded;
+	}
+
+	public long getSkipped() {
+		return skipped;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * 完了した件数（成功、スキップ、失敗の合計）を取得する。
+	 *
+	 * @return 完了した件数
+	 */
+	public long getCompleted() {
+		return succeeded + skipped + failed;
+	}
+
+	/**
+	 * スループットを取得する。
+	 *
+	 * スキップした件数は ImageMagick を実行していないため含めない。
+	 *
+	 * @return 1 秒あたりに ImageMagick で処理した件数（成功と失敗の合計）。経過時間が 0 の場合は 0
+	 */
+	public double getThroughput() {
+		if (elapsedNanos <= 0) {
+			return 0;
+		}
+		return (succeeded + failed) * (double) TimeUnit.SECONDS.toNanos(1)
+				/ elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"succeeded:%s, skipped:%s, failed:%s, elapsedMillis:%s, throughput:%.1f/s",
+				succeeded, skipped, failed,
+				TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getThroughput());
+	}
+
+}
@@ -0,0 +1,22 @@
+package net.tomoyamkung.library;
+
+/**
+ * 一括処理の進捗を受け取るインタフェース。
+ *
+ * <code>BatchResize#setProgressListener</code> に設定すると、一定の間隔と一括処理の完了時に
+ * <code>onProgress</code> が呼び出される。 ワーカースレッドから呼び出されるため、実装はスレッドセーフにする。
+ *
+ * @author tomoyamkung
+ *
+ */
+public interface BatchProgressListener {
+
+	/**
+	 * 進捗を受け取る。
+	 *
+	 * @param progress
+	 *            その時点の進捗
+	 */
+	void onProgress(BatchProgress progress);
+
+}
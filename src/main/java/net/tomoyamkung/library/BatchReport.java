@@ -0,0 +1,88 @@
+package net.tomoyamkung.library;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一括処理の結果を保持するクラス。
+ *
+ * 失敗した件は一括処理を中断せずに生成元、生成先、例外を記録する。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class BatchReport extends BatchProgress {
+
+	/**
+	 * 失敗した 1 件分の内容を保持するクラス。
+	 */
+	public static class Failure {
+
+		/**
+		 * 失敗した生成元と生成先のファイル。
+		 */
+		private final BatchItem item;
+
+		/**
+		 * 失敗の原因となった例外。
+		 */
+		private final Exception cause;
+
+		Failure(BatchItem item, Exception cause) {
+			this.item = item;
+			this.cause = cause;
+		}
+
+		public BatchItem getItem() {
+			return item;
+		}
+
+		public Exception getCause() {
+			return cause;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s, cause:%s", item, cause);
+		}
+
+	}
+
+	/**
+	 * 失敗した件の内容を格納したリスト。
+	 */
+	private final List<Failure> failures;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param progress
+	 *            完了時の進捗
+	 * @param failures
+	 *            失敗した件の内容を格納したリスト
+	 */
+	BatchReport(BatchProgress progress, List<Failure> failures) {
+		super(progress.getSucceeded(), progress.getSkipped(), progress
+				.getFailed(), progress.getElapsedNanos());
+		this.failures = Collections.unmodifiableList(failures);
+	}
+
+	/**
+	 * 失敗した件の内容を取得する。
+	 *
+	 * @return 失敗した件の内容を格納したリスト。完了した順に並べる
+	 */
+	public List<Failure> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * 全ての件が成功、もしくは、スキップしたかを判定する。
+	 *
+	 * @return 失敗した件がない場合は true
+	 */
+	public boolean isSuccess() {
+		return failures.isEmpty();
+	}
+
+}
@@ -0,0 +1,289 @@
+package net.tomoyamkung.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.tomoyamkung.library.process.ProcessResult;
+
+/**
+ * 大量の画像を一括してリサイズする指定を保持するクラス。
+ *
+ * 大きさ、同時に実行するプロセス数、生成先のファイルが最新の場合にスキップするか、進捗の通知先、
+ * ディレクトリを一括処理する場合の対象の拡張子を指定する。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class BatchResize {
+
+	/**
+	 * 進捗を通知する間隔の既定値（ミリ秒）。
+	 */
+	public static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * サムネイルサイズ。[0-9]{1,}x[0-9]{1,} で指定する。
+	 */
+	private String size;
+
+	/**
+	 * 基準とする「辺」。
+	 */
+	private SquareSide side;
+
+	/**
+	 * 基準とする「辺」のピクセル。
+	 */
+	private int pixel;
+
+	/**
+	 * 同時に実行する convert コマンドのプロセス数。
+	 */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * 生成先のファイルが生成元のファイル以降に更新されている場合にスキップするか。
+	 */
+	private boolean skipUpToDate;
+
+	/**
+	 * 進捗の通知先。null の場合は通知しない。
+	 */
+	private BatchProgressListener progressListener;
+
+	/**
+	 * 進捗を通知する間隔（ミリ秒）。
+	 */
+	private long progressIntervalMillis = DEFAULT_PROGRESS_INTERVAL_MILLIS;
+
+	/**
+	 * ディレクトリを一括処理する場合の対象の拡張子（小文字）。
+	 */
+	private Set<String> extensions = new LinkedHashSet<String>(Arrays.asList(
+			"jpg", "jpeg", "png", "gif", "webp", "tif", "tiff", "bmp", "psd"));
+
+	/**
+	 * 縦横比を維持して指定したサイズに収まるように縮小する。
+	 *
+	 * <code>ImageMagick#createThumbnail</code> と同じ処理を行う。
+	 *
+	 * @param size
+	 *            サムネイルサイズ。[0-9]{1,}x[0-9]{1,} で指定する
+	 * @return
+	 */
+	public BatchResize setSize(String size) {
+		this.size = size;
+		side = null;
+
+		return this;
+	}
+
+	/**
+	 * 基準とする「辺」をピクセルに合わせ、もう一辺は縦横比により自動計算した大きさに縮小する。
+	 *
+	 * <code>ImageMagick#resize</code> と同じ処理を行う。
+	 *
+	 * @param side
+	 *            基準とする「辺」
+	 * @param pixel
+	 *            基準とする「辺」のピクセル
+	 * @return
+	 */
+	public BatchResize setSize(SquareSide side, int pixel) {
+		this.side = side;
+		this.pixel = pixel;
+		size = null;
+
+		return this;
+	}
+
+	/**
+	 * 同時に実行する convert コマンドのプロセス数を設定する。既定値は CPU のコア数とする。
+	 *
+	 * @param parallelism
+	 *            同時に実行するプロセス数
+	 * @return
+	 */
+	public BatchResize setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+
+		return this;
+	}
+
+	/**
+	 * 生成先のファイルが生成元のファイル以降に更新されている場合にスキップするかを設定する。
+	 *
+	 * @param skipUpToDate
+	 *            スキップする場合は true
+	 * @return
+	 */
+	public BatchResize setSkipUpToDate(boolean skipUpToDate) {
+		this.skipUpToDate = skipUpToDate;
+
+		return this;
+	}
+
+	/**
+	 * 進捗の通知先を設定する。
+	 *
+	 * @param progressListener
+	 *            進捗の通知先
+	 * @return
+	 */
+	public BatchResize setProgressListener(
+			BatchProgressListener progressListener) {
+		this.progressListener = progressListener;
+
+		return this;
+	}
+
+	/**
+	 * 進捗を通知する間隔を設定する。既定値は 1 秒とする。
+	 *
+	 * @param interval
+	 *            進捗を通知する間隔。0 の場合は 1 件完了するごとに通知する
+	 * @param unit
+	 *            <code>interval</code> の単位
+	 * @return
+	 */
+	public BatchResize setProgressInterval(long interval, TimeUnit unit) {
+		progressIntervalMillis = unit.toMillis(interval);
+
+		return this;
+	}
+
+	/**
+	 * ディレクトリを一括処理する場合の対象の拡張子を設定する。既定値は jpg、jpeg、png、gif、webp、tif、tiff、bmp、psd
+	 * とする。
+	 *
+	 * 大文字と小文字は区別しない。 <code>ImageMagick#resizeBatch(String, File, File, BatchResize)</code>
+	 * のみに適用する。
+	 *
+	 * @param extensions
+	 *            拡張子（<code>jpg</code>、<code>png</code> など）
+	 * @return
+	 */
+	public BatchResize setExtensions(String... extensions) {
+		Set<String> set = new LinkedHashSet<String>();
+		if (extensions != null) {
+			for (String extension : extensions) {
+				set.add(extension == null ? null : extension
+						.toLowerCase(Locale.ROOT));
+			}
+		}
+		this.extensions = set;
+
+		return this;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public boolean isSkipUpToDate() {
+		return skipUpToDate;
+	}
+
+	public BatchProgressListener getProgressListener() {
+		return progressListener;
+	}
+
+	public long getProgressIntervalMillis() {
+		return progressIntervalMillis;
+	}
+
+	public Set<String> getExtensions() {
+		return Collections.unmodifiableSet(extensions);
+	}
+
+	/**
+	 * ディレクトリを一括処理する場合の対象のファイルかを拡張子で判定する。
+	 *
+	 * @param file
+	 *            ファイル
+	 * @return 対象の場合は true
+	 */
+	boolean acceptsExtension(File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return dot >= 0
+				&& extensions.contains(name.substring(dot + 1).toLowerCase(
+						Locale.ROOT));
+	}
+
+	/**
+	 * 妥当性を確認する。
+	 *
+	 * 次の条件に当てはまる場合は不適切と見なし <code>IllegalArgumentException</code> を生成する。
+	 *
+	 * <ul>
+	 * <li>大きさが指定されていない</li>
+	 * <li>サムネイルサイズが [0-9]{1,}x[0-9]{1,} に当てはまっていない</li>
+	 * <li>基準とする「辺」のピクセルが 0 以下である</li>
+	 * <li>同時に実行するプロセス数が 0 以下である</li>
+	 * <li>進捗を通知する間隔が負である</li>
+	 * <li>対象の拡張子が指定されていない、もしくは、null を含む</li>
+	 * </ul>
+	 */
+	public void validate() {
+		if (size == null && side == null) {
+			throw new IllegalArgumentException("size may not be specified.");
+		}
+		if (size != null) {
+			Validator.validateSize(size, "サムネイルサイズ");
+		}
+		if (side != null) {
+			Validator.validatePixel(pixel);
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"同時に実行するプロセス数は 1 以上の値を指定してください。");
+		}
+		if (progressIntervalMillis < 0) {
+			throw new IllegalArgumentException(
+					"進捗を通知する間隔は 0 以上の値を指定してください。");
+		}
+		if (extensions.isEmpty() || extensions.contains(null)) {
+			throw new IllegalArgumentException(
+					"extensions may not be specified.");
+		}
+	}
+
+	/**
+	 * 1 件分の画像をリサイズする。
+	 *
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param item
+	 *            生成元と生成先のファイル
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             ImageMagick の操作に失敗した場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作中に割り込まれた場合
+	 */
+	ProcessResult apply(String commandPath, BatchItem item)
+			throws IOException, InterruptedException {
+		if (size != null) {
+			return ImageMagick.createThumbnail(commandPath, item.getSrc(),
+					item.getDest(), size);
+		}
+		return ImageMagick.resize(commandPath, item.getSrc(), item.getDest(),
+				side, pixel);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"size:%s, side:%s, pixel:%s, parallelism:%s, skipUpToDate:%s, progressIntervalMillis:%s, extensions:%s",
+				size, side, pixel, parallelism, skipUpToDate,
+				progressIntervalMillis, extensions);
+	}
+
+}
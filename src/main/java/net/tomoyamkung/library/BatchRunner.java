@@ -0,0 +1,200 @@
+package net.tomoyamkung.library;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.tomoyamkung.library.process.ResourceLimits;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <code>BatchResize</code> の指定に従って大量の画像を並行してリサイズするクラス。
+ *
+ * 生成元と生成先のファイルは必要な分だけ取り出すため、全件をメモリに読み込まない。 実行待ちの件数は同時に実行するプロセス数の 2
+ * 倍までに制限する。 失敗した件は一括処理を中断せずに記録する。 各件には同時に実行するプロセス数から求めた資源の上限を適用する。
+ *
+ * @author tomoyamkung
+ *
+ */
+class BatchRunner {
+
+	private static final Logger log = Logger.getLogger(BatchRunner.class);
+
+	/**
+	 * convert コマンドの絶対パス。
+	 */
+	private final String commandPath;
+
+	/**
+	 * 一括処理の指定。
+	 */
+	private final BatchResize batch;
+
+	/**
+	 * 成功した件数。
+	 */
+	private final AtomicLong succeeded = new AtomicLong();
+
+	/**
+	 * スキップした件数。
+	 */
+	private final AtomicLong skipped = new AtomicLong();
+
+	/**
+	 * 失敗した件数。
+	 */
+	private final AtomicLong failed = new AtomicLong();
+
+	/**
+	 * 失敗した件の内容を格納したリスト。
+	 */
+	private final List<BatchReport.Failure> failures = Collections
+			.synchronizedList(new ArrayList<BatchReport.Failure>());
+
+	/**
+	 * 最後に進捗を通知した時刻（<code>System#nanoTime</code> の値）。
+	 */
+	private final AtomicLong lastNotified = new AtomicLong();
+
+	/**
+	 * 開始した時刻（<code>System#nanoTime</code> の値）。
+	 */
+	private long start;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param batch
+	 *            一括処理の指定
+	 */
+	BatchRunner(String commandPath, BatchResize batch) {
+		this.commandPath = commandPath;
+		this.batch = batch;
+	}
+
+	/**
+	 * 全ての件を処理し、完了するまで待機する。
+	 *
+	 * @param items
+	 *            生成元と生成先のファイル
+	 * @return 一括処理の結果
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合。実行中の処理は中断する
+	 */
+	BatchReport run(Iterator<BatchItem> items) throws InterruptedException {
+		start = System.nanoTime();
+		lastNotified.set(start);
+		int parallelism = batch.getParallelism();
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		Semaphore pending = new Semaphore(parallelism * 2);
+		final ResourceLimits limits = ResourceLimits.forConcurrency(parallelism);
+		try {
+			while (items.hasNext()) {
+				final BatchItem item = items.next();
+				pending.acquire();
+				executor.execute(() -> {
+					try {
+						process(item, limits);
+					} finally {
+						pending.release();
+					}
+				});
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		BatchProgress progress = snapshot();
+		BatchProgressListener listener = batch.getProgressListener();
+		if (listener != null) {
+			listener.onProgress(progress);
+		}
+		return new BatchReport(progress, new ArrayList<BatchReport.Failure>(
+				failures));
+	}
+
+	/**
+	 * 1 件分の画像をリサイズする。
+	 *
+	 * 例外は呼び出し元に伝えず、失敗として記録する。
+	 *
+	 * @param item
+	 *            生成元と生成先のファイル
+	 * @param limits
+	 *            資源の上限の既定値
+	 */
+	private void process(final BatchItem item, ResourceLimits limits) {
+		try {
+			if (item == null) {
+				throw new IllegalArgumentException("item may not be specified.");
+			}
+			if (item.getError() != null) {
+				throw item.getError();
+			}
+			Validator.validateSrcFile(item.getSrc());
+			Validator.validateDestFile(item.getDest());
+			if (batch.isSkipUpToDate() && item.isUpToDate()) {
+				skipped.incrementAndGet();
+			} else {
+				File parent = item.getDest().getAbsoluteFile().getParentFile();
+				if (parent != null) {
+					parent.mkdirs();
+				}
+				ImageMagick.callWithResourceLimits(limits,
+						() -> batch.apply(commandPath, item));
+				succeeded.incrementAndGet();
+			}
+		} catch (InterruptedException e) {
+			fail(item, e);
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			fail(item, e);
+		}
+		notifyProgress();
+	}
+
+	private void fail(BatchItem item, Exception cause) {
+		log.warn(String.format("failed. item:%s, cause:%s", item, cause));
+		failures.add(new BatchReport.Failure(item, cause));
+		failed.incrementAndGet();
+	}
+
+	/**
+	 * 前回の通知から一定の時間が経過していれば進捗を通知する。
+	 *
+	 * 複数のスレッドが同時に通知しないように、通知した時刻を更新できたスレッドのみが通知する。
+	 */
+	private void notifyProgress() {
+		BatchProgressListener listener = batch.getProgressListener();
+		if (listener == null) {
+			return;
+		}
+		long now = System.nanoTime();
+		long last = lastNotified.get();
+		if (now - last < TimeUnit.MILLISECONDS.toNanos(batch
+				.getProgressIntervalMillis())) {
+			return;
+		}
+		if (lastNotified.compareAndSet(last, now)) {
+			listener.onProgress(snapshot());
+		}
+	}
+
+	private BatchProgress snapshot() {
+		return new BatchProgress(succeeded.get(), skipped.get(), failed.get(),
+				System.nanoTime() - start);
+	}
+
+}
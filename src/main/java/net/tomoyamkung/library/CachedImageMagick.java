@@ -0,0 +1,205 @@
+package net.tomoyamkung.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+import net.tomoyamkung.library.cache.RenditionCache;
+import net.tomoyamkung.library.fastpath.FastPathPolicy;
+import net.tomoyamkung.library.fastpath.MetadataStripper;
+import net.tomoyamkung.library.process.ProcessFailedException;
+
+/**
+ * 作成した画像をキャッシュし、同じ生成元と同じ操作の場合は ImageMagick を実行せずに再利用する Wrapper クラス。
+ *
+ * キーには生成元のファイルの内容と、正規化した操作（サイズ、基準とする「辺」とピクセル、Exif
+ * の削除、結合する形式、生成先のファイルの拡張子）、出力が変わる設定（コマンドのパス、<code>FastPathPolicy</code>、
+ * <code>MetadataStripper</code>、<code>ImageMagick#getDecodeSizeHintScale</code>）を使用する。 ヒットした場合は保存したファイルから
+ * <code>dest</code> を作成する。 ヒットしなかった場合は <code>ImageMagick</code>
+ * の同名メソッドを実行し、作成した画像を保存する。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class CachedImageMagick {
+
+	/**
+	 * 作成した画像を保存するキャッシュ。
+	 */
+	private final RenditionCache cache;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param cache
+	 *            作成した画像を保存するキャッシュ
+	 */
+	public CachedImageMagick(RenditionCache cache) {
+		if (cache == null) {
+			throw new IllegalArgumentException("cache may not be specified.");
+		}
+		this.cache = cache;
+	}
+
+	public RenditionCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * 画像をリサイズする。
+	 *
+	 * @return キャッシュから作成した場合は true
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @see ImageMagick#resize(String, File, File, SquareSide, int)
+	 */
+	public boolean resize(String commandPath, File src, File dest,
+			SquareSide side, int pixel) throws IOException,
+			InterruptedException {
+		Validator.validateCommandPath(commandPath);
+		Validator.validateSrcFile(src);
+		Validator.validateDestFile(dest);
+		Validator.validatePixel(pixel);
+
+		String key = RenditionCache.createKey(Collections.singletonList(src),
+				String.format("resize:side=%s:pixel=%d:ext=%s:%s", side, pixel,
+						extensionOf(dest), resizeSettingsOf(commandPath)));
+		if (cache.get(key, dest)) {
+			return true;
+		}
+		ImageMagick.resize(commandPath, src, dest, side, pixel);
+		cache.put(key, dest);
+		return false;
+	}
+
+	/**
+	 * サムネイル画像を作成する。
+	 *
+	 * @return キャッシュから作成した場合は true
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @see ImageMagick#createThumbnail(String, File, File, String)
+	 */
+	public boolean createThumbnail(String commandPath, File src, File dest,
+			String size) throws IOException, InterruptedException {
+		Validator.validateCommandPath(commandPath);
+		Validator.validateSrcFile(src);
+		Validator.validateDestFile(dest);
+		Validator.validateSize(size, "サムネイルサイズ");
+
+		String key = RenditionCache.createKey(Collections.singletonList(src),
+				String.format("thumbnail:size=%s:ext=%s:%s", size,
+						extensionOf(dest), resizeSettingsOf(commandPath)));
+		if (cache.get(key, dest)) {
+			return true;
+		}
+		ImageMagick.createThumbnail(commandPath, src, dest, size);
+		cache.put(key, dest);
+		return false;
+	}
+
+	/**
+	 * Exif を削除する。
+	 *
+	 * @return キャッシュから作成した場合は true
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @see ImageMagick#removeExif(String, File, File)
+	 */
+	public boolean removeExif(String commandPath, File src, File dest)
+			throws IOException, InterruptedException {
+		Validator.validateCommandPath(commandPath);
+		Validator.validateSrcFile(src);
+		Validator.validateDestFile(dest);
+
+		String key = RenditionCache.createKey(Collections.singletonList(src),
+				String.format("strip:ext=%s:%s", extensionOf(dest),
+						stripSettingsOf(commandPath)));
+		if (cache.get(key, dest)) {
+			return true;
+		}
+		ImageMagick.removeExif(commandPath, src, dest);
+		cache.put(key, dest);
+		return false;
+	}
+
+	/**
+	 * 画像をタイル状に結合する。
+	 *
+	 * @return キャッシュから作成した場合は true
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @see ImageMagick#createMontage(String, List, String, String, File)
+	 */
+	public boolean createMontage(String commandPath, List<File> srcFiles,
+			String tile, String geometry, File dest) throws IOException,
+			InterruptedException {
+		Validator.validateCommandPath(commandPath);
+		if (srcFiles == null || srcFiles.isEmpty()) {
+			throw new IllegalArgumentException("srcFiles may not be specified.");
+		}
+		for (File src : srcFiles) {
+			Validator.validateSrcFile(src);
+		}
+		Validator.validateSize(tile, "結合する形式");
+		Validator.validateSize(geometry, "結合元画像ファイルの大きさ");
+		Validator.validateDestFile(dest);
+
+		String key = RenditionCache.createKey(srcFiles, String.format(
+				"montage:tile=%s:geometry=%s:ext=%s:command=%s", tile, geometry,
+				extensionOf(dest), commandPath));
+		if (cache.get(key, dest)) {
+			return true;
+		}
+		ImageMagick.createMontage(commandPath, srcFiles, tile, geometry, dest);
+		cache.put(key, dest);
+		return false;
+	}
+
+	/**
+	 * リサイズとサムネイルの作成で出力が変わる設定を表す文字列を作成する。
+	 *
+	 * JVM 内で処理するかと書き出す品質、デコード時の大きさのヒントの倍率により、同じ操作でも異なる画像を作成する。
+	 */
+	private static String resizeSettingsOf(String commandPath) {
+		return String.format("command=%s:fastPath=%s:hint=%d", commandPath,
+				fastPathOf(ImageMagick.getFastPathPolicy()),
+				ImageMagick.getDecodeSizeHintScale());
+	}
+
+	/**
+	 * Exif の削除で出力が変わる設定を表す文字列を作成する。
+	 *
+	 * 再エンコードせずに削除する場合は、削除するメタデータの種類により異なる画像を作成する。
+	 */
+	private static String stripSettingsOf(String commandPath) {
+		MetadataStripper stripper = ImageMagick.getMetadataStripper();
+		return String.format("command=%s:fastPath=%s:stripper=%s",
+				commandPath, fastPathOf(ImageMagick.getFastPathPolicy()),
+				stripper.isEnabled() ? stripper.getRemoved() : "disabled");
+	}
+
+	private static String fastPathOf(FastPathPolicy policy) {
+		if (!policy.isEnabled()) {
+			return "disabled";
+		}
+		return String.format("%d,%s,%d", policy.getMaxPixels(),
+				new TreeSet<String>(policy.getFormats()),
+				policy.getJpegQuality());
+	}
+
+	/**
+	 * 生成先のファイルの拡張子を取得する。
+	 *
+	 * convert コマンドは拡張子から出力形式を判断するため、キーに含める。
+	 */
+	private static String extensionOf(File dest) {
+		String name = dest.getName();
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+	}
+
+}
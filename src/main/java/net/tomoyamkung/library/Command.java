@@ -1,63 +1,161 @@
 package net.tomoyamkung.library;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-import net.tomoyamkung.library.util.ListUtil;
 import net.tomoyamkung.library.util.StringUtil;
 
 /**
  * ImageMagick の実行コマンドパスとコマンドパラメータを保持するクラス。
- * 
+ *
+ * パラメータには実行ごとに値を差し込むプレースホルダ（src、dest、size など）を含めることができる。
+ * 一度組み立てた <code>Command</code> はテンプレートとして複数のスレッドから繰り返し実行できる。
+ * <code>getCommand</code> は呼び出しごとに新しい変更できないリストを返し、このオブジェクトは変更しない。
+ *
+ * <pre>
+ * Command command = new Command(convertPath).addPlaceholder(&quot;src&quot;)
+ * 		.addParameter(&quot;-thumbnail&quot;).addPlaceholder(&quot;size&quot;)
+ * 		.addPlaceholder(&quot;dest&quot;);
+ * Map&lt;String, String&gt; values = new HashMap&lt;String, String&gt;();
+ * values.put(&quot;src&quot;, src.getAbsolutePath());
+ * values.put(&quot;size&quot;, &quot;200x100&quot;);
+ * values.put(&quot;dest&quot;, dest.getAbsolutePath());
+ * ImageMagick.runProcessDirectly(command, values);
+ * </pre>
+ *
  * @author tomoyamkung
- * 
+ *
  */
 public class Command {
 
+	/**
+	 * 空の配列。
+	 */
+	private static final String[] EMPTY = new String[0];
+
 	/**
 	 * 実行するコマンドのパス。
 	 */
-	private String commandPath;
+	private final String commandPath;
+
+	/**
+	 * 実行するコマンドのパラメータ。プレースホルダの位置は null とする。
+	 *
+	 * パラメータを追加するたびに新しい配列に置き換えるため、取得した配列の内容は変わらない。
+	 */
+	private volatile String[] parameters = EMPTY;
 
 	/**
-	 * 実行するコマンドのパラメータ。
+	 * パラメータと同じ位置にプレースホルダの名前を格納した配列。プレースホルダ以外の位置は null とする。
 	 */
-	private List<String> parameters;
+	private volatile String[] placeholders = EMPTY;
+
+	/**
+	 * 制限時間（ミリ秒）。負の場合は設定されていない。
+	 */
+	private volatile long timeoutMillis = -1;
 
 	/**
 	 * 実行するコマンドのパスを設定する。
-	 * 
+	 *
 	 * @param commandPath
 	 *            実行するコマンドのパス
 	 */
 	public Command(String commandPath) {
 		this.commandPath = commandPath;
-
-		parameters = new ArrayList<String>();
 	}
 
 	/**
 	 * 実行するコマンドのパラメータを追加する。
-	 * 
+	 *
 	 * @param parameter
 	 *            パラメータ
 	 * @return
 	 */
 	public Command addParameter(String parameter) {
-		parameters.add(parameter);
+		append(parameter, null);
+
+		return this;
+	}
+
+	/**
+	 * 実行するたびに値を差し込むプレースホルダを追加する。
+	 *
+	 * @param name
+	 *            プレースホルダの名前（src、dest、size など）
+	 * @return
+	 */
+	public Command addPlaceholder(String name) {
+		if (StringUtil.isNullOrEmpty(name)) {
+			throw new IllegalArgumentException("name may not be specified.");
+		}
+		append(null, name);
+
+		return this;
+	}
+
+	/**
+	 * パラメータ、もしくは、プレースホルダを末尾に追加した新しい配列に置き換える。
+	 *
+	 * 組み立ては 1 つのスレッドで行うことを想定し、置き換えのみを排他する。
+	 */
+	private synchronized void append(String parameter, String placeholder) {
+		int length = parameters.length;
+		String[] newParameters = Arrays.copyOf(parameters, length + 1);
+		String[] newPlaceholders = Arrays.copyOf(placeholders, length + 1);
+		newParameters[length] = parameter;
+		newPlaceholders[length] = placeholder;
+		placeholders = newPlaceholders;
+		parameters = newParameters;
+	}
+
+	/**
+	 * 制限時間を設定する。
+	 *
+	 * 設定しない場合は <code>ProcessExecutor</code> の既定値を制限時間とする。
+	 *
+	 * @param timeout
+	 *            制限時間。0 の場合は制限しない
+	 * @param unit
+	 *            <code>timeout</code> の単位
+	 * @return
+	 */
+	public Command setTimeout(long timeout, TimeUnit unit) {
+		Validator.validateTimeout(timeout);
+		timeoutMillis = unit.toMillis(timeout);
 
 		return this;
 	}
 
+	/**
+	 * 制限時間が設定されているかを判定する。
+	 *
+	 * @return 制限時間が設定されている場合は true
+	 */
+	public boolean hasTimeout() {
+		return timeoutMillis >= 0;
+	}
+
+	/**
+	 * 制限時間を取得する。
+	 *
+	 * @return 制限時間（ミリ秒）。設定されていない場合は負の値
+	 */
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
 	/**
 	 * 妥当性を確認する。
-	 * 
+	 *
 	 * 次の条件に当てはまる場合は不適切と見なし <code>IllegalArgumentException</code> を生成する。
-	 * 
+	 *
 	 * <ul>
 	 * <li>コマンドパスが null である</li>
 	 * <li>コマンドパスがブランクである</li>
-	 * <li>パラメータが null である</li>
 	 * <li>パラメータが空である</li>
 	 * </ul>
 	 */
@@ -66,8 +164,8 @@ public class Command {
 			throw new IllegalArgumentException(
 					"commandPath may not be specified.");
 		}
-		
-		if(ListUtil.isNullOrEmpty(parameters)) {
+
+		if(parameters.length == 0) {
 			throw new IllegalArgumentException(
 					"parameters may not be specified.");
 		}
@@ -75,18 +173,64 @@ public class Command {
 
 	/**
 	 * ImageMagick の実行コマンドを取得する。
-	 * 
-	 * @return
+	 *
+	 * @return コマンドパスとパラメータを格納した変更できないリスト
+	 * @throws IllegalArgumentException
+	 *             プレースホルダが含まれている場合
 	 */
 	public List<String> getCommand() {
-		parameters.add(0, commandPath);
-		return parameters;
+		return getCommand(Collections.<String, String> emptyMap());
+	}
+
+	/**
+	 * プレースホルダに値を差し込んだ ImageMagick の実行コマンドを取得する。
+	 *
+	 * 呼び出しごとにコマンドの長さちょうどの配列を 1 つ作成し、このオブジェクトは変更しない。
+	 *
+	 * @param values
+	 *            プレースホルダの名前と値を格納したマップ
+	 * @return コマンドパスとパラメータを格納した変更できないリスト
+	 * @throws IllegalArgumentException
+	 *             値が指定されていないプレースホルダがある場合
+	 */
+	public List<String> getCommand(Map<String, String> values) {
+		if (values == null) {
+			throw new IllegalArgumentException("values may not be specified.");
+		}
+		// append は placeholders、parameters の順に置き換えるため、parameters を先に読めば
+		// names は params 以上の長さになる
+		String[] params = parameters;
+		String[] names = placeholders;
+		String[] argv = new String[params.length + 1];
+		argv[0] = commandPath;
+		for (int i = 0; i < params.length; i++) {
+			if (names[i] == null) {
+				argv[i + 1] = params[i];
+				continue;
+			}
+			String value = values.get(names[i]);
+			if (value == null) {
+				throw new IllegalArgumentException(String.format(
+						"%s may not be specified.", names[i]));
+			}
+			argv[i + 1] = value;
+		}
+		return Collections.unmodifiableList(Arrays.asList(argv));
 	}
 
 	@Override
 	public String toString() {
+		String[] params = parameters;
+		String[] names = placeholders;
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = 0; i < params.length; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(names[i] == null ? params[i] : "${" + names[i] + "}");
+		}
 		return String.format("commandPath:%s, parameters:%s", commandPath,
-				parameters.toString());
+				builder.append(']'));
 	}
 
 }
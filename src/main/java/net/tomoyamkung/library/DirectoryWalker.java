@@ -0,0 +1,152 @@
+package net.tomoyamkung.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 生成元のディレクトリ配下の画像ファイルを辿り、生成先のディレクトリの同じ相対パスと組にするクラス。
+ *
+ * ディレクトリは辿る時点で 1 階層分の名前だけを読み、全件をメモリに読み込まない。 シンボリックリンクのディレクトリは辿らない。
+ * 生成先のディレクトリが生成元のディレクトリ配下にある場合、生成先のディレクトリは辿らない。
+ * 拡張子が <code>BatchResize#getExtensions</code> に含まれないファイルは対象としない。
+ *
+ * 読めないサブディレクトリがあっても一括処理を中断せず、そのディレクトリを生成元とし、読めなかった原因を持つ件として返す。
+ *
+ * @author tomoyamkung
+ *
+ */
+class DirectoryWalker implements Iterator<BatchItem> {
+
+	/**
+	 * 生成元のディレクトリ。
+	 */
+	private final Path srcRoot;
+
+	/**
+	 * 生成先のディレクトリ。
+	 */
+	private final Path destRoot;
+
+	/**
+	 * 一括処理の指定。
+	 */
+	private final BatchResize batch;
+
+	/**
+	 * 辿っている途中のディレクトリの、残りのエントリ。
+	 */
+	private final Deque<Iterator<Path>> directories = new ArrayDeque<Iterator<Path>>();
+
+	/**
+	 * 次に返す件。
+	 */
+	private BatchItem next;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param srcRoot
+	 *            生成元のディレクトリ
+	 * @param destRoot
+	 *            生成先のディレクトリ
+	 * @param batch
+	 *            一括処理の指定
+	 * @throws IOException
+	 *             生成元のディレクトリを読めない場合
+	 */
+	DirectoryWalker(Path srcRoot, Path destRoot, BatchResize batch)
+			throws IOException {
+		this.srcRoot = srcRoot.toAbsolutePath().normalize();
+		this.destRoot = destRoot.toAbsolutePath().normalize();
+		this.batch = batch;
+		IOException error = enter(this.srcRoot);
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			next = advance();
+		}
+		return next != null;
+	}
+
+	@Override
+	public BatchItem next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		BatchItem item = next;
+		next = null;
+		return item;
+	}
+
+	/**
+	 * 次の画像ファイル、もしくは、読めなかったディレクトリまで辿る。
+	 *
+	 * @return 次の件。全て辿った場合は null
+	 */
+	private BatchItem advance() {
+		while (!directories.isEmpty()) {
+			Iterator<Path> entries = directories.peek();
+			if (!entries.hasNext()) {
+				directories.pop();
+				continue;
+			}
+			Path path = entries.next();
+			if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+				if (path.equals(destRoot)) {
+					continue;
+				}
+				IOException error = enter(path);
+				if (error != null) {
+					return new BatchItem(path.toFile(), destOf(path), error);
+				}
+			} else if (Files.isRegularFile(path)
+					&& batch.acceptsExtension(path.toFile())) {
+				return new BatchItem(path.toFile(), destOf(path));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * ディレクトリのエントリを名前の順に読み、辿る対象に加える。
+	 *
+	 * @return 読めなかった場合はその原因。読めた場合は null
+	 */
+	private IOException enter(Path dir) {
+		List<Path> entries = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path entry : stream) {
+				entries.add(entry);
+			}
+		} catch (IOException e) {
+			return e;
+		} catch (DirectoryIteratorException e) {
+			return e.getCause();
+		}
+		Collections.sort(entries);
+		directories.push(entries.iterator());
+		return null;
+	}
+
+	private File destOf(Path path) {
+		return destRoot.resolve(srcRoot.relativize(path)).toFile();
+	}
+
+}
@@ -3,10 +3,39 @@ package net.tomoyamkung.library;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
+import net.tomoyamkung.library.fastpath.FastPathPolicy;
+import net.tomoyamkung.library.fastpath.JavaImageEngine;
+import net.tomoyamkung.library.fastpath.MetadataStripper;
+import net.tomoyamkung.library.fastpath.UnsupportedImageException;
+import net.tomoyamkung.library.metrics.Invocation;
+import net.tomoyamkung.library.metrics.MetricsRecorder;
+import net.tomoyamkung.library.process.ProcessExecutor;
+import net.tomoyamkung.library.process.ProcessFailedException;
+import net.tomoyamkung.library.process.ProcessResult;
+import net.tomoyamkung.library.process.ProcessTimeoutException;
+import net.tomoyamkung.library.process.ResourceLimits;
 import net.tomoyamkung.library.size.AspectRatio;
+import net.tomoyamkung.library.size.Frame;
+import net.tomoyamkung.library.size.Geometry;
+import net.tomoyamkung.library.size.ImageHeader;
 import net.tomoyamkung.library.size.Size;
 import net.tomoyamkung.library.util.ListUtil;
 
@@ -22,6 +51,251 @@ public class ImageMagick {
 
 	private static final Logger log = Logger.getLogger(ImageMagick.class);
 
+	/**
+	 * アニメーションを展開したフレームのファイル名。
+	 */
+	private static final Pattern FRAME_FILE = Pattern
+			.compile("frame-(\\d+)\\.miff");
+
+	/**
+	 * ImageMagick のコマンドを実行するオブジェクト。
+	 */
+	private static volatile ProcessExecutor processExecutor = new ProcessExecutor();
+
+	/**
+	 * 操作ごとの計測値を記録するオブジェクト。
+	 */
+	private static volatile MetricsRecorder metricsRecorder = MetricsRecorder.NOOP;
+
+	/**
+	 * 実行待ちキューで待機した時間（ナノ秒）。<code>AsyncImageMagick</code> から受け取る。
+	 */
+	private static final ThreadLocal<Long> queueWaitNanos = new ThreadLocal<Long>();
+
+	/**
+	 * 資源の上限の既定値。並行して操作を実行する呼び出し元が同時実行数に応じて設定する。
+	 */
+	private static final ThreadLocal<ResourceLimits> defaultResourceLimits = new ThreadLocal<ResourceLimits>();
+
+	/**
+	 * 実行中のコマンド。同じコマンドの同時実行を 1 回にまとめる。
+	 */
+	private static final SingleFlight<List<Object>, ProcessResult> inFlight = new SingleFlight<List<Object>, ProcessResult>();
+
+	/**
+	 * 同じコマンドの同時実行を 1 回にまとめるか。
+	 */
+	private static volatile boolean coalescing = false;
+
+	/**
+	 * 子プロセスを起動せずに JVM 内で処理する操作を選ぶ条件。
+	 */
+	private static volatile FastPathPolicy fastPathPolicy = new FastPathPolicy();
+
+	/**
+	 * 画像を再エンコードせずにメタデータを削除する設定。
+	 */
+	private static volatile MetadataStripper metadataStripper = new MetadataStripper();
+
+	/**
+	 * 生成先のファイルの書き出し方。
+	 */
+	private static volatile OutputStaging outputStaging = OutputStaging.direct;
+
+	/**
+	 * デコード時の大きさのヒントの倍率の既定値。
+	 */
+	public static final int DEFAULT_DECODE_SIZE_HINT_SCALE = 2;
+
+	/**
+	 * デコード時の大きさのヒントの倍率。0 の場合はヒントを付けない。
+	 */
+	private static volatile int decodeSizeHintScale = DEFAULT_DECODE_SIZE_HINT_SCALE;
+
+	/**
+	 * ImageMagick のコマンドを実行するオブジェクトを取得する。
+	 * 
+	 * @return <code>ProcessExecutor</code> オブジェクト
+	 */
+	public static ProcessExecutor getProcessExecutor() {
+		return processExecutor;
+	}
+
+	/**
+	 * ImageMagick のコマンドを実行するオブジェクトを設定する。
+	 * 
+	 * 出力をバッファに格納する上限や制限時間の既定値などを変更する場合に使用する。
+	 * 
+	 * @param processExecutor
+	 *            <code>ProcessExecutor</code> オブジェクト
+	 */
+	public static void setProcessExecutor(ProcessExecutor processExecutor) {
+		if (processExecutor == null) {
+			throw new IllegalArgumentException(
+					"processExecutor may not be specified.");
+		}
+		ImageMagick.processExecutor = processExecutor;
+	}
+
+	/**
+	 * 同じコマンドの同時実行を 1 回にまとめるかを取得する。
+	 * 
+	 * @return まとめる場合は true
+	 */
+	public static boolean isCoalescing() {
+		return coalescing;
+	}
+
+	/**
+	 * 同じコマンドの同時実行を 1 回にまとめるかを設定する。既定値は false。
+	 * 
+	 * まとめる場合、実行中のコマンドと同じ操作、コマンド（パスを正規化して比較する）、制限時間、資源の上限の既定値の実行が要求されると、
+	 * ImageMagick を起動せずに実行中のコマンドの完了を待ち、同じ実行結果（もしくは例外）を返す。
+	 * 標準入力から読み込む操作はまとめない。
+	 * 
+	 * @param coalescing
+	 *            まとめる場合は true
+	 */
+	public static void setCoalescing(boolean coalescing) {
+		ImageMagick.coalescing = coalescing;
+	}
+
+	/**
+	 * 子プロセスを起動せずに JVM 内で処理する操作を選ぶ条件を取得する。
+	 * 
+	 * @return <code>FastPathPolicy</code> オブジェクト
+	 */
+	public static FastPathPolicy getFastPathPolicy() {
+		return fastPathPolicy;
+	}
+
+	/**
+	 * 子プロセスを起動せずに JVM 内で処理する操作を選ぶ条件を設定する。
+	 * 
+	 * 条件を満たす <code>resize</code>、<code>createThumbnail</code>、<code>removeExif</code>
+	 * は <code>JavaImageEngine</code> で処理する。 javax.imageio で読み書きできない画像の場合は
+	 * ImageMagick のコマンドで処理し直す。 JVM 内の処理は強制終了できないため、制限時間は読み込みや縮小の区切りごとに確認する。
+	 * 
+	 * @param fastPathPolicy
+	 *            <code>FastPathPolicy</code> オブジェクト
+	 */
+	public static void setFastPathPolicy(FastPathPolicy fastPathPolicy) {
+		if (fastPathPolicy == null) {
+			throw new IllegalArgumentException(
+					"fastPathPolicy may not be specified.");
+		}
+		fastPathPolicy.validate();
+		ImageMagick.fastPathPolicy = fastPathPolicy;
+	}
+
+	/**
+	 * 画像を再エンコードせずにメタデータを削除する設定を取得する。
+	 * 
+	 * @return <code>MetadataStripper</code> オブジェクト
+	 */
+	public static MetadataStripper getMetadataStripper() {
+		return metadataStripper;
+	}
+
+	/**
+	 * 画像を再エンコードせずにメタデータを削除する設定を指定する。
+	 * 
+	 * 有効にすると、生成元と生成先が同じ形式の JPEG、もしくは、PNG の場合の <code>removeExif</code>
+	 * は convert コマンドを起動せずに、メタデータ以外をそのままの内容で複製する。 解釈できないファイルの場合は
+	 * <code>FastPathPolicy</code>、convert コマンドの順に処理し直す。
+	 * 
+	 * @param metadataStripper
+	 *            <code>MetadataStripper</code> オブジェクト
+	 */
+	public static void setMetadataStripper(MetadataStripper metadataStripper) {
+		if (metadataStripper == null) {
+			throw new IllegalArgumentException(
+					"metadataStripper may not be specified.");
+		}
+		metadataStripper.validate();
+		ImageMagick.metadataStripper = metadataStripper;
+	}
+
+	/**
+	 * 生成先のファイルの書き出し方を取得する。
+	 * 
+	 * @return <code>OutputStaging</code> オブジェクト
+	 */
+	public static OutputStaging getOutputStaging() {
+		return outputStaging;
+	}
+
+	/**
+	 * 生成先のファイルの書き出し方を設定する。
+	 * 
+	 * <code>OutputStaging#atomic</code> と <code>OutputStaging#atomicSync</code>
+	 * の場合、生成先のファイルは一時ファイルに書き出してから原子的に移動するため、書き込み途中のファイルが読まれることはない。
+	 * また、同じ生成先への同じコマンドの実行が同時に要求された場合は ImageMagick を 1 回だけ実行し、その結果を共有する。
+	 * ファイルを生成先とする全ての操作に適用する。
+	 * 
+	 * @param outputStaging
+	 *            <code>OutputStaging</code> オブジェクト
+	 */
+	public static void setOutputStaging(OutputStaging outputStaging) {
+		if (outputStaging == null) {
+			throw new IllegalArgumentException(
+					"outputStaging may not be specified.");
+		}
+		ImageMagick.outputStaging = outputStaging;
+	}
+
+	/**
+	 * デコード時の大きさのヒントの倍率を取得する。
+	 * 
+	 * @return 倍率。0 の場合はヒントを付けない
+	 */
+	public static int getDecodeSizeHintScale() {
+		return decodeSizeHintScale;
+	}
+
+	/**
+	 * デコード時の大きさのヒントの倍率を設定する。
+	 * 
+	 * <code>resize</code> と <code>createThumbnail</code> は生成先の大きさにこの倍率を掛けた値を
+	 * <code>-define jpeg:size=WxH</code> で ImageMagick に渡す。 既定値は 2 とする。
+	 * 
+	 * @param decodeSizeHintScale
+	 *            倍率。0 の場合はヒントを付けない
+	 */
+	public static void setDecodeSizeHintScale(int decodeSizeHintScale) {
+		if (decodeSizeHintScale < 0) {
+			throw new IllegalArgumentException(
+					"decodeSizeHintScale は 0 以上の値を指定してください。");
+		}
+		ImageMagick.decodeSizeHintScale = decodeSizeHintScale;
+	}
+
+	/**
+	 * 操作ごとの計測値を記録するオブジェクトを取得する。
+	 * 
+	 * @return <code>MetricsRecorder</code> オブジェクト
+	 */
+	public static MetricsRecorder getMetricsRecorder() {
+		return metricsRecorder;
+	}
+
+	/**
+	 * 操作ごとの計測値を記録するオブジェクトを設定する。
+	 * 
+	 * 既定値は何も記録しない <code>MetricsRecorder#NOOP</code> とする。 操作ごとの p50 や p99
+	 * を取得する場合は <code>HistogramMetricsRecorder</code> を設定する。
+	 * 
+	 * @param metricsRecorder
+	 *            <code>MetricsRecorder</code> オブジェクト
+	 */
+	public static void setMetricsRecorder(MetricsRecorder metricsRecorder) {
+		if (metricsRecorder == null) {
+			throw new IllegalArgumentException(
+					"metricsRecorder may not be specified.");
+		}
+		ImageMagick.metricsRecorder = metricsRecorder;
+	}
+
 	/**
 	 * 画像をリサイズする。
 	 * 
@@ -41,50 +315,203 @@ public class ImageMagick {
 	 *            基準とする「辺」
 	 * @param pixel
 	 *            基準とする「辺」のピクセル
+	 * @return ImageMagick のコマンドの実行結果
 	 * @throws IOException
 	 *             commandPath に指定されているパスが convert コマンドではなかった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
 	 * @throws InterruptedException
 	 *             ImageMagick の操作に失敗した場合
 	 */
-	public static void resize(String commandPath, File src, File dest,
-			SquareSide side, int pixel) throws IOException,
+	public static ProcessResult resize(String commandPath, File src,
+			File dest, SquareSide side, int pixel) throws IOException,
 			InterruptedException {
+		return resize(commandPath, src, dest, side, pixel,
+				processExecutor.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 制限時間を指定して画像をリサイズする。
+	 * 
+	 * 制限時間内に終了しなかった場合、ImageMagick のプロセスとその子孫のプロセスを強制終了する。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param src
+	 *            生成元のファイル。リサイズしたい画像ファイル
+	 * @param dest
+	 *            生成先のファイル。このファイルにリサイズした画像を作成する
+	 * @param side
+	 *            基準とする「辺」
+	 * @param pixel
+	 *            基準とする「辺」のピクセル
+	 * @param timeout
+	 *            制限時間。0 の場合は制限しない
+	 * @param unit
+	 *            <code>timeout</code> の単位
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが convert コマンドではなかった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             ImageMagick のコマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static ProcessResult resize(String commandPath, File src,
+			File dest, SquareSide side, int pixel, long timeout, TimeUnit unit)
+			throws IOException, InterruptedException {
 		Validator.validateCommandPath(commandPath);
 		Validator.validateSrcFile(src);
 		Validator.validateDestFile(dest);
 		Validator.validatePixel(pixel);
+		Validator.validateTimeout(timeout);
 
 		Size resizedSize = AspectRatio.measure(src, side, pixel);
-		createThumbnail(commandPath, resizedSize.toString(),
-				src.getAbsolutePath(), dest.getAbsolutePath());
+		return createThumbnail("resize", commandPath, resizedSize.toString(),
+				src, dest, unit.toMillis(timeout));
 	}
 
 	/**
 	 * サムネイル画像を作成する。
 	 * 
+	 * @param operation
+	 *            計測値に記録する操作の種類
 	 * @param commandPath
 	 *            convert コマンドの絶対パス。
 	 * @param size
 	 *            サムネイルサイズ。[0-9]{1,}x[0-9]{1,} で指定する
-	 * @param srcAbsolutePath
-	 *            生成元画像の絶対パス
-	 * @param destAbsolutePath
-	 *            生成先画像の絶対パス
+	 * @param src
+	 *            生成元のファイル
+	 * @param dest
+	 *            生成先のファイル
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @return ImageMagick のコマンドの実行結果
 	 * @throws InterruptedException
 	 *             ImageMagick の操作に失敗した場合
 	 * @throws IOException
 	 *             commandPath に指定されているパスが convert コマンドではなかった場合
 	 */
-	private static void createThumbnail(String commandPath, String size,
-			String srcAbsolutePath, String destAbsolutePath)
-			throws InterruptedException, IOException {
+	private static ProcessResult createThumbnail(String operation,
+			String commandPath, String size, File src, File dest,
+			long timeoutMillis) throws InterruptedException, IOException {
 		writeDebugLog(String.format(
 				"commandPath:%s, srcPath:%s, destPath:%s, size:%s",
-				commandPath, srcAbsolutePath, destAbsolutePath, size));
+				commandPath, src.getAbsolutePath(), dest.getAbsolutePath(),
+				size));
+
+		ImageHeader header = headerOf(src, false);
+		boolean oriented = header != null
+				&& header.getOrientation() != ImageHeader.NORMAL_ORIENTATION;
+
+		FastPathPolicy policy = fastPathPolicy;
+		if (policy.isEnabled() && header != null && !oriented) {
+			Geometry geometry = Geometry.tryParse(size);
+			if (geometry != null && geometry.isSize()) {
+				Size srcSize = header.getSize();
+				Size destSize = AspectRatio.fitWithin(srcSize,
+						geometry.getWidth(), geometry.getHeight());
+				if (policy.acceptsResize(src, dest, header, destSize)) {
+					final int jpegQuality = policy.getJpegQuality();
+					try {
+						return executeTask(operation, JavaImageEngine
+								.thumbnailCommand(src, destSize, jpegQuality,
+										dest), (out, timeout) -> JavaImageEngine
+								.thumbnail(src, destSize, jpegQuality, out,
+										timeout), timeoutMillis, src, dest);
+					} catch (UnsupportedImageException e) {
+						writeDebugLog(String.format("fallback to %s. cause:%s",
+								commandPath, e.getMessage()));
+					}
+				}
+			}
+		}
+
+		List<String> command = new ArrayList<String>(8);
+		command.add(commandPath);
+		appendDecodeSizeHint(command, size, header != null
+				&& header.isTransposed());
+		command.add(src.getAbsolutePath());
+		if (oriented) {
+			// 向きの補正と縮小を 1 回の convert コマンドで行う
+			command.add("-auto-orient");
+		}
+		command.add("-thumbnail");
+		command.add(size);
+		command.add(dest.getAbsolutePath());
+		return executeProcess(operation, command, timeoutMillis,
+				Arrays.asList(src), Arrays.asList(dest));
+	}
+
+	/**
+	 * 生成元のヘッダから読み取った情報を取得する。
+	 * 
+	 * ヘッダを解釈できない形式の場合は null を返し、向きを補正しないものとして扱う。
+	 * 
+	 * @param src
+	 *            生成元のファイル
+	 * @param withFrames
+	 *            アニメーションのフレームを辿る場合は true
+	 * @return ヘッダから読み取った情報。解釈できない場合は null
+	 */
+	private static ImageHeader headerOf(File src, boolean withFrames) {
+		try {
+			return AspectRatio.getDimensionCache().getHeader(src, withFrames);
+		} catch (IOException e) {
+			writeDebugLog(String.format("header is not available. src:%s, cause:%s",
+					src, e.getMessage()));
+			return null;
+		}
+	}
+
+	/**
+	 * デコード時の大きさのヒント（<code>-define jpeg:size=WxH</code>）を追加する。
+	 * 
+	 * JPEG の場合、libjpeg はヒント以上の大きさを保つ範囲で 1/2、1/4、1/8 に縮小しながらデコードするため、
+	 * 大きな画像から小さなサムネイルを作成する際のデコード時間とメモリ使用量が減る。 ヒントは縮小の品質を保つため、生成先の大きさの
+	 * <code>decodeSizeHintScale</code> 倍とする。 JPEG 以外の形式ではこのヒントは無視される。
+	 * 
+	 * 倍率が 0 の場合、もしくは、幅と高さの一方しか分からない場合は追加しない。
+	 * 
+	 * @param command
+	 *            パラメータを追加するリスト。生成元の前に追加する
+	 * @param size
+	 *            生成先の大きさ。[0-9]{1,}x[0-9]{1,} で指定する
+	 */
+	static void appendDecodeSizeHint(List<String> command, String size) {
+		appendDecodeSizeHint(command, size, false);
+	}
 
-		ProcessBuilder builder = new ProcessBuilder(commandPath, "-thumbnail",
-				size, srcAbsolutePath, destAbsolutePath);
-		executeProcess(builder);
+	/**
+	 * デコード時の大きさのヒント（<code>-define jpeg:size=WxH</code>）を追加する。
+	 * 
+	 * ヒントは向きを補正する前の（ファイルに格納されている）画像に適用されるため、
+	 * <code>-auto-orient</code> で幅と高さが入れ替わる場合は入れ替えて指定する。
+	 * 
+	 * @param command
+	 *            パラメータを追加するリスト。生成元の前に追加する
+	 * @param size
+	 *            生成先の大きさ。[0-9]{1,}x[0-9]{1,} で指定する
+	 * @param transposed
+	 *            生成元の向きを補正すると幅と高さが入れ替わる場合は true
+	 */
+	static void appendDecodeSizeHint(List<String> command, String size,
+			boolean transposed) {
+		int scale = decodeSizeHintScale;
+		Geometry geometry = Geometry.tryParse(size);
+		if (scale == 0 || geometry == null || !geometry.hasWidth()
+				|| !geometry.hasHeight()) {
+			return;
+		}
+		long width = Math.min(Integer.MAX_VALUE, (long) geometry.getWidth()
+				* scale);
+		long height = Math.min(Integer.MAX_VALUE, (long) geometry.getHeight()
+				* scale);
+		command.add("-define");
+		command.add(transposed ? "jpeg:size=" + height + "x" + width
+				: "jpeg:size=" + width + "x" + height);
 	}
 
 	/**
@@ -98,23 +525,59 @@ public class ImageMagick {
 	 *            生成先のファイル。このファイルにサムネイル画像を作成する
 	 * @param size
 	 *            サムネイルサイズ。[0-9]{1,}x[0-9]{1,} で指定する
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが convert コマンドではなかった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static ProcessResult createThumbnail(String commandPath,
+			File src, File dest, String size) throws IOException,
+			InterruptedException {
+		return createThumbnail(commandPath, src, dest, size,
+				processExecutor.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 制限時間を指定してサムネイル画像を作成する。
+	 * 
+	 * 制限時間内に終了しなかった場合、ImageMagick のプロセスとその子孫のプロセスを強制終了する。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param src
+	 *            生成元のファイル。Exif を削除したい画像ファイル
+	 * @param dest
+	 *            生成先のファイル。このファイルにサムネイル画像を作成する
+	 * @param size
+	 *            サムネイルサイズ。[0-9]{1,}x[0-9]{1,} で指定する
+	 * @param timeout
+	 *            制限時間。0 の場合は制限しない
+	 * @param unit
+	 *            <code>timeout</code> の単位
+	 * @return ImageMagick のコマンドの実行結果
 	 * @throws IOException
 	 *             commandPath に指定されているパスが convert コマンドではなかった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             ImageMagick のコマンドが制限時間内に終了しなかった場合
 	 * @throws InterruptedException
 	 *             ImageMagick の操作に失敗した場合
 	 */
-	public static void createThumbnail(String commandPath, File src, File dest,
-			String size) throws IOException, InterruptedException {
+	public static ProcessResult createThumbnail(String commandPath,
+			File src, File dest, String size, long timeout, TimeUnit unit)
+			throws IOException, InterruptedException {
 		Validator.validateCommandPath(commandPath);
 		Validator.validateSrcFile(src);
 		Validator.validateDestFile(dest);
 		Validator.validateSize(size, "サムネイルサイズ");
+		Validator.validateTimeout(timeout);
 
-		ProcessBuilder builder = new ProcessBuilder(commandPath, "-thumbnail",
-				size, src.getAbsolutePath(), dest.getAbsolutePath());
-		executeProcess(builder);
-		createThumbnail(commandPath, size, src.getAbsolutePath(),
-				dest.getAbsolutePath());
+		return createThumbnail("createThumbnail", commandPath, size, src,
+				dest, unit.toMillis(timeout));
 	}
 
 	/**
@@ -134,94 +597,697 @@ public class ImageMagick {
 	/**
 	 * ImageMagick のコマンドを実行する。
 	 * 
-	 * @param builder
-	 *            コマンドの <code>ProcessBuilder</code> オブジェクト
+	 * 標準出力と標準エラー出力は並行して読み込み、終了コードが 0 以外の場合は
+	 * <code>ProcessFailedException</code> を生成する。 計測値は
+	 * <code>MetricsRecorder</code> に記録する。
+	 * 
+	 * @param operation
+	 *            計測値に記録する操作の種類
+	 * @param command
+	 *            コマンドパスとパラメータを格納したリスト
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @param inputs
+	 *            入力のファイル。計測値の入力のバイト数に使用する
+	 * @param outputs
+	 *            出力のファイル。計測値の出力のバイト数に使用する
+	 * @return ImageMagick のコマンドの実行結果
 	 * @throws IOException
 	 *             コマンドパスに誤りがあった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             ImageMagick のコマンドが制限時間内に終了しなかった場合
 	 * @throws InterruptedException
 	 *             ImageMagick コマンドの操作に失敗した場合
 	 */
-	private static void executeProcess(ProcessBuilder builder)
-			throws IOException, InterruptedException {
-		Process process = builder.start();
-		process.waitFor();
+	private static ProcessResult executeProcess(String operation,
+			List<String> command, long timeoutMillis, List<File> inputs,
+			List<File> outputs) throws IOException, InterruptedException {
+		return executeProcess(operation, command, null, timeoutMillis,
+				inputs, outputs);
 	}
 
 	/**
-	 * Exif を削除する。
+	 * 子プロセスを起動せずに JVM 内で画像を処理する。
 	 * 
-	 * @param commandPath
-	 *            convert コマンドの絶対パス。
+	 * 計測値の記録、同時実行をまとめる処理、生成先のファイルの書き出し方は ImageMagick のコマンドと同じとする。
+	 * 
+	 * @param operation
+	 *            計測値に記録する操作の種類
+	 * @param command
+	 *            計測値やログに使用する処理の表記。生成先のファイルの絶対パスを最後に格納する
+	 * @param task
+	 *            実行するタスク
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
 	 * @param src
-	 *            生成元のファイル。Exif を削除したい画像ファイル
+	 *            生成元のファイル
 	 * @param dest
-	 *            生成先のファイル。このファイルに画像を作成する
-	 * @throws IOException
-	 *             commandPath に指定されているパスが convert コマンドではなかった場合
-	 * @throws InterruptedException
-	 *             ImageMagick の操作に失敗した場合
+	 *            生成先のファイル
+	 * @return タスクの実行結果
+	 * @see #executeProcess(String, List, long, List, List)
 	 */
-	public static void removeExif(String commandPath, File src, File dest)
-			throws IOException, InterruptedException {
-		Validator.validateCommandPath(commandPath);
-		Validator.validateSrcFile(src);
-		Validator.validateDestFile(dest);
-
-		writeDebugLog(String.format("commandPath:%s, srcPath:%s, destPath:%s",
-				commandPath, src, dest));
+	private static ProcessResult executeTask(String operation,
+			List<String> command, InProcessTask task, long timeoutMillis,
+			File src, File dest) throws IOException, InterruptedException {
+		return executeProcess(operation, command, task, timeoutMillis,
+				Arrays.asList(src), Arrays.asList(dest));
+	}
 
-		ProcessBuilder builder = new ProcessBuilder(commandPath,
-				src.getAbsolutePath(), "-strip", dest.getAbsolutePath());
-		executeProcess(builder);
+	/**
+	 * ImageMagick のコマンド、もしくは、JVM 内のタスクを実行する。
+	 * 
+	 * @param task
+	 *            JVM 内で実行するタスク。ImageMagick のコマンドを実行する場合は null
+	 * @see #executeProcess(String, List, long, List, List)
+	 */
+	private static ProcessResult executeProcess(final String operation,
+			final List<String> command, final InProcessTask task,
+			final long timeoutMillis, final List<File> inputs,
+			final List<File> outputs) throws IOException, InterruptedException {
+		final long queueWaitNanos = takeQueueWaitNanos();
+		if (!coalescing) {
+			return stageAndExecute(operation, queueWaitNanos, command, task,
+					timeoutMillis, inputs, outputs);
+		}
+		return inFlight.execute(coalescingKey(operation, command,
+				timeoutMillis, defaultResourceLimits.get()),
+				() -> stageAndExecute(operation, queueWaitNanos, command, task,
+						timeoutMillis, inputs, outputs));
 	}
 
 	/**
-	 * ImageMagick のコマンドを直接実行する。
+	 * 生成先のファイルの書き出し方に従って ImageMagick のコマンドを実行する。
 	 * 
-	 * @param command
-	 *            コマンドパスとパラメータを格納した <code>Command</code> オブジェクト
-	 * @throws IOException
-	 *             commandPath に指定されているパスが convert コマンドではなかった場合
-	 * @throws InterruptedException
-	 *             ImageMagick の操作に失敗した場合
+	 * JVM 内のタスクには、<code>OutputStager</code> が生成先を置き換えた一時ファイルを渡す。
+	 * 
+	 * @see #executeProcess(String, long, List, InProcessTask, long, List, List)
 	 */
-	public static void runProcessDirectly(Command command) throws IOException,
+	private static ProcessResult stageAndExecute(final String operation,
+			final long queueWaitNanos, List<String> command,
+			final InProcessTask task, final long timeoutMillis,
+			final List<File> inputs, List<File> outputs) throws IOException,
 			InterruptedException {
-		command.validate();
-
-		writeDebugLog(command.toString());
+		OutputStaging staging = outputStaging;
+		if (staging == OutputStaging.direct || outputs.isEmpty()) {
+			return executeProcess(operation, queueWaitNanos, command, task,
+					timeoutMillis, inputs, outputs);
+		}
+		return OutputStager.execute(staging, command, outputs, (
+				stagedCommand, stagedOutputs) -> executeProcess(operation,
+				queueWaitNanos, stagedCommand, task, timeoutMillis, inputs,
+				stagedOutputs));
+	}
 
-		ProcessBuilder builder = new ProcessBuilder(command.getCommand());
-		executeProcess(builder);
+	/**
+	 * 同時実行をまとめるためのキーを作成する。
+	 * 
+	 * 絶対パスの引数は正規化（<code>.</code> や <code>..</code> を除去）して比較する。
+	 * 計測値を記録する操作の種類と、子プロセスに適用する資源の上限の既定値が異なる場合はまとめない。
+	 * 
+	 * @param operation
+	 *            計測値に記録する操作の種類
+	 * @param command
+	 *            コマンドパスとパラメータを格納したリスト
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）
+	 * @param limits
+	 *            資源の上限の既定値。指定していない場合は null
+	 * @return キー
+	 */
+	static List<Object> coalescingKey(String operation, List<String> command,
+			long timeoutMillis, ResourceLimits limits) {
+		String[] normalized = new String[command.size()];
+		for (int i = 0; i < normalized.length; i++) {
+			String arg = command.get(i);
+			normalized[i] = new File(arg).isAbsolute() ? Paths.get(arg)
+					.normalize().toString() : arg;
+		}
+		return Arrays.<Object> asList(operation, Arrays.asList(normalized),
+				timeoutMillis, limits == null ? Collections.emptyMap()
+						: limits.toEnvironment());
 	}
 
 	/**
-	 * 画像をタイル状に結合する。
+	 * ImageMagick のコマンドを実行し、計測値を記録する。
 	 * 
-	 * @param commandPath
-	 *            montage コマンドの絶対パス。
-	 * @param srcFiles
-	 *            結合用画像ファイルを格納したリスト。
-	 * @param tile
-	 *            結合する形式（2x2 とか 9x5 といった形式で指定する）
-	 * @param geometry
-	 *            結合元画像ファイルの大きさ（100x100 といった形式で指定する）
-	 * @param dest
-	 *            生成先のファイル。このファイルに画像を作成する
-	 * @throws IOException
-	 *             commandPath に指定されているパスが montage コマンドではなかった場合
-	 * @throws InterruptedException
-	 *             ImageMagick の操作に失敗した場合
+	 * @param operation
+	 *            計測値に記録する操作の種類
+	 * @param queueWaitNanos
+	 *            実行待ちキューで待機した時間（ナノ秒）
+	 * @param command
+	 *            コマンドパスとパラメータを格納したリスト
+	 * @param task
+	 *            JVM 内で実行するタスク。ImageMagick のコマンドを実行する場合は null
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @param inputs
+	 *            入力のファイル
+	 * @param outputs
+	 *            ImageMagick が書き出すファイル。タスクは最初のファイルに書き出す
+	 * @return ImageMagick のコマンドの実行結果
 	 */
-	public static void createMontage(String commandPath, List<File> srcFiles,
-			String tile, String geometry, File dest) throws IOException,
-			InterruptedException {
+	private static ProcessResult executeProcess(String operation,
+			long queueWaitNanos, List<String> command, InProcessTask task,
+			long timeoutMillis, List<File> inputs, List<File> outputs)
+			throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		try {
+			ProcessResult result;
+			if (task != null) {
+				result = task.execute(outputs.get(0), timeoutMillis);
+			} else {
+				result = processExecutor.execute(operation, command, timeoutMillis,
+						defaultResourceLimits.get());
+			}
+			writeDebugLog(result.toString());
+			record(operation, queueWaitNanos, result, lengthOf(inputs),
+					lengthOf(outputs));
+			return result;
+		} catch (ProcessFailedException e) {
+			record(operation, queueWaitNanos, e.getResult(), lengthOf(inputs),
+					0);
+			throw e;
+		} catch (ProcessTimeoutException e) {
+			recordTimeout(operation, queueWaitNanos, start, lengthOf(inputs));
+			throw e;
+		}
+	}
+
+	/**
+	 * 計測値を記録する。
+	 * 
+	 * @param operation
+	 *            操作の種類
+	 * @param queueWaitNanos
+	 *            実行待ちキューで待機した時間（ナノ秒）
+	 * @param result
+	 *            ImageMagick のコマンドの実行結果
+	 * @param inputBytes
+	 *            入力のバイト数
+	 * @param outputBytes
+	 *            出力のバイト数
+	 */
+	private static void record(String operation, long queueWaitNanos,
+			ProcessResult result, long inputBytes, long outputBytes) {
+		MetricsRecorder recorder = metricsRecorder;
+		if (recorder == MetricsRecorder.NOOP) {
+			return;
+		}
+		recorder.record(new Invocation(operation, queueWaitNanos, result
+				.getSpawnNanos(), result.getElapsedNanos(), result
+				.getCpuNanos(), inputBytes, outputBytes, result.getExitCode(),
+				false));
+	}
+
+	/**
+	 * 制限時間内に終了しなかった操作の計測値を記録する。
+	 */
+	private static void recordTimeout(String operation, long queueWaitNanos,
+			long start, long inputBytes) {
+		MetricsRecorder recorder = metricsRecorder;
+		if (recorder == MetricsRecorder.NOOP) {
+			return;
+		}
+		recorder.record(new Invocation(operation, queueWaitNanos, -1, System
+				.nanoTime() - start, -1, inputBytes, 0, -1, true));
+	}
+
+	/**
+	 * ファイルサイズの合計を取得する。 計測値を記録しない場合は 0 とする。
+	 */
+	private static long lengthOf(List<File> files) {
+		if (metricsRecorder == MetricsRecorder.NOOP) {
+			return 0;
+		}
+		long length = 0;
+		for (File file : files) {
+			length += file.length();
+		}
+		return length;
+	}
+
+	/**
+	 * 実行待ちキューで待機した時間を取り出す。
+	 * 
+	 * @return 待機した時間（ナノ秒）。キューを経由していない場合は 0
+	 */
+	private static long takeQueueWaitNanos() {
+		Long nanos = queueWaitNanos.get();
+		queueWaitNanos.remove();
+		return nanos == null ? 0 : nanos;
+	}
+
+	/**
+	 * 実行待ちキューで待機した時間を設定する。
+	 * 
+	 * <code>AsyncImageMagick</code> がワーカースレッドで操作を実行する前に呼び出す。
+	 * 
+	 * @param nanos
+	 *            待機した時間（ナノ秒）
+	 */
+	static void setQueueWaitNanos(long nanos) {
+		queueWaitNanos.set(nanos);
+	}
+
+	/**
+	 * 資源の上限の既定値を設定して操作を実行する。
+	 * 
+	 * 操作の中で実行する ImageMagick のコマンドには、<code>ProcessExecutor</code>
+	 * で指定していない項目に <code>limits</code> を適用する。 操作の終了後は元の既定値に戻す。
+	 * <code>AsyncImageMagick</code> など、並行して操作を実行するクラスが同時実行数に応じた上限を指定する。
+	 * 
+	 * @param limits
+	 *            資源の上限の既定値
+	 * @param task
+	 *            実行する操作
+	 * @return 操作の結果
+	 * @throws Exception
+	 *             操作で発生した例外
+	 */
+	static <T> T callWithResourceLimits(ResourceLimits limits,
+			Callable<T> task) throws Exception {
+		ResourceLimits previous = defaultResourceLimits.get();
+		defaultResourceLimits.set(limits);
+		try {
+			return task.call();
+		} finally {
+			if (previous == null) {
+				defaultResourceLimits.remove();
+			} else {
+				defaultResourceLimits.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * Exif を削除する。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param src
+	 *            生成元のファイル。Exif を削除したい画像ファイル
+	 * @param dest
+	 *            生成先のファイル。このファイルに画像を作成する
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが convert コマンドではなかった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static ProcessResult removeExif(String commandPath, File src,
+			File dest) throws IOException, InterruptedException {
+		return removeExif(commandPath, src, dest,
+				processExecutor.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 制限時間を指定して Exif を削除する。
+	 * 
+	 * 制限時間内に終了しなかった場合、ImageMagick のプロセスとその子孫のプロセスを強制終了する。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param src
+	 *            生成元のファイル。Exif を削除したい画像ファイル
+	 * @param dest
+	 *            生成先のファイル。このファイルに画像を作成する
+	 * @param timeout
+	 *            制限時間。0 の場合は制限しない
+	 * @param unit
+	 *            <code>timeout</code> の単位
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが convert コマンドではなかった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             ImageMagick のコマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static ProcessResult removeExif(String commandPath, File src,
+			File dest, long timeout, TimeUnit unit) throws IOException,
+			InterruptedException {
+		Validator.validateCommandPath(commandPath);
+		Validator.validateSrcFile(src);
+		Validator.validateDestFile(dest);
+		Validator.validateTimeout(timeout);
+
+		writeDebugLog(String.format("commandPath:%s, srcPath:%s, destPath:%s",
+				commandPath, src, dest));
+
+		MetadataStripper stripper = metadataStripper;
+		if (stripper.accepts(src, dest)) {
+			try {
+				return executeTask("removeExif", stripper.command(src, dest), (
+						out, timeoutMillis) -> stripper.execute(src, out,
+						timeoutMillis), unit.toMillis(timeout), src, dest);
+			} catch (UnsupportedImageException e) {
+				writeDebugLog(String.format("fallback. cause:%s",
+						e.getMessage()));
+			}
+		}
+
+		FastPathPolicy policy = fastPathPolicy;
+		ImageHeader header = policy.acceptsFormats(src, dest) ? headerOf(src,
+				false) : null;
+		if (header != null && policy.acceptsStrip(src, dest, header)) {
+			final int jpegQuality = policy.getJpegQuality();
+			try {
+				return executeTask("removeExif", JavaImageEngine.stripCommand(
+						src, jpegQuality, dest), (out, timeoutMillis) -> JavaImageEngine
+						.strip(src, jpegQuality, out, timeoutMillis), unit
+						.toMillis(timeout), src, dest);
+			} catch (UnsupportedImageException e) {
+				writeDebugLog(String.format("fallback to %s. cause:%s",
+						commandPath, e.getMessage()));
+			}
+		}
+
+		return executeProcess("removeExif", Arrays.asList(commandPath,
+				src.getAbsolutePath(), "-strip", dest.getAbsolutePath()),
+				unit.toMillis(timeout), Arrays.asList(src), Arrays.asList(dest));
+	}
+
+	/**
+	 * 標準入力から読み込んだ画像をリサイズし、標準出力に書き出す。
+	 * 
+	 * 一時ファイルを作成せず、<code>src</code> の内容を convert コマンドの標準入力へ、標準出力を
+	 * <code>dest</code> へ、固定長のバッファで少しずつ転送する。
+	 * 
+	 * 生成元の大きさを事前に読み取れないため、もう一辺は ImageMagick が縦横比を維持して計算する。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param src
+	 *            生成元の画像
+	 * @param dest
+	 *            生成先。リサイズした画像を書き込む
+	 * @param format
+	 *            出力形式（jpg、png、webp など）
+	 * @param side
+	 *            基準とする「辺」
+	 * @param pixel
+	 *            基準とする「辺」のピクセル
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが convert コマンドではなかった場合、もしくは、転送に失敗した場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             ImageMagick のコマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static ProcessResult resize(String commandPath, StreamSource src,
+			StreamSink dest, String format, SquareSide side, int pixel)
+			throws IOException, InterruptedException {
+		Validator.validateCommandPath(commandPath);
+		validateStreams(src, dest);
+		Validator.validateFormat(format);
+		Validator.validatePixel(pixel);
+
+		String geometry = side == SquareSide.portrait ? "x" + pixel : pixel
+				+ "x";
+		writeDebugLog(String.format("commandPath:%s, format:%s, size:%s",
+				commandPath, format, geometry));
+
+		return executeProcess("resize", Arrays.asList(commandPath, "-",
+				"-thumbnail", geometry, format + ":-"), src, dest);
+	}
+
+	/**
+	 * 標準入力から読み込んだ画像のサムネイル画像を作成し、標準出力に書き出す。
+	 * 
+	 * 一時ファイルを作成せず、<code>src</code> の内容を convert コマンドの標準入力へ、標準出力を
+	 * <code>dest</code> へ、固定長のバッファで少しずつ転送する。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param src
+	 *            生成元の画像
+	 * @param dest
+	 *            生成先。サムネイル画像を書き込む
+	 * @param format
+	 *            出力形式（jpg、png、webp など）
+	 * @param size
+	 *            サムネイルサイズ。[0-9]{1,}x[0-9]{1,} で指定する
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが convert コマンドではなかった場合、もしくは、転送に失敗した場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             ImageMagick のコマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static ProcessResult createThumbnail(String commandPath,
+			StreamSource src, StreamSink dest, String format, String size)
+			throws IOException, InterruptedException {
+		Validator.validateCommandPath(commandPath);
+		validateStreams(src, dest);
+		Validator.validateFormat(format);
+		Validator.validateSize(size, "サムネイルサイズ");
+
+		writeDebugLog(String.format("commandPath:%s, format:%s, size:%s",
+				commandPath, format, size));
+
+		List<String> command = new ArrayList<String>(7);
+		command.add(commandPath);
+		appendDecodeSizeHint(command, size);
+		command.add("-");
+		command.add("-thumbnail");
+		command.add(size);
+		command.add(format + ":-");
+		return executeProcess("createThumbnail", command, src, dest);
+	}
+
+	/**
+	 * 標準入力から読み込んだ画像の Exif を削除し、標準出力に書き出す。
+	 * 
+	 * 一時ファイルを作成せず、<code>src</code> の内容を convert コマンドの標準入力へ、標準出力を
+	 * <code>dest</code> へ、固定長のバッファで少しずつ転送する。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param src
+	 *            生成元の画像
+	 * @param dest
+	 *            生成先。Exif を削除した画像を書き込む
+	 * @param format
+	 *            出力形式（jpg、png、webp など）
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが convert コマンドではなかった場合、もしくは、転送に失敗した場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             ImageMagick のコマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static ProcessResult removeExif(String commandPath,
+			StreamSource src, StreamSink dest, String format)
+			throws IOException, InterruptedException {
+		Validator.validateCommandPath(commandPath);
+		validateStreams(src, dest);
+		Validator.validateFormat(format);
+
+		writeDebugLog(String.format("commandPath:%s, format:%s", commandPath,
+				format));
+
+		return executeProcess("removeExif", Arrays.asList(commandPath, "-",
+				"-strip", format + ":-"), src, dest);
+	}
+
+	/**
+	 * 標準入力と標準出力を指定して ImageMagick のコマンドを実行する。
+	 * 
+	 * 制限時間は <code>ProcessExecutor</code> の既定値とする。
+	 * 
+	 * @param operation
+	 *            計測値に記録する操作の種類
+	 * @param command
+	 *            コマンドパスとパラメータを格納したリスト
+	 * @param src
+	 *            標準入力に転送する生成元
+	 * @param dest
+	 *            標準出力の転送先
+	 * @return ImageMagick のコマンドの実行結果
+	 */
+	private static ProcessResult executeProcess(String operation,
+			List<String> command, StreamSource src, StreamSink dest)
+			throws IOException, InterruptedException {
+		long queueWaitNanos = takeQueueWaitNanos();
+		long start = System.nanoTime();
+		try {
+			ProcessResult result = processExecutor.execute(operation, command,
+					processExecutor.getTimeoutMillis(),
+					defaultResourceLimits.get(), src.getChannel(),
+					dest.getChannel());
+			writeDebugLog(result.toString());
+			record(operation, queueWaitNanos, result, result.getStdinBytes(),
+					result.getStdoutBytes());
+			return result;
+		} catch (ProcessFailedException e) {
+			record(operation, queueWaitNanos, e.getResult(), e.getResult()
+					.getStdinBytes(), e.getResult().getStdoutBytes());
+			throw e;
+		} catch (ProcessTimeoutException e) {
+			recordTimeout(operation, queueWaitNanos, start, 0);
+			throw e;
+		}
+	}
+
+	/**
+	 * 生成元と生成先の妥当性を確認する。
+	 * 
+	 * どちらかが null の場合は <code>IllegalArgumentException</code> を生成する。
+	 */
+	private static void validateStreams(StreamSource src, StreamSink dest) {
+		if (src == null) {
+			throw new IllegalArgumentException("src may not be specified.");
+		}
+		if (dest == null) {
+			throw new IllegalArgumentException("dest may not be specified.");
+		}
+	}
+
+	/**
+	 * ImageMagick のコマンドを直接実行する。
+	 * 
+	 * <code>Command</code> に制限時間が設定されている場合はその値を、設定されていない場合は
+	 * <code>ProcessExecutor</code> の既定値を制限時間とする。
+	 * 
+	 * @param command
+	 *            コマンドパスとパラメータを格納した <code>Command</code> オブジェクト
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが convert コマンドではなかった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             ImageMagick のコマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static ProcessResult runProcessDirectly(Command command)
+			throws IOException, InterruptedException {
+		return runProcessDirectly(command,
+				Collections.<String, String> emptyMap());
+	}
+
+	/**
+	 * プレースホルダに値を差し込んで ImageMagick のコマンドを直接実行する。
+	 * 
+	 * <code>Command</code> は変更しないため、同じ <code>Command</code>
+	 * を複数のスレッドから繰り返し実行できる。
+	 * 
+	 * @param command
+	 *            コマンドパスとパラメータを格納した <code>Command</code> オブジェクト
+	 * @param values
+	 *            プレースホルダの名前と値を格納したマップ
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが convert コマンドではなかった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             ImageMagick のコマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 * @see #runProcessDirectly(Command)
+	 */
+	public static ProcessResult runProcessDirectly(Command command,
+			Map<String, String> values) throws IOException,
+			InterruptedException {
+		if (command == null) {
+			throw new IllegalArgumentException("command may not be specified.");
+		}
+		command.validate();
+		List<String> argv = command.getCommand(values);
+
+		writeDebugLog(command.toString());
+
+		long timeoutMillis = command.hasTimeout() ? command.getTimeoutMillis()
+				: processExecutor.getTimeoutMillis();
+		return executeProcess("runProcessDirectly", argv, timeoutMillis,
+				Collections.<File> emptyList(), Collections.<File> emptyList());
+	}
+
+	/**
+	 * 画像をタイル状に結合する。
+	 * 
+	 * @param commandPath
+	 *            montage コマンドの絶対パス。
+	 * @param srcFiles
+	 *            結合用画像ファイルを格納したリスト。
+	 * @param tile
+	 *            結合する形式（2x2 とか 9x5 といった形式で指定する）
+	 * @param geometry
+	 *            結合元画像ファイルの大きさ（100x100 といった形式で指定する）
+	 * @param dest
+	 *            生成先のファイル。このファイルに画像を作成する
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが montage コマンドではなかった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static ProcessResult createMontage(String commandPath,
+			List<File> srcFiles, String tile, String geometry, File dest)
+			throws IOException, InterruptedException {
+		return createMontage(commandPath, srcFiles, tile, geometry, dest,
+				processExecutor.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 制限時間を指定して画像をタイル状に結合する。
+	 * 
+	 * 制限時間内に終了しなかった場合、ImageMagick のプロセスとその子孫のプロセスを強制終了する。
+	 * 
+	 * @param commandPath
+	 *            montage コマンドの絶対パス。
+	 * @param srcFiles
+	 *            結合用画像ファイルを格納したリスト。
+	 * @param tile
+	 *            結合する形式（2x2 とか 9x5 といった形式で指定する）
+	 * @param geometry
+	 *            結合元画像ファイルの大きさ（100x100 といった形式で指定する）
+	 * @param dest
+	 *            生成先のファイル。このファイルに画像を作成する
+	 * @param timeout
+	 *            制限時間。0 の場合は制限しない
+	 * @param unit
+	 *            <code>timeout</code> の単位
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが montage コマンドではなかった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             ImageMagick のコマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static ProcessResult createMontage(String commandPath,
+			List<File> srcFiles, String tile, String geometry, File dest,
+			long timeout, TimeUnit unit) throws IOException,
+			InterruptedException {
 		Validator.validateCommandPath(commandPath);
 		validateSrcFiles(srcFiles);
 		Validator.validateSize(tile, "結合する形式");
 		validateSrcFileSize(srcFiles, tile);
 		Validator.validateSize(geometry, "結合元画像ファイルの大きさ");
 		Validator.validateDestFile(dest);
+		Validator.validateTimeout(timeout);
 
 		String message = String.format(
 				"commandPath:%s, srcFiles:%s, tile:%s, geometry:%s, dest:%s",
@@ -239,8 +1305,708 @@ public class ImageMagick {
 		}
 		command.add(dest.getAbsolutePath());
 
-		ProcessBuilder builder = new ProcessBuilder(command);
-		executeProcess(builder);
+		return executeProcess("createMontage", command, unit.toMillis(timeout),
+				srcFiles, Arrays.asList(dest));
+	}
+
+	/**
+	 * 1 つの元画像から複数の派生画像をまとめて作成する。
+	 * 
+	 * 元画像は 1 回の convert コマンドの実行で 1 度だけデコードし、
+	 * <code>+clone</code> で複製したものを派生画像ごとに加工して <code>-write</code> で書き出す。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param src
+	 *            生成元のファイル
+	 * @param renditions
+	 *            作成する派生画像の指定を格納したリスト
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが convert コマンドではなかった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static ProcessResult createRenditions(String commandPath,
+			File src, List<Rendition> renditions) throws IOException,
+			InterruptedException {
+		return createRenditions(commandPath, src, renditions,
+				processExecutor.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 制限時間を指定して 1 つの元画像から複数の派生画像をまとめて作成する。
+	 * 
+	 * 制限時間内に終了しなかった場合、ImageMagick のプロセスとその子孫のプロセスを強制終了する。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param src
+	 *            生成元のファイル
+	 * @param renditions
+	 *            作成する派生画像の指定を格納したリスト
+	 * @param timeout
+	 *            制限時間。0 の場合は制限しない
+	 * @param unit
+	 *            <code>timeout</code> の単位
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが convert コマンドではなかった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             ImageMagick のコマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static ProcessResult createRenditions(String commandPath,
+			File src, List<Rendition> renditions, long timeout, TimeUnit unit)
+			throws IOException, InterruptedException {
+		Validator.validateCommandPath(commandPath);
+		Validator.validateSrcFile(src);
+		if (ListUtil.isNullOrEmpty(renditions)) {
+			throw new IllegalArgumentException(
+					"renditions may not be specified.");
+		}
+		for (Rendition rendition : renditions) {
+			if (rendition == null) {
+				throw new IllegalArgumentException(
+						"renditions may not contain null.");
+			}
+			rendition.validate();
+		}
+		Validator.validateTimeout(timeout);
+
+		writeDebugLog(String.format("commandPath:%s, src:%s, renditions:%s",
+				commandPath, src, renditions));
+
+		List<File> dests = new ArrayList<File>();
+		for (Rendition rendition : renditions) {
+			dests.add(rendition.getDest());
+		}
+		return executeProcess("createRenditions", buildRenditionsCommand(
+				commandPath, src, renditions), unit.toMillis(timeout),
+				Arrays.asList(src), dests);
+	}
+
+	/**
+	 * 派生画像をまとめて作成する convert コマンドを組み立てる。
+	 * 
+	 * <pre>
+	 * convert src -respect-parentheses ( +clone ... -write dest1 +delete ) ( +clone ... -write dest2 +delete ) null:
+	 * </pre>
+	 * 
+	 * <code>-quality</code> などの設定は括弧の外に引き継がないよう <code>-respect-parentheses</code>
+	 * を指定し、派生画像ごとに独立させる。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param src
+	 *            生成元のファイル
+	 * @param renditions
+	 *            作成する派生画像の指定を格納したリスト
+	 * @return コマンドパスとパラメータを格納したリスト
+	 * @throws IOException
+	 *             元画像の読み込みに失敗した場合
+	 */
+	static List<String> buildRenditionsCommand(String commandPath, File src,
+			List<Rendition> renditions) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(commandPath);
+		command.add(src.getAbsolutePath());
+		command.add("-respect-parentheses");
+		ImageHeader header = headerOf(src, false);
+		if (header != null
+				&& header.getOrientation() != ImageHeader.NORMAL_ORIENTATION) {
+			// 派生画像の大きさは向きを補正した画像を基準に計算する
+			command.add("-auto-orient");
+		}
+		for (Rendition rendition : renditions) {
+			rendition.appendTo(command, src);
+		}
+		command.add("null:");
+		return command;
+	}
+
+	/**
+	 * 大量の画像を結合してコンタクトシートを作成する。
+	 * 
+	 * 結合元画像のパスはコマンドラインではなく <code>@</code> で指定するファイルリストで渡すため、
+	 * 画像の枚数がコマンドラインの長さの上限に影響されない。 1 行分の画像を結合した帯を montage
+	 * コマンドで並行して作成し、ページごとに convert コマンドで縦に連結する。
+	 * 1 ページに収まらない画像は次のページに並べる。
+	 * 
+	 * 制限時間は ImageMagick のプロセスごとに <code>ProcessExecutor</code> の既定値とする。
+	 * 
+	 * @param montagePath
+	 *            montage コマンドの絶対パス。
+	 * @param convertPath
+	 *            convert コマンドの絶対パス。
+	 * @param srcFiles
+	 *            結合用画像ファイルを格納したリスト。
+	 * @param montage
+	 *            コンタクトシートの指定
+	 * @return 作成したページのファイルを格納したリスト
+	 * @throws IOException
+	 *             コマンドパスに誤りがあった場合、もしくは、ファイルリストの作成に失敗した場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             ImageMagick のコマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static List<File> createBatchMontage(String montagePath,
+			String convertPath, List<File> srcFiles, BatchMontage montage)
+			throws IOException, InterruptedException {
+		Validator.validateCommandPath(montagePath);
+		Validator.validateCommandPath(convertPath);
+		validateSrcFiles(srcFiles);
+		if (montage == null) {
+			throw new IllegalArgumentException("montage may not be specified.");
+		}
+		montage.validate();
+
+		writeDebugLog(String.format(
+				"montagePath:%s, convertPath:%s, srcFiles:%s, montage:%s",
+				montagePath, convertPath, srcFiles.size(), montage));
+
+		final long timeoutMillis = processExecutor.getTimeoutMillis();
+		final ResourceLimits limits = ResourceLimits.forConcurrency(montage
+				.getParallelism());
+		int tilesPerPage = montage.getTilesPerPage(srcFiles.size());
+		int numOfPages = (srcFiles.size() + tilesPerPage - 1) / tilesPerPage;
+		File workDir = Files.createTempDirectory("imagemagick-montage")
+				.toFile();
+		ExecutorService executor = Executors.newFixedThreadPool(montage
+				.getParallelism());
+		try {
+			// 全ページの帯を並行して作成する
+			List<Future<ProcessResult>> stripResults = new ArrayList<Future<ProcessResult>>();
+			List<List<File>> pageStrips = new ArrayList<List<File>>();
+			for (int page = 0; page < numOfPages; page++) {
+				List<File> strips = new ArrayList<File>();
+				int pageEnd = Math.min(srcFiles.size(), (page + 1)
+						* tilesPerPage);
+				for (int from = page * tilesPerPage; from < pageEnd; from += montage
+						.getColumns()) {
+					List<File> row = srcFiles.subList(from, Math.min(pageEnd,
+							from + montage.getColumns()));
+					File strip = new File(workDir, String.format(
+							"strip-%d-%d.miff", page, strips.size()));
+					File list = writeFileList(row, new File(workDir,
+							String.format("strip-%d-%d.txt", page,
+									strips.size())));
+					final List<String> command = buildStripCommand(
+							montagePath, montage, list, strip);
+					stripResults.add(executor.submit(() -> callWithResourceLimits(
+							limits, () -> executeProcess("createBatchMontage",
+									command, timeoutMillis, row,
+									Arrays.asList(strip)))));
+					strips.add(strip);
+				}
+				pageStrips.add(strips);
+			}
+			awaitAll(stripResults);
+
+			// ページごとに帯を縦に連結する
+			List<Future<ProcessResult>> pageResults = new ArrayList<Future<ProcessResult>>();
+			List<File> pages = new ArrayList<File>();
+			for (int page = 0; page < numOfPages; page++) {
+				File pageFile = montage.getPageFile(page + 1, numOfPages);
+				File list = writeFileList(pageStrips.get(page), new File(
+						workDir, String.format("page-%d.txt", page)));
+				final List<String> command = buildAppendCommand(convertPath,
+						list, pageFile);
+				final List<File> strips = pageStrips.get(page);
+				pageResults.add(executor.submit(() -> callWithResourceLimits(
+						limits, () -> executeProcess("createBatchMontage",
+								command, timeoutMillis, strips,
+								Arrays.asList(pageFile)))));
+				pages.add(pageFile);
+			}
+			awaitAll(pageResults);
+
+			return pages;
+		} finally {
+			executor.shutdownNow();
+			File[] files = workDir.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			workDir.delete();
+		}
+	}
+
+	/**
+	 * 1 行分の画像を結合した帯を作成する montage コマンドを組み立てる。
+	 * 
+	 * <pre>
+	 * montage -tile columnsx1 -geometry geometry @list strip
+	 * </pre>
+	 * 
+	 * @param montagePath
+	 *            montage コマンドの絶対パス。
+	 * @param montage
+	 *            コンタクトシートの指定
+	 * @param list
+	 *            結合元画像のパスを格納したファイルリスト
+	 * @param strip
+	 *            帯の生成先のファイル
+	 * @return コマンドパスとパラメータを格納したリスト
+	 */
+	static List<String> buildStripCommand(String montagePath,
+			BatchMontage montage, File list, File strip) {
+		return Arrays.asList(montagePath, "-tile", montage.getColumns() + "x1",
+				"-geometry", montage.getGeometry(),
+				"@" + list.getAbsolutePath(), strip.getAbsolutePath());
+	}
+
+	/**
+	 * 帯を縦に連結してページを作成する convert コマンドを組み立てる。
+	 * 
+	 * <pre>
+	 * convert @list -append page
+	 * </pre>
+	 * 
+	 * @param convertPath
+	 *            convert コマンドの絶対パス。
+	 * @param list
+	 *            帯のパスを格納したファイルリスト
+	 * @param page
+	 *            ページの生成先のファイル
+	 * @return コマンドパスとパラメータを格納したリスト
+	 */
+	static List<String> buildAppendCommand(String convertPath, File list,
+			File page) {
+		return Arrays.asList(convertPath, "@" + list.getAbsolutePath(),
+				"-append", page.getAbsolutePath());
+	}
+
+	/**
+	 * ImageMagick に <code>@</code> で指定するファイルリストを作成する。
+	 * 
+	 * 空白を含むパスに対応するため、1 行に 1 つずつ二重引用符で囲んだパスを書き込む。
+	 * 
+	 * @param files
+	 *            ファイルリストに書き込むファイル
+	 * @param list
+	 *            ファイルリストの生成先
+	 * @return ファイルリスト
+	 * @throws IOException
+	 *             ファイルリストの作成に失敗した場合
+	 */
+	static File writeFileList(List<File> files, File list) throws IOException {
+		List<String> lines = new ArrayList<String>(files.size());
+		for (File file : files) {
+			lines.add("\"" + file.getAbsolutePath() + "\"");
+		}
+		Files.write(list.toPath(), lines, StandardCharsets.UTF_8);
+		return list;
+	}
+
+	/**
+	 * 並行して実行した処理が全て完了するまで待機する。
+	 * 
+	 * 失敗した処理があった場合は残りの処理を中断し、その例外を生成する。
+	 * 
+	 * @param futures
+	 *            並行して実行した処理
+	 * @throws IOException
+	 *             ImageMagick の操作に失敗した場合
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合
+	 */
+	private static void awaitAll(List<Future<ProcessResult>> futures)
+			throws IOException, InterruptedException {
+		try {
+			for (Future<ProcessResult> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof InterruptedException) {
+				throw (InterruptedException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			for (Future<ProcessResult> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * アニメーション（GIF、WebP）のサムネイルを作成する。
+	 * 
+	 * 次の手順でフレーム単位に分けて並行して縮小する。
+	 * 
+	 * <ol>
+	 * <li>convert コマンドの <code>-coalesce</code> で各フレームを重ね合わせた状態に展開し、1 フレームずつ書き出す</li>
+	 * <li>フレームを <code>AnimatedThumbnail</code> で指定した数ずつに分け、convert コマンドで並行して縮小する</li>
+	 * <li>縮小したフレームを convert コマンドで 1 つのアニメーションに連結する</li>
+	 * </ol>
+	 * 
+	 * 各フレームの表示時間と破棄の方法は元画像のヘッダから読み取ったものを指定し直す。
+	 * フレーム数の上限を指定した場合は等間隔に間引き、間引いたフレームの表示時間は直前に残したフレームに加える。
+	 * アニメーションではない（フレームが 1 つの）画像は分割せずに <code>createThumbnail</code> と同じく縮小する。
+	 * 
+	 * 制限時間は ImageMagick のプロセスごとに <code>ProcessExecutor</code> の既定値とする。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param src
+	 *            生成元のファイル
+	 * @param thumbnail
+	 *            アニメーションのサムネイルの指定
+	 * @return フレームを連結した ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             commandPath に指定されているパスが convert コマンドではなかった場合
+	 * @throws ProcessFailedException
+	 *             ImageMagick のコマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             ImageMagick のコマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             ImageMagick の操作に失敗した場合
+	 */
+	public static ProcessResult createAnimatedThumbnail(String commandPath,
+			File src, AnimatedThumbnail thumbnail) throws IOException,
+			InterruptedException {
+		Validator.validateCommandPath(commandPath);
+		Validator.validateSrcFile(src);
+		if (thumbnail == null) {
+			throw new IllegalArgumentException(
+					"thumbnail may not be specified.");
+		}
+		thumbnail.validate();
+
+		writeDebugLog(String.format("commandPath:%s, src:%s, thumbnail:%s",
+				commandPath, src, thumbnail));
+
+		final long timeoutMillis = processExecutor.getTimeoutMillis();
+		ImageHeader header = headerOf(src, true);
+		if (header == null || !header.isAnimated()) {
+			return createThumbnail("createAnimatedThumbnail", commandPath,
+					thumbnail.getSize(), src, thumbnail.getDest(), timeoutMillis);
+		}
+
+		final ResourceLimits limits = ResourceLimits.forConcurrency(thumbnail
+				.getParallelism());
+		File workDir = Files.createTempDirectory("imagemagick-animation")
+				.toFile();
+		ExecutorService executor = Executors.newFixedThreadPool(thumbnail
+				.getParallelism());
+		try {
+			executeProcess("createAnimatedThumbnail", buildCoalesceCommand(
+					commandPath, src, workDir), timeoutMillis,
+					Arrays.asList(src), Collections.<File> emptyList());
+			List<File> frameFiles = listFrameFiles(workDir);
+			if (frameFiles.isEmpty()) {
+				throw new IOException(String.format(
+						"フレームを展開できませんでした。src:%s", src));
+			}
+			// 展開したフレーム数とヘッダのフレーム数が異なる場合は表示時間を指定し直さない
+			List<Frame> frames = header.getFrames().size() == frameFiles.size() ? header
+					.getFrames() : null;
+			int[] indexes = thumbnail.sampleFrames(frameFiles.size());
+			int framesPerChunk = thumbnail.getFramesPerChunk(indexes.length);
+
+			// フレームを分けて並行して縮小する
+			List<Future<ProcessResult>> chunkResults = new ArrayList<Future<ProcessResult>>();
+			List<File> chunks = new ArrayList<File>();
+			for (int from = 0; from < indexes.length; from += framesPerChunk) {
+				int to = Math.min(indexes.length, from + framesPerChunk);
+				File chunk = new File(workDir, String.format("chunk-%d.miff",
+						chunks.size()));
+				final List<String> command = buildAnimationChunkCommand(
+						commandPath, thumbnail.getSize(), frameFiles, frames,
+						indexes, from, to, chunk);
+				final List<File> inputs = new ArrayList<File>(to - from);
+				for (int i = from; i < to; i++) {
+					inputs.add(frameFiles.get(indexes[i]));
+				}
+				chunkResults.add(executor.submit(() -> callWithResourceLimits(
+						limits, () -> executeProcess("createAnimatedThumbnail",
+								command, timeoutMillis, inputs,
+								Arrays.asList(chunk)))));
+				chunks.add(chunk);
+			}
+			awaitAll(chunkResults);
+
+			// 縮小したフレームを 1 つのアニメーションに連結する
+			return executeProcess("createAnimatedThumbnail",
+					buildAnimationAssembleCommand(commandPath, chunks,
+							thumbnail.getDest()), timeoutMillis, chunks,
+					Arrays.asList(thumbnail.getDest()));
+		} finally {
+			executor.shutdownNow();
+			File[] files = workDir.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			workDir.delete();
+		}
+	}
+
+	/**
+	 * アニメーションの各フレームを重ね合わせた状態に展開し、1 フレームずつ書き出す convert コマンドを組み立てる。
+	 * 
+	 * <pre>
+	 * convert src -coalesce +adjoin workDir/frame-%d.miff
+	 * </pre>
+	 * 
+	 * MIFF は各フレームの表示時間や繰り返し回数を保持したまま、再圧縮せずに読み書きできる。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param src
+	 *            生成元のファイル
+	 * @param workDir
+	 *            フレームを書き出すディレクトリ
+	 * @return コマンドパスとパラメータを格納したリスト
+	 */
+	static List<String> buildCoalesceCommand(String commandPath, File src,
+			File workDir) {
+		return Arrays.asList(commandPath, src.getAbsolutePath(), "-coalesce",
+				"+adjoin", new File(workDir, "frame-%d.miff").getAbsolutePath());
+	}
+
+	/**
+	 * 展開したフレームのファイルをフレームの順に取得する。
+	 * 
+	 * @param workDir
+	 *            フレームを書き出したディレクトリ
+	 * @return フレームのファイルを格納したリスト
+	 */
+	static List<File> listFrameFiles(File workDir) {
+		List<File> frameFiles = new ArrayList<File>();
+		File[] files = workDir.listFiles();
+		if (files == null) {
+			return frameFiles;
+		}
+		for (File file : files) {
+			if (FRAME_FILE.matcher(file.getName()).matches()) {
+				frameFiles.add(file);
+			}
+		}
+		Collections.sort(frameFiles, (a, b) -> Long.compare(
+				frameNumber(a), frameNumber(b)));
+		return frameFiles;
+	}
+
+	private static long frameNumber(File frameFile) {
+		Matcher matcher = FRAME_FILE.matcher(frameFile.getName());
+		matcher.matches();
+		return Long.parseLong(matcher.group(1));
+	}
+
+	/**
+	 * 一部のフレームを縮小する convert コマンドを組み立てる。
+	 * 
+	 * <pre>
+	 * convert -dispose background -delay 10 frame-0.miff -delay 20 frame-2.miff ... -thumbnail size chunk
+	 * </pre>
+	 * 
+	 * <code>-delay</code> と <code>-dispose</code> は続けて読み込むフレームに適用される。
+	 * 表示時間には、次に残すフレームまでの間引いたフレームの表示時間を加える。
+	 * 展開したフレームは重ね合わせた状態のため、元画像の破棄の方法は適用せず、全て <code>background</code> とする。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param size
+	 *            サムネイルサイズ。[0-9]{1,}x[0-9]{1,} で指定する
+	 * @param frameFiles
+	 *            展開した全てのフレームのファイル
+	 * @param frames
+	 *            元画像の全てのフレームの表示時間。null の場合は指定し直さない
+	 * @param indexes
+	 *            残すフレームの番号
+	 * @param from
+	 *            縮小する最初のフレーム（<code>indexes</code> の位置）
+	 * @param to
+	 *            縮小する最後のフレームの次（<code>indexes</code> の位置）
+	 * @param chunk
+	 *            縮小したフレームの生成先のファイル
+	 * @return コマンドパスとパラメータを格納したリスト
+	 */
+	static List<String> buildAnimationChunkCommand(String commandPath,
+			String size, List<File> frameFiles, List<Frame> frames,
+			int[] indexes, int from, int to, File chunk) {
+		List<String> command = new ArrayList<String>();
+		command.add(commandPath);
+		command.add("-dispose");
+		command.add("background");
+		for (int i = from; i < to; i++) {
+			if (frames != null) {
+				int end = i + 1 < indexes.length ? indexes[i + 1] : frames
+						.size();
+				int delay = 0;
+				for (int frame = indexes[i]; frame < end; frame++) {
+					delay += frames.get(frame).getDelay();
+				}
+				command.add("-delay");
+				command.add(String.valueOf(delay));
+			}
+			command.add(frameFiles.get(indexes[i]).getAbsolutePath());
+		}
+		command.add("-thumbnail");
+		command.add(size);
+		command.add(chunk.getAbsolutePath());
+		return command;
+	}
+
+	/**
+	 * 縮小したフレームを 1 つのアニメーションに連結する convert コマンドを組み立てる。
+	 * 
+	 * <pre>
+	 * convert chunk-0.miff chunk-1.miff ... -layers Optimize dest
+	 * </pre>
+	 * 
+	 * 重ね合わせた状態のフレームをそのまま連結すると大きくなるため、<code>-layers Optimize</code>
+	 * で前のフレームとの差分のみのフレームと破棄の方法を求め直す。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param chunks
+	 *            縮小したフレームのファイル
+	 * @param dest
+	 *            生成先のファイル
+	 * @return コマンドパスとパラメータを格納したリスト
+	 */
+	static List<String> buildAnimationAssembleCommand(String commandPath,
+			List<File> chunks, File dest) {
+		List<String> command = new ArrayList<String>(chunks.size() + 4);
+		command.add(commandPath);
+		for (File chunk : chunks) {
+			command.add(chunk.getAbsolutePath());
+		}
+		command.add("-layers");
+		command.add("Optimize");
+		command.add(dest.getAbsolutePath());
+		return command;
+	}
+
+	/**
+	 * 大量の画像を一括してリサイズする。
+	 * 
+	 * <code>BatchResize</code> で指定したプロセス数で並行して処理する。 生成元と生成先のファイルは必要な分だけ取り出すため、
+	 * 全件をリストに格納する必要はない。 失敗した件は一括処理を中断せずに <code>BatchReport</code> に記録する。
+	 * 生成先のディレクトリが存在しない場合は作成する。
+	 * 
+	 * 制限時間は 1 件ごとに <code>ProcessExecutor</code> の既定値とする。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param items
+	 *            生成元と生成先のファイル
+	 * @param batch
+	 *            一括処理の指定
+	 * @return 一括処理の結果
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合。実行中の処理は中断する
+	 */
+	public static BatchReport resizeBatch(String commandPath,
+			Iterable<BatchItem> items, BatchResize batch)
+			throws InterruptedException {
+		Validator.validateCommandPath(commandPath);
+		if (items == null) {
+			throw new IllegalArgumentException("items may not be specified.");
+		}
+		validateBatch(batch);
+
+		writeDebugLog(String.format("commandPath:%s, batch:%s", commandPath,
+				batch));
+
+		return new BatchRunner(commandPath, batch).run(items.iterator());
+	}
+
+	/**
+	 * 大量の画像を一括してリサイズする。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param items
+	 *            生成元と生成先のファイル
+	 * @param batch
+	 *            一括処理の指定
+	 * @return 一括処理の結果
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合。実行中の処理は中断する
+	 * @see #resizeBatch(String, Iterable, BatchResize)
+	 */
+	public static BatchReport resizeBatch(String commandPath,
+			Stream<BatchItem> items, BatchResize batch)
+			throws InterruptedException {
+		if (items == null) {
+			throw new IllegalArgumentException("items may not be specified.");
+		}
+		return resizeBatch(commandPath, (Iterable<BatchItem>) items::iterator,
+				batch);
+	}
+
+	/**
+	 * ディレクトリ内の画像を一括してリサイズする。
+	 * 
+	 * 生成元のディレクトリ配下（サブディレクトリを含む）の画像ファイル（拡張子が <code>BatchResize#getExtensions</code>
+	 * に含まれるファイル）を、生成先のディレクトリの同じ相対パスに作成する。
+	 * 生成先のディレクトリが生成元のディレクトリ配下にある場合、生成先のディレクトリは辿らない。
+	 * 読めないサブディレクトリは一括処理を中断せず、そのディレクトリを生成元とした失敗として <code>BatchReport</code> に記録する。
+	 * 
+	 * @param commandPath
+	 *            convert コマンドの絶対パス。
+	 * @param srcDir
+	 *            生成元のディレクトリ
+	 * @param destDir
+	 *            生成先のディレクトリ
+	 * @param batch
+	 *            一括処理の指定
+	 * @return 一括処理の結果
+	 * @throws FileNotFoundException
+	 *             生成元のディレクトリが存在しない場合
+	 * @throws IOException
+	 *             生成元のディレクトリを読めない場合
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合。実行中の処理は中断する
+	 * @see #resizeBatch(String, Iterable, BatchResize)
+	 */
+	public static BatchReport resizeBatch(String commandPath, File srcDir,
+			File destDir, BatchResize batch) throws IOException,
+			InterruptedException {
+		Validator.validateSrcFile(srcDir);
+		if (destDir == null) {
+			throw new IllegalArgumentException("destDir may not be specified.");
+		}
+		validateBatch(batch);
+
+		final DirectoryWalker walker = new DirectoryWalker(srcDir.toPath(),
+				destDir.toPath(), batch);
+		return resizeBatch(commandPath, (Iterable<BatchItem>) () -> walker,
+				batch);
+	}
+
+	/**
+	 * 一括処理の指定の妥当性を確認する。
+	 * 
+	 * @param batch
+	 *            一括処理の指定
+	 */
+	private static void validateBatch(BatchResize batch) {
+		if (batch == null) {
+			throw new IllegalArgumentException("batch may not be specified.");
+		}
+		batch.validate();
 	}
 
 	/**
@@ -258,10 +2024,8 @@ public class ImageMagick {
 	 *            結合する形式
 	 */
 	private static void validateSrcFileSize(List<File> srcFiles, String tile) {
-		String[] split = tile.split("x");
-		int numOfColumns = Integer.parseInt(split[0]);
-		int numOfRows = Integer.parseInt(split[1]);
-		int numOfTiles = numOfColumns * numOfRows;
+		Geometry geometry = Geometry.parse(tile);
+		long numOfTiles = (long) geometry.getWidth() * geometry.getHeight();
 		if (numOfTiles != srcFiles.size()) {
 			throw new IllegalArgumentException("結合する形式と画像の枚数が合っていません。");
 		}
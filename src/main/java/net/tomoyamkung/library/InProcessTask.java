@@ -0,0 +1,32 @@
+package net.tomoyamkung.library;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.tomoyamkung.library.process.ProcessResult;
+
+/**
+ * 子プロセスを起動せずに JVM 内で画像を処理するタスク。
+ *
+ * ImageMagick のコマンドと同じく計測値の記録や生成先の書き出し方を共通にするため、生成先は実行時に受け取る。
+ * <code>OutputStager</code> が生成先を一時ファイルに置き換えた場合は、その一時ファイルを受け取る。
+ *
+ * @author tomoyamkung
+ *
+ */
+interface InProcessTask {
+
+	/**
+	 * タスクを実行する。
+	 *
+	 * @param dest
+	 *            書き出すファイル
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @return 実行結果
+	 * @throws IOException
+	 *             画像の読み書きに失敗した場合
+	 */
+	ProcessResult execute(File dest, long timeoutMillis) throws IOException;
+
+}
@@ -0,0 +1,299 @@
+package net.tomoyamkung.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import net.tomoyamkung.library.process.ProcessResult;
+
+/**
+ * 生成先のファイルを一時ファイルに書き出してから原子的に移動するクラス。
+ *
+ * 一時ファイルは生成先と同じディレクトリに <code>.名前.staging-乱数.拡張子</code>
+ * の名前で作成する。拡張子を残すのは ImageMagick が拡張子から出力の形式を決めるためである。
+ * 生成先を読み込む側が書き込み途中のファイルを読むことはない。
+ *
+ * 同じ生成先への書き出しが同時に要求された場合は、先に開始したものの完了を待つ。
+ * コマンドも同じ場合は ImageMagick を実行せずに先に開始したものの結果を返し、異なる場合は完了後に実行する。
+ *
+ * @author tomoyamkung
+ *
+ */
+final class OutputStager {
+
+	/**
+	 * 一時ファイルに書き出すコマンドを実行する処理。
+	 */
+	interface Execution {
+
+		/**
+		 * コマンドを実行する。
+		 *
+		 * @param command
+		 *            生成先を一時ファイルに置き換えたコマンド
+		 * @param outputs
+		 *            ImageMagick が実際に書き出すファイル
+		 * @return ImageMagick のコマンドの実行結果
+		 */
+		ProcessResult execute(List<String> command, List<File> outputs)
+				throws IOException, InterruptedException;
+
+	}
+
+	/**
+	 * 書き出し中の生成先と、その書き出しを格納したマップ。
+	 */
+	private static final ConcurrentMap<String, InFlight> inFlight = new ConcurrentHashMap<String, InFlight>();
+
+	private OutputStager() {
+	}
+
+	/**
+	 * 生成先を一時ファイルに置き換えてコマンドを実行し、完了後に生成先へ移動する。
+	 *
+	 * @param staging
+	 *            書き出し方。<code>OutputStaging#direct</code> 以外を指定する
+	 * @param command
+	 *            コマンドパスとパラメータを格納したリスト
+	 * @param outputs
+	 *            生成先のファイル
+	 * @param execution
+	 *            コマンドを実行する処理
+	 * @return ImageMagick のコマンドの実行結果
+	 * @throws IOException
+	 *             コマンドの実行、もしくは、生成先への移動に失敗した場合
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合
+	 */
+	static ProcessResult execute(OutputStaging staging, List<String> command,
+			List<File> outputs, Execution execution) throws IOException,
+			InterruptedException {
+		String key = keyOf(outputs);
+		while (true) {
+			InFlight mine = new InFlight(command);
+			InFlight running = inFlight.putIfAbsent(key, mine);
+			if (running == null) {
+				return runOwned(key, mine, staging, command, outputs,
+						execution);
+			}
+			try {
+				ProcessResult result = running.result.get();
+				if (running.command.equals(command)) {
+					return result;
+				}
+			} catch (ExecutionException e) {
+				if (running.command.equals(command)) {
+					throw SingleFlight.rethrow(e.getCause());
+				}
+			}
+			// 異なるコマンドの書き出しが完了したので改めて書き出す
+		}
+	}
+
+	/**
+	 * 登録した書き出しを実行し、完了を待機しているスレッドに結果を伝える。
+	 */
+	private static ProcessResult runOwned(String key, InFlight mine,
+			OutputStaging staging, List<String> command, List<File> outputs,
+			Execution execution) throws IOException, InterruptedException {
+		ProcessResult result;
+		try {
+			result = stage(staging, command, outputs, execution);
+		} catch (IOException | InterruptedException | RuntimeException
+				| Error e) {
+			inFlight.remove(key, mine);
+			mine.result.completeExceptionally(e);
+			throw e;
+		}
+		inFlight.remove(key, mine);
+		mine.result.complete(result);
+		return result;
+	}
+
+	/**
+	 * 生成先を一時ファイルに置き換えてコマンドを実行し、完了後に生成先へ移動する。
+	 *
+	 * コマンドに現れない生成先（ImageMagick が別の名前で書き出すものなど）は置き換えない。
+	 * 失敗した場合は一時ファイルを削除し、生成先は変更しない。
+	 */
+	private static ProcessResult stage(OutputStaging staging,
+			List<String> command, List<File> outputs, Execution execution)
+			throws IOException, InterruptedException {
+		List<String> stagedCommand = new ArrayList<String>(command);
+		List<File> temps = new ArrayList<File>(outputs.size());
+		List<File> written = new ArrayList<File>(outputs.size());
+		for (File output : outputs) {
+			File temp = createTempName(output);
+			if (replace(stagedCommand, output.getAbsolutePath(),
+					temp.getAbsolutePath())) {
+				temps.add(temp);
+				written.add(temp);
+			} else {
+				temps.add(null);
+				written.add(output);
+			}
+		}
+
+		boolean sync = staging == OutputStaging.atomicSync;
+		try {
+			ProcessResult result = execution.execute(stagedCommand, written);
+			Set<File> dirs = new LinkedHashSet<File>();
+			for (int i = 0; i < outputs.size(); i++) {
+				File temp = temps.get(i);
+				if (temp == null || !temp.exists()) {
+					continue;
+				}
+				if (sync) {
+					force(temp, StandardOpenOption.WRITE);
+				}
+				move(temp, outputs.get(i));
+				dirs.add(temp.getParentFile());
+			}
+			if (sync) {
+				for (File dir : dirs) {
+					forceDirectory(dir);
+				}
+			}
+			return result;
+		} finally {
+			for (File temp : temps) {
+				if (temp != null) {
+					Files.deleteIfExists(temp.toPath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * 生成先と同じディレクトリの一時ファイルの名前を作成する。
+	 *
+	 * ファイルは作成しない。
+	 */
+	private static File createTempName(File output) {
+		File absolute = output.getAbsoluteFile();
+		String name = absolute.getName();
+		int dot = name.lastIndexOf('.');
+		String base = dot > 0 ? name.substring(0, dot) : name;
+		String extension = dot > 0 ? name.substring(dot) : "";
+		return new File(absolute.getParentFile(), String.format(
+				".%s.staging-%016x%s", base, ThreadLocalRandom.current()
+						.nextLong(), extension));
+	}
+
+	/**
+	 * コマンドの中の生成先のパスを置き換える。
+	 *
+	 * パスそのものと、形式を指定したもの（<code>JPEG:パス</code>）を置き換える。
+	 * 置き換えるのは出力の位置（最後のパラメータと <code>-write</code> の直後）のみとし、
+	 * 生成元と生成先が同じファイルの場合に入力まで置き換えないようにする。
+	 *
+	 * @return 置き換えた場合は true
+	 */
+	private static boolean replace(List<String> command, String path,
+			String replacement) {
+		boolean replaced = false;
+		String suffix = ":" + path;
+		for (int i = 1; i < command.size(); i++) {
+			if (i != command.size() - 1
+					&& !"-write".equals(command.get(i - 1))) {
+				continue;
+			}
+			String arg = command.get(i);
+			if (arg.equals(path)) {
+				command.set(i, replacement);
+				replaced = true;
+			} else if (arg.endsWith(suffix)) {
+				command.set(i, arg.substring(0, arg.length() - path.length())
+						+ replacement);
+				replaced = true;
+			}
+		}
+		return replaced;
+	}
+
+	/**
+	 * 一時ファイルを生成先へ移動する。
+	 *
+	 * 原子的な移動ができないファイルシステムの場合は上書きで移動する。
+	 */
+	private static void move(File temp, File output) throws IOException {
+		try {
+			Files.move(temp.toPath(), output.toPath(),
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), output.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void force(File file, StandardOpenOption option)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), option)) {
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * ディレクトリをディスクへ同期する。
+	 *
+	 * ディレクトリを開けない環境（Windows など）では何もしない。
+	 */
+	private static void forceDirectory(File dir) {
+		try {
+			force(dir, StandardOpenOption.READ);
+		} catch (IOException e) {
+			// 移動は完了しているため失敗として扱わない
+		}
+	}
+
+	/**
+	 * 生成先から書き出し中のマップのキーを作成する。
+	 */
+	private static String keyOf(List<File> outputs) {
+		if (outputs.size() == 1) {
+			return outputs.get(0).getAbsolutePath();
+		}
+		List<String> paths = new ArrayList<String>(outputs.size());
+		for (File output : outputs) {
+			paths.add(output.getAbsolutePath());
+		}
+		Collections.sort(paths);
+		return String.join("\n", paths);
+	}
+
+	/**
+	 * 書き出し中の生成先への書き出しを表すクラス。
+	 */
+	private static class InFlight {
+
+		/**
+		 * 実行しているコマンド。
+		 */
+		private final List<String> command;
+
+		/**
+		 * 実行結果。
+		 */
+		private final CompletableFuture<ProcessResult> result = new CompletableFuture<ProcessResult>();
+
+		InFlight(List<String> command) {
+			this.command = command;
+		}
+
+	}
+
+}
@@ -0,0 +1,26 @@
+package net.tomoyamkung.library;
+
+/**
+ * 生成先のファイルの書き出し方を表すクラス。
+ *
+ * @author tomoyamkung
+ *
+ */
+public enum OutputStaging {
+
+	/**
+	 * ImageMagick が生成先のファイルに直接書き出す。
+	 */
+	direct,
+
+	/**
+	 * 生成先と同じディレクトリの一時ファイルに書き出し、完了後に生成先へ原子的に移動する。
+	 */
+	atomic,
+
+	/**
+	 * <code>atomic</code> に加えて、移動する前に一時ファイルの内容を、移動した後にディレクトリをディスクへ同期する。
+	 */
+	atomicSync;
+
+}
@@ -0,0 +1,211 @@
+package net.tomoyamkung.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import net.tomoyamkung.library.size.AspectRatio;
+
+/**
+ * 1 つの元画像から作成する派生画像（レンディション）の指定を保持するクラス。
+ *
+ * 大きさ、Exif の削除、出力形式、画質、生成先のファイルを指定する。 大きさを指定しない場合は元画像と同じ大きさで作成する。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class Rendition {
+
+	/**
+	 * 生成先のファイル。
+	 */
+	private final File dest;
+
+	/**
+	 * サムネイルサイズ。[0-9]{1,}x[0-9]{1,} で指定する。
+	 */
+	private String size;
+
+	/**
+	 * 基準とする「辺」。
+	 */
+	private SquareSide side;
+
+	/**
+	 * 基準とする「辺」のピクセル。
+	 */
+	private int pixel;
+
+	/**
+	 * Exif などのメタデータを削除するか。
+	 */
+	private boolean strip;
+
+	/**
+	 * 出力形式（jpg、png、webp など）。null の場合は生成先のファイルの拡張子から判断する。
+	 */
+	private String format;
+
+	/**
+	 * 画質（1 から 100）。0 の場合は ImageMagick の既定値とする。
+	 */
+	private int quality;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param dest
+	 *            生成先のファイル。このファイルに画像を作成する
+	 */
+	public Rendition(File dest) {
+		this.dest = dest;
+	}
+
+	/**
+	 * 縦横比を維持して指定したサイズに収まるように縮小する。
+	 *
+	 * @param size
+	 *            サムネイルサイズ。[0-9]{1,}x[0-9]{1,} で指定する
+	 * @return
+	 */
+	public Rendition setSize(String size) {
+		this.size = size;
+		side = null;
+
+		return this;
+	}
+
+	/**
+	 * 基準とする「辺」をピクセルに合わせ、もう一辺は縦横比により自動計算した大きさに縮小する。
+	 *
+	 * @param side
+	 *            基準とする「辺」
+	 * @param pixel
+	 *            基準とする「辺」のピクセル
+	 * @return
+	 */
+	public Rendition setSize(SquareSide side, int pixel) {
+		this.side = side;
+		this.pixel = pixel;
+		size = null;
+
+		return this;
+	}
+
+	/**
+	 * Exif などのメタデータを削除するかを設定する。
+	 *
+	 * @param strip
+	 *            削除する場合は true
+	 * @return
+	 */
+	public Rendition setStrip(boolean strip) {
+		this.strip = strip;
+
+		return this;
+	}
+
+	/**
+	 * 出力形式を設定する。
+	 *
+	 * @param format
+	 *            出力形式（jpg、png、webp など）
+	 * @return
+	 */
+	public Rendition setFormat(String format) {
+		this.format = format;
+
+		return this;
+	}
+
+	/**
+	 * 画質を設定する。
+	 *
+	 * @param quality
+	 *            画質（1 から 100）
+	 * @return
+	 */
+	public Rendition setQuality(int quality) {
+		this.quality = quality;
+
+		return this;
+	}
+
+	public File getDest() {
+		return dest;
+	}
+
+	/**
+	 * 妥当性を確認する。
+	 *
+	 * 次の条件に当てはまる場合は不適切と見なし <code>IllegalArgumentException</code> を生成する。
+	 *
+	 * <ul>
+	 * <li>生成先のファイルが null である</li>
+	 * <li>サムネイルサイズが [0-9]{1,}x[0-9]{1,} に当てはまっていない</li>
+	 * <li>基準とする「辺」のピクセルが 0 以下である</li>
+	 * <li>出力形式がブランク、もしくは、英数字以外を含んでいる</li>
+	 * <li>画質が 0 から 100 の範囲外である</li>
+	 * </ul>
+	 */
+	public void validate() {
+		Validator.validateDestFile(dest);
+		if (size != null) {
+			Validator.validateSize(size, "サムネイルサイズ");
+		}
+		if (side != null) {
+			Validator.validatePixel(pixel);
+		}
+		if (format != null) {
+			Validator.validateFormat(format);
+		}
+		if (quality < 0 || 100 < quality) {
+			throw new IllegalArgumentException("画質は 1 から 100 の値を指定してください。");
+		}
+	}
+
+	/**
+	 * convert コマンドのパラメータを追加する。
+	 *
+	 * 元画像を複製し、指定に従って加工して書き出した後、複製を破棄する。 元画像はデコードし直さない。
+	 *
+	 * @param command
+	 *            パラメータを追加するリスト
+	 * @param src
+	 *            生成元のファイル
+	 * @throws IOException
+	 *             元画像の読み込みに失敗した場合
+	 */
+	void appendTo(List<String> command, File src) throws IOException {
+		command.add("(");
+		command.add("+clone");
+		if (size != null) {
+			command.add("-thumbnail");
+			command.add(size);
+		}
+		if (side != null) {
+			command.add("-thumbnail");
+			command.add(AspectRatio.measure(src, side, pixel).toString());
+		}
+		if (strip) {
+			command.add("-strip");
+		}
+		if (quality != 0) {
+			command.add("-quality");
+			command.add(String.valueOf(quality));
+		}
+		command.add("-write");
+		command.add(format == null ? dest.getAbsolutePath() : String.format(
+				"%s:%s", format, dest.getAbsolutePath()));
+		command.add("+delete");
+		command.add(")");
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"dest:%s, size:%s, side:%s, pixel:%s, strip:%s, format:%s, quality:%s",
+				dest, size, side, pixel, strip, format, quality);
+	}
+
+}
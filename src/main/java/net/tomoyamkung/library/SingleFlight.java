@@ -0,0 +1,141 @@
+package net.tomoyamkung.library;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * 同じキーの処理が同時に要求された場合に、処理を 1 回だけ実行して結果を共有するクラス。
+ *
+ * 先に要求したスレッドが処理を実行し、実行中に同じキーで要求したスレッドはその完了を待って同じ結果（もしくは例外）を受け取る。
+ * 処理が完了した後の要求は改めて実行する。結果はキャッシュしない。
+ *
+ * @author tomoyamkung
+ *
+ * @param <K>
+ *            キーの型
+ * @param <V>
+ *            結果の型
+ */
+final class SingleFlight<K, V> {
+
+	/**
+	 * 実行する処理。
+	 */
+	interface Call<V> {
+
+		V call() throws IOException, InterruptedException;
+
+	}
+
+	/**
+	 * 実行中の処理のキーと結果を格納したマップ。
+	 */
+	private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+	/**
+	 * 処理を実行し、終了するまで待機する。
+	 *
+	 * @param key
+	 *            処理のキー
+	 * @param call
+	 *            実行する処理
+	 * @return 処理の結果
+	 * @throws IOException
+	 *             処理に失敗した場合
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合
+	 */
+	V execute(K key, Call<V> call) throws IOException, InterruptedException {
+		CompletableFuture<V> mine = new CompletableFuture<V>();
+		CompletableFuture<V> running = calls.putIfAbsent(key, mine);
+		if (running != null) {
+			try {
+				return running.get();
+			} catch (ExecutionException e) {
+				throw rethrow(e.getCause());
+			}
+		}
+
+		V result;
+		try {
+			result = call.call();
+		} catch (IOException | InterruptedException | RuntimeException
+				| Error e) {
+			calls.remove(key, mine);
+			mine.completeExceptionally(e);
+			throw e;
+		}
+		calls.remove(key, mine);
+		mine.complete(result);
+		return result;
+	}
+
+	/**
+	 * 処理を非同期に開始する。
+	 *
+	 * 同じキーの処理が実行中の場合は開始せず、その結果を受け取る <code>CompletableFuture</code>
+	 * を返す。返した <code>CompletableFuture</code> を取り消しても、共有している処理は取り消さない。
+	 *
+	 * @param key
+	 *            処理のキー
+	 * @param start
+	 *            処理を開始し、結果を受け取る <code>CompletableFuture</code> を返す処理
+	 * @return 処理の結果を受け取る <code>CompletableFuture</code>
+	 */
+	CompletableFuture<V> submit(K key, Supplier<CompletableFuture<V>> start) {
+		CompletableFuture<V> mine = new CompletableFuture<V>();
+		CompletableFuture<V> running = calls.putIfAbsent(key, mine);
+		if (running != null) {
+			return running.copy();
+		}
+
+		try {
+			start.get().whenComplete((result, e) -> {
+				calls.remove(key, mine);
+				if (e == null) {
+					mine.complete(result);
+				} else {
+					mine.completeExceptionally(e);
+				}
+			});
+		} catch (RuntimeException | Error e) {
+			calls.remove(key, mine);
+			mine.completeExceptionally(e);
+			throw e;
+		}
+		return mine.copy();
+	}
+
+	/**
+	 * 実行中の処理の数を取得する。
+	 *
+	 * @return 実行中の処理の数
+	 */
+	int getInFlightCount() {
+		return calls.size();
+	}
+
+	/**
+	 * 先に要求したスレッドで発生した例外を、待機していたスレッドで生成する。
+	 */
+	static IOException rethrow(Throwable cause) throws IOException {
+		if (cause instanceof IOException) {
+			throw (IOException) cause;
+		}
+		if (cause instanceof InterruptedException) {
+			throw new IOException("共有していた処理が中断されました。", cause);
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new IOException(cause);
+	}
+
+}
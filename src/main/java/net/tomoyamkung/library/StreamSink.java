@@ -0,0 +1,62 @@
+package net.tomoyamkung.library;
+
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * ImageMagick のコマンドの標準出力を転送する生成先を保持するクラス。
+ *
+ * ファイルに書き出さずに、レスポンスやアップロード先のストリームへそのまま書き込む場合に使用する。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class StreamSink {
+
+	/**
+	 * 生成した画像を書き込むチャネル。
+	 */
+	private final WritableByteChannel channel;
+
+	private StreamSink(WritableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * <code>OutputStream</code> から生成先を作成する。
+	 *
+	 * ストリームは閉じない。
+	 *
+	 * @param out
+	 *            生成した画像を書き込むストリーム
+	 * @return <code>StreamSink</code> オブジェクト
+	 */
+	public static StreamSink of(OutputStream out) {
+		if (out == null) {
+			throw new IllegalArgumentException("dest may not be specified.");
+		}
+		return new StreamSink(Channels.newChannel(out));
+	}
+
+	/**
+	 * <code>WritableByteChannel</code> から生成先を作成する。
+	 *
+	 * チャネルは閉じない。
+	 *
+	 * @param channel
+	 *            生成した画像を書き込むチャネル
+	 * @return <code>StreamSink</code> オブジェクト
+	 */
+	public static StreamSink of(WritableByteChannel channel) {
+		if (channel == null) {
+			throw new IllegalArgumentException("dest may not be specified.");
+		}
+		return new StreamSink(channel);
+	}
+
+	WritableByteChannel getChannel() {
+		return channel;
+	}
+
+}
@@ -0,0 +1,117 @@
+package net.tomoyamkung.library;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * ImageMagick のコマンドの標準入力に転送する生成元の画像を保持するクラス。
+ *
+ * ファイルに書き出さずに、メモリ上の画像や受信中のリクエストボディをそのまま生成元として指定する場合に使用する。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class StreamSource {
+
+	/**
+	 * 生成元の画像を読み込むチャネル。
+	 */
+	private final ReadableByteChannel channel;
+
+	private StreamSource(ReadableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * <code>InputStream</code> から生成元を作成する。
+	 *
+	 * ストリームは最後まで読み込むが、閉じない。
+	 *
+	 * @param in
+	 *            生成元の画像を読み込むストリーム
+	 * @return <code>StreamSource</code> オブジェクト
+	 */
+	public static StreamSource of(InputStream in) {
+		if (in == null) {
+			throw new IllegalArgumentException("src may not be specified.");
+		}
+		return new StreamSource(Channels.newChannel(in));
+	}
+
+	/**
+	 * <code>ByteBuffer</code> から生成元を作成する。
+	 *
+	 * position から limit までを生成元とする。 <code>buffer</code> の position と limit は変更しない。
+	 *
+	 * @param buffer
+	 *            生成元の画像を格納したバッファ
+	 * @return <code>StreamSource</code> オブジェクト
+	 */
+	public static StreamSource of(ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new IllegalArgumentException("src may not be specified.");
+		}
+		return new StreamSource(new ByteBufferChannel(buffer.duplicate()));
+	}
+
+	/**
+	 * <code>ReadableByteChannel</code> から生成元を作成する。
+	 *
+	 * チャネルは最後まで読み込むが、閉じない。
+	 *
+	 * @param channel
+	 *            生成元の画像を読み込むチャネル
+	 * @return <code>StreamSource</code> オブジェクト
+	 */
+	public static StreamSource of(ReadableByteChannel channel) {
+		if (channel == null) {
+			throw new IllegalArgumentException("src may not be specified.");
+		}
+		return new StreamSource(channel);
+	}
+
+	ReadableByteChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * <code>ByteBuffer</code> の内容を読み込むチャネル。
+	 */
+	static class ByteBufferChannel implements ReadableByteChannel {
+
+		private final ByteBuffer buffer;
+
+		private boolean open = true;
+
+		ByteBufferChannel(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int length = Math.min(dst.remaining(), buffer.remaining());
+			ByteBuffer slice = buffer.slice();
+			slice.limit(length);
+			dst.put(slice);
+			buffer.position(buffer.position() + length);
+			return length;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() {
+			open = false;
+		}
+
+	}
+
+}
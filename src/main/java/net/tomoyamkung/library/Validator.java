@@ -2,8 +2,11 @@ package net.tomoyamkung.library;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 
-import net.tomoyamkung.library.util.IntegerUtil;
+import net.tomoyamkung.library.size.Geometry;
+import net.tomoyamkung.library.size.HeaderScanner;
+import net.tomoyamkung.library.size.ImageHeader;
 import net.tomoyamkung.library.util.StringUtil;
 
 public class Validator {
@@ -52,6 +55,35 @@ public class Validator {
 		}
 	}
 
+	/**
+	 * 生成元の画像の画素数の妥当性を確認する。
+	 * 
+	 * 画像は読み込まず、<code>HeaderScanner</code> でヘッダのみを読む。
+	 * 次の条件に当てはまる場合は不適切と見なし <code>IllegalArgumentException</code> を生成する。
+	 * 
+	 * <ul>
+	 * <li>画素数（幅 × 高さ × フレーム数）が上限を超えている</li>
+	 * </ul>
+	 * 
+	 * @param src
+	 *            生成元のファイル
+	 * @param maxPixels
+	 *            画素数の上限
+	 * @return ヘッダから読み取った情報
+	 * @throws IOException
+	 *             ヘッダの読み込みに失敗した場合
+	 */
+	public static ImageHeader validateSrcPixels(File src, long maxPixels)
+			throws IOException {
+		ImageHeader header = HeaderScanner.scan(src);
+		if ((long) header.getWidth() * header.getHeight()
+				* header.getFrameCount() > maxPixels) {
+			throw new IllegalArgumentException(String.format(
+					"src は %s 画素以下の画像を指定してください。 %s", maxPixels, header));
+		}
+		return header;
+	}
+
 	/**
 	 * 生成先ファイルの妥当性を確認する。
 	 * 
@@ -78,7 +110,8 @@ public class Validator {
 	 * <ul>
 	 * <li>null である</li>
 	 * <li>ブランクである</li>
-	 * <li>[0-9]{1,}x[0-9]{1,} に当てはまっていない</li>
+	 * <li>[0-9]{1,}x[0-9]{1,} に当てはまっていない（区切りに大文字の X を使用している場合を含む）</li>
+	 * <li>幅、もしくは、高さが int の範囲を超えている</li>
 	 * </ul>
 	 * 
 	 * @param size
@@ -91,10 +124,12 @@ public class Validator {
 					"%s may not be specified.", keyword));
 		}
 	
-		String regexp = "[0-9]{1,}x[0-9]{1,}";
-		if (!size.matches(regexp)) {
+		// Geometry は ImageMagick と同じく大文字の X も区切りとして受け付ける
+		Geometry geometry = size.indexOf('X') < 0 ? Geometry.tryParse(size)
+				: null;
+		if (geometry == null || !geometry.isSize()) {
 			throw new IllegalArgumentException(String.format(
-					"%s は %s で指定してください。", keyword, regexp));
+					"%s は %s で指定してください。", keyword, "[0-9]{1,}x[0-9]{1,}"));
 		}
 	}
 
@@ -110,10 +145,60 @@ public class Validator {
 	 * @param pixel ピクセル
 	 */
 	public static void validatePixel(int pixel) {
-		if(IntegerUtil.isLessThanOrEqual(String.valueOf(pixel), 0)) {
+		if (pixel <= 0) {
 			throw new IllegalArgumentException("ピクセルは 1 以上の値を指定してください。");
 		}
 		
 	}
 
+	/**
+	 * 制限時間の妥当性を確認する。
+	 * 
+	 * 次の条件に当てはまる場合は不適切と見なし <code>IllegalArgumentException</code> を生成する。
+	 * 
+	 * <ul>
+	 * <li>値が負である</li>
+	 * </ul>
+	 * 
+	 * @param timeout 制限時間。0 の場合は制限しない
+	 */
+	public static void validateTimeout(long timeout) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("制限時間は 0 以上の値を指定してください。");
+		}
+	}
+
+	/**
+	 * 出力形式の妥当性を確認する。
+	 * 
+	 * 次の条件に当てはまる場合は不適切と見なし <code>IllegalArgumentException</code> を生成する。
+	 * 
+	 * <ul>
+	 * <li>null である</li>
+	 * <li>ブランクである</li>
+	 * <li>英数字以外を含んでいる</li>
+	 * </ul>
+	 * 
+	 * @param format 出力形式（jpg、png、webp など）
+	 */
+	public static void validateFormat(String format) {
+		if (StringUtil.isNullOrEmpty(format) || !isAlphanumeric(format)) {
+			throw new IllegalArgumentException("出力形式は英数字で指定してください。");
+		}
+	}
+
+	/**
+	 * 英数字のみで構成されているかを判定する。
+	 */
+	private static boolean isAlphanumeric(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (!('0' <= c && c <= '9') && !('a' <= c && c <= 'z')
+					&& !('A' <= c && c <= 'Z')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 }
@@ -0,0 +1,384 @@
+package net.tomoyamkung.library.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * 作成した画像をディスクに保存し、同じ生成元と同じ操作の結果を再利用するキャッシュ。
+ *
+ * キーは生成元のファイルの内容のダイジェストと、正規化した操作を表す文字列から作成する。
+ * ファイル名や更新日時ではなく内容で判断するため、同じ画像を別名で登録し直した場合もヒットする。
+ *
+ * 保存したファイルの合計サイズが上限を超えた場合は、最も長く使われていないものから削除する。
+ * 使われた順序はファイルの更新日時に記録するため、作り直した場合も引き継がれる。
+ * 保存先のディレクトリにあるキーの形式（ダイジェストの 16 進数表記）ではないファイルは、登録も削除もしない。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class RenditionCache {
+
+	/**
+	 * 内容のダイジェストを計算するアルゴリズム。
+	 */
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	/**
+	 * 保存中のファイルに付ける拡張子。
+	 */
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * 保存中のファイルの名前の接頭辞。
+	 */
+	private static final String TEMP_PREFIX = "rendition";
+
+	/**
+	 * キーの形式。SHA-256 のダイジェストの 16 進数表記とする。
+	 */
+	private static final Pattern KEY = Pattern.compile("[0-9a-f]{64}");
+
+	/**
+	 * 保存先のディレクトリ。
+	 */
+	private final File dir;
+
+	/**
+	 * 保存するファイルの合計サイズの上限（バイト）。
+	 */
+	private final long maxBytes;
+
+	/**
+	 * 生成先のファイルをハードリンクで作成するか。
+	 */
+	private final boolean hardLink;
+
+	/**
+	 * キーとファイルサイズ。使われた順に並べる。
+	 */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(
+			16, 0.75f, true);
+
+	/**
+	 * 保存しているファイルの合計サイズ（バイト）。
+	 */
+	private long totalBytes;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * 生成先のファイルはコピーして作成する。
+	 *
+	 * @param dir
+	 *            保存先のディレクトリ
+	 * @param maxBytes
+	 *            保存するファイルの合計サイズの上限（バイト）
+	 * @throws IOException
+	 *             保存先のディレクトリを作成できなかった場合
+	 */
+	public RenditionCache(File dir, long maxBytes) throws IOException {
+		this(dir, maxBytes, false);
+	}
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * 保存先のディレクトリに保存済みのファイルがある場合は、更新日時の順に読み込む。
+	 * 名前がキーの形式ではないファイルは読み込まず、上限を超えた場合も削除しない。
+	 *
+	 * @param dir
+	 *            保存先のディレクトリ
+	 * @param maxBytes
+	 *            保存するファイルの合計サイズの上限（バイト）
+	 * @param hardLink
+	 *            生成先のファイルをハードリンクで作成する場合は true。
+	 *            生成先のファイルを書き換えるとキャッシュも書き換わるため、書き換えない場合のみ指定する
+	 * @throws IOException
+	 *             保存先のディレクトリを作成できなかった場合
+	 */
+	public RenditionCache(File dir, long maxBytes, boolean hardLink)
+			throws IOException {
+		if (dir == null) {
+			throw new IllegalArgumentException("dir may not be specified.");
+		}
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException(
+					"maxBytes は 1 以上の値を指定してください。");
+		}
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		this.hardLink = hardLink;
+
+		Files.createDirectories(dir.toPath());
+		File[] files = dir.listFiles();
+		if (files != null) {
+			Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+			for (File file : files) {
+				String name = file.getName();
+				if (name.startsWith(TEMP_PREFIX) && name.endsWith(TEMP_SUFFIX)) {
+					// 保存中に終了した場合の残骸
+					file.delete();
+					continue;
+				}
+				if (!file.isFile() || !KEY.matcher(name).matches()) {
+					continue;
+				}
+				entries.put(name, file.length());
+				totalBytes += file.length();
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * キーを作成する。
+	 *
+	 * @param srcFiles
+	 *            生成元のファイル。順序もキーに含める
+	 * @param operation
+	 *            正規化した操作を表す文字列
+	 * @return キー
+	 * @throws IOException
+	 *             生成元のファイルの読み込みに失敗した場合
+	 */
+	public static String createKey(List<File> srcFiles, String operation)
+			throws IOException {
+		MessageDigest digest = newDigest();
+		byte[] chunk = new byte[8192];
+		for (File src : srcFiles) {
+			try (InputStream in = Files.newInputStream(src.toPath())) {
+				int read;
+				while ((read = in.read(chunk)) != -1) {
+					digest.update(chunk, 0, read);
+				}
+			}
+			// ファイルの境界をキーに含める
+			digest.update((byte) 0);
+		}
+		digest.update(operation.getBytes(StandardCharsets.UTF_8));
+
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(String.format("%02x", b));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * 保存したファイルから生成先のファイルを作成する。
+	 *
+	 * @param key
+	 *            キー。<code>createKey</code> で作成したものを指定する
+	 * @param dest
+	 *            生成先のファイル
+	 * @return 保存したファイルがあった場合は true
+	 * @throws IOException
+	 *             生成先のファイルの作成に失敗した場合
+	 */
+	public boolean get(String key, File dest) throws IOException {
+		validateKey(key);
+		File cached = new File(dir, key);
+		synchronized (entries) {
+			if (entries.get(key) == null) {
+				missCount.incrementAndGet();
+				return false;
+			}
+			cached.setLastModified(System.currentTimeMillis());
+		}
+
+		try {
+			copy(cached, dest);
+		} catch (IOException e) {
+			// 削除された場合は作り直す
+			if (cached.exists()) {
+				throw e;
+			}
+			remove(key);
+			missCount.incrementAndGet();
+			return false;
+		}
+		hitCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * 作成したファイルを保存する。
+	 *
+	 * 合計サイズが上限を超えた場合は、最も長く使われていないものから削除する。 上限より大きいファイルは保存しない。
+	 *
+	 * @param key
+	 *            キー。<code>createKey</code> で作成したものを指定する
+	 * @param rendered
+	 *            作成したファイル
+	 * @throws IOException
+	 *             保存に失敗した場合
+	 */
+	public void put(String key, File rendered) throws IOException {
+		validateKey(key);
+		long length = rendered.length();
+		if (length > maxBytes) {
+			return;
+		}
+
+		File temp = File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, dir);
+		try {
+			Files.copy(rendered.toPath(), temp.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			Files.move(temp.toPath(), new File(dir, key).toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temp.delete();
+		}
+
+		synchronized (entries) {
+			Long previous = entries.put(key, length);
+			totalBytes += length - (previous == null ? 0 : previous);
+			evict();
+		}
+	}
+
+	/**
+	 * キーの妥当性を確認する。
+	 *
+	 * <code>createKey</code> で作成した形式ではない場合は <code>IllegalArgumentException</code>
+	 * を生成する。
+	 */
+	private static void validateKey(String key) {
+		if (key == null || !KEY.matcher(key).matches()) {
+			throw new IllegalArgumentException(String.format(
+					"key は createKey で作成したものを指定してください。 key:%s", key));
+		}
+	}
+
+	/**
+	 * 保存したファイルの合計サイズが上限を超えている間、最も長く使われていないものを削除する。
+	 */
+	private void evict() {
+		synchronized (entries) {
+			Iterator<Map.Entry<String, Long>> iterator = entries.entrySet()
+					.iterator();
+			while (totalBytes > maxBytes && iterator.hasNext()) {
+				Map.Entry<String, Long> eldest = iterator.next();
+				iterator.remove();
+				totalBytes -= eldest.getValue();
+				new File(dir, eldest.getKey()).delete();
+				evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+	private void remove(String key) {
+		synchronized (entries) {
+			Long length = entries.remove(key);
+			if (length != null) {
+				totalBytes -= length;
+			}
+		}
+	}
+
+	/**
+	 * 保存したファイルから生成先のファイルを作成する。
+	 *
+	 * ハードリンクを作成できない場合（別のファイルシステムなど）はコピーする。
+	 */
+	private void copy(File cached, File dest) throws IOException {
+		if (hardLink) {
+			Files.deleteIfExists(dest.toPath());
+			try {
+				Files.createLink(dest.toPath(), cached.toPath());
+				return;
+			} catch (IOException | UnsupportedOperationException e) {
+				// コピーする
+			}
+		}
+		Files.copy(cached.toPath(), dest.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * ヒットした回数を取得する。
+	 *
+	 * @return ヒットした回数
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * ヒットしなかった回数を取得する。
+	 *
+	 * @return ヒットしなかった回数
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * 上限を超えたため削除した回数を取得する。
+	 *
+	 * @return 削除した回数
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * 保存しているファイルの数を取得する。
+	 *
+	 * @return 保存しているファイルの数
+	 */
+	public int getEntryCount() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * 保存しているファイルの合計サイズを取得する。
+	 *
+	 * @return 合計サイズ（バイト）
+	 */
+	public long getTotalBytes() {
+		synchronized (entries) {
+			return totalBytes;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"dir:%s, entries:%s, totalBytes:%s, hit:%s, miss:%s, eviction:%s",
+				dir, getEntryCount(), getTotalBytes(), getHitCount(),
+				getMissCount(), getEvictionCount());
+	}
+
+}
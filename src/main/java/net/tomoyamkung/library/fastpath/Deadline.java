@@ -0,0 +1,60 @@
+package net.tomoyamkung.library.fastpath;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.tomoyamkung.library.process.ProcessTimeoutException;
+
+/**
+ * JVM 内で行う処理の制限時間を表すクラス。
+ *
+ * 子プロセスと異なり途中で強制終了できないため、処理の区切りごとに <code>check</code> で確認する。
+ *
+ * @author tomoyamkung
+ *
+ */
+final class Deadline {
+
+	/**
+	 * 実行しているコマンドの表記。
+	 */
+	private final List<String> command;
+
+	/**
+	 * 制限時間（ミリ秒）。0 の場合は制限しない。
+	 */
+	private final long timeoutMillis;
+
+	/**
+	 * 開始した時刻（ナノ秒）。
+	 */
+	private final long start = System.nanoTime();
+
+	Deadline(List<String> command, long timeoutMillis) {
+		this.command = command;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * 制限時間を過ぎていないかを確認する。
+	 *
+	 * @throws ProcessTimeoutException
+	 *             制限時間を過ぎている場合
+	 */
+	void check() throws ProcessTimeoutException {
+		if (timeoutMillis > 0
+				&& elapsedNanos() > TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+			throw new ProcessTimeoutException(command, timeoutMillis);
+		}
+	}
+
+	/**
+	 * 開始してからの経過時間を取得する。
+	 *
+	 * @return 経過時間（ナノ秒）
+	 */
+	long elapsedNanos() {
+		return System.nanoTime() - start;
+	}
+
+}
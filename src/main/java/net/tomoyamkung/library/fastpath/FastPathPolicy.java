@@ -0,0 +1,236 @@
+package net.tomoyamkung.library.fastpath;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import net.tomoyamkung.library.size.ColorModel;
+import net.tomoyamkung.library.size.ImageHeader;
+import net.tomoyamkung.library.size.Size;
+
+/**
+ * 子プロセスを起動せずに <code>JavaImageEngine</code> で処理する操作を選ぶ条件を保持するクラス。
+ *
+ * 小さな画像では ImageMagick の起動が処理時間の大半を占めるため、次の条件を全て満たす操作は JVM 内で処理する。
+ *
+ * <ul>
+ * <li><code>setEnabled(true)</code> を指定している</li>
+ * <li>生成元と生成先の拡張子が対象の形式に含まれる</li>
+ * <li>生成元の画素数（幅 × 高さ）が上限以下である</li>
+ * <li>生成元の色の表し方が RGB である（グレースケールやインデックスカラーは RGB で書き出すことになるため処理しない）</li>
+ * <li>縮小、もしくは、大きさを変えない操作である</li>
+ * <li>縮小の場合、生成元が ICC プロファイルを含まない（<code>-thumbnail</code> はプロファイルを残すが、JVM
+ * 内の処理では残せないため）</li>
+ * </ul>
+ *
+ * @author tomoyamkung
+ *
+ */
+public class FastPathPolicy {
+
+	/**
+	 * 生成元の画素数の上限の既定値。
+	 */
+	public static final long DEFAULT_MAX_PIXELS = 1000 * 1000;
+
+	/**
+	 * JPEG で書き出す際の品質の既定値。ImageMagick の既定値と同じ値とする。
+	 */
+	public static final int DEFAULT_JPEG_QUALITY = 92;
+
+	/**
+	 * JVM 内で処理するか。
+	 */
+	private boolean enabled;
+
+	/**
+	 * 生成元の画素数の上限。
+	 */
+	private long maxPixels = DEFAULT_MAX_PIXELS;
+
+	/**
+	 * 対象の形式（小文字の拡張子）。
+	 */
+	private Set<String> formats = new LinkedHashSet<String>(Arrays.asList(
+			"jpg", "jpeg", "png"));
+
+	/**
+	 * JPEG で書き出す際の品質（1 から 100）。
+	 */
+	private int jpegQuality = DEFAULT_JPEG_QUALITY;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * JVM 内で処理するかを設定する。既定値は false。
+	 *
+	 * @param enabled
+	 *            処理する場合は true
+	 * @return このオブジェクト
+	 */
+	public FastPathPolicy setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		return this;
+	}
+
+	public long getMaxPixels() {
+		return maxPixels;
+	}
+
+	/**
+	 * 生成元の画素数の上限を設定する。
+	 *
+	 * @param maxPixels
+	 *            画素数（幅 × 高さ）の上限
+	 * @return このオブジェクト
+	 */
+	public FastPathPolicy setMaxPixels(long maxPixels) {
+		this.maxPixels = maxPixels;
+		return this;
+	}
+
+	public Set<String> getFormats() {
+		return Collections.unmodifiableSet(formats);
+	}
+
+	/**
+	 * 対象の形式を設定する。
+	 *
+	 * @param formats
+	 *            拡張子（<code>jpg</code>、<code>png</code> など）。javax.imageio
+	 *            で読み書きできる形式を指定する
+	 * @return このオブジェクト
+	 */
+	public FastPathPolicy setFormats(String... formats) {
+		Set<String> set = new LinkedHashSet<String>();
+		if (formats != null) {
+			for (String format : formats) {
+				set.add(format == null ? null : format.toLowerCase(Locale.ROOT));
+			}
+		}
+		this.formats = set;
+		return this;
+	}
+
+	public int getJpegQuality() {
+		return jpegQuality;
+	}
+
+	/**
+	 * JPEG で書き出す際の品質を設定する。
+	 *
+	 * @param jpegQuality
+	 *            品質（1 から 100）
+	 * @return このオブジェクト
+	 */
+	public FastPathPolicy setJpegQuality(int jpegQuality) {
+		this.jpegQuality = jpegQuality;
+		return this;
+	}
+
+	/**
+	 * 指定内容の妥当性を確認する。
+	 *
+	 * @throws IllegalArgumentException
+	 *             指定内容に誤りがある場合
+	 */
+	public void validate() {
+		if (maxPixels < 1) {
+			throw new IllegalArgumentException(
+					"maxPixels は 1 以上の値を指定してください。");
+		}
+		if (formats.isEmpty() || formats.contains(null)) {
+			throw new IllegalArgumentException("formats may not be specified.");
+		}
+		if (jpegQuality < 1 || 100 < jpegQuality) {
+			throw new IllegalArgumentException(
+					"jpegQuality は 1 から 100 の値を指定してください。");
+		}
+	}
+
+	/**
+	 * 大きさを変える操作を JVM 内で処理するかを判定する。
+	 *
+	 * @param src
+	 *            生成元のファイル
+	 * @param dest
+	 *            生成先のファイル
+	 * @param header
+	 *            生成元のヘッダから読み取った情報
+	 * @param destSize
+	 *            生成先の大きさ
+	 * @return 処理する場合は true
+	 */
+	public boolean acceptsResize(File src, File dest, ImageHeader header,
+			Size destSize) {
+		Size srcSize = header.getSize();
+		return accepts(src, dest, header) && !header.hasIccProfile()
+				&& destSize.getWidth() >= 1
+				&& destSize.getHeight() >= 1
+				&& destSize.getWidth() <= srcSize.getWidth()
+				&& destSize.getHeight() <= srcSize.getHeight();
+	}
+
+	/**
+	 * メタデータを削除する操作を JVM 内で処理するかを判定する。
+	 *
+	 * <code>-strip</code> は ICC プロファイルも削除するため、ICC プロファイルを含む場合も処理する。
+	 *
+	 * @param src
+	 *            生成元のファイル
+	 * @param dest
+	 *            生成先のファイル
+	 * @param header
+	 *            生成元のヘッダから読み取った情報
+	 * @return 処理する場合は true
+	 */
+	public boolean acceptsStrip(File src, File dest, ImageHeader header) {
+		return accepts(src, dest, header);
+	}
+
+	/**
+	 * 生成元と生成先の形式が JVM 内で処理する対象かを判定する。
+	 *
+	 * 生成元のヘッダを読む前に拡張子だけで判定し、対象外の形式のヘッダを読まないようにする。
+	 *
+	 * @param src
+	 *            生成元のファイル
+	 * @param dest
+	 *            生成先のファイル
+	 * @return 対象の場合は true
+	 */
+	public boolean acceptsFormats(File src, File dest) {
+		return enabled && formats.contains(extensionOf(src))
+				&& formats.contains(extensionOf(dest));
+	}
+
+	private boolean accepts(File src, File dest, ImageHeader header) {
+		return acceptsFormats(src, dest)
+				&& header.getColorModel() == ColorModel.rgb
+				&& (long) header.getWidth() * header.getHeight() <= maxPixels;
+	}
+
+	/**
+	 * ファイルの拡張子を小文字で取得する。
+	 *
+	 * @return 拡張子。ない場合は空文字
+	 */
+	static String extensionOf(File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"enabled:%s, maxPixels:%s, formats:%s, jpegQuality:%s",
+				enabled, maxPixels, formats, jpegQuality);
+	}
+
+}
@@ -0,0 +1,291 @@
+package net.tomoyamkung.library.fastpath;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import net.tomoyamkung.library.process.ProcessResult;
+import net.tomoyamkung.library.process.ProcessTimeoutException;
+import net.tomoyamkung.library.size.Size;
+
+/**
+ * 子プロセスを起動せずに javax.imageio で画像を縮小、もしくは、メタデータを削除するクラス。
+ *
+ * 計測値やログには convert コマンドに似た形式の表記（コマンドパスは <code>COMMAND</code>）を使用する。
+ * 表記は処理の内容を表すだけで、ImageMagick のコマンドとしては実行できない。
+ *
+ * <pre>
+ * java:imageio src -thumbnail WxH -quality 92 dest
+ * java:imageio src -strip -quality 92 dest
+ * </pre>
+ *
+ * 縮小は半分ずつバイリニア補間で縮小を繰り返し（2x2 画素の平均と同じ）、最後に指定の大きさへバイリニア補間で縮小する。
+ * 一度に大きく縮小する場合に生じるエイリアシングを抑え、ImageMagick の <code>-thumbnail</code>
+ * と見た目が変わらない品質とする。 書き出す画像にはメタデータを含めない。
+ *
+ * @author tomoyamkung
+ *
+ */
+public final class JavaImageEngine {
+
+	/**
+	 * このクラスの処理を表す表記のコマンドパス。
+	 */
+	public static final String COMMAND = "java:imageio";
+
+	private JavaImageEngine() {
+	}
+
+	/**
+	 * 縮小する処理の表記を作成する。
+	 *
+	 * @param src
+	 *            生成元のファイル
+	 * @param size
+	 *            生成先の大きさ
+	 * @param jpegQuality
+	 *            JPEG で書き出す際の品質
+	 * @param dest
+	 *            生成先のファイル
+	 * @return コマンドパスとパラメータを格納したリスト
+	 */
+	public static List<String> thumbnailCommand(File src, Size size,
+			int jpegQuality, File dest) {
+		return Arrays.asList(COMMAND, src.getAbsolutePath(), "-thumbnail",
+				size.toString(), "-quality", String.valueOf(jpegQuality),
+				dest.getAbsolutePath());
+	}
+
+	/**
+	 * メタデータを削除する処理の表記を作成する。
+	 *
+	 * @param src
+	 *            生成元のファイル
+	 * @param jpegQuality
+	 *            JPEG で書き出す際の品質
+	 * @param dest
+	 *            生成先のファイル
+	 * @return コマンドパスとパラメータを格納したリスト
+	 */
+	public static List<String> stripCommand(File src, int jpegQuality,
+			File dest) {
+		return Arrays.asList(COMMAND, src.getAbsolutePath(), "-strip",
+				"-quality", String.valueOf(jpegQuality), dest.getAbsolutePath());
+	}
+
+	/**
+	 * 画像を縮小する。
+	 *
+	 * @param src
+	 *            生成元のファイル
+	 * @param size
+	 *            生成先の大きさ
+	 * @param jpegQuality
+	 *            JPEG で書き出す際の品質
+	 * @param dest
+	 *            生成先のファイル
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない。 読み込み、縮小の各段階、書き出しの前に確認する
+	 * @return 実行結果。標準出力と標準エラー出力は空とする
+	 * @throws UnsupportedImageException
+	 *             javax.imageio で読み書きできない画像の場合
+	 * @throws ProcessTimeoutException
+	 *             制限時間を過ぎた場合。生成先には書き出さない
+	 * @throws IOException
+	 *             画像の読み書きに失敗した場合
+	 */
+	public static ProcessResult thumbnail(File src, Size size,
+			int jpegQuality, File dest, long timeoutMillis) throws IOException {
+		List<String> command = thumbnailCommand(src, size, jpegQuality, dest);
+		Deadline deadline = new Deadline(command, timeoutMillis);
+		BufferedImage image = read(src);
+		deadline.check();
+		image = downscale(image, size.getWidth(), size.getHeight(), deadline);
+		write(image, dest, jpegQuality);
+		return new ProcessResult(command, 0, new byte[0], new byte[0], 0,
+				deadline.elapsedNanos());
+	}
+
+	/**
+	 * 画像を読み込み、メタデータを含めずに書き出す。
+	 *
+	 * @param src
+	 *            生成元のファイル
+	 * @param jpegQuality
+	 *            JPEG で書き出す際の品質
+	 * @param dest
+	 *            生成先のファイル
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない。 読み込みの後に確認する
+	 * @return 実行結果。標準出力と標準エラー出力は空とする
+	 * @throws UnsupportedImageException
+	 *             javax.imageio で読み書きできない画像の場合
+	 * @throws ProcessTimeoutException
+	 *             制限時間を過ぎた場合。生成先には書き出さない
+	 * @throws IOException
+	 *             画像の読み書きに失敗した場合
+	 */
+	public static ProcessResult strip(File src, int jpegQuality, File dest,
+			long timeoutMillis) throws IOException {
+		List<String> command = stripCommand(src, jpegQuality, dest);
+		Deadline deadline = new Deadline(command, timeoutMillis);
+		BufferedImage image = read(src);
+		deadline.check();
+		write(image, dest, jpegQuality);
+		return new ProcessResult(command, 0, new byte[0], new byte[0], 0,
+				deadline.elapsedNanos());
+	}
+
+	/**
+	 * 画像を読み込む。
+	 */
+	private static BufferedImage read(File src) throws IOException {
+		BufferedImage image;
+		try {
+			image = ImageIO.read(src);
+		} catch (IIOException e) {
+			// CMYK の JPEG など、読み込みに対応していない画像
+			throw new UnsupportedImageException(String.format(
+					"%s を読み込めません。", src), e);
+		}
+		if (image == null) {
+			throw new UnsupportedImageException(String.format(
+					"%s に対応する ImageReader がありません。", src));
+		}
+		return image;
+	}
+
+	/**
+	 * 画像を縮小する。
+	 *
+	 * 指定の大きさの 2 倍以上ある間は半分ずつ縮小し、最後に指定の大きさへ縮小する。
+	 *
+	 * @param image
+	 *            縮小する画像
+	 * @param width
+	 *            縮小後の幅
+	 * @param height
+	 *            縮小後の高さ
+	 * @return 縮小した画像
+	 */
+	public static BufferedImage downscale(BufferedImage image, int width,
+			int height) {
+		try {
+			return downscale(image, width, height, new Deadline(
+					Collections.<String> emptyList(), 0));
+		} catch (ProcessTimeoutException e) {
+			// 制限時間を指定していないため発生しない
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 画像を縮小する。 半分ずつ縮小するごとに制限時間を確認する。
+	 */
+	private static BufferedImage downscale(BufferedImage image, int width,
+			int height, Deadline deadline) throws ProcessTimeoutException {
+		if (width < 1 || height < 1 || width > image.getWidth()
+				|| height > image.getHeight()) {
+			throw new IllegalArgumentException(String.format(
+					"%sx%s から %sx%s には縮小できません。", image.getWidth(),
+					image.getHeight(), width, height));
+		}
+		int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB
+				: BufferedImage.TYPE_INT_RGB;
+		BufferedImage current = image;
+		int w = image.getWidth();
+		int h = image.getHeight();
+		do {
+			w = w / 2 >= width ? w / 2 : width;
+			h = h / 2 >= height ? h / 2 : height;
+			current = scale(current, w, h, type);
+			deadline.check();
+		} while (w != width || h != height);
+		return current;
+	}
+
+	private static BufferedImage scale(BufferedImage image, int width,
+			int height, int type) {
+		BufferedImage scaled = new BufferedImage(width, height, type);
+		Graphics2D g = scaled.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+					RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING,
+					RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		return scaled;
+	}
+
+	/**
+	 * 画像を生成先の拡張子の形式で書き出す。
+	 *
+	 * JPEG の場合はアルファチャンネルを除き、品質を指定する。
+	 */
+	private static void write(BufferedImage image, File dest, int jpegQuality)
+			throws IOException {
+		String extension = FastPathPolicy.extensionOf(dest);
+		Iterator<ImageWriter> writers = ImageIO
+				.getImageWritersBySuffix(extension);
+		if (!writers.hasNext()) {
+			throw new UnsupportedImageException(String.format(
+					"%s に対応する ImageWriter がありません。", dest));
+		}
+		ImageWriter writer = writers.next();
+		boolean jpeg = extension.equals("jpg") || extension.equals("jpeg");
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		if (jpeg) {
+			image = dropAlpha(image);
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(jpegQuality / 100f);
+		}
+
+		// ImageIO#createImageOutputStream(File) は既存のファイルを切り詰めないため使用しない
+		try (OutputStream file = Files.newOutputStream(dest.toPath());
+				ImageOutputStream out = new MemoryCacheImageOutputStream(file)) {
+			writer.setOutput(out);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+	}
+
+	/**
+	 * アルファチャンネルを除いた画像を作成する。
+	 *
+	 * ImageMagick と同じく、合成はせずに色の値をそのまま残す。
+	 */
+	private static BufferedImage dropAlpha(BufferedImage image) {
+		if (!image.getColorModel().hasAlpha()
+				&& image.getType() != BufferedImage.TYPE_CUSTOM) {
+			return image;
+		}
+		int width = image.getWidth();
+		int height = image.getHeight();
+		BufferedImage rgb = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		rgb.setRGB(0, 0, width, height, image.getRGB(0, 0, width, height,
+				null, 0, width), 0, width);
+		return rgb;
+	}
+
+}
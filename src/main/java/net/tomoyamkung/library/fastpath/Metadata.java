@@ -0,0 +1,36 @@
+package net.tomoyamkung.library.fastpath;
+
+/**
+ * <code>MetadataStripper</code> が削除するメタデータの種類を表すクラス。
+ *
+ * @author tomoyamkung
+ *
+ */
+public enum Metadata {
+
+	/**
+	 * Exif。JPEG の APP1（Exif）と APP2（FPXR）、PNG の eXIf チャンク。
+	 */
+	exif,
+
+	/**
+	 * XMP。JPEG の APP1（XMP と拡張 XMP）、PNG の iTXt チャンク（キーワードが XML:com.adobe.xmp）。
+	 */
+	xmp,
+
+	/**
+	 * ICC プロファイル。JPEG の APP2（ICC_PROFILE）、PNG の iCCP チャンク。
+	 */
+	icc,
+
+	/**
+	 * IPTC などの Photoshop の情報。JPEG の APP13。
+	 */
+	iptc,
+
+	/**
+	 * コメントとテキスト。JPEG の COM、PNG の tEXt、zTXt、iTXt チャンク。
+	 */
+	comment;
+
+}
@@ -0,0 +1,440 @@
+package net.tomoyamkung.library.fastpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import net.tomoyamkung.library.process.ProcessResult;
+import net.tomoyamkung.library.process.ProcessTimeoutException;
+
+/**
+ * 画像を再エンコードせずにメタデータを削除するクラス。
+ *
+ * JPEG はセグメント、PNG はチャンク単位で、削除するメタデータ以外をそのままの内容で複製する。 複製は
+ * <code>FileChannel#transferTo</code> で連続する範囲ごとに行うため、画素のデコードもメモリへの読み込みも行わない。
+ * JPEG の SOS（スキャンの開始）以降と PNG の IEND 以降は内容を確認せずに複製する。
+ *
+ * 計測値やログには convert コマンドに似た形式の表記（コマンドパスは <code>COMMAND</code>）を使用する。
+ * 表記は処理の内容を表すだけで、ImageMagick のコマンドとしては実行できない。
+ *
+ * <pre>
+ * java:strip src -strip exif,xmp,icc,iptc,comment dest
+ * </pre>
+ *
+ * @author tomoyamkung
+ *
+ */
+public class MetadataStripper {
+
+	/**
+	 * このクラスの処理を表す表記のコマンドパス。
+	 */
+	public static final String COMMAND = "java:strip";
+
+	private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G',
+			'\r', '\n', 0x1A, '\n' };
+
+	private static final byte[] EXIF = ascii("Exif\0");
+
+	private static final byte[] FPXR = ascii("FPXR\0");
+
+	private static final byte[] XMP = ascii("http://ns.adobe.com/xap/1.0/\0");
+
+	private static final byte[] EXTENDED_XMP = ascii("http://ns.adobe.com/xmp/extension/\0");
+
+	private static final byte[] ICC_PROFILE = ascii("ICC_PROFILE\0");
+
+	private static final byte[] PHOTOSHOP = ascii("Photoshop 3.0\0");
+
+	private static final byte[] XMP_KEYWORD = ascii("XML:com.adobe.xmp\0");
+
+	/**
+	 * 再エンコードせずに削除するか。
+	 */
+	private boolean enabled;
+
+	/**
+	 * 削除するメタデータの種類。
+	 */
+	private Set<Metadata> removed = EnumSet.allOf(Metadata.class);
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * 再エンコードせずに削除するかを設定する。既定値は false。
+	 *
+	 * @param enabled
+	 *            削除する場合は true
+	 * @return このオブジェクト
+	 */
+	public MetadataStripper setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		return this;
+	}
+
+	public Set<Metadata> getRemoved() {
+		return Collections.unmodifiableSet(removed);
+	}
+
+	/**
+	 * 削除するメタデータの種類を設定する。既定値は全ての種類。
+	 *
+	 * @param removed
+	 *            削除するメタデータの種類
+	 * @return このオブジェクト
+	 */
+	public MetadataStripper setRemoved(Metadata... removed) {
+		Set<Metadata> set = EnumSet.noneOf(Metadata.class);
+		if (removed != null) {
+			for (Metadata metadata : removed) {
+				if (metadata == null) {
+					throw new IllegalArgumentException(
+							"removed may not be specified.");
+				}
+				set.add(metadata);
+			}
+		}
+		this.removed = set;
+		return this;
+	}
+
+	/**
+	 * 指定内容の妥当性を確認する。
+	 *
+	 * @throws IllegalArgumentException
+	 *             指定内容に誤りがある場合
+	 */
+	public void validate() {
+		if (removed.isEmpty()) {
+			throw new IllegalArgumentException("removed may not be specified.");
+		}
+	}
+
+	/**
+	 * 再エンコードせずに削除するかを判定する。
+	 *
+	 * 生成元と生成先の拡張子が同じ形式（JPEG、もしくは、PNG）の場合に削除する。
+	 *
+	 * @param src
+	 *            生成元のファイル
+	 * @param dest
+	 *            生成先のファイル
+	 * @return 削除する場合は true
+	 */
+	public boolean accepts(File src, File dest) {
+		String format = formatOf(src);
+		return enabled && format != null && format.equals(formatOf(dest));
+	}
+
+	private static String formatOf(File file) {
+		String extension = FastPathPolicy.extensionOf(file);
+		if (extension.equals("jpg") || extension.equals("jpeg")) {
+			return "jpeg";
+		}
+		return extension.equals("png") ? "png" : null;
+	}
+
+	/**
+	 * メタデータを削除する処理の表記を作成する。
+	 *
+	 * @param src
+	 *            生成元のファイル
+	 * @param dest
+	 *            生成先のファイル
+	 * @return コマンドパスとパラメータを格納したリスト
+	 */
+	public List<String> command(File src, File dest) {
+		StringBuilder builder = new StringBuilder();
+		for (Metadata metadata : removed) {
+			if (builder.length() > 0) {
+				builder.append(',');
+			}
+			builder.append(metadata.name());
+		}
+		return Arrays.asList(COMMAND, src.getAbsolutePath(), "-strip",
+				builder.toString(), dest.getAbsolutePath());
+	}
+
+	/**
+	 * 生成元のメタデータを削除して生成先に書き出す。
+	 *
+	 * @param src
+	 *            生成元のファイル
+	 * @param dest
+	 *            生成先のファイル。生成元と同じファイルでもよい
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない。 セグメント、もしくは、チャンクごとに確認する
+	 * @return 実行結果。標準出力と標準エラー出力は空とする
+	 * @throws UnsupportedImageException
+	 *             JPEG、もしくは、PNG として解釈できないファイルの場合
+	 * @throws ProcessTimeoutException
+	 *             制限時間を過ぎた場合
+	 * @throws IOException
+	 *             ファイルの読み書きに失敗した場合
+	 */
+	public ProcessResult execute(File src, File dest, long timeoutMillis)
+			throws IOException {
+		Set<Metadata> removed = this.removed;
+		List<String> command = command(src, dest);
+		Deadline deadline = new Deadline(command, timeoutMillis);
+		if (dest.exists() && Files.isSameFile(src.toPath(), dest.toPath())) {
+			stripInPlace(src, removed, deadline);
+		} else {
+			strip(src, dest.toPath(), removed, deadline);
+		}
+		return new ProcessResult(command, 0, new byte[0], new byte[0], 0,
+				deadline.elapsedNanos());
+	}
+
+	/**
+	 * 生成元と生成先が同じファイルの場合に、同じディレクトリの一時ファイルに書き出してから置き換える。
+	 *
+	 * 生成先を直接切り詰めると読み込む前の生成元が失われるため、置き換えるまで生成元には書き込まない。
+	 * 失敗した場合は一時ファイルを削除し、生成元はそのまま残す。
+	 */
+	private static void stripInPlace(File src, Set<Metadata> removed,
+			Deadline deadline) throws IOException {
+		Path target = src.toPath().toAbsolutePath();
+		Path temp = Files.createTempFile(target.getParent(), "."
+				+ target.getFileName(), ".tmp");
+		try {
+			strip(src, temp, removed, deadline);
+			try {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * 生成元のメタデータを削除して生成先に書き出す。
+	 */
+	private static void strip(File src, Path dest, Set<Metadata> removed,
+			Deadline deadline) throws IOException {
+		try (FileChannel in = FileChannel.open(src.toPath(),
+				StandardOpenOption.READ)) {
+			ByteBuffer signature = read(in, 0, PNG_SIGNATURE.length);
+			boolean jpeg = signature.remaining() >= 2
+					&& (signature.get(0) & 0xFF) == 0xFF
+					&& (signature.get(1) & 0xFF) == 0xD8;
+			boolean png = startsWith(signature, 0, PNG_SIGNATURE);
+			if (!jpeg && !png) {
+				throw new UnsupportedImageException(String.format(
+						"%s は JPEG でも PNG でもありません。", src));
+			}
+			try (FileChannel out = FileChannel.open(dest,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				if (jpeg) {
+					stripJpeg(src, in, out, removed, deadline);
+				} else {
+					stripPng(src, in, out, removed, deadline);
+				}
+			}
+		}
+	}
+
+	/**
+	 * JPEG の SOS より前のセグメントのうち、削除するメタデータ以外を複製する。
+	 */
+	private static void stripJpeg(File src, FileChannel in, FileChannel out,
+			Set<Metadata> removed, Deadline deadline) throws IOException {
+		long size = in.size();
+		long copied = 0;
+		long position = 2;
+		while (true) {
+			deadline.check();
+			ByteBuffer header = read(in, position, 4 + EXTENDED_XMP.length);
+			if (header.remaining() < 2 || (header.get(0) & 0xFF) != 0xFF) {
+				throw new UnsupportedImageException(String.format(
+						"%s のセグメントを解釈できません。 position:%s", src, position));
+			}
+			int marker = header.get(1) & 0xFF;
+			if (marker == 0xFF) {
+				// マーカーの前の埋め草
+				position++;
+				continue;
+			}
+			if (marker == 0xDA || marker == 0xD9) {
+				// SOS、もしくは、EOI
+				break;
+			}
+			if (marker == 0x01 || (0xD0 <= marker && marker <= 0xD7)) {
+				// 長さを持たないマーカー
+				position += 2;
+				continue;
+			}
+			if (header.remaining() < 4) {
+				throw new UnsupportedImageException(String.format(
+						"%s のセグメントが途中で終わっています。", src));
+			}
+			int length = header.getShort(2) & 0xFFFF;
+			long end = position + 2 + length;
+			if (length < 2 || end > size) {
+				throw new UnsupportedImageException(String.format(
+						"%s のセグメントの長さが不正です。 position:%s", src, position));
+			}
+			// 識別子を比較する範囲をセグメント内に限る
+			header.limit(Math.min(header.limit(), 2 + length));
+			Metadata metadata = jpegMetadataOf(marker, header);
+			if (metadata != null && removed.contains(metadata)) {
+				transfer(in, copied, position - copied, out);
+				copied = end;
+			}
+			position = end;
+		}
+		deadline.check();
+		transfer(in, copied, size - copied, out);
+	}
+
+	private static Metadata jpegMetadataOf(int marker, ByteBuffer header) {
+		switch (marker) {
+		case 0xE1:
+			if (startsWith(header, 4, EXIF)) {
+				return Metadata.exif;
+			}
+			if (startsWith(header, 4, XMP) || startsWith(header, 4, EXTENDED_XMP)) {
+				return Metadata.xmp;
+			}
+			return null;
+		case 0xE2:
+			if (startsWith(header, 4, ICC_PROFILE)) {
+				return Metadata.icc;
+			}
+			return startsWith(header, 4, FPXR) ? Metadata.exif : null;
+		case 0xED:
+			return startsWith(header, 4, PHOTOSHOP) ? Metadata.iptc : null;
+		case 0xFE:
+			return Metadata.comment;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * PNG の IEND までのチャンクのうち、削除するメタデータ以外を複製する。
+	 */
+	private static void stripPng(File src, FileChannel in, FileChannel out,
+			Set<Metadata> removed, Deadline deadline) throws IOException {
+		long size = in.size();
+		long copied = 0;
+		long position = PNG_SIGNATURE.length;
+		while (true) {
+			deadline.check();
+			ByteBuffer header = read(in, position, 8 + XMP_KEYWORD.length);
+			if (header.remaining() < 8) {
+				throw new UnsupportedImageException(String.format(
+						"%s のチャンクが途中で終わっています。", src));
+			}
+			long length = header.getInt(0) & 0xFFFFFFFFL;
+			long end = position + 12 + length;
+			if (end > size) {
+				throw new UnsupportedImageException(String.format(
+						"%s のチャンクの長さが不正です。 position:%s", src, position));
+			}
+			String type = new String(new byte[] { header.get(4), header.get(5),
+					header.get(6), header.get(7) }, StandardCharsets.US_ASCII);
+			header.limit((int) Math.min(header.limit(), 8 + length));
+			Metadata metadata = pngMetadataOf(type, header);
+			if (metadata != null && removed.contains(metadata)) {
+				transfer(in, copied, position - copied, out);
+				copied = end;
+			}
+			position = end;
+			if (type.equals("IEND")) {
+				break;
+			}
+		}
+		deadline.check();
+		transfer(in, copied, size - copied, out);
+	}
+
+	private static Metadata pngMetadataOf(String type, ByteBuffer header) {
+		switch (type) {
+		case "eXIf":
+			return Metadata.exif;
+		case "iCCP":
+			return Metadata.icc;
+		case "iTXt":
+			return startsWith(header, 8, XMP_KEYWORD) ? Metadata.xmp
+					: Metadata.comment;
+		case "tEXt":
+		case "zTXt":
+			return Metadata.comment;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * 指定の位置から最大 <code>length</code> バイトを読み込む。ファイルの末尾に達した場合はそこまでを返す。
+	 */
+	private static ByteBuffer read(FileChannel in, long position, int length)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			int read = in.read(buffer, position + buffer.position());
+			if (read < 0) {
+				break;
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * 指定の範囲を <code>FileChannel#transferTo</code> で複製する。
+	 */
+	private static void transfer(FileChannel in, long position, long count,
+			FileChannel out) throws IOException {
+		while (count > 0) {
+			long transferred = in.transferTo(position, count, out);
+			if (transferred <= 0) {
+				throw new IOException(String.format(
+						"複製できません。 position:%s, count:%s", position, count));
+			}
+			position += transferred;
+			count -= transferred;
+		}
+	}
+
+	private static boolean startsWith(ByteBuffer buffer, int offset,
+			byte[] prefix) {
+		if (buffer.remaining() < offset + prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer.get(offset + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] ascii(String value) {
+		return value.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("enabled:%s, removed:%s", enabled, removed);
+	}
+
+}
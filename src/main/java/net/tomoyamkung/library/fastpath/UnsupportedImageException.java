@@ -0,0 +1,25 @@
+package net.tomoyamkung.library.fastpath;
+
+import java.io.IOException;
+
+/**
+ * <code>JavaImageEngine</code> で扱えない画像の場合に生成する例外。
+ *
+ * この例外を受け取った呼び出し元は ImageMagick のコマンドで処理し直す。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class UnsupportedImageException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public UnsupportedImageException(String message) {
+		super(message);
+	}
+
+	public UnsupportedImageException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
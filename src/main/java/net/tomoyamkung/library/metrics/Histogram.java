@@ -0,0 +1,134 @@
+package net.tomoyamkung.library.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 0 以上の値の分布を記録するヒストグラム。
+ *
+ * 2 のべき乗ごとの範囲を 8 等分した区間に数えるため、パーセンタイルの誤差は 12.5% 以内となる。
+ * 値を保持しないので、記録する件数によらずメモリ使用量は一定である。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class Histogram {
+
+	/**
+	 * 2 のべき乗ごとの範囲を分割する数のビット数。
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * 区間ごとの件数。
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(
+			64 << SUB_BUCKET_BITS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong sum = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * 値を記録する。 負の値（取得できなかった値）は記録しない。
+	 *
+	 * @param value
+	 *            記録する値
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			return;
+		}
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	/**
+	 * パーセンタイルを取得する。
+	 *
+	 * @param percentile
+	 *            0 から 100 の値（50 や 99 など）
+	 * @return 値の推定値。記録した件数が 0 の場合は 0
+	 */
+	public long getPercentile(double percentile) {
+		if (percentile < 0 || 100 < percentile) {
+			throw new IllegalArgumentException(
+					"percentile は 0 から 100 の値を指定してください。");
+		}
+		long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long cumulative = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			cumulative += counts.get(i);
+			if (cumulative >= rank) {
+				return Math.min(upperBoundOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getSum() {
+		return sum.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * 平均値を取得する。
+	 *
+	 * @return 平均値。記録した件数が 0 の場合は 0
+	 */
+	public double getMean() {
+		long total = count.get();
+		return total == 0 ? 0 : (double) sum.get() / total;
+	}
+
+	/**
+	 * 値を数える区間の番号を取得する。
+	 */
+	static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+				& (SUB_BUCKET_COUNT - 1);
+		return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+	}
+
+	/**
+	 * 区間に含まれる最大の値を取得する。
+	 */
+	static long upperBoundOf(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int exponent = (index >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		long lower = (1L << exponent) + (index & (SUB_BUCKET_COUNT - 1))
+				* width;
+		return lower + width - 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count:%s, p50:%s, p99:%s, max:%s", getCount(),
+				getPercentile(50), getPercentile(99), getMax());
+	}
+
+}
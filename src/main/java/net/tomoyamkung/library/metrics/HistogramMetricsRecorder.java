@@ -0,0 +1,55 @@
+package net.tomoyamkung.library.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 計測値を操作の種類ごとにメモリ上のヒストグラムで集計する <code>MetricsRecorder</code> の実装。
+ *
+ * 操作ごとの p50 や p99 を取得し、ダッシュボードなどに出力する場合に使用する。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class HistogramMetricsRecorder implements MetricsRecorder {
+
+	/**
+	 * 操作の種類ごとの集計。
+	 */
+	private final ConcurrentHashMap<String, OperationStats> stats = new ConcurrentHashMap<String, OperationStats>();
+
+	@Override
+	public void record(Invocation invocation) {
+		stats.computeIfAbsent(invocation.getOperation(),
+				k -> new OperationStats()).add(invocation);
+	}
+
+	/**
+	 * 操作の集計を取得する。
+	 *
+	 * @param operation
+	 *            操作の種類（resize、createThumbnail など）
+	 * @return 集計。一度も実行していない場合は null
+	 */
+	public OperationStats getStats(String operation) {
+		return stats.get(operation);
+	}
+
+	/**
+	 * 全ての操作の集計を取得する。
+	 *
+	 * @return 操作の種類と集計を格納したマップ。操作の種類の昇順に並べる
+	 */
+	public Map<String, OperationStats> getAllStats() {
+		return Collections.unmodifiableMap(new TreeMap<String, OperationStats>(
+				stats));
+	}
+
+	@Override
+	public String toString() {
+		return getAllStats().toString();
+	}
+
+}
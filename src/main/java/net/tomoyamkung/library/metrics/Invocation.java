@@ -0,0 +1,147 @@
+package net.tomoyamkung.library.metrics;
+
+/**
+ * ImageMagick の 1 回の操作の計測値を保持するクラス。
+ *
+ * 時間はナノ秒で保持し、取得できなかった値は -1 とする。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class Invocation {
+
+	/**
+	 * 操作の種類（resize、createThumbnail など）。
+	 */
+	private final String operation;
+
+	/**
+	 * 実行待ちキューで待機した時間。
+	 */
+	private final long queueWaitNanos;
+
+	/**
+	 * 子プロセスの起動にかかった時間。
+	 */
+	private final long spawnNanos;
+
+	/**
+	 * 操作の開始から終了までの時間。
+	 */
+	private final long wallNanos;
+
+	/**
+	 * 子プロセスが使用した CPU 時間。
+	 *
+	 * 実行中に観測した値のため、実際の CPU 時間の下限となる。観測できなかった場合は -1。
+	 */
+	private final long cpuNanos;
+
+	/**
+	 * 入力のバイト数。
+	 */
+	private final long inputBytes;
+
+	/**
+	 * 出力のバイト数。
+	 */
+	private final long outputBytes;
+
+	/**
+	 * 終了コード。制限時間内に終了しなかった場合は -1。
+	 */
+	private final int exitCode;
+
+	/**
+	 * 制限時間内に終了しなかったか。
+	 */
+	private final boolean timedOut;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param operation
+	 *            操作の種類
+	 * @param queueWaitNanos
+	 *            実行待ちキューで待機した時間。キューを経由しない場合は 0
+	 * @param spawnNanos
+	 *            子プロセスの起動にかかった時間
+	 * @param wallNanos
+	 *            操作の開始から終了までの時間
+	 * @param cpuNanos
+	 *            子プロセスが使用した CPU 時間の下限。観測できなかった場合は -1
+	 * @param inputBytes
+	 *            入力のバイト数
+	 * @param outputBytes
+	 *            出力のバイト数
+	 * @param exitCode
+	 *            終了コード
+	 * @param timedOut
+	 *            制限時間内に終了しなかった場合は true
+	 */
+	public Invocation(String operation, long queueWaitNanos, long spawnNanos,
+			long wallNanos, long cpuNanos, long inputBytes, long outputBytes,
+			int exitCode, boolean timedOut) {
+		this.operation = operation;
+		this.queueWaitNanos = queueWaitNanos;
+		this.spawnNanos = spawnNanos;
+		this.wallNanos = wallNanos;
+		this.cpuNanos = cpuNanos;
+		this.inputBytes = inputBytes;
+		this.outputBytes = outputBytes;
+		this.exitCode = exitCode;
+		this.timedOut = timedOut;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public long getQueueWaitNanos() {
+		return queueWaitNanos;
+	}
+
+	public long getSpawnNanos() {
+		return spawnNanos;
+	}
+
+	public long getWallNanos() {
+		return wallNanos;
+	}
+
+	/**
+	 * 子プロセスが使用した CPU 時間を取得する。
+	 *
+	 * 子プロセスの起動直後と待機中に観測した最大の値で、最後に観測してから終了するまでの分は含まない。
+	 *
+	 * @return CPU 時間の下限（ナノ秒）。観測できなかった場合は -1
+	 */
+	public long getCpuNanos() {
+		return cpuNanos;
+	}
+
+	public long getInputBytes() {
+		return inputBytes;
+	}
+
+	public long getOutputBytes() {
+		return outputBytes;
+	}
+
+	public int getExitCode() {
+		return exitCode;
+	}
+
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"operation:%s, queueWait:%sns, spawn:%sns, wall:%sns, cpu:%sns, input:%s, output:%s, exitCode:%s, timedOut:%s",
+				operation, queueWaitNanos, spawnNanos, wallNanos, cpuNanos,
+				inputBytes, outputBytes, exitCode, timedOut);
+	}
+
+}
@@ -0,0 +1,33 @@
+package net.tomoyamkung.library.metrics;
+
+/**
+ * ImageMagick の操作ごとの計測値を記録するインタフェース。
+ *
+ * <code>ImageMagick#setMetricsRecorder</code> に実装を設定すると、操作を実行するたびに
+ * <code>record</code> が呼び出される。 複数のスレッドから同時に呼び出されるため、実装はスレッドセーフにする。
+ *
+ * @author tomoyamkung
+ *
+ */
+public interface MetricsRecorder {
+
+	/**
+	 * 何も記録しない実装。
+	 */
+	MetricsRecorder NOOP = new MetricsRecorder() {
+
+		@Override
+		public void record(Invocation invocation) {
+		}
+
+	};
+
+	/**
+	 * 1 回の操作の計測値を記録する。
+	 *
+	 * @param invocation
+	 *            計測値
+	 */
+	void record(Invocation invocation);
+
+}
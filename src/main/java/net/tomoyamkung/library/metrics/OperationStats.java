@@ -0,0 +1,117 @@
+package net.tomoyamkung.library.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 1 種類の操作の計測値を集計するクラス。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class OperationStats {
+
+	private final Histogram queueWaitNanos = new Histogram();
+
+	private final Histogram spawnNanos = new Histogram();
+
+	private final Histogram wallNanos = new Histogram();
+
+	private final Histogram cpuNanos = new Histogram();
+
+	private final Histogram inputBytes = new Histogram();
+
+	private final Histogram outputBytes = new Histogram();
+
+	/**
+	 * 制限時間内に終了しなかった回数。
+	 */
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	/**
+	 * 終了コードごとの回数。
+	 */
+	private final ConcurrentHashMap<Integer, AtomicLong> exitCodeCounts = new ConcurrentHashMap<Integer, AtomicLong>();
+
+	/**
+	 * 1 回の操作の計測値を集計する。
+	 *
+	 * @param invocation
+	 *            計測値
+	 */
+	void add(Invocation invocation) {
+		queueWaitNanos.record(invocation.getQueueWaitNanos());
+		spawnNanos.record(invocation.getSpawnNanos());
+		wallNanos.record(invocation.getWallNanos());
+		cpuNanos.record(invocation.getCpuNanos());
+		inputBytes.record(invocation.getInputBytes());
+		outputBytes.record(invocation.getOutputBytes());
+		if (invocation.isTimedOut()) {
+			timeoutCount.incrementAndGet();
+		} else {
+			exitCodeCounts.computeIfAbsent(invocation.getExitCode(),
+					k -> new AtomicLong()).incrementAndGet();
+		}
+	}
+
+	public Histogram getQueueWaitNanos() {
+		return queueWaitNanos;
+	}
+
+	public Histogram getSpawnNanos() {
+		return spawnNanos;
+	}
+
+	public Histogram getWallNanos() {
+		return wallNanos;
+	}
+
+	public Histogram getCpuNanos() {
+		return cpuNanos;
+	}
+
+	public Histogram getInputBytes() {
+		return inputBytes;
+	}
+
+	public Histogram getOutputBytes() {
+		return outputBytes;
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	/**
+	 * 実行した回数を取得する。
+	 *
+	 * @return 実行した回数
+	 */
+	public long getCount() {
+		return wallNanos.getCount();
+	}
+
+	/**
+	 * 終了コードごとの回数を取得する。
+	 *
+	 * @return 終了コードと回数を格納したマップ。終了コードの昇順に並べる
+	 */
+	public Map<Integer, Long> getExitCodeCounts() {
+		Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+		for (Map.Entry<Integer, AtomicLong> entry : exitCodeCounts.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().get());
+		}
+		return counts;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"count:%s, wall:[%s], spawn:[%s], cpu:[%s], queueWait:[%s], exitCodes:%s, timeouts:%s",
+				getCount(), wallNanos, spawnNanos, cpuNanos, queueWaitNanos,
+				getExitCodeCounts(), getTimeoutCount());
+	}
+
+}
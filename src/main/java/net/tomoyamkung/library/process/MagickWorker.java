@@ -0,0 +1,349 @@
+package net.tomoyamkung.library.process;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 常駐させた ImageMagick のプロセス（<code>magick -script -</code>）に標準入力から処理を送るクラス。
+ *
+ * 1 つの処理はスクリプトの 1 行として送り、続けて完了を知らせる文字列を <code>-print</code>
+ * で出力させる。 標準出力にその文字列が現れた時点で処理が完了したと見なす。
+ *
+ * スクリプトの実行中にエラーが起きても ImageMagick は次の行の処理を続けるため、完了を知らせる文字列だけでは成否が分からない。
+ * 標準エラー出力は標準出力にまとめて読み込み、完了を知らせる文字列より前に ImageMagick
+ * のエラーの行（<code>@ error/...</code>、<code>@ fatal/...</code>）が現れた場合は処理が失敗したと見なす。
+ * 2 つの出力を別々に読み込むと、エラーの行が完了を知らせる文字列より後に届く場合があるため。
+ *
+ * 処理の設定（<code>-quality</code>、<code>-define</code> など）は次の処理に引き継がれないよう、処理ごとに括弧で囲む。
+ *
+ * @author tomoyamkung
+ *
+ */
+class MagickWorker {
+
+	/**
+	 * 標準出力が終端に達したことを表す値。 参照の同一性で判定する。
+	 */
+	private static final String EOF = new String("EOF");
+
+	/**
+	 * 完了を知らせる文字列の通し番号。
+	 */
+	private static final AtomicLong tokenNumber = new AtomicLong();
+
+	/**
+	 * ImageMagick が出力する警告とエラーの行。 重大度は発生箇所の前に付けられる。
+	 */
+	private static final Pattern MESSAGE = Pattern
+			.compile(".* @ (warning|error|fatal)/\\S+$");
+
+	/**
+	 * 処理が失敗した場合の終了コード。 convert コマンドがエラーで終了した場合と同じ値とする。
+	 */
+	private static final int FAILURE_EXIT_CODE = 1;
+
+	/**
+	 * 常駐させた ImageMagick のプロセス。
+	 */
+	private final Process process;
+
+	/**
+	 * 標準入力への書き込みに使用する <code>Writer</code>。
+	 */
+	private final Writer stdin;
+
+	/**
+	 * 標準出力から読み込んだ行を格納するキュー。
+	 */
+	private final BlockingQueue<String> stdoutLines = new LinkedBlockingQueue<String>();
+
+	/**
+	 * 処理 1 件の間に出力された警告とエラーの行を格納するバッファ。
+	 */
+	private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+	/**
+	 * 標準エラー出力をバッファに格納するバイト数の上限。
+	 */
+	private final int stderrLimit;
+
+	/**
+	 * 処理した件数。
+	 */
+	private int jobCount;
+
+	/**
+	 * 最後に処理した時刻（<code>System#nanoTime</code> の値）。
+	 */
+	private long lastUsed;
+
+	/**
+	 * ImageMagick のプロセスを起動する。
+	 *
+	 * @param command
+	 *            常駐させる ImageMagick のコマンドパスとパラメータ
+	 * @param environment
+	 *            プロセスに追加する環境変数
+	 * @param stderrLimit
+	 *            処理 1 件あたりの標準エラー出力をバッファに格納するバイト数の上限
+	 * @throws IOException
+	 *             コマンドパスに誤りがあった場合
+	 */
+	MagickWorker(List<String> command, Map<String, String> environment,
+			int stderrLimit) throws IOException {
+		this.stderrLimit = stderrLimit;
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.environment().putAll(environment);
+		// エラーの行と完了を知らせる文字列を出力された順に読むため、標準エラー出力をまとめる
+		builder.redirectErrorStream(true);
+		process = builder.start();
+		stdin = new OutputStreamWriter(process.getOutputStream(),
+				StandardCharsets.UTF_8);
+		lastUsed = System.nanoTime();
+
+		startDaemon("imagemagick-worker-stdout", () -> readLines(process
+				.getInputStream()));
+	}
+
+	/**
+	 * 処理を送り、完了するまで待機する。
+	 *
+	 * @param command
+	 *            convert コマンドの形式（コマンドパス、パラメータ、生成先）で指定した処理
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @return 処理の実行結果
+	 * @throws ProcessFailedException
+	 *             処理中に ImageMagick のプロセスが終了した場合、もしくは、ImageMagick がエラーを出力した場合
+	 * @throws ProcessTimeoutException
+	 *             処理が制限時間内に完了しなかった場合
+	 * @throws IOException
+	 *             標準入力への書き込みに失敗した場合
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合
+	 */
+	ProcessResult run(List<String> command, long timeoutMillis)
+			throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		String token = "imagemagick-wrapper-done-"
+				+ tokenNumber.incrementAndGet();
+		stderr.reset();
+		boolean failed = false;
+
+		stdin.write(toScript(command));
+		stdin.write(toPrint(token));
+		stdin.flush();
+
+		ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while (true) {
+			String line = timeoutMillis == 0 ? stdoutLines.take()
+					: stdoutLines.poll(deadline - System.nanoTime(),
+							TimeUnit.NANOSECONDS);
+			if (line == null) {
+				destroy();
+				throw new ProcessTimeoutException(command, timeoutMillis);
+			}
+			if (line == EOF) {
+				int exitCode = process.waitFor();
+				throw new ProcessFailedException(new ProcessResult(command,
+						exitCode == 0 ? -1 : exitCode, stdout.toByteArray(),
+						stderrBytes(), 0, System.nanoTime() - start));
+			}
+			if (line.equals(token)) {
+				break;
+			}
+			byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+			Matcher message = MESSAGE.matcher(line);
+			if (message.matches()) {
+				failed |= !message.group(1).equals("warning");
+				stderr.write(bytes, 0, Math.max(0,
+						Math.min(bytes.length, stderrLimit - stderr.size())));
+			} else {
+				stdout.write(bytes, 0, bytes.length);
+			}
+		}
+
+		if (failed) {
+			// エラーの後の状態が分からないため再利用しない
+			destroy();
+			throw new ProcessFailedException(new ProcessResult(command,
+					FAILURE_EXIT_CODE, stdout.toByteArray(), stderrBytes(), 0,
+					System.nanoTime() - start));
+		}
+		jobCount++;
+		lastUsed = System.nanoTime();
+		return new ProcessResult(command, 0, stdout.toByteArray(),
+				stderrBytes(), 0, lastUsed - start);
+	}
+
+	/**
+	 * ImageMagick のプロセスが応答するかを確認する。
+	 *
+	 * @param timeoutMillis
+	 *            応答を待つ時間（ミリ秒）
+	 * @return 応答した場合は true
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合
+	 */
+	boolean ping(long timeoutMillis) throws InterruptedException {
+		if (!process.isAlive()) {
+			return false;
+		}
+		String token = "imagemagick-wrapper-ping-"
+				+ tokenNumber.incrementAndGet();
+		try {
+			stdin.write(toPrint(token));
+			stdin.flush();
+		} catch (IOException e) {
+			return false;
+		}
+
+		long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while (true) {
+			String line = stdoutLines.poll(deadline - System.nanoTime(),
+					TimeUnit.NANOSECONDS);
+			if (line == null || line == EOF) {
+				return false;
+			}
+			if (line.equals(token)) {
+				lastUsed = System.nanoTime();
+				return true;
+			}
+		}
+	}
+
+	boolean isAlive() {
+		return process.isAlive();
+	}
+
+	int getJobCount() {
+		return jobCount;
+	}
+
+	/**
+	 * 最後に処理してからの経過時間を取得する。
+	 *
+	 * @return 経過時間（ミリ秒）
+	 */
+	long getIdleMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastUsed);
+	}
+
+	/**
+	 * 標準入力を閉じて ImageMagick のプロセスを終了させる。
+	 *
+	 * 一定時間内に終了しない場合は強制終了する。
+	 */
+	void close() {
+		try {
+			stdin.close();
+			if (process.waitFor(1, TimeUnit.SECONDS)) {
+				return;
+			}
+		} catch (IOException e) {
+			// 強制終了する
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		destroy();
+	}
+
+	/**
+	 * ImageMagick のプロセスとその子孫のプロセスを強制終了する。
+	 */
+	void destroy() {
+		ProcessExecutor.destroyTree(process);
+	}
+
+	/**
+	 * convert コマンドの形式をスクリプトの 1 行に変換する。
+	 *
+	 * 最後のパラメータ（生成先）は <code>-write</code> で書き出し、その後で画像を全て破棄して次の処理に備える。
+	 * 処理全体を <code>-respect-parentheses</code> を指定した括弧で囲み、括弧の中で指定した設定は括弧を閉じた時点で元に戻す。
+	 *
+	 * @param command
+	 *            convert コマンドの形式で指定した処理
+	 * @return スクリプトの 1 行
+	 */
+	static String toScript(List<String> command) {
+		StringBuilder script = new StringBuilder("-respect-parentheses ( ");
+		for (int i = 1; i < command.size() - 1; i++) {
+			script.append(quote(command.get(i))).append(' ');
+		}
+		script.append("-write ").append(quote(command.get(command.size() - 1)));
+		script.append(" ) -delete 0--1\n");
+		return script.toString();
+	}
+
+	/**
+	 * 完了を知らせる文字列を出力させるスクリプトの 1 行を作成する。
+	 *
+	 * @param token
+	 *            完了を知らせる文字列。英数字と - のみで構成する
+	 * @return スクリプトの 1 行
+	 */
+	static String toPrint(String token) {
+		return "-print \"" + token + "\\n\"\n";
+	}
+
+	/**
+	 * スクリプトの引数として二重引用符で囲む。
+	 */
+	static String quote(String argument) {
+		StringBuilder quoted = new StringBuilder(argument.length() + 2);
+		quoted.append('"');
+		for (int i = 0; i < argument.length(); i++) {
+			char c = argument.charAt(i);
+			if (c == '"' || c == '\\') {
+				quoted.append('\\');
+			}
+			quoted.append(c);
+		}
+		return quoted.append('"').toString();
+	}
+
+	/**
+	 * 標準出力を 1 行ずつ読み込んでキューに格納する。
+	 */
+	private void readLines(InputStream in) {
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					in, StandardCharsets.UTF_8));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				stdoutLines.add(line);
+			}
+		} catch (IOException e) {
+			// プロセスが終了した
+		} finally {
+			stdoutLines.add(EOF);
+		}
+	}
+
+	private byte[] stderrBytes() {
+		return stderr.toByteArray();
+	}
+
+	private static void startDaemon(String name, Runnable runnable) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+}
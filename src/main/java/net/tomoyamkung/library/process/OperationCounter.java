@@ -0,0 +1,60 @@
+package net.tomoyamkung.library.process;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 回数を、合計と操作の種類ごとに数えるクラス。
+ *
+ * @author tomoyamkung
+ *
+ */
+final class OperationCounter {
+
+	/**
+	 * 全ての操作の合計。
+	 */
+	private final AtomicLong total = new AtomicLong();
+
+	/**
+	 * 操作の種類と、その回数を格納したマップ。
+	 */
+	private final ConcurrentMap<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong>();
+
+	/**
+	 * 回数を 1 つ増やす。
+	 *
+	 * @param operation
+	 *            操作の種類。null の場合は合計のみを増やす
+	 */
+	void increment(String operation) {
+		total.incrementAndGet();
+		if (operation != null) {
+			counts.computeIfAbsent(operation, key -> new AtomicLong())
+					.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 全ての操作の合計を取得する。
+	 *
+	 * @return 回数
+	 */
+	long get() {
+		return total.get();
+	}
+
+	/**
+	 * 操作の種類ごとの回数を取得する。
+	 *
+	 * @param operation
+	 *            操作の種類
+	 * @return 回数。数えていない操作の場合は 0
+	 */
+	long get(String operation) {
+		AtomicLong count = operation == null ? null : counts.get(operation);
+		return count == null ? 0 : count.get();
+	}
+
+}
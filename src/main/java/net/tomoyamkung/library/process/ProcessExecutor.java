@@ -0,0 +1,592 @@
+package net.tomoyamkung.library.process;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * ImageMagick のコマンドを子プロセスとして実行するクラス。
+ *
+ * 子プロセスの標準出力と標準エラー出力は別スレッドで並行して読み込み、上限までをバッファに格納する。
+ * 子プロセスの終了後に終了コードを確認し、0 以外の場合は <code>ProcessFailedException</code> を生成する。
+ *
+ * 制限時間を指定した場合、時間内に終了しなかった子プロセスはその子孫のプロセスも含めて強制終了し、
+ * <code>ProcessTimeoutException</code> を生成する。
+ *
+ * 資源の上限（<code>ResourceLimits</code>）は子プロセスの環境変数として全ての実行に適用する。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class ProcessExecutor {
+
+	/**
+	 * 標準出力と標準エラー出力をバッファに格納するバイト数の上限の既定値。
+	 */
+	public static final int DEFAULT_OUTPUT_LIMIT = 64 * 1024;
+
+	/**
+	 * 子プロセスの CPU 時間を観測する間隔（ナノ秒）。
+	 */
+	private static final long CPU_SAMPLING_INTERVAL_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(50);
+
+	/**
+	 * 出力の読み込みスレッドの通し番号。
+	 */
+	private static final AtomicInteger threadNumber = new AtomicInteger();
+
+	/**
+	 * 子プロセスの出力を読み込むスレッドプール。
+	 */
+	private static final ExecutorService drainers = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "imagemagick-drainer-"
+							+ threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * 標準出力をバッファに格納するバイト数の上限。
+	 */
+	private final int stdoutLimit;
+
+	/**
+	 * 標準エラー出力をバッファに格納するバイト数の上限。
+	 */
+	private final int stderrLimit;
+
+	/**
+	 * 制限時間の既定値（ミリ秒）。0 の場合は制限しない。
+	 */
+	private final long timeoutMillis;
+
+	/**
+	 * 子プロセスを起動した回数。
+	 */
+	private final OperationCounter launches = new OperationCounter();
+
+	/**
+	 * 子プロセスに適用する資源の上限。
+	 */
+	private volatile ResourceLimits resourceLimits = new ResourceLimits();
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * 標準出力と標準エラー出力は <code>DEFAULT_OUTPUT_LIMIT</code>
+	 * までをバッファに格納し、制限時間は設けない。
+	 */
+	public ProcessExecutor() {
+		this(DEFAULT_OUTPUT_LIMIT, DEFAULT_OUTPUT_LIMIT);
+	}
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param stdoutLimit
+	 *            標準出力をバッファに格納するバイト数の上限。0 の場合は全て破棄する
+	 * @param stderrLimit
+	 *            標準エラー出力をバッファに格納するバイト数の上限。0 の場合は全て破棄する
+	 */
+	public ProcessExecutor(int stdoutLimit, int stderrLimit) {
+		this(stdoutLimit, stderrLimit, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param stdoutLimit
+	 *            標準出力をバッファに格納するバイト数の上限。0 の場合は全て破棄する
+	 * @param stderrLimit
+	 *            標準エラー出力をバッファに格納するバイト数の上限。0 の場合は全て破棄する
+	 * @param timeout
+	 *            制限時間の既定値。0 の場合は制限しない
+	 * @param unit
+	 *            <code>timeout</code> の単位
+	 */
+	public ProcessExecutor(int stdoutLimit, int stderrLimit, long timeout,
+			TimeUnit unit) {
+		if (stdoutLimit < 0 || stderrLimit < 0) {
+			throw new IllegalArgumentException(
+					"出力の上限は 0 以上の値を指定してください。");
+		}
+		if (timeout < 0) {
+			throw new IllegalArgumentException(
+					"制限時間は 0 以上の値を指定してください。");
+		}
+		this.stdoutLimit = stdoutLimit;
+		this.stderrLimit = stderrLimit;
+		this.timeoutMillis = unit.toMillis(timeout);
+	}
+
+	public int getStdoutLimit() {
+		return stdoutLimit;
+	}
+
+	public int getStderrLimit() {
+		return stderrLimit;
+	}
+
+	/**
+	 * 制限時間の既定値を取得する。
+	 *
+	 * @return 制限時間の既定値（ミリ秒）。0 の場合は制限しない
+	 */
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * 子プロセスに適用する資源の上限を取得する。
+	 *
+	 * @return <code>ResourceLimits</code> オブジェクト。変更しても実行には反映されない
+	 */
+	public ResourceLimits getResourceLimits() {
+		return new ResourceLimits(resourceLimits);
+	}
+
+	/**
+	 * 子プロセスに適用する資源の上限を設定する。
+	 *
+	 * ここで指定した項目は、実行ごとに指定する既定値より優先する。 設定した時点の値を複製して保持する。
+	 *
+	 * @param resourceLimits
+	 *            <code>ResourceLimits</code> オブジェクト
+	 */
+	public void setResourceLimits(ResourceLimits resourceLimits) {
+		if (resourceLimits == null) {
+			throw new IllegalArgumentException(
+					"resourceLimits may not be specified.");
+		}
+		this.resourceLimits = new ResourceLimits(resourceLimits);
+	}
+
+	/**
+	 * 子プロセスを起動した回数を取得する。
+	 *
+	 * 常駐させたプロセスに処理を送った回数は含めない（<code>WorkerPoolExecutor#getJobCount</code> を参照）。
+	 *
+	 * @return 起動した回数
+	 */
+	public long getLaunchCount() {
+		return launches.get();
+	}
+
+	/**
+	 * 操作の種類ごとに、子プロセスを起動した回数を取得する。
+	 *
+	 * 操作の種類を指定して実行した分のみを数える。 他のスレッドの操作と区別して、1 つの操作で何回 ImageMagick
+	 * を起動したかを確認するために使用する。
+	 *
+	 * @param operation
+	 *            操作の種類（<code>createThumbnail</code> など）
+	 * @return 起動した回数
+	 */
+	public long getLaunchCount(String operation) {
+		return launches.get(operation);
+	}
+
+	/**
+	 * 子プロセスを起動した回数を 1 つ増やす。
+	 *
+	 * @param operation
+	 *            操作の種類。指定していない場合は null
+	 */
+	protected void countLaunch(String operation) {
+		launches.increment(operation);
+	}
+
+	/**
+	 * 制限時間の既定値でコマンドを実行し、終了するまで待機する。
+	 *
+	 * @param command
+	 *            コマンドパスとパラメータを格納したリスト
+	 * @return コマンドの実行結果
+	 * @throws IOException
+	 *             コマンドパスに誤りがあった場合
+	 * @throws ProcessFailedException
+	 *             コマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             コマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合。子プロセスは強制終了する
+	 */
+	public ProcessResult execute(List<String> command) throws IOException,
+			InterruptedException {
+		return execute(command, timeoutMillis);
+	}
+
+	/**
+	 * コマンドを実行し、終了するまで待機する。
+	 *
+	 * @param command
+	 *            コマンドパスとパラメータを格納したリスト
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @return コマンドの実行結果
+	 * @throws IOException
+	 *             コマンドパスに誤りがあった場合
+	 * @throws ProcessFailedException
+	 *             コマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             コマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合。子プロセスは強制終了する
+	 */
+	public ProcessResult execute(List<String> command, long timeoutMillis)
+			throws IOException, InterruptedException {
+		return execute(command, timeoutMillis, (ResourceLimits) null);
+	}
+
+	/**
+	 * 資源の上限の既定値を指定してコマンドを実行し、終了するまで待機する。
+	 *
+	 * @param command
+	 *            コマンドパスとパラメータを格納したリスト
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @param defaultLimits
+	 *            <code>getResourceLimits</code> で指定していない項目に適用する資源の上限。null
+	 *            の場合は適用しない
+	 * @return コマンドの実行結果
+	 * @throws IOException
+	 *             コマンドパスに誤りがあった場合
+	 * @throws ProcessFailedException
+	 *             コマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             コマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合。子プロセスは強制終了する
+	 */
+	public ProcessResult execute(List<String> command, long timeoutMillis,
+			ResourceLimits defaultLimits) throws IOException,
+			InterruptedException {
+		return execute(null, command, timeoutMillis, defaultLimits);
+	}
+
+	/**
+	 * 操作の種類と資源の上限の既定値を指定してコマンドを実行し、終了するまで待機する。
+	 *
+	 * @param operation
+	 *            起動した回数を数える操作の種類。null の場合は合計のみを数える
+	 * @param command
+	 *            コマンドパスとパラメータを格納したリスト
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @param defaultLimits
+	 *            <code>getResourceLimits</code> で指定していない項目に適用する資源の上限。null
+	 *            の場合は適用しない
+	 * @return コマンドの実行結果
+	 * @see #execute(List, long, ResourceLimits)
+	 */
+	public ProcessResult execute(String operation, List<String> command,
+			long timeoutMillis, ResourceLimits defaultLimits)
+			throws IOException, InterruptedException {
+		return run(operation, command, timeoutMillis, defaultLimits, null,
+				null);
+	}
+
+	/**
+	 * 標準入力と標準出力を指定してコマンドを実行し、終了するまで待機する。
+	 *
+	 * <code>src</code> の内容を子プロセスの標準入力へ、子プロセスの標準出力を <code>dest</code>
+	 * へ、それぞれ別スレッドで固定長のバッファを使って少しずつ転送する。 一時ファイルは作成しない。
+	 *
+	 * @param command
+	 *            コマンドパスとパラメータを格納したリスト
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @param src
+	 *            標準入力に転送する内容
+	 * @param dest
+	 *            標準出力の転送先
+	 * @return コマンドの実行結果。標準出力の内容は格納しない
+	 * @throws IOException
+	 *             コマンドパスに誤りがあった場合、もしくは、転送に失敗した場合
+	 * @throws ProcessFailedException
+	 *             コマンドが 0 以外の終了コードで終了した場合
+	 * @throws ProcessTimeoutException
+	 *             コマンドが制限時間内に終了しなかった場合
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合。子プロセスは強制終了する
+	 */
+	public ProcessResult execute(List<String> command, long timeoutMillis,
+			ReadableByteChannel src, WritableByteChannel dest)
+			throws IOException, InterruptedException {
+		return execute(command, timeoutMillis, null, src, dest);
+	}
+
+	/**
+	 * 資源の上限の既定値と標準入力と標準出力を指定してコマンドを実行し、終了するまで待機する。
+	 *
+	 * @param command
+	 *            コマンドパスとパラメータを格納したリスト
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @param defaultLimits
+	 *            <code>getResourceLimits</code> で指定していない項目に適用する資源の上限。null
+	 *            の場合は適用しない
+	 * @param src
+	 *            標準入力に転送する内容
+	 * @param dest
+	 *            標準出力の転送先
+	 * @return コマンドの実行結果。標準出力の内容は格納しない
+	 * @see #execute(List, long, ReadableByteChannel, WritableByteChannel)
+	 */
+	public ProcessResult execute(List<String> command, long timeoutMillis,
+			ResourceLimits defaultLimits, ReadableByteChannel src,
+			WritableByteChannel dest) throws IOException, InterruptedException {
+		return execute(null, command, timeoutMillis, defaultLimits, src, dest);
+	}
+
+	/**
+	 * 操作の種類、資源の上限の既定値、標準入力と標準出力を指定してコマンドを実行し、終了するまで待機する。
+	 *
+	 * @param operation
+	 *            起動した回数を数える操作の種類。null の場合は合計のみを数える
+	 * @param command
+	 *            コマンドパスとパラメータを格納したリスト
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @param defaultLimits
+	 *            <code>getResourceLimits</code> で指定していない項目に適用する資源の上限。null
+	 *            の場合は適用しない
+	 * @param src
+	 *            標準入力に転送する内容
+	 * @param dest
+	 *            標準出力の転送先
+	 * @return コマンドの実行結果。標準出力の内容は格納しない
+	 * @see #execute(List, long, ReadableByteChannel, WritableByteChannel)
+	 */
+	public ProcessResult execute(String operation, List<String> command,
+			long timeoutMillis, ResourceLimits defaultLimits,
+			ReadableByteChannel src, WritableByteChannel dest)
+			throws IOException, InterruptedException {
+		if (src == null || dest == null) {
+			throw new IllegalArgumentException(
+					"src and dest may not be specified.");
+		}
+		return run(operation, command, timeoutMillis, defaultLimits, src, dest);
+	}
+
+	/**
+	 * コマンドを実行し、終了するまで待機する。
+	 *
+	 * @param operation
+	 *            起動した回数を数える操作の種類。null の場合は合計のみを数える
+	 * @param command
+	 *            コマンドパスとパラメータを格納したリスト
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @param defaultLimits
+	 *            資源の上限の既定値。null の場合は適用しない
+	 * @param src
+	 *            標準入力に転送する内容。null の場合は標準入力をすぐに閉じる
+	 * @param dest
+	 *            標準出力の転送先。null の場合はバッファに格納する
+	 * @return コマンドの実行結果
+	 */
+	private ProcessResult run(String operation, List<String> command,
+			long timeoutMillis, ResourceLimits defaultLimits,
+			ReadableByteChannel src, WritableByteChannel dest)
+			throws IOException, InterruptedException {
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.environment().putAll(
+				resourceLimits.withDefaults(defaultLimits).toEnvironment());
+		long start = System.nanoTime();
+		Process process = builder.start();
+		long spawnNanos = System.nanoTime() - start;
+		// すぐに終了するプロセスでも観測できるよう、起動した直後に 1 回観測する
+		CpuSampler cpu = new CpuSampler(process);
+		cpu.sample();
+		countLaunch(operation);
+		try {
+			Future<Long> stdin = null;
+			if (src == null) {
+				process.getOutputStream().close();
+			} else {
+				stdin = drainers.submit(new StreamFeeder(src, process
+						.getOutputStream()));
+			}
+
+			Future<StreamDrainer> stdout = drainers.submit(new StreamDrainer(
+					process.getInputStream(), stdoutLimit, dest));
+			Future<StreamDrainer> stderr = drainers.submit(new StreamDrainer(
+					process.getErrorStream(), stderrLimit));
+
+			// 出力の読み込みも含めて制限時間内に終了しなければならない
+			long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+			StreamDrainer out;
+			StreamDrainer err;
+			try {
+				if (!waitFor(process, timeoutMillis, cpu)) {
+					throw new TimeoutException();
+				}
+				out = await(stdout, timeoutMillis, deadline);
+				err = await(stderr, timeoutMillis, deadline);
+			} catch (TimeoutException e) {
+				destroyTree(process);
+				if (stdin != null) {
+					stdin.cancel(true);
+				}
+				stdout.cancel(true);
+				stderr.cancel(true);
+				throw new ProcessTimeoutException(command, timeoutMillis);
+			}
+			int exitCode = process.exitValue();
+
+			long elapsedNanos = System.nanoTime() - start;
+			if (exitCode != 0) {
+				throw new ProcessFailedException(new ProcessResult(command,
+						exitCode, out.toByteArray(), err.toByteArray(),
+						err.getTruncated(), elapsedNanos, spawnNanos,
+						cpu.getCpuNanos(), 0, out.getTotal()));
+			}
+			long stdinBytes = 0;
+			if (stdin != null) {
+				// 子プロセスが正常に終了した場合のみ、入力の転送の失敗を報告する
+				try {
+					stdinBytes = await(stdin, 0, 0);
+				} catch (TimeoutException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return new ProcessResult(command, exitCode, out.toByteArray(),
+					err.toByteArray(), err.getTruncated(), elapsedNanos,
+					spawnNanos, cpu.getCpuNanos(), stdinBytes, out.getTotal());
+		} catch (InterruptedException e) {
+			destroyTree(process);
+			throw e;
+		}
+	}
+
+	/**
+	 * 子プロセスが終了するまで待機する。
+	 *
+	 * @param process
+	 *            子プロセス
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @param cpu
+	 *            待機を始める前に毎回 CPU 時間を観測するオブジェクト
+	 * @return 制限時間内に終了した場合は true
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合
+	 */
+	private static boolean waitFor(Process process, long timeoutMillis,
+			CpuSampler cpu) throws InterruptedException {
+		long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while (true) {
+			long remaining = timeoutMillis == 0 ? CPU_SAMPLING_INTERVAL_NANOS
+					: deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return false;
+			}
+			cpu.sample();
+			if (process.waitFor(Math.min(remaining, CPU_SAMPLING_INTERVAL_NANOS),
+					TimeUnit.NANOSECONDS)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 子プロセスが使用した CPU 時間を観測するクラス。
+	 *
+	 * 終了した子プロセスの CPU 時間は取得できないため、起動した直後と待機を始める前に観測した最大の値を保持する。
+	 * 最後に観測してから終了するまでの分は含まないため、実際の CPU 時間の下限となる。 1 回も観測できなかった場合は -1
+	 * とする。
+	 */
+	private static class CpuSampler {
+
+		private final ProcessHandle handle;
+
+		private long cpuNanos = -1;
+
+		CpuSampler(Process process) {
+			handle = process.toHandle();
+		}
+
+		void sample() {
+			handle.info().totalCpuDuration()
+					.ifPresent(d -> cpuNanos = Math.max(cpuNanos, d.toNanos()));
+		}
+
+		long getCpuNanos() {
+			return cpuNanos;
+		}
+
+	}
+
+	/**
+	 * 子プロセスとその子孫のプロセスを強制終了する。
+	 *
+	 * 子プロセスの終了によって子孫のプロセスが辿れなくなるため、先に子孫のプロセスを取得しておく。
+	 *
+	 * @param process
+	 *            子プロセス
+	 */
+	static void destroyTree(Process process) {
+		List<ProcessHandle> descendants = process.descendants().collect(
+				Collectors.toList());
+		process.destroyForcibly();
+		for (ProcessHandle descendant : descendants) {
+			descendant.destroyForcibly();
+		}
+	}
+
+	/**
+	 * 出力の読み込みが終了するまで待機する。
+	 *
+	 * 子孫のプロセスが出力を開いたままの場合、子プロセスが終了しても読み込みが終了しないことがあるため、
+	 * 制限時間を指定した場合は期限までしか待機しない。
+	 *
+	 * @param future
+	 *            入出力の転送処理の <code>Future</code> オブジェクト
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）。0 の場合は制限しない
+	 * @param deadline
+	 *            期限（<code>System#nanoTime</code> の値）
+	 * @return 転送処理の結果
+	 * @throws IOException
+	 *             転送に失敗した場合
+	 * @throws TimeoutException
+	 *             期限までに読み込みが終了しなかった場合
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合
+	 */
+	private static <T> T await(Future<T> future, long timeoutMillis,
+			long deadline) throws IOException, TimeoutException,
+			InterruptedException {
+		try {
+			if (timeoutMillis == 0) {
+				return future.get();
+			}
+			return future.get(deadline - System.nanoTime(),
+					TimeUnit.NANOSECONDS);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+package net.tomoyamkung.library.process;
+
+import java.io.IOException;
+
+/**
+ * ImageMagick のコマンドが 0 以外の終了コードで終了した場合に生成する例外クラス。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class ProcessFailedException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * コマンドの実行結果。
+	 */
+	private final ProcessResult result;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param result
+	 *            コマンドの実行結果
+	 */
+	public ProcessFailedException(ProcessResult result) {
+		super(String.format("ImageMagick の操作に失敗しました。%s", result));
+		this.result = result;
+	}
+
+	public ProcessResult getResult() {
+		return result;
+	}
+
+}
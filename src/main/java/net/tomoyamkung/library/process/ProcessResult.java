@@ -0,0 +1,202 @@
+package net.tomoyamkung.library.process;
+
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ImageMagick のコマンドの実行結果を保持するクラス。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class ProcessResult {
+
+	/**
+	 * 実行したコマンド。
+	 */
+	private final List<String> command;
+
+	/**
+	 * 終了コード。
+	 */
+	private final int exitCode;
+
+	/**
+	 * 標準出力の内容。
+	 */
+	private final byte[] stdout;
+
+	/**
+	 * 標準エラー出力の内容。
+	 */
+	private final byte[] stderr;
+
+	/**
+	 * 上限を超えたため破棄した標準エラー出力のバイト数。
+	 */
+	private final long stderrTruncated;
+
+	/**
+	 * コマンドの実行にかかった時間（ナノ秒）。
+	 */
+	private final long elapsedNanos;
+
+	/**
+	 * 子プロセスの起動にかかった時間（ナノ秒）。取得できなかった場合は -1。
+	 */
+	private final long spawnNanos;
+
+	/**
+	 * 子プロセスが使用した CPU 時間の下限（ナノ秒）。観測できなかった場合は -1。
+	 */
+	private final long cpuNanos;
+
+	/**
+	 * 標準入力に転送したバイト数。
+	 */
+	private final long stdinBytes;
+
+	/**
+	 * 標準出力から読み込んだバイト数。
+	 */
+	private final long stdoutBytes;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param command
+	 *            実行したコマンド
+	 * @param exitCode
+	 *            終了コード
+	 * @param stdout
+	 *            標準出力の内容
+	 * @param stderr
+	 *            標準エラー出力の内容
+	 * @param stderrTruncated
+	 *            上限を超えたため破棄した標準エラー出力のバイト数
+	 * @param elapsedNanos
+	 *            コマンドの実行にかかった時間（ナノ秒）
+	 */
+	public ProcessResult(List<String> command, int exitCode, byte[] stdout,
+			byte[] stderr, long stderrTruncated, long elapsedNanos) {
+		this(command, exitCode, stdout, stderr, stderrTruncated, elapsedNanos,
+				-1, -1, 0, stdout.length);
+	}
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param command
+	 *            実行したコマンド
+	 * @param exitCode
+	 *            終了コード
+	 * @param stdout
+	 *            標準出力の内容
+	 * @param stderr
+	 *            標準エラー出力の内容
+	 * @param stderrTruncated
+	 *            上限を超えたため破棄した標準エラー出力のバイト数
+	 * @param elapsedNanos
+	 *            コマンドの実行にかかった時間（ナノ秒）
+	 * @param spawnNanos
+	 *            子プロセスの起動にかかった時間（ナノ秒）。取得できなかった場合は -1
+	 * @param cpuNanos
+	 *            子プロセスが使用した CPU 時間の下限（ナノ秒）。観測できなかった場合は -1
+	 * @param stdinBytes
+	 *            標準入力に転送したバイト数
+	 * @param stdoutBytes
+	 *            標準出力から読み込んだバイト数
+	 */
+	public ProcessResult(List<String> command, int exitCode, byte[] stdout,
+			byte[] stderr, long stderrTruncated, long elapsedNanos,
+			long spawnNanos, long cpuNanos, long stdinBytes, long stdoutBytes) {
+		this.command = Collections.unmodifiableList(command);
+		this.exitCode = exitCode;
+		this.stdout = stdout;
+		this.stderr = stderr;
+		this.stderrTruncated = stderrTruncated;
+		this.elapsedNanos = elapsedNanos;
+		this.spawnNanos = spawnNanos;
+		this.cpuNanos = cpuNanos;
+		this.stdinBytes = stdinBytes;
+		this.stdoutBytes = stdoutBytes;
+	}
+
+	public List<String> getCommand() {
+		return command;
+	}
+
+	public int getExitCode() {
+		return exitCode;
+	}
+
+	/**
+	 * 正常に終了したかを判定する。
+	 *
+	 * @return 終了コードが 0 の場合は true
+	 */
+	public boolean isSuccess() {
+		return exitCode == 0;
+	}
+
+	public byte[] getStdout() {
+		return stdout.clone();
+	}
+
+	/**
+	 * 標準エラー出力の内容をプラットフォームの既定の文字コードで文字列にして取得する。
+	 *
+	 * @return 標準エラー出力の内容
+	 */
+	public String getStderr() {
+		return new String(stderr, Charset.defaultCharset());
+	}
+
+	public long getStderrTruncated() {
+		return stderrTruncated;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public long getSpawnNanos() {
+		return spawnNanos;
+	}
+
+	/**
+	 * 子プロセスが使用した CPU 時間を取得する。
+	 *
+	 * 実行中に観測した最後の値のため、実際より小さいことがある。 すぐに終了した場合など、観測できなかった場合は -1 とする。
+	 *
+	 * @return CPU 時間の下限（ナノ秒）。観測できなかった場合は -1
+	 */
+	public long getCpuNanos() {
+		return cpuNanos;
+	}
+
+	public long getStdinBytes() {
+		return stdinBytes;
+	}
+
+	public long getStdoutBytes() {
+		return stdoutBytes;
+	}
+
+	/**
+	 * コマンドの実行にかかった時間をミリ秒で取得する。
+	 *
+	 * @return コマンドの実行にかかった時間（ミリ秒）
+	 */
+	public long getElapsedMillis() {
+		return elapsedNanos / 1000000L;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("command:%s, exitCode:%s, elapsed:%sms, stderr:%s",
+				command, exitCode, getElapsedMillis(), getStderr().trim());
+	}
+
+}
@@ -0,0 +1,52 @@
+package net.tomoyamkung.library.process;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ImageMagick のコマンドが制限時間内に終了しなかった場合に生成する例外クラス。
+ *
+ * この例外を生成する時点で、子プロセスとその子孫のプロセスは強制終了している。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class ProcessTimeoutException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * 実行したコマンド。
+	 */
+	private final List<String> command;
+
+	/**
+	 * 制限時間（ミリ秒）。
+	 */
+	private final long timeoutMillis;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param command
+	 *            実行したコマンド
+	 * @param timeoutMillis
+	 *            制限時間（ミリ秒）
+	 */
+	public ProcessTimeoutException(List<String> command, long timeoutMillis) {
+		super(String.format("ImageMagick の操作が %sms 以内に終了しませんでした。command:%s",
+				timeoutMillis, command));
+		this.command = Collections.unmodifiableList(command);
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public List<String> getCommand() {
+		return command;
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+}
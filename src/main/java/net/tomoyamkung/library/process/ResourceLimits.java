@@ -0,0 +1,261 @@
+package net.tomoyamkung.library.process;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * ImageMagick のプロセスが使用する資源の上限を保持するクラス。
+ *
+ * 上限は子プロセスの環境変数（<code>MAGICK_THREAD_LIMIT</code> など）として指定するため、convert
+ * コマンドや montage コマンドなど全てのコマンドに同じように適用される。 指定していない項目は ImageMagick
+ * の既定値（<code>policy.xml</code> や搭載メモリから決まる値）となる。
+ *
+ * ImageMagick は既定で CPU のコア数と同じ数のスレッドを使用するため、複数のプロセスを同時に実行すると
+ * CPU を取り合って遅くなる。 <code>forConcurrency</code> で同時実行数に応じたスレッド数の上限を作成できる。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class ResourceLimits {
+
+	/**
+	 * 大きさの形式（<code>256MiB</code>、<code>1GB</code>、<code>50%</code> など）。
+	 */
+	private static final Pattern SIZE_PATTERN = Pattern
+			.compile("[0-9]+(\\.[0-9]+)?([KMGTPE]i?B?|B|%)?");
+
+	/**
+	 * スレッド数の上限。0 の場合は指定しない。
+	 */
+	private int thread;
+
+	/**
+	 * 画素を格納するメモリの上限。
+	 */
+	private String memory;
+
+	/**
+	 * 画素を格納するメモリマップの上限。
+	 */
+	private String map;
+
+	/**
+	 * 画素を格納するディスクの上限。
+	 */
+	private String disk;
+
+	/**
+	 * 画素キャッシュをメモリに置く画像の大きさ（画素数）の上限。
+	 */
+	private String area;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * どの項目も指定していない状態で作成する。
+	 */
+	public ResourceLimits() {
+	}
+
+	/**
+	 * コピーを作成するコンストラクタ。
+	 */
+	ResourceLimits(ResourceLimits other) {
+		thread = other.thread;
+		memory = other.memory;
+		map = other.map;
+		disk = other.disk;
+		area = other.area;
+	}
+
+	/**
+	 * 同時実行数に応じた上限を作成する。
+	 *
+	 * 同時に実行するプロセスのスレッド数の合計が CPU のコア数程度になるように、スレッド数の上限を
+	 * <code>コア数 / concurrency</code>（1 以上）とする。
+	 *
+	 * @param concurrency
+	 *            同時に実行する ImageMagick のプロセス数
+	 * @return <code>ResourceLimits</code> オブジェクト
+	 */
+	public static ResourceLimits forConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException(
+					"concurrency は 1 以上の値を指定してください。");
+		}
+		int cores = Runtime.getRuntime().availableProcessors();
+		return new ResourceLimits().setThread(Math.max(1, cores / concurrency));
+	}
+
+	public int getThread() {
+		return thread;
+	}
+
+	/**
+	 * スレッド数の上限を設定する。
+	 *
+	 * @param thread
+	 *            スレッド数の上限。0 の場合は指定しない
+	 * @return このオブジェクト
+	 */
+	public ResourceLimits setThread(int thread) {
+		if (thread < 0) {
+			throw new IllegalArgumentException(
+					"thread は 0 以上の値を指定してください。");
+		}
+		this.thread = thread;
+		return this;
+	}
+
+	public String getMemory() {
+		return memory;
+	}
+
+	/**
+	 * 画素を格納するメモリの上限を設定する。
+	 *
+	 * @param memory
+	 *            上限（<code>256MiB</code> など）。null の場合は指定しない
+	 * @return このオブジェクト
+	 */
+	public ResourceLimits setMemory(String memory) {
+		this.memory = validateSize("memory", memory);
+		return this;
+	}
+
+	public String getMap() {
+		return map;
+	}
+
+	/**
+	 * 画素を格納するメモリマップの上限を設定する。
+	 *
+	 * @param map
+	 *            上限（<code>512MiB</code> など）。null の場合は指定しない
+	 * @return このオブジェクト
+	 */
+	public ResourceLimits setMap(String map) {
+		this.map = validateSize("map", map);
+		return this;
+	}
+
+	public String getDisk() {
+		return disk;
+	}
+
+	/**
+	 * 画素を格納するディスクの上限を設定する。
+	 *
+	 * @param disk
+	 *            上限（<code>1GiB</code> など）。null の場合は指定しない
+	 * @return このオブジェクト
+	 */
+	public ResourceLimits setDisk(String disk) {
+		this.disk = validateSize("disk", disk);
+		return this;
+	}
+
+	public String getArea() {
+		return area;
+	}
+
+	/**
+	 * 画素キャッシュをメモリに置く画像の大きさの上限を設定する。
+	 *
+	 * @param area
+	 *            上限（<code>128M</code> など、画素数で指定する）。null の場合は指定しない
+	 * @return このオブジェクト
+	 */
+	public ResourceLimits setArea(String area) {
+		this.area = validateSize("area", area);
+		return this;
+	}
+
+	/**
+	 * 大きさの形式を確認する。
+	 *
+	 * @return 大きさ
+	 */
+	private static String validateSize(String name, String size) {
+		if (size != null && !SIZE_PATTERN.matcher(size).matches()) {
+			throw new IllegalArgumentException(String.format(
+					"%s は 256MiB のような形式で指定してください。 %s", name, size));
+		}
+		return size;
+	}
+
+	/**
+	 * 指定していない項目を既定値で補った上限を作成する。
+	 *
+	 * このオブジェクトと <code>defaults</code> は変更しない。
+	 *
+	 * @param defaults
+	 *            既定値。null の場合は補わない
+	 * @return <code>ResourceLimits</code> オブジェクト
+	 */
+	public ResourceLimits withDefaults(ResourceLimits defaults) {
+		ResourceLimits merged = new ResourceLimits(this);
+		if (defaults == null) {
+			return merged;
+		}
+		if (merged.thread == 0) {
+			merged.thread = defaults.thread;
+		}
+		if (merged.memory == null) {
+			merged.memory = defaults.memory;
+		}
+		if (merged.map == null) {
+			merged.map = defaults.map;
+		}
+		if (merged.disk == null) {
+			merged.disk = defaults.disk;
+		}
+		if (merged.area == null) {
+			merged.area = defaults.area;
+		}
+		return merged;
+	}
+
+	/**
+	 * どの項目も指定していないかを判定する。
+	 *
+	 * @return 指定していない場合は true
+	 */
+	public boolean isEmpty() {
+		return thread == 0 && memory == null && map == null && disk == null
+				&& area == null;
+	}
+
+	/**
+	 * 子プロセスに設定する環境変数を取得する。
+	 *
+	 * @return 環境変数の名前と値を格納したマップ。指定していない項目は含まない
+	 */
+	public Map<String, String> toEnvironment() {
+		Map<String, String> environment = new LinkedHashMap<String, String>();
+		if (thread != 0) {
+			environment.put("MAGICK_THREAD_LIMIT", String.valueOf(thread));
+		}
+		if (memory != null) {
+			environment.put("MAGICK_MEMORY_LIMIT", memory);
+		}
+		if (map != null) {
+			environment.put("MAGICK_MAP_LIMIT", map);
+		}
+		if (disk != null) {
+			environment.put("MAGICK_DISK_LIMIT", disk);
+		}
+		if (area != null) {
+			environment.put("MAGICK_AREA_LIMIT", area);
+		}
+		return environment;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("thread:%s, memory:%s, map:%s, disk:%s, area:%s",
+				thread, memory, map, disk, area);
+	}
+
+}
@@ -0,0 +1,125 @@
+package net.tomoyamkung.library.process;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Callable;
+
+/**
+ * 子プロセスの出力を最後まで読み込むクラス。
+ *
+ * 読み込んだ内容は上限までバッファに格納し、上限を超えた分は破棄する。 上限に 0
+ * を指定した場合は全て破棄する。 出力を読み込み続けることで、パイプのバッファが満杯になり子プロセスが停止することを防ぐ。
+ *
+ * 転送先を指定した場合は、バッファに格納せずに固定長のバッファで少しずつ転送先へ書き込む。
+ *
+ * @author tomoyamkung
+ *
+ */
+class StreamDrainer implements Callable<StreamDrainer> {
+
+	/**
+	 * 読み込みに使用するバッファの大きさ。
+	 */
+	private static final int CHUNK_SIZE = 8192;
+
+	/**
+	 * 読み込む出力。
+	 */
+	private final InputStream in;
+
+	/**
+	 * バッファに格納するバイト数の上限。
+	 */
+	private final int limit;
+
+	/**
+	 * 読み込んだ内容を格納するバッファ。
+	 */
+	private final ByteArrayOutputStream buffer;
+
+	/**
+	 * 転送先。null の場合はバッファに格納する。
+	 */
+	private final WritableByteChannel sink;
+
+	/**
+	 * 上限を超えたため破棄したバイト数。
+	 */
+	private long truncated;
+
+	/**
+	 * 読み込んだバイト数。
+	 */
+	private long total;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param in
+	 *            読み込む出力
+	 * @param limit
+	 *            バッファに格納するバイト数の上限
+	 */
+	StreamDrainer(InputStream in, int limit) {
+		this(in, limit, null);
+	}
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param in
+	 *            読み込む出力
+	 * @param limit
+	 *            バッファに格納するバイト数の上限
+	 * @param sink
+	 *            転送先。null の場合はバッファに格納する
+	 */
+	StreamDrainer(InputStream in, int limit, WritableByteChannel sink) {
+		this.in = in;
+		this.limit = limit;
+		this.sink = sink;
+		buffer = new ByteArrayOutputStream(Math.min(limit, CHUNK_SIZE));
+	}
+
+	@Override
+	public StreamDrainer call() throws IOException {
+		byte[] chunk = new byte[CHUNK_SIZE];
+		try {
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				total += read;
+				if (sink != null) {
+					ByteBuffer src = ByteBuffer.wrap(chunk, 0, read);
+					while (src.hasRemaining()) {
+						sink.write(src);
+					}
+					continue;
+				}
+				int stored = Math.min(read, limit - buffer.size());
+				if (stored > 0) {
+					buffer.write(chunk, 0, stored);
+				}
+				truncated += read - stored;
+			}
+		} finally {
+			in.close();
+		}
+		return this;
+	}
+
+	byte[] toByteArray() {
+		return buffer.toByteArray();
+	}
+
+	long getTruncated() {
+		return truncated;
+	}
+
+	long getTotal() {
+		return total;
+	}
+
+}
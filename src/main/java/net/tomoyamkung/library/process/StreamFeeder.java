@@ -0,0 +1,69 @@
+package net.tomoyamkung.library.process;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Callable;
+
+/**
+ * 子プロセスの標準入力に内容を転送するクラス。
+ *
+ * 固定長のバッファで少しずつ転送し、最後まで転送した時点で標準入力を閉じる。
+ *
+ * @author tomoyamkung
+ *
+ */
+class StreamFeeder implements Callable<Long> {
+
+	/**
+	 * 転送に使用するバッファの大きさ。
+	 */
+	private static final int CHUNK_SIZE = 8192;
+
+	/**
+	 * 転送する内容。
+	 */
+	private final ReadableByteChannel src;
+
+	/**
+	 * 子プロセスの標準入力。
+	 */
+	private final OutputStream out;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param src
+	 *            転送する内容
+	 * @param out
+	 *            子プロセスの標準入力
+	 */
+	StreamFeeder(ReadableByteChannel src, OutputStream out) {
+		this.src = src;
+		this.out = out;
+	}
+
+	/**
+	 * 最後まで転送する。
+	 *
+	 * @return 転送したバイト数
+	 */
+	@Override
+	public Long call() throws IOException {
+		ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+		long transferred = 0;
+		try {
+			while (src.read(chunk) != -1) {
+				chunk.flip();
+				transferred += chunk.remaining();
+				out.write(chunk.array(), chunk.arrayOffset(), chunk.remaining());
+				chunk.clear();
+			}
+		} finally {
+			out.close();
+		}
+		return transferred;
+	}
+
+}
@@ -0,0 +1,308 @@
+package net.tomoyamkung.library.process;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 常駐させた ImageMagick のプロセスに処理を送って実行するクラス。
+ *
+ * 画像ごとにプロセスを起動すると、小さな画像では起動と設定ファイルの読み込みが処理時間の大半を占める。
+ * このクラスは <code>magick -script -</code> を常駐させ、convert
+ * コマンドの処理をスクリプトとして標準入力から送ることで起動のコストを省く。
+ *
+ * <code>ImageMagick#setProcessExecutor</code> に設定すると、コマンドパスが
+ * <code>convertPath</code> と一致する処理は常駐させたプロセスで実行し、それ以外（montage
+ * コマンドなど）は通常どおり子プロセスを起動して実行する。
+ *
+ * 常駐させたプロセスは次の場合に作り直す。
+ *
+ * <ul>
+ * <li>指定した件数を処理した</li>
+ * <li>処理中に終了した、もしくは、制限時間内に処理が完了しなかった</li>
+ * <li>一定時間使われておらず、応答の確認に失敗した</li>
+ * </ul>
+ *
+ * 常駐させたプロセスには起動時に資源の上限を適用する。 <code>getResourceLimits</code>
+ * で指定していない項目は、常駐させるプロセスの数から求めた上限（<code>ResourceLimits#forConcurrency</code>）
+ * とする。 処理ごとに指定した資源の上限の既定値は、常駐させたプロセスには適用しない。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class WorkerPoolExecutor extends ProcessExecutor implements
+		AutoCloseable {
+
+	/**
+	 * 応答を確認するまでの使われていない時間の既定値（ミリ秒）。
+	 */
+	public static final long DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS = 30000;
+
+	/**
+	 * 応答を待つ時間（ミリ秒）。
+	 */
+	private static final long PING_TIMEOUT_MILLIS = 5000;
+
+	/**
+	 * 常駐させたプロセスで実行する convert コマンドのパス。
+	 */
+	private final String convertPath;
+
+	/**
+	 * 常駐させる ImageMagick のコマンドパスとパラメータ。
+	 */
+	private final List<String> workerCommand;
+
+	/**
+	 * 1 つのプロセスで処理する件数の上限。
+	 */
+	private final int maxJobsPerWorker;
+
+	/**
+	 * 応答を確認するまでの使われていない時間（ミリ秒）。
+	 */
+	private final long healthCheckIntervalMillis;
+
+	/**
+	 * 常駐させるプロセスの数。
+	 */
+	private final int poolSize;
+
+	/**
+	 * 同時に処理できるプロセスの数を制限するセマフォ。
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * 処理待ちのプロセス。最後に使われたものから取り出す。
+	 */
+	private final LinkedBlockingDeque<MagickWorker> idleWorkers = new LinkedBlockingDeque<MagickWorker>();
+
+	/**
+	 * 起動したプロセスの数。
+	 */
+	private final AtomicInteger startedWorkers = new AtomicInteger();
+
+	/**
+	 * 常駐させたプロセスに処理を送った回数。
+	 */
+	private final OperationCounter jobs = new OperationCounter();
+
+	/**
+	 * 終了処理を行ったか。
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * <code>magickPath -script -</code> を常駐させる。
+	 *
+	 * @param convertPath
+	 *            常駐させたプロセスで実行する convert コマンドのパス。<code>ImageMagick</code>
+	 *            の各メソッドに指定するコマンドパスと同じ値を指定する
+	 * @param magickPath
+	 *            magick コマンド（ImageMagick 7）のパス
+	 * @param poolSize
+	 *            常駐させるプロセスの数
+	 * @param maxJobsPerWorker
+	 *            1 つのプロセスで処理する件数の上限
+	 */
+	public WorkerPoolExecutor(String convertPath, String magickPath,
+			int poolSize, int maxJobsPerWorker) {
+		this(convertPath, Arrays.asList(magickPath, "-script", "-"), poolSize,
+				maxJobsPerWorker, DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS, 0,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param convertPath
+	 *            常駐させたプロセスで実行する convert コマンドのパス。<code>ImageMagick</code>
+	 *            の各メソッドに指定するコマンドパスと同じ値を指定する
+	 * @param workerCommand
+	 *            常駐させる ImageMagick のコマンドパスとパラメータ
+	 * @param poolSize
+	 *            常駐させるプロセスの数
+	 * @param maxJobsPerWorker
+	 *            1 つのプロセスで処理する件数の上限
+	 * @param healthCheckIntervalMillis
+	 *            応答を確認するまでの使われていない時間（ミリ秒）
+	 * @param timeout
+	 *            制限時間の既定値。0 の場合は制限しない
+	 * @param unit
+	 *            <code>timeout</code> の単位
+	 */
+	public WorkerPoolExecutor(String convertPath, List<String> workerCommand,
+			int poolSize, int maxJobsPerWorker, long healthCheckIntervalMillis,
+			long timeout, TimeUnit unit) {
+		super(DEFAULT_OUTPUT_LIMIT, DEFAULT_OUTPUT_LIMIT, timeout, unit);
+		if (convertPath == null) {
+			throw new IllegalArgumentException(
+					"convertPath may not be specified.");
+		}
+		if (workerCommand == null || workerCommand.isEmpty()) {
+			throw new IllegalArgumentException(
+					"workerCommand may not be specified.");
+		}
+		if (poolSize < 1) {
+			throw new IllegalArgumentException(
+					"poolSize は 1 以上の値を指定してください。");
+		}
+		if (maxJobsPerWorker < 1) {
+			throw new IllegalArgumentException(
+					"maxJobsPerWorker は 1 以上の値を指定してください。");
+		}
+		this.convertPath = convertPath;
+		this.workerCommand = new ArrayList<String>(workerCommand);
+		this.maxJobsPerWorker = maxJobsPerWorker;
+		this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+		this.poolSize = poolSize;
+		permits = new Semaphore(poolSize, true);
+	}
+
+	/**
+	 * コマンドを実行し、終了するまで待機する。
+	 *
+	 * コマンドパスが <code>convertPath</code>
+	 * と一致する場合は常駐させたプロセスで実行する。処理待ちのプロセスがない場合は空くまで待機する。
+	 */
+	@Override
+	public ProcessResult execute(String operation, List<String> command,
+			long timeoutMillis, ResourceLimits defaultLimits)
+			throws IOException, InterruptedException {
+		if (closed || command.size() < 2
+				|| !convertPath.equals(command.get(0))) {
+			return super.execute(operation, command, timeoutMillis,
+					defaultLimits);
+		}
+
+		permits.acquire();
+		MagickWorker worker = null;
+		try {
+			worker = borrow(operation);
+			jobs.increment(operation);
+			ProcessResult result = worker.run(command, timeoutMillis);
+			if (closed || worker.getJobCount() >= maxJobsPerWorker) {
+				worker.close();
+			} else {
+				idleWorkers.addFirst(worker);
+			}
+			worker = null;
+			return result;
+		} finally {
+			if (worker != null) {
+				// 処理に失敗したプロセスは状態が分からないため再利用しない
+				worker.destroy();
+			}
+			permits.release();
+		}
+	}
+
+	/**
+	 * 処理待ちのプロセスを取り出す。
+	 *
+	 * 終了しているもの、応答しないものは破棄し、処理待ちのプロセスがない場合は新しく起動する。
+	 * 新しく起動した場合は、子プロセスを起動した回数として数える。
+	 *
+	 * @param operation
+	 *            起動した回数を数える操作の種類。指定していない場合は null
+	 * @return 処理待ちのプロセス
+	 * @throws IOException
+	 *             プロセスの起動に失敗した場合
+	 * @throws InterruptedException
+	 *             応答の確認中に割り込まれた場合
+	 */
+	private MagickWorker borrow(String operation) throws IOException,
+			InterruptedException {
+		MagickWorker worker;
+		while ((worker = idleWorkers.pollFirst()) != null) {
+			if (isHealthy(worker)) {
+				return worker;
+			}
+			worker.destroy();
+		}
+		worker = new MagickWorker(workerCommand, getResourceLimits()
+				.withDefaults(ResourceLimits.forConcurrency(poolSize))
+				.toEnvironment(), getStderrLimit());
+		startedWorkers.incrementAndGet();
+		countLaunch(operation);
+		return worker;
+	}
+
+	/**
+	 * プロセスが処理を受け付けられる状態かを確認する。
+	 *
+	 * 一定時間使われていない場合は応答を確認する。
+	 */
+	private boolean isHealthy(MagickWorker worker) throws InterruptedException {
+		if (!worker.isAlive()) {
+			return false;
+		}
+		if (worker.getIdleMillis() < healthCheckIntervalMillis) {
+			return true;
+		}
+		return worker.ping(PING_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * 起動したプロセスの数を取得する。
+	 *
+	 * @return 起動したプロセスの数
+	 */
+	public int getStartedWorkerCount() {
+		return startedWorkers.get();
+	}
+
+	/**
+	 * 常駐させたプロセスに処理を送った回数を取得する。
+	 *
+	 * 子プロセスを起動した回数（<code>getLaunchCount</code>）とは別に数える。
+	 *
+	 * @return 処理を送った回数
+	 */
+	public long getJobCount() {
+		return jobs.get();
+	}
+
+	/**
+	 * 操作の種類ごとに、常駐させたプロセスに処理を送った回数を取得する。
+	 *
+	 * @param operation
+	 *            操作の種類（<code>createThumbnail</code> など）
+	 * @return 処理を送った回数
+	 */
+	public long getJobCount(String operation) {
+		return jobs.get(operation);
+	}
+
+	/**
+	 * 処理待ちのプロセスの数を取得する。
+	 *
+	 * @return 処理待ちのプロセスの数
+	 */
+	public int getIdleWorkerCount() {
+		return idleWorkers.size();
+	}
+
+	/**
+	 * 処理待ちのプロセスを全て終了させる。
+	 *
+	 * 以降の処理は常駐させたプロセスを使わず、子プロセスを起動して実行する。
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		MagickWorker worker;
+		while ((worker = idleWorkers.pollFirst()) != null) {
+			worker.close();
+		}
+	}
+
+}
@@ -13,10 +13,45 @@ import net.tomoyamkung.library.SquareSide;
  */
 public class AspectRatio {
 
+	/**
+	 * 元画像の幅と高さを保持するキャッシュ。
+	 */
+	private static volatile DimensionCache dimensionCache = new DimensionCache();
+
+	/**
+	 * 元画像の幅と高さを保持するキャッシュを取得する。
+	 * 
+	 * @return <code>DimensionCache</code> オブジェクト
+	 */
+	public static DimensionCache getDimensionCache() {
+		return dimensionCache;
+	}
+
+	/**
+	 * 元画像の幅と高さを保持するキャッシュを設定する。
+	 * 
+	 * 保持する件数の上限や保持する時間を変更する場合に使用する。 保持しない場合は件数の上限に 0 を指定したものを設定する。
+	 * 
+	 * @param dimensionCache
+	 *            <code>DimensionCache</code> オブジェクト
+	 */
+	public static void setDimensionCache(DimensionCache dimensionCache) {
+		if (dimensionCache == null) {
+			throw new IllegalArgumentException(
+					"dimensionCache may not be specified.");
+		}
+		AspectRatio.dimensionCache = dimensionCache;
+	}
+
 	/**
 	 * 画像の縦横比を維持してサイズを測る。
 	 * 
 	 * 基準となる「辺」とその長さを指定し、もう一辺は縦横比により自動計算する。
+	 * 元画像の幅と高さは <code>HeaderScanner</code> でヘッダのみを（アニメーションのフレームは辿らずに）読み込んで取得し、
+	 * <code>DimensionCache</code> に保持する。 同じ元画像を続けて測る場合は読み込み直さない。
+	 * 
+	 * Exif の向きが 5 から 8（スマートフォンで縦向きに撮影した写真など）の場合は幅と高さを入れ替え、
+	 * 向きを補正した（<code>-auto-orient</code> を適用した）画像の幅と高さを基準とする。
 	 * 
 	 * @param src
 	 *            元画像のオブジェクト
@@ -30,7 +65,9 @@ public class AspectRatio {
 	 */
 	public static Size measure(File src, SquareSide side, int pixel)
 			throws IOException {
-		return measureWithSize(new Size(src), side, pixel);
+		return measureWithSize(dimensionCache.getHeader(src, false)
+				.getOrientedSize(),
+				side, pixel);
 	}
 
 	/**
@@ -62,4 +99,26 @@ public class AspectRatio {
 		return null;
 	}
 
+	/**
+	 * 縦横比を維持して、指定した大きさに収まる最大のサイズを測る。
+	 * 
+	 * ImageMagick の <code>-thumbnail WxH</code> と同じく、幅と高さのうち倍率が小さい方に合わせ、
+	 * 四捨五入して求める。
+	 * 
+	 * @param srcSize
+	 *            元画像のサイズを格納したオブジェクト
+	 * @param width
+	 *            収める幅
+	 * @param height
+	 *            収める高さ
+	 * @return 計算したサイズを格納したオブジェクト
+	 */
+	public static Size fitWithin(Size srcSize, int width, int height) {
+		double scale = Math.min((double) width / srcSize.getWidth(),
+				(double) height / srcSize.getHeight());
+		return new Size(Math.max(1,
+				(int) Math.floor(srcSize.getWidth() * scale + 0.5)), Math.max(
+				1, (int) Math.floor(srcSize.getHeight() * scale + 0.5)));
+	}
+
 }
@@ -0,0 +1,41 @@
+package net.tomoyamkung.library.size;
+
+/**
+ * 画像の色の表し方を表すクラス。
+ *
+ * @author tomoyamkung
+ *
+ */
+public enum ColorModel {
+
+	/**
+	 * グレースケール（2 値を含む）。
+	 */
+	gray,
+
+	/**
+	 * RGB（YCbCr を含む）。
+	 */
+	rgb,
+
+	/**
+	 * インデックスカラー。
+	 */
+	palette,
+
+	/**
+	 * CMYK。
+	 */
+	cmyk,
+
+	/**
+	 * L*a*b*。
+	 */
+	lab,
+
+	/**
+	 * ヘッダから判別できない。
+	 */
+	unknown;
+
+}
@@ -0,0 +1,267 @@
+package net.tomoyamkung.library.size;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 画像ファイルの幅と高さ（ヘッダから読み取った情報）を保持するキャッシュ。
+ *
+ * 同じ画像から複数の大きさの画像を作成する場合に、ヘッダを読み込み直さずに済むようにする。
+ * ファイルのパスをキーとし、更新日時、サイズ、ファイルの識別子（i ノードなど）のいずれかが変わった場合は読み込み直す。
+ *
+ * 保持する件数が上限を超えた場合は最も長く使われていないものから破棄し、保持してから一定時間が経過したものは読み込み直す。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class DimensionCache {
+
+	/**
+	 * 保持する件数の上限の既定値。
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	/**
+	 * 保持する時間の既定値（ミリ秒）。
+	 */
+	public static final long DEFAULT_EXPIRE_AFTER_MILLIS = TimeUnit.MINUTES
+			.toMillis(10);
+
+	/**
+	 * 保持する件数の上限。0 の場合は保持しない。
+	 */
+	private final int maxEntries;
+
+	/**
+	 * 保持する時間（ナノ秒）。0 の場合は期限を設けない。
+	 */
+	private final long expireAfterNanos;
+
+	/**
+	 * 絶対パスとヘッダの情報。使われた順に並べる。
+	 */
+	private final LinkedHashMap<String, Dimension> entries;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * 保持する件数の上限と保持する時間は既定値とする。
+	 */
+	public DimensionCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_EXPIRE_AFTER_MILLIS,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param maxEntries
+	 *            保持する件数の上限。0 の場合は保持しない
+	 * @param expireAfter
+	 *            保持する時間。0 の場合は期限を設けない
+	 * @param unit
+	 *            <code>expireAfter</code> の単位
+	 */
+	public DimensionCache(final int maxEntries, long expireAfter, TimeUnit unit) {
+		if (maxEntries < 0) {
+			throw new IllegalArgumentException(
+					"maxEntries は 0 以上の値を指定してください。");
+		}
+		if (expireAfter < 0) {
+			throw new IllegalArgumentException(
+					"expireAfter は 0 以上の値を指定してください。");
+		}
+		this.maxEntries = maxEntries;
+		expireAfterNanos = unit.toNanos(expireAfter);
+		entries = new LinkedHashMap<String, Dimension>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Dimension> eldest) {
+				return size() > maxEntries;
+			}
+
+		};
+	}
+
+	/**
+	 * 画像ファイルの幅と高さを取得する。
+	 *
+	 * 保持していない場合は <code>HeaderScanner</code> でアニメーションのフレームを辿らずに読み込んで保持する。 Exif
+	 * の向きは考慮せず、格納されている幅と高さを返す。
+	 *
+	 * @param file
+	 *            幅と高さを取得する画像ファイル
+	 * @return 幅と高さを格納したオブジェクト
+	 * @throws IOException
+	 *             画像の読み込みに失敗した場合
+	 */
+	public Size get(File file) throws IOException {
+		return getHeader(file, false).getSize();
+	}
+
+	/**
+	 * 画像ファイルのヘッダから読み取った情報を、アニメーションのフレームを含めて取得する。
+	 *
+	 * 保持していない場合は <code>HeaderScanner</code> で読み込んで保持する。
+	 *
+	 * @param file
+	 *            ヘッダを読み取る画像ファイル
+	 * @return ヘッダから読み取った情報を格納したオブジェクト
+	 * @throws IOException
+	 *             画像の読み込みに失敗した場合
+	 */
+	public ImageHeader getHeader(File file) throws IOException {
+		return getHeader(file, true);
+	}
+
+	/**
+	 * 画像ファイルのヘッダから読み取った情報を取得する。
+	 *
+	 * 保持していない場合は <code>HeaderScanner</code> で読み込んで保持する。
+	 * フレームを辿らずに読み込んだものを保持している場合に、フレームを要求されたときは読み込み直す。
+	 *
+	 * @param file
+	 *            ヘッダを読み取る画像ファイル
+	 * @param withFrames
+	 *            アニメーションのフレームを辿る場合は true
+	 * @return ヘッダから読み取った情報を格納したオブジェクト。フレームを辿らない場合、フレーム数は 1 のことがある
+	 * @throws IOException
+	 *             画像の読み込みに失敗した場合
+	 */
+	public ImageHeader getHeader(File file, boolean withFrames)
+			throws IOException {
+		if (maxEntries == 0) {
+			missCount.incrementAndGet();
+			return HeaderScanner.scan(file, withFrames);
+		}
+
+		String path = file.getAbsolutePath();
+		BasicFileAttributes attributes = Files.readAttributes(file.toPath(),
+				BasicFileAttributes.class);
+		long now = System.nanoTime();
+		synchronized (entries) {
+			Dimension entry = entries.get(path);
+			if (entry != null && entry.matches(attributes)
+					&& (entry.withFrames || !withFrames)
+					&& (expireAfterNanos == 0 || now - entry.loadedAt < expireAfterNanos)) {
+				hitCount.incrementAndGet();
+				return entry.header;
+			}
+		}
+
+		missCount.incrementAndGet();
+		ImageHeader header = HeaderScanner.scan(file, withFrames);
+		synchronized (entries) {
+			entries.put(path, new Dimension(attributes, header, withFrames,
+					now));
+		}
+		return header;
+	}
+
+	/**
+	 * 保持しているものを全て破棄する。
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * 保持している件数を取得する。
+	 *
+	 * @return 保持している件数
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * ヒットした回数を取得する。
+	 *
+	 * @return ヒットした回数
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * ヒットしなかった回数を取得する。
+	 *
+	 * @return ヒットしなかった回数
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * ヒット率を取得する。
+	 *
+	 * @return ヒット率（0 から 1）。一度も取得していない場合は 0
+	 */
+	public double getHitRate() {
+		long hit = hitCount.get();
+		long total = hit + missCount.get();
+		return total == 0 ? 0 : (double) hit / total;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("entries:%s, hit:%s, miss:%s, hitRate:%s",
+				size(), getHitCount(), getMissCount(), getHitRate());
+	}
+
+	/**
+	 * 保持しているヘッダの情報と、読み込んだ時点のファイルの属性。
+	 */
+	private static class Dimension {
+
+		private final long lastModified;
+
+		private final long length;
+
+		private final Object fileKey;
+
+		private final ImageHeader header;
+
+		private final boolean withFrames;
+
+		private final long loadedAt;
+
+		Dimension(BasicFileAttributes attributes, ImageHeader header,
+				boolean withFrames, long loadedAt) {
+			lastModified = attributes.lastModifiedTime().toMillis();
+			length = attributes.size();
+			fileKey = attributes.fileKey();
+			this.header = header;
+			this.withFrames = withFrames;
+			this.loadedAt = loadedAt;
+		}
+
+		/**
+		 * 読み込んだ時点からファイルが変わっていないかを判定する。
+		 */
+		boolean matches(BasicFileAttributes attributes) {
+			return lastModified == attributes.lastModifiedTime().toMillis()
+					&& length == attributes.size()
+					&& Objects.equals(fileKey, attributes.fileKey());
+		}
+
+	}
+
+}
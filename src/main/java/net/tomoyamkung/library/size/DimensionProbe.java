@@ -0,0 +1,310 @@
+package net.tomoyamkung.library.size;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * 画像ファイルのヘッダだけを読み、幅と高さを取得するクラス。
+ *
+ * JPEG（SOFn マーカー）、PNG（IHDR チャンク）、GIF（論理スクリーン記述子）、BMP、WebP
+ * はヘッダを直接解析する。 TIFF と PSD は <code>HeaderScanner</code> で解析する。 それ以外の形式は <code>ImageReader#getWidth(0)</code>
+ * を使って画像をデコードせずに取得する。
+ *
+ * 使用するメモリはファイルの大きさに関係なく固定の小さなバッファのみである。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class DimensionProbe {
+
+	/**
+	 * ヘッダの読み込みに使用するバッファの大きさ。
+	 */
+	private static final int BUFFER_SIZE = 32;
+
+	/**
+	 * 画像ファイルの幅と高さを取得する。
+	 *
+	 * @param file
+	 *            幅と高さを取得する画像ファイル
+	 * @return 幅と高さを格納したオブジェクト
+	 * @throws IOException
+	 *             画像の読み込みに失敗した場合、もしくは、形式を判別できなかった場合
+	 */
+	public static Size probe(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+			Size size = probeHeader(channel, buffer);
+			if (size != null) {
+				return size;
+			}
+		} finally {
+			in.close();
+		}
+
+		return probeWithImageReader(file);
+	}
+
+	/**
+	 * ファイル先頭のシグネチャから形式を判別してヘッダを解析する。
+	 *
+	 * @param channel
+	 *            画像ファイルのチャネル
+	 * @param buffer
+	 *            読み込みに使用するバッファ
+	 * @return 幅と高さを格納したオブジェクト。形式を判別できなかった場合は null
+	 * @throws IOException
+	 *             画像の読み込みに失敗した場合
+	 */
+	private static Size probeHeader(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		if (channel.size() < 12) {
+			return null;
+		}
+		read(channel, buffer, 0, 12);
+
+		if (u8(buffer, 0) == 0xFF && u8(buffer, 1) == 0xD8) {
+			return probeJpeg(channel, buffer);
+		}
+		if (u8(buffer, 0) == 0x89 && buffer.get(1) == 'P'
+				&& buffer.get(2) == 'N' && buffer.get(3) == 'G') {
+			return probePng(channel, buffer);
+		}
+		if (buffer.get(0) == 'G' && buffer.get(1) == 'I'
+				&& buffer.get(2) == 'F') {
+			return probeGif(channel, buffer);
+		}
+		if (buffer.get(0) == 'B' && buffer.get(1) == 'M') {
+			return probeBmp(channel, buffer);
+		}
+		if (buffer.get(0) == 'R' && buffer.get(1) == 'I'
+				&& buffer.get(2) == 'F' && buffer.get(3) == 'F'
+				&& buffer.get(8) == 'W' && buffer.get(9) == 'E'
+				&& buffer.get(10) == 'B' && buffer.get(11) == 'P') {
+			return probeWebp(channel, buffer);
+		}
+		ImageHeader header = HeaderScanner.scan(channel, false);
+		return header == null ? null : header.getSize();
+	}
+
+	/**
+	 * JPEG のマーカーを辿り、SOFn セグメントから幅と高さを取得する。
+	 *
+	 * APPn などのセグメントは読み飛ばすため、Exif が大きくても読み込む量は変わらない。
+	 */
+	private static Size probeJpeg(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		long position = 2;
+		long length = channel.size();
+		while (position < length) {
+			read(channel, buffer, position, 1);
+			if (u8(buffer, 0) != 0xFF) {
+				throw new IOException("JPEG のマーカーが不正です。");
+			}
+			position++;
+
+			// マーカーの前に 0xFF が詰められている場合がある
+			int marker;
+			do {
+				read(channel, buffer, position, 1);
+				marker = u8(buffer, 0);
+				position++;
+			} while (marker == 0xFF);
+
+			if (marker == 0x01 || (0xD0 <= marker && marker <= 0xD7)) {
+				continue;
+			}
+			if (marker == 0xD9 || marker == 0xDA) {
+				break;
+			}
+
+			read(channel, buffer, position, 2);
+			int segmentLength = u16be(buffer, 0);
+			if (isStartOfFrame(marker)) {
+				read(channel, buffer, position + 2, 5);
+				return new Size(u16be(buffer, 3), u16be(buffer, 1));
+			}
+			position += segmentLength;
+		}
+		throw new IOException("JPEG の SOF マーカーが見つかりません。");
+	}
+
+	/**
+	 * SOFn マーカーかを判定する。
+	 *
+	 * 0xC4（DHT）、0xC8（JPG）、0xCC（DAC）は SOF ではない。
+	 */
+	private static boolean isStartOfFrame(int marker) {
+		return 0xC0 <= marker && marker <= 0xCF && marker != 0xC4
+				&& marker != 0xC8 && marker != 0xCC;
+	}
+
+	/**
+	 * PNG の IHDR チャンクから幅と高さを取得する。
+	 */
+	private static Size probePng(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		read(channel, buffer, 12, 12);
+		if (buffer.get(0) != 'I' || buffer.get(1) != 'H'
+				|| buffer.get(2) != 'D' || buffer.get(3) != 'R') {
+			throw new IOException("PNG の IHDR チャンクが見つかりません。");
+		}
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		return new Size(buffer.getInt(4), buffer.getInt(8));
+	}
+
+	/**
+	 * GIF の論理スクリーン記述子から幅と高さを取得する。
+	 */
+	private static Size probeGif(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		read(channel, buffer, 6, 4);
+		return new Size(u16le(buffer, 0), u16le(buffer, 2));
+	}
+
+	/**
+	 * BMP の情報ヘッダから幅と高さを取得する。
+	 *
+	 * OS/2 形式（ヘッダサイズ 12）は 16bit、それ以外は 32bit で格納されている。
+	 * トップダウン形式の場合、高さは負の値で格納されている。
+	 */
+	private static Size probeBmp(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		read(channel, buffer, 14, 12);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.getInt(0) == 12) {
+			return new Size(u16le(buffer, 4), u16le(buffer, 6));
+		}
+		return new Size(buffer.getInt(4), Math.abs(buffer.getInt(8)));
+	}
+
+	/**
+	 * WebP の最初のチャンク（VP8 / VP8L / VP8X）から幅と高さを取得する。
+	 *
+	 * 小さな画像はファイル全体が 42 バイトに満たない場合があるため、ファイルの大きさまでを読む。
+	 * 幅と高さが格納されている位置まで読めない場合は null を返し、<code>ImageReader</code> で取得し直す。
+	 */
+	private static Size probeWebp(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		long available = channel.size() - 12;
+		if (available < 8) {
+			return null;
+		}
+		int length = (int) Math.min(30, available);
+		read(channel, buffer, 12, length);
+		String chunk = new String(new char[] { (char) buffer.get(0),
+				(char) buffer.get(1), (char) buffer.get(2),
+				(char) buffer.get(3) });
+
+		if ("VP8 ".equals(chunk)) {
+			if (length < 18) {
+				return null;
+			}
+			// フレームタグ（3byte）とスタートコード（3byte）の後に 14bit ずつ格納されている
+			int width = u16le(buffer, 14) & 0x3FFF;
+			int height = u16le(buffer, 16) & 0x3FFF;
+			return new Size(width, height);
+		}
+		if ("VP8L".equals(chunk)) {
+			if (length < 13) {
+				return null;
+			}
+			// シグネチャ（0x2F）の後に (幅 - 1)、(高さ - 1) が 14bit ずつ格納されている
+			int bits = u8(buffer, 9) | (u8(buffer, 10) << 8)
+					| (u8(buffer, 11) << 16) | (u8(buffer, 12) << 24);
+			int width = (bits & 0x3FFF) + 1;
+			int height = ((bits >> 14) & 0x3FFF) + 1;
+			return new Size(width, height);
+		}
+		if ("VP8X".equals(chunk)) {
+			if (length < 18) {
+				return null;
+			}
+			// キャンバスの (幅 - 1)、(高さ - 1) が 24bit ずつ格納されている
+			int width = u24le(buffer, 12) + 1;
+			int height = u24le(buffer, 15) + 1;
+			return new Size(width, height);
+		}
+		throw new IOException("WebP のチャンクを判別できません。");
+	}
+
+	/**
+	 * <code>ImageReader</code> を使って画像をデコードせずに幅と高さを取得する。
+	 *
+	 * @param file
+	 *            幅と高さを取得する画像ファイル
+	 * @return 幅と高さを格納したオブジェクト
+	 * @throws IOException
+	 *             対応する <code>ImageReader</code> が存在しない場合
+	 */
+	private static Size probeWithImageReader(File file) throws IOException {
+		ImageInputStream stream = ImageIO.createImageInputStream(file);
+		if (stream == null) {
+			throw new IOException("画像ファイルを開けません。");
+		}
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+			if (!readers.hasNext()) {
+				throw new IOException("画像の形式を判別できません。");
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(stream, true, true);
+				return new Size(reader.getWidth(0), reader.getHeight(0));
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * 指定した位置から指定したバイト数をバッファの先頭に読み込む。
+	 *
+	 * @throws EOFException
+	 *             ファイルの終端に達した場合
+	 */
+	private static void read(FileChannel channel, ByteBuffer buffer,
+			long position, int length) throws IOException {
+		buffer.clear();
+		buffer.limit(length);
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new EOFException("画像ファイルのヘッダが不完全です。");
+			}
+		}
+	}
+
+	private static int u8(ByteBuffer buffer, int index) {
+		return buffer.get(index) & 0xFF;
+	}
+
+	private static int u16be(ByteBuffer buffer, int index) {
+		return (u8(buffer, index) << 8) | u8(buffer, index + 1);
+	}
+
+	private static int u16le(ByteBuffer buffer, int index) {
+		return u8(buffer, index) | (u8(buffer, index + 1) << 8);
+	}
+
+	private static int u24le(ByteBuffer buffer, int index) {
+		return u8(buffer, index) | (u8(buffer, index + 1) << 8)
+				| (u8(buffer, index + 2) << 16);
+	}
+
+}
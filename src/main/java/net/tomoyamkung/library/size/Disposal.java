@@ -0,0 +1,33 @@
+package net.tomoyamkung.library.size;
+
+/**
+ * アニメーションのフレームを表示した後の処理（破棄の方法）を表すクラス。
+ *
+ * 定数名は ImageMagick の <code>-dispose</code> に指定する値と同じとする。
+ *
+ * @author tomoyamkung
+ *
+ */
+public enum Disposal {
+
+	/**
+	 * 指定しない。
+	 */
+	undefined,
+
+	/**
+	 * 破棄せずに次のフレームを重ねる。
+	 */
+	none,
+
+	/**
+	 * フレームの範囲を背景に戻す。
+	 */
+	background,
+
+	/**
+	 * フレームを表示する前の状態に戻す。
+	 */
+	previous;
+
+}
@@ -0,0 +1,47 @@
+package net.tomoyamkung.library.size;
+
+/**
+ * アニメーションの 1 フレームの表示時間と破棄の方法を保持するクラス。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class Frame {
+
+	/**
+	 * 表示時間（1/100 秒）。
+	 */
+	private final int delay;
+
+	/**
+	 * 表示した後の処理。
+	 */
+	private final Disposal disposal;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param delay
+	 *            表示時間（1/100 秒）。ImageMagick の <code>-delay</code> の既定の単位と同じとする
+	 * @param disposal
+	 *            表示した後の処理
+	 */
+	public Frame(int delay, Disposal disposal) {
+		this.delay = delay;
+		this.disposal = disposal;
+	}
+
+	public int getDelay() {
+		return delay;
+	}
+
+	public Disposal getDisposal() {
+		return disposal;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("delay:%s, disposal:%s", delay, disposal);
+	}
+
+}
@@ -0,0 +1,408 @@
+package net.tomoyamkung.library.size;
+
+/**
+ * ImageMagick のジオメトリ（<code>-thumbnail</code> や <code>-geometry</code>
+ * に指定する大きさ）を保持するクラス。
+ *
+ * 次の形式を解釈する。 幅、高さ、オフセットは整数で指定する。
+ *
+ * <ul>
+ * <li><code>W</code>、<code>xH</code>、<code>WxH</code> … 幅と高さ</li>
+ * <li><code>WxH+X+Y</code>、<code>+X+Y</code> … オフセット（<code>+</code> と <code>-</code>
+ * で符号を指定する）</li>
+ * <li><code>%</code>、<code>!</code>、<code>&gt;</code>、<code>&lt;</code>、
+ * <code>^</code>、<code>@</code> … フラグ。数値以外の位置に指定できる</li>
+ * </ul>
+ *
+ * 文字列は正規表現や部分文字列を使わずに 1 文字ずつ走査して解釈する。
+ *
+ * @author tomoyamkung
+ *
+ */
+public final class Geometry {
+
+	/**
+	 * ジオメトリのフラグを表すクラス。
+	 */
+	public enum Flag {
+
+		/**
+		 * 幅と高さを百分率で指定する（<code>%</code>）。
+		 */
+		percent('%'),
+
+		/**
+		 * 縦横比を維持せずに指定した大きさにする（<code>!</code>）。
+		 */
+		ignoreAspectRatio('!'),
+
+		/**
+		 * 指定した大きさより大きい場合のみ縮小する（<code>&gt;</code>）。
+		 */
+		shrinkOnly('>'),
+
+		/**
+		 * 指定した大きさより小さい場合のみ拡大する（<code>&lt;</code>）。
+		 */
+		enlargeOnly('<'),
+
+		/**
+		 * 指定した大きさを覆うように縮小する（<code>^</code>）。
+		 */
+		fill('^'),
+
+		/**
+		 * 幅を画素数の上限として扱う（<code>@</code>）。
+		 */
+		area('@');
+
+		/**
+		 * ジオメトリに記述する文字。
+		 */
+		private final char symbol;
+
+		private Flag(char symbol) {
+			this.symbol = symbol;
+		}
+
+		public char getSymbol() {
+			return symbol;
+		}
+
+		/**
+		 * 文字に対応するフラグを取得する。
+		 *
+		 * @return フラグ。対応するフラグがない場合は null
+		 */
+		static Flag of(char symbol) {
+			switch (symbol) {
+			case '%':
+				return percent;
+			case '!':
+				return ignoreAspectRatio;
+			case '>':
+				return shrinkOnly;
+			case '<':
+				return enlargeOnly;
+			case '^':
+				return fill;
+			case '@':
+				return area;
+			default:
+				return null;
+			}
+		}
+
+	}
+
+	/**
+	 * 幅や高さが指定されていないことを表す値。
+	 */
+	public static final int UNSPECIFIED = -1;
+
+	/**
+	 * 幅。指定されていない場合は <code>UNSPECIFIED</code>。
+	 */
+	private final int width;
+
+	/**
+	 * 高さ。指定されていない場合は <code>UNSPECIFIED</code>。
+	 */
+	private final int height;
+
+	/**
+	 * 横方向のオフセット。
+	 */
+	private final int x;
+
+	/**
+	 * 縦方向のオフセット。
+	 */
+	private final int y;
+
+	/**
+	 * オフセットが指定されているか。
+	 */
+	private final boolean hasOffset;
+
+	/**
+	 * フラグ。<code>Flag#ordinal</code> のビットを立てる。
+	 */
+	private final int flags;
+
+	private Geometry(int width, int height, int x, int y, boolean hasOffset,
+			int flags) {
+		this.width = width;
+		this.height = height;
+		this.x = x;
+		this.y = y;
+		this.hasOffset = hasOffset;
+		this.flags = flags;
+	}
+
+	/**
+	 * 幅と高さのみを指定したジオメトリを作成する。
+	 *
+	 * @param width
+	 *            幅
+	 * @param height
+	 *            高さ
+	 * @return <code>WxH</code> のジオメトリ
+	 */
+	public static Geometry of(int width, int height) {
+		if (width < 0 || height < 0) {
+			throw new IllegalArgumentException("幅と高さは 0 以上の値を指定してください。");
+		}
+		return new Geometry(width, height, 0, 0, false, 0);
+	}
+
+	/**
+	 * ジオメトリを解釈する。
+	 *
+	 * @param geometry
+	 *            ジオメトリ
+	 * @return <code>Geometry</code> オブジェクト
+	 * @throws IllegalArgumentException
+	 *             null の場合、もしくは、ジオメトリの形式に当てはまっていない場合
+	 */
+	public static Geometry parse(String geometry) {
+		Geometry parsed = tryParse(geometry);
+		if (parsed == null) {
+			throw new IllegalArgumentException(String.format(
+					"%s はジオメトリの形式で指定してください。", geometry));
+		}
+		return parsed;
+	}
+
+	/**
+	 * ジオメトリを解釈する。
+	 *
+	 * @param geometry
+	 *            ジオメトリ
+	 * @return <code>Geometry</code> オブジェクト。null の場合、もしくは、ジオメトリの形式に当てはまっていない場合は
+	 *         null
+	 */
+	public static Geometry tryParse(String geometry) {
+		if (geometry == null) {
+			return null;
+		}
+		int length = geometry.length();
+		int i = 0;
+		int flags = 0;
+		int width = UNSPECIFIED;
+		int height = UNSPECIFIED;
+		int x = 0;
+		int y = 0;
+		boolean hasOffset = false;
+
+		// 幅
+		int end = skipDigits(geometry, i);
+		if (end > i) {
+			width = toInt(geometry, i, end);
+			if (width < 0) {
+				return null;
+			}
+			i = end;
+		}
+		for (Flag flag; i < length
+				&& (flag = Flag.of(geometry.charAt(i))) != null; i++) {
+			flags |= 1 << flag.ordinal();
+		}
+
+		// 高さ
+		if (i < length
+				&& (geometry.charAt(i) == 'x' || geometry.charAt(i) == 'X')) {
+			i++;
+			end = skipDigits(geometry, i);
+			if (end > i) {
+				height = toInt(geometry, i, end);
+				if (height < 0) {
+					return null;
+				}
+				i = end;
+			}
+			for (Flag flag; i < length
+					&& (flag = Flag.of(geometry.charAt(i))) != null; i++) {
+				flags |= 1 << flag.ordinal();
+			}
+		}
+
+		// オフセット
+		if (i < length && isSign(geometry.charAt(i))) {
+			for (int axis = 0; axis < 2; axis++) {
+				if (i >= length || !isSign(geometry.charAt(i))) {
+					return null;
+				}
+				boolean negative = geometry.charAt(i++) == '-';
+				end = skipDigits(geometry, i);
+				int value = end > i ? toInt(geometry, i, end) : -1;
+				if (value < 0) {
+					return null;
+				}
+				i = end;
+				if (axis == 0) {
+					x = negative ? -value : value;
+				} else {
+					y = negative ? -value : value;
+				}
+			}
+			hasOffset = true;
+			for (Flag flag; i < length
+					&& (flag = Flag.of(geometry.charAt(i))) != null; i++) {
+				flags |= 1 << flag.ordinal();
+			}
+		}
+
+		if (i != length
+				|| (width == UNSPECIFIED && height == UNSPECIFIED && !hasOffset)) {
+			return null;
+		}
+		return new Geometry(width, height, x, y, hasOffset, flags);
+	}
+
+	/**
+	 * 数字が続く位置の次の位置を取得する。
+	 */
+	private static int skipDigits(String value, int from) {
+		int i = from;
+		while (i < value.length() && '0' <= value.charAt(i)
+				&& value.charAt(i) <= '9') {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * 数字の並びを整数に変換する。
+	 *
+	 * @return 整数。<code>int</code> の範囲を超える場合は -1
+	 */
+	private static int toInt(String value, int from, int to) {
+		long result = 0;
+		for (int i = from; i < to; i++) {
+			result = result * 10 + (value.charAt(i) - '0');
+			if (result > Integer.MAX_VALUE) {
+				return -1;
+			}
+		}
+		return (int) result;
+	}
+
+	private static boolean isSign(char c) {
+		return c == '+' || c == '-';
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public boolean hasOffset() {
+		return hasOffset;
+	}
+
+	public boolean hasWidth() {
+		return width != UNSPECIFIED;
+	}
+
+	public boolean hasHeight() {
+		return height != UNSPECIFIED;
+	}
+
+	/**
+	 * フラグが指定されているかを判定する。
+	 *
+	 * @param flag
+	 *            フラグ
+	 * @return 指定されている場合は true
+	 */
+	public boolean hasFlag(Flag flag) {
+		return (flags & 1 << flag.ordinal()) != 0;
+	}
+
+	/**
+	 * 幅と高さのみの形式（<code>WxH</code>）かを判定する。
+	 *
+	 * @return 幅と高さが指定され、オフセットとフラグが指定されていない場合は true
+	 */
+	public boolean isSize() {
+		return hasWidth() && hasHeight() && !hasOffset && flags == 0;
+	}
+
+	/**
+	 * 幅と高さを <code>Size</code> に変換する。
+	 *
+	 * @return <code>Size</code> オブジェクト
+	 * @throws IllegalStateException
+	 *             幅と高さの一方が指定されていない場合
+	 */
+	public Size toSize() {
+		if (!hasWidth() || !hasHeight()) {
+			throw new IllegalStateException(String.format(
+					"%s は幅と高さが指定されていません。", this));
+		}
+		return new Size(width, height);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Geometry)) {
+			return false;
+		}
+		Geometry other = (Geometry) obj;
+		return width == other.width && height == other.height
+				&& x == other.x && y == other.y
+				&& hasOffset == other.hasOffset && flags == other.flags;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = width;
+		result = 31 * result + height;
+		result = 31 * result + x;
+		result = 31 * result + y;
+		result = 31 * result + (hasOffset ? 1 : 0);
+		return 31 * result + flags;
+	}
+
+	/**
+	 * ImageMagick に指定する形式の文字列を取得する。
+	 *
+	 * フラグは幅と高さの後に <code>Flag</code> の定義順で並べる。
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		if (hasWidth()) {
+			builder.append(width);
+		}
+		if (hasHeight()) {
+			builder.append('x').append(height);
+		}
+		for (Flag flag : Flag.values()) {
+			if (hasFlag(flag)) {
+				builder.append(flag.getSymbol());
+			}
+		}
+		if (hasOffset) {
+			builder.append(x < 0 ? '-' : '+').append(Math.abs(x));
+			builder.append(y < 0 ? '-' : '+').append(Math.abs(y));
+		}
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,898 @@
+package net.tomoyamkung.library.size;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 画像ファイルのヘッダを読み、幅、高さ、向き、色の表し方、ICC プロファイルの有無、フレーム数を取得するクラス。
+ *
+ * ギガバイト単位の TIFF（BigTIFF を含む）や PSD（PSB を含む）を対象とする。
+ * TIFF の IFD と PSD の画像リソースは大きくなりうるため、必要な範囲だけを <code>FileChannel#map</code>
+ * し、内容をヒープにコピーせずに読む。 ファイルの先頭、マーカー、チャンクのヘッダなど数十バイトの範囲は、map
+ * を作成する費用の方が大きいため、位置を指定した <code>FileChannel#read</code> でヒープのバッファに読む。
+ * 画素のデータは読まない。
+ * JPEG は SOF までのセグメントを辿り、APP1 の Exif から向きを、APP2 から ICC プロファイルを含むかを取得する。
+ * PNG は IDAT までのチャンクを辿り、IHDR から幅、高さ、色の表し方を、iCCP から ICC プロファイルを含むかを取得する。
+ * GIF はブロックを、WebP はチャンクを辿り、画素のデータを展開せずにアニメーションのフレーム数と各フレームの表示時間、破棄の方法を取得する。
+ * フレームを辿るのはフレームの情報を要求された場合のみとする。
+ *
+ * TIFF、PSD、JPEG、PNG、GIF、WebP 以外の形式、もしくは、ヘッダを解釈できなかった場合は <code>DimensionProbe</code>
+ * で幅と高さのみを取得し、向きは <code>ImageHeader.NORMAL_ORIENTATION</code>、色の表し方は
+ * <code>ColorModel.unknown</code>、フレーム数は 1 とする。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class HeaderScanner {
+
+	/**
+	 * ファイルの先頭を読む大きさ。PSD のヘッダ（26 バイト）と BigTIFF のヘッダ（16 バイト）が収まる大きさとする。
+	 */
+	private static final int HEAD_SIZE = 32;
+
+	/**
+	 * GIF のブロックを辿る際に 1 度に読む大きさ。
+	 */
+	private static final int GIF_WINDOW_SIZE = 64 * 1024;
+
+	/**
+	 * Exif を格納する PSD の画像リソースの ID。
+	 */
+	private static final int PSD_EXIF_RESOURCE = 0x0422;
+
+	/**
+	 * PSD の画像リソースのシグネチャ（8BIM）。
+	 */
+	private static final int PSD_RESOURCE_SIGNATURE = 0x3842494D;
+
+	/**
+	 * JPEG の APP1 に格納された Exif の識別子。
+	 */
+	private static final byte[] EXIF = { 'E', 'x', 'i', 'f', 0, 0 };
+
+	/**
+	 * JPEG の APP2 に格納された ICC プロファイルの識別子。
+	 */
+	private static final byte[] ICC_PROFILE = { 'I', 'C', 'C', '_', 'P', 'R',
+			'O', 'F', 'I', 'L', 'E', 0 };
+
+	private static final int PNG_IHDR = 0x49484452;
+
+	private static final int PNG_ICCP = 0x69434350;
+
+	private static final int PNG_IDAT = 0x49444154;
+
+	private static final int PNG_IEND = 0x49454E44;
+
+	private static final int TAG_IMAGE_WIDTH = 256;
+
+	private static final int TAG_IMAGE_LENGTH = 257;
+
+	private static final int TAG_PHOTOMETRIC_INTERPRETATION = 262;
+
+	private static final int TAG_ORIENTATION = 274;
+
+	/**
+	 * 画像ファイルのヘッダを、アニメーションのフレームを含めて読む。
+	 *
+	 * @param file
+	 *            画像ファイル
+	 * @return ヘッダから読み取った情報を格納したオブジェクト
+	 * @throws IOException
+	 *             画像の読み込みに失敗した場合、もしくは、形式を判別できなかった場合
+	 */
+	public static ImageHeader scan(File file) throws IOException {
+		return scan(file, true);
+	}
+
+	/**
+	 * 画像ファイルのヘッダを読む。
+	 *
+	 * ヘッダを解釈できなかった場合は <code>DimensionProbe</code> で幅と高さのみを取得し直す。
+	 * フレームを読まない場合、フレーム数は 1 とする。
+	 *
+	 * @param file
+	 *            画像ファイル
+	 * @param withFrames
+	 *            アニメーションのフレームを辿る場合は true
+	 * @return ヘッダから読み取った情報を格納したオブジェクト
+	 * @throws IOException
+	 *             画像の読み込みに失敗した場合、もしくは、形式を判別できなかった場合
+	 */
+	public static ImageHeader scan(File file, boolean withFrames)
+			throws IOException {
+		ImageHeader header;
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ)) {
+			header = scan(channel, withFrames);
+		} catch (IOException e) {
+			try {
+				return probe(file);
+			} catch (IOException fallback) {
+				e.addSuppressed(fallback);
+				throw e;
+			}
+		}
+		return header != null ? header : probe(file);
+	}
+
+	/**
+	 * <code>DimensionProbe</code> で幅と高さのみを取得する。
+	 */
+	private static ImageHeader probe(File file) throws IOException {
+		return new ImageHeader(DimensionProbe.probe(file),
+				ImageHeader.NORMAL_ORIENTATION, ColorModel.unknown, 1);
+	}
+
+	/**
+	 * TIFF、PSD、JPEG、PNG、GIF、もしくは、WebP のヘッダを読む。
+	 *
+	 * @param channel
+	 *            画像ファイルのチャネル
+	 * @param withFrames
+	 *            アニメーションのフレームを辿る場合は true
+	 * @return ヘッダから読み取った情報を格納したオブジェクト。いずれの形式でもない場合は null
+	 * @throws IOException
+	 *             画像の読み込みに失敗した場合
+	 */
+	static ImageHeader scan(FileChannel channel, boolean withFrames)
+			throws IOException {
+		long length = channel.size();
+		if (length < 8) {
+			return null;
+		}
+		ByteBuffer head = read(channel, 0, (int) Math.min(length, HEAD_SIZE),
+				length);
+		if (isTiff(head)) {
+			return scanTiff(channel, length);
+		}
+		if (isPsd(head)) {
+			return scanPsd(channel, head, length);
+		}
+		if (u8(head, 0) == 0xFF && u8(head, 1) == 0xD8) {
+			return scanJpeg(channel, length);
+		}
+		if (isPng(head)) {
+			return scanPng(channel, length);
+		}
+		if (isGif(head)) {
+			return scanGif(channel, length, withFrames);
+		}
+		if (isWebp(head)) {
+			return scanWebp(channel, length, withFrames);
+		}
+		return null;
+	}
+
+	/**
+	 * TIFF（II*\0、MM\0*）、もしくは、BigTIFF（II+\0、MM\0+）のシグネチャかを判定する。
+	 */
+	private static boolean isTiff(ByteBuffer head) {
+		boolean little = head.get(0) == 'I' && head.get(1) == 'I';
+		boolean big = head.get(0) == 'M' && head.get(1) == 'M';
+		if (!little && !big) {
+			return false;
+		}
+		int version = little ? u8(head, 2) | u8(head, 3) << 8 : u8(head, 2) << 8
+				| u8(head, 3);
+		return version == 42 || version == 43;
+	}
+
+	/**
+	 * PSD（8BPS）のシグネチャかを判定する。
+	 */
+	private static boolean isPsd(ByteBuffer head) {
+		return head.get(0) == '8' && head.get(1) == 'B' && head.get(2) == 'P'
+				&& head.get(3) == 'S';
+	}
+
+	/**
+	 * PNG（\x89PNG）のシグネチャかを判定する。
+	 */
+	private static boolean isPng(ByteBuffer head) {
+		return u8(head, 0) == 0x89 && head.get(1) == 'P' && head.get(2) == 'N'
+				&& head.get(3) == 'G';
+	}
+
+	/**
+	 * GIF（GIF87a、GIF89a）のシグネチャかを判定する。
+	 */
+	private static boolean isGif(ByteBuffer head) {
+		return head.limit() >= 13 && head.get(0) == 'G' && head.get(1) == 'I'
+				&& head.get(2) == 'F';
+	}
+
+	/**
+	 * WebP（RIFF ... WEBP）のシグネチャかを判定する。
+	 */
+	private static boolean isWebp(ByteBuffer head) {
+		return head.limit() >= 20 && head.get(0) == 'R' && head.get(1) == 'I'
+				&& head.get(2) == 'F' && head.get(3) == 'F'
+				&& head.get(8) == 'W' && head.get(9) == 'E'
+				&& head.get(10) == 'B' && head.get(11) == 'P';
+	}
+
+	/**
+	 * TIFF の最初の IFD から幅、高さ、向き、色の表し方を、IFD の連鎖の長さからフレーム数を取得する。
+	 */
+	private static ImageHeader scanTiff(FileChannel channel, long length)
+			throws IOException {
+		TiffDirectory directory = readTiff(channel, 0, length, true);
+		if (directory.width <= 0 || directory.height <= 0) {
+			throw new IOException("TIFF の幅と高さが見つかりません。");
+		}
+		return new ImageHeader(new Size((int) directory.width,
+				(int) directory.height), directory.orientation,
+				toColorModel(directory.photometric), directory.frameCount);
+	}
+
+	/**
+	 * TIFF 構造（TIFF ファイル、もしくは、Exif）を読む。
+	 *
+	 * @param channel
+	 *            ファイルのチャネル
+	 * @param base
+	 *            TIFF ヘッダの位置。IFD のオフセットはこの位置を基準とする
+	 * @param end
+	 *            TIFF 構造の終端の位置
+	 * @param countFrames
+	 *            IFD の連鎖を最後まで辿ってフレーム数を数える場合は true
+	 * @return 最初の IFD から読み取った情報
+	 * @throws IOException
+	 *             TIFF 構造が不正な場合
+	 */
+	static TiffDirectory readTiff(FileChannel channel, long base, long end,
+			boolean countFrames) throws IOException {
+		ByteBuffer header = read(channel, base, (int) Math.min(end - base, 16),
+				end);
+		if (header.limit() < 8) {
+			throw new EOFException("TIFF のヘッダが不完全です。");
+		}
+		ByteOrder order = header.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN
+				: ByteOrder.BIG_ENDIAN;
+		header.order(order);
+		boolean bigTiff = u16(header, 2) == 43;
+		if (bigTiff && header.limit() < 16) {
+			throw new EOFException("BigTIFF のヘッダが不完全です。");
+		}
+		int countSize = bigTiff ? 8 : 2;
+		int entrySize = bigTiff ? 20 : 12;
+		int offsetSize = bigTiff ? 8 : 4;
+
+		TiffDirectory directory = new TiffDirectory();
+		Set<Long> visited = new HashSet<Long>();
+		long offset = bigTiff ? header.getLong(8) : u32(header, 4);
+		while (offset != 0) {
+			if (!visited.add(offset)) {
+				throw new IOException("TIFF の IFD が循環しています。");
+			}
+			long position = base + offset;
+			ByteBuffer count = read(channel, position, countSize, end).order(
+					order);
+			long entries = bigTiff ? count.getLong(0) : u16(count, 0);
+			if (entries < 0 || entries > (end - position) / entrySize) {
+				throw new IOException("TIFF の IFD のエントリ数が不正です。");
+			}
+			ByteBuffer ifd = map(channel, position,
+					countSize + entries * entrySize + offsetSize, end).order(
+					order);
+			if (directory.frameCount == 0) {
+				for (int i = 0; i < entries; i++) {
+					int entry = countSize + i * entrySize;
+					directory.set(u16(ifd, entry), u16(ifd, entry + 2), ifd,
+							entry + (bigTiff ? 12 : 8));
+				}
+			}
+			directory.frameCount++;
+			if (!countFrames) {
+				break;
+			}
+			int next = (int) (countSize + entries * entrySize);
+			offset = bigTiff ? ifd.getLong(next) : u32(ifd, next);
+		}
+		return directory;
+	}
+
+	/**
+	 * PhotometricInterpretation タグの値から色の表し方を判別する。
+	 */
+	private static ColorModel toColorModel(int photometric) {
+		switch (photometric) {
+		case 0:
+		case 1:
+			return ColorModel.gray;
+		case 2:
+		case 6:
+			return ColorModel.rgb;
+		case 3:
+			return ColorModel.palette;
+		case 5:
+			return ColorModel.cmyk;
+		case 8:
+		case 9:
+		case 10:
+			return ColorModel.lab;
+		default:
+			return ColorModel.unknown;
+		}
+	}
+
+	/**
+	 * PSD のヘッダから幅、高さ、色の表し方を、画像リソースの Exif から向きを取得する。
+	 *
+	 * カラーモードデータは長さだけを読んで読み飛ばす。
+	 */
+	private static ImageHeader scanPsd(FileChannel channel, ByteBuffer head,
+			long length) throws IOException {
+		if (head.limit() < 26) {
+			throw new EOFException("PSD のヘッダが不完全です。");
+		}
+		int version = u16(head, 4);
+		if (version != 1 && version != 2) {
+			throw new IOException(String.format("PSD のバージョン %s には対応していません。",
+					version));
+		}
+		int height = head.getInt(14);
+		int width = head.getInt(18);
+		ColorModel colorModel = toPsdColorModel(u16(head, 24));
+
+		long colorModeData = 26;
+		long resources = colorModeData + 4
+				+ u32(read(channel, colorModeData, 4, length), 0);
+		long resourcesLength = u32(read(channel, resources, 4, length), 0);
+		int orientation = readPsdOrientation(channel, resources + 4,
+				resourcesLength, length);
+		return new ImageHeader(new Size(width, height), orientation,
+				colorModel, 1);
+	}
+
+	/**
+	 * PSD の画像リソースを辿り、Exif の Orientation タグの値を取得する。
+	 *
+	 * Exif がない場合、もしくは、解釈できない場合は <code>ImageHeader.NORMAL_ORIENTATION</code> とする。
+	 */
+	private static int readPsdOrientation(FileChannel channel, long position,
+			long resourcesLength, long length) throws IOException {
+		ByteBuffer section = map(channel, position, resourcesLength, length);
+		int index = 0;
+		while (index + 12 <= section.limit()
+				&& section.getInt(index) == PSD_RESOURCE_SIGNATURE) {
+			int id = u16(section, index + 4);
+			// パスカル文字列の名前は長さのバイトを含めて偶数バイトに揃えられている
+			int nameSize = (u8(section, index + 6) + 2) & ~1;
+			int sizeIndex = index + 6 + nameSize;
+			if (sizeIndex + 4 > section.limit()) {
+				break;
+			}
+			long dataSize = u32(section, sizeIndex);
+			int data = sizeIndex + 4;
+			if (data + dataSize > section.limit()) {
+				break;
+			}
+			if (id == PSD_EXIF_RESOURCE) {
+				try {
+					return readTiff(channel, position + data,
+							position + data + dataSize, false).orientation;
+				} catch (IOException e) {
+					// Exif が壊れていても幅と高さは取得できる
+					return ImageHeader.NORMAL_ORIENTATION;
+				}
+			}
+			index = (int) (data + ((dataSize + 1) & ~1L));
+		}
+		return ImageHeader.NORMAL_ORIENTATION;
+	}
+
+	/**
+	 * PSD のカラーモードから色の表し方を判別する。
+	 */
+	private static ColorModel toPsdColorModel(int mode) {
+		switch (mode) {
+		case 0:
+		case 1:
+		case 8:
+			// Bitmap、Grayscale、Duotone
+			return ColorModel.gray;
+		case 2:
+			return ColorModel.palette;
+		case 3:
+			return ColorModel.rgb;
+		case 4:
+			return ColorModel.cmyk;
+		case 9:
+			return ColorModel.lab;
+		default:
+			return ColorModel.unknown;
+		}
+	}
+
+	/**
+	 * JPEG のマーカーを辿り、APP1 の Exif から向きを、APP2 から ICC プロファイルを含むかを、
+	 * SOFn セグメントから幅、高さ、色の表し方を取得する。
+	 *
+	 * Exif が解釈できない場合、向きは <code>ImageHeader.NORMAL_ORIENTATION</code> とする。
+	 */
+	private static ImageHeader scanJpeg(FileChannel channel, long length)
+			throws IOException {
+		int orientation = ImageHeader.NORMAL_ORIENTATION;
+		boolean iccProfile = false;
+		long position = 2;
+		while (position + 4 <= length) {
+			// マーカー、長さ、APP1 と APP2 の識別子をまとめて読む
+			ByteBuffer marker = read(channel, position, (int) Math.min(
+					4 + ICC_PROFILE.length, length - position), length);
+			if (u8(marker, 0) != 0xFF) {
+				throw new IOException("JPEG のマーカーが不正です。");
+			}
+			int code = u8(marker, 1);
+			if (code == 0xFF) {
+				// マーカーの前の埋め草
+				position++;
+				continue;
+			}
+			if (code == 0x01 || (0xD0 <= code && code <= 0xD7)) {
+				position += 2;
+				continue;
+			}
+			if (code == 0xD9 || code == 0xDA) {
+				break;
+			}
+			long end = position + 2 + u16(marker, 2);
+			if (code == 0xE1 && end - position >= 4 + EXIF.length + 8
+					&& startsWith(marker, 4, EXIF)) {
+				try {
+					orientation = readTiff(channel,
+							position + 4 + EXIF.length, end, false).orientation;
+				} catch (IOException e) {
+					// Exif が壊れていても幅と高さは取得できる
+				}
+			}
+			if (code == 0xE2 && end - position >= 4 + ICC_PROFILE.length
+					&& startsWith(marker, 4, ICC_PROFILE)) {
+				iccProfile = true;
+			}
+			if (isStartOfFrame(code)) {
+				ByteBuffer frame = read(channel, position + 4, 6, length);
+				return new ImageHeader(new Size(u16(frame, 3), u16(frame, 1)),
+						orientation, toJpegColorModel(u8(frame, 5)), 1,
+						iccProfile);
+			}
+			position = end;
+		}
+		throw new IOException("JPEG の SOF マーカーが見つかりません。");
+	}
+
+	/**
+	 * PNG の IHDR チャンクから幅、高さ、色の表し方を、IDAT より前の iCCP チャンクの有無から ICC
+	 * プロファイルを含むかを取得する。
+	 *
+	 * チャンクのヘッダのみを読み、圧縮されたデータは読まない。
+	 */
+	private static ImageHeader scanPng(FileChannel channel, long length)
+			throws IOException {
+		ByteBuffer ihdr = read(channel, 8, 8 + 13, length);
+		if (ihdr.getInt(4) != PNG_IHDR) {
+			throw new IOException("PNG の IHDR チャンクが見つかりません。");
+		}
+		Size size = new Size(ihdr.getInt(8), ihdr.getInt(12));
+		ColorModel colorModel = toPngColorModel(u8(ihdr, 17));
+		boolean iccProfile = false;
+		long position = 8;
+		while (position + 8 <= length) {
+			ByteBuffer chunk = read(channel, position, 8, length);
+			int type = chunk.getInt(4);
+			if (type == PNG_IDAT || type == PNG_IEND) {
+				break;
+			}
+			if (type == PNG_ICCP) {
+				iccProfile = true;
+				break;
+			}
+			// 長さ（4 バイト）、種類（4 バイト）、データ、CRC（4 バイト）
+			position += 12 + u32(chunk, 0);
+		}
+		return new ImageHeader(size, ImageHeader.NORMAL_ORIENTATION,
+				colorModel, 1, iccProfile);
+	}
+
+	/**
+	 * PNG の IHDR のカラータイプから色の表し方を判別する。
+	 */
+	private static ColorModel toPngColorModel(int colorType) {
+		switch (colorType) {
+		case 0:
+		case 4:
+			// グレースケール（アルファチャンネル付きを含む）
+			return ColorModel.gray;
+		case 2:
+		case 6:
+			return ColorModel.rgb;
+		case 3:
+			return ColorModel.palette;
+		default:
+			return ColorModel.unknown;
+		}
+	}
+
+	/**
+	 * GIF のブロックを辿り、論理スクリーン記述子から幅と高さを、イメージ記述子の数からフレーム数を、
+	 * 直前のグラフィック制御拡張から各フレームの表示時間と破棄の方法を取得する。
+	 *
+	 * 画像データのサブブロックは長さだけを読んで読み飛ばし、LZW の展開はしない。
+	 * ファイル全体は読まず、一定の大きさずつヒープのバッファに読みながら辿る。
+	 * トレーラーがなく途中で終わっている場合は、それまでに見つかったフレームを返す。
+	 * フレームを辿らない場合は論理スクリーン記述子のみを読む。
+	 */
+	private static ImageHeader scanGif(FileChannel channel, long length,
+			boolean withFrames) throws IOException {
+		GifWindow gif = new GifWindow(channel, length);
+		Size size = new Size(gif.u16(6), gif.u16(8));
+		if (!withFrames) {
+			return new ImageHeader(size, ImageHeader.NORMAL_ORIENTATION,
+					ColorModel.palette, 1);
+		}
+		List<Frame> frames = new ArrayList<Frame>();
+		int delay = 0;
+		Disposal disposal = Disposal.undefined;
+		long position = 13 + colorTableSize(gif.u8(10));
+		while (position < length) {
+			int introducer = gif.u8(position);
+			if (introducer == 0x3B) {
+				break;
+			}
+			if (introducer == 0x21) {
+				if (position + 8 <= length && gif.u8(position + 1) == 0xF9
+						&& gif.u8(position + 2) == 4) {
+					disposal = toDisposal((gif.u8(position + 3) >> 2) & 0x07);
+					delay = gif.u16(position + 4);
+				}
+				position = skipSubBlocks(gif, position + 2, length);
+			} else if (introducer == 0x2C) {
+				if (position + 11 > length) {
+					break;
+				}
+				frames.add(new Frame(delay, disposal));
+				delay = 0;
+				disposal = Disposal.undefined;
+				// イメージ記述子（10 バイト）、局所カラーテーブル、LZW の最小符号長（1 バイト）の後に画像データが続く
+				position = skipSubBlocks(gif, position + 10
+						+ colorTableSize(gif.u8(position + 9)) + 1, length);
+			} else {
+				throw new IOException(String.format(
+						"GIF のブロックが不正です。position:%s", position));
+			}
+		}
+		if (frames.isEmpty()) {
+			throw new IOException("GIF のイメージ記述子が見つかりません。");
+		}
+		return new ImageHeader(size, ImageHeader.NORMAL_ORIENTATION,
+				ColorModel.palette, frames);
+	}
+
+	/**
+	 * GIF の記述子のフラグからカラーテーブルのバイト数を求める。
+	 */
+	private static int colorTableSize(int flags) {
+		return (flags & 0x80) == 0 ? 0 : 3 * (1 << ((flags & 0x07) + 1));
+	}
+
+	/**
+	 * GIF のサブブロックの連なりを長さ 0 の終端まで読み飛ばす。
+	 *
+	 * @return 終端の次の位置。途中で終わっている場合はファイルの終端
+	 */
+	private static long skipSubBlocks(GifWindow gif, long position, long length)
+			throws IOException {
+		while (position < length) {
+			int blockSize = gif.u8(position);
+			position += 1 + blockSize;
+			if (blockSize == 0) {
+				return position;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * GIF のグラフィック制御拡張の破棄の方法を判別する。
+	 */
+	private static Disposal toDisposal(int method) {
+		switch (method) {
+		case 1:
+			return Disposal.none;
+		case 2:
+			return Disposal.background;
+		case 3:
+			return Disposal.previous;
+		default:
+			return Disposal.undefined;
+		}
+	}
+
+	/**
+	 * WebP のチャンクを辿り、VP8X（もしくは、VP8、VP8L）から幅と高さを、EXIF から向きを、
+	 * ANMF の数からフレーム数を取得する。
+	 *
+	 * チャンクのヘッダと ANMF のフレームヘッダのみを読み、圧縮されたデータは読まない。
+	 * フレームを辿らない場合は ANMF のフレームヘッダを読まない。
+	 */
+	private static ImageHeader scanWebp(FileChannel channel, long length,
+			boolean withFrames) throws IOException {
+		long end = Math.min(length,
+				8 + u32(read(channel, 4, 4, length).order(ByteOrder.LITTLE_ENDIAN), 0));
+		Size size = null;
+		int orientation = ImageHeader.NORMAL_ORIENTATION;
+		List<Frame> frames = new ArrayList<Frame>();
+		long position = 12;
+		while (position + 8 <= end) {
+			ByteBuffer chunk = read(channel, position, 8, end).order(
+					ByteOrder.LITTLE_ENDIAN);
+			String type = new String(new char[] { (char) chunk.get(0),
+					(char) chunk.get(1), (char) chunk.get(2), (char) chunk.get(3) });
+			long chunkSize = u32(chunk, 4);
+			long data = position + 8;
+			if ("VP8X".equals(type)) {
+				ByteBuffer vp8x = read(channel, data, 10, end).order(
+						ByteOrder.LITTLE_ENDIAN);
+				size = new Size(u24(vp8x, 4) + 1, u24(vp8x, 7) + 1);
+			} else if ("VP8 ".equals(type) && size == null) {
+				// フレームタグ（3 バイト）とスタートコード（3 バイト）の後に 14bit ずつ格納されている
+				ByteBuffer vp8 = read(channel, data, 10, end).order(
+						ByteOrder.LITTLE_ENDIAN);
+				size = new Size(u16(vp8, 6) & 0x3FFF, u16(vp8, 8) & 0x3FFF);
+			} else if ("VP8L".equals(type) && size == null) {
+				// シグネチャ（0x2F）の後に (幅 - 1)、(高さ - 1) が 14bit ずつ格納されている
+				int bits = read(channel, data + 1, 4, end).order(
+						ByteOrder.LITTLE_ENDIAN).getInt(0);
+				size = new Size((bits & 0x3FFF) + 1, ((bits >> 14) & 0x3FFF) + 1);
+			} else if ("ANMF".equals(type) && withFrames) {
+				// 位置（3 バイト x 2）と大きさ（3 バイト x 2）の後に表示時間（ミリ秒）とフラグが続く
+				ByteBuffer anmf = read(channel, data, 16, end).order(
+						ByteOrder.LITTLE_ENDIAN);
+				frames.add(new Frame((u24(anmf, 12) + 5) / 10,
+						(u8(anmf, 15) & 0x01) == 0 ? Disposal.none
+								: Disposal.background));
+			} else if ("EXIF".equals(type)) {
+				orientation = readWebpOrientation(channel, data, data
+						+ chunkSize, end);
+			}
+			// チャンクは偶数バイトに揃えられている
+			position = data + ((chunkSize + 1) & ~1L);
+		}
+		if (size == null) {
+			throw new IOException("WebP の幅と高さが見つかりません。");
+		}
+		if (frames.isEmpty()) {
+			return new ImageHeader(size, orientation, ColorModel.rgb, 1);
+		}
+		return new ImageHeader(size, orientation, ColorModel.rgb, frames);
+	}
+
+	/**
+	 * WebP の EXIF チャンクから Orientation タグの値を取得する。
+	 *
+	 * 先頭に JPEG と同じ識別子（Exif\0\0）が付いている場合は読み飛ばす。 解釈できない場合は
+	 * <code>ImageHeader.NORMAL_ORIENTATION</code> とする。
+	 */
+	private static int readWebpOrientation(FileChannel channel, long position,
+			long chunkEnd, long end) {
+		try {
+			long limit = Math.min(chunkEnd, end);
+			if (limit - position >= EXIF.length
+					&& startsWith(read(channel, position, EXIF.length, end), 0,
+							EXIF)) {
+				position += EXIF.length;
+			}
+			return readTiff(channel, position, limit, false).orientation;
+		} catch (IOException e) {
+			// Exif が壊れていても幅と高さは取得できる
+			return ImageHeader.NORMAL_ORIENTATION;
+		}
+	}
+
+	/**
+	 * バッファの指定の位置から識別子が始まるかを判定する。
+	 */
+	private static boolean startsWith(ByteBuffer buffer, int index,
+			byte[] identifier) {
+		if (index + identifier.length > buffer.limit()) {
+			return false;
+		}
+		for (int i = 0; i < identifier.length; i++) {
+			if (buffer.get(index + i) != identifier[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * SOFn マーカーかを判定する。
+	 *
+	 * 0xC4（DHT）、0xC8（JPG）、0xCC（DAC）は SOF ではない。
+	 */
+	private static boolean isStartOfFrame(int marker) {
+		return 0xC0 <= marker && marker <= 0xCF && marker != 0xC4
+				&& marker != 0xC8 && marker != 0xCC;
+	}
+
+	/**
+	 * JPEG の色成分の数から色の表し方を判別する。
+	 */
+	private static ColorModel toJpegColorModel(int components) {
+		switch (components) {
+		case 1:
+			return ColorModel.gray;
+		case 3:
+			return ColorModel.rgb;
+		case 4:
+			return ColorModel.cmyk;
+		default:
+			return ColorModel.unknown;
+		}
+	}
+
+	/**
+	 * ファイルの指定の範囲を読み取り専用で map する。
+	 *
+	 * @throws EOFException
+	 *             範囲が終端を超える場合
+	 */
+	private static ByteBuffer map(FileChannel channel, long position,
+			long size, long end) throws IOException {
+		if (position < 0 || size < 0 || size > Integer.MAX_VALUE
+				|| position + size > end) {
+			throw new EOFException("画像ファイルのヘッダが不完全です。");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+	}
+
+	/**
+	 * ファイルの指定の範囲をヒープのバッファに読む。
+	 *
+	 * @throws EOFException
+	 *             範囲が終端を超える場合
+	 */
+	private static ByteBuffer read(FileChannel channel, long position,
+			int size, long end) throws IOException {
+		if (position < 0 || size < 0 || position + size > end) {
+			throw new EOFException("画像ファイルのヘッダが不完全です。");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("画像ファイルのヘッダが不完全です。");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static int u8(ByteBuffer buffer, int index) {
+		return buffer.get(index) & 0xFF;
+	}
+
+	private static int u16(ByteBuffer buffer, int index) {
+		return buffer.getShort(index) & 0xFFFF;
+	}
+
+	private static int u24(ByteBuffer buffer, int index) {
+		return u8(buffer, index) | u8(buffer, index + 1) << 8
+				| u8(buffer, index + 2) << 16;
+	}
+
+	private static long u32(ByteBuffer buffer, int index) {
+		return buffer.getInt(index) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * GIF を先頭から順に辿るために、ファイルを <code>GIF_WINDOW_SIZE</code> ずつヒープのバッファに読むクラス。
+	 *
+	 * 読む位置が読み込んだ範囲を外れた場合は、同じバッファにその位置から読み直す。
+	 */
+	private static class GifWindow {
+
+		private final FileChannel channel;
+
+		private final long length;
+
+		private final ByteBuffer window;
+
+		private long start;
+
+		GifWindow(FileChannel channel, long length) {
+			this.channel = channel;
+			this.length = length;
+			this.window = ByteBuffer.allocate((int) Math.min(GIF_WINDOW_SIZE,
+					length));
+			this.window.limit(0);
+		}
+
+		int u8(long position) throws IOException {
+			if (position >= length) {
+				throw new EOFException("画像ファイルのヘッダが不完全です。");
+			}
+			if (position < start || position >= start + window.limit()) {
+				start = position;
+				window.clear();
+				window.limit((int) Math.min(window.capacity(), length
+						- position));
+				while (window.hasRemaining()) {
+					if (channel.read(window, position + window.position()) < 0) {
+						throw new EOFException("画像ファイルのヘッダが不完全です。");
+					}
+				}
+				window.flip();
+			}
+			return window.get((int) (position - start)) & 0xFF;
+		}
+
+		int u16(long position) throws IOException {
+			return u8(position) | u8(position + 1) << 8;
+		}
+
+	}
+
+	/**
+	 * TIFF の最初の IFD から読み取った値を保持するクラス。
+	 */
+	static class TiffDirectory {
+
+		long width;
+
+		long height;
+
+		int orientation = ImageHeader.NORMAL_ORIENTATION;
+
+		int photometric = -1;
+
+		int frameCount;
+
+		/**
+		 * IFD のエントリの値を保持する。値が 1 つの SHORT、LONG、LONG8 のエントリのみを対象とする。
+		 */
+		void set(int tag, int type, ByteBuffer ifd, int value) {
+			long number;
+			switch (type) {
+			case 3:
+				number = u16(ifd, value);
+				break;
+			case 4:
+				number = u32(ifd, value);
+				break;
+			case 16:
+				number = ifd.getLong(value);
+				break;
+			default:
+				return;
+			}
+			switch (tag) {
+			case TAG_IMAGE_WIDTH:
+				width = number;
+				break;
+			case TAG_IMAGE_LENGTH:
+				height = number;
+				break;
+			case TAG_PHOTOMETRIC_INTERPRETATION:
+				photometric = (int) number;
+				break;
+			case TAG_ORIENTATION:
+				orientation = (int) number;
+				break;
+			default:
+				break;
+			}
+		}
+
+	}
+
+}
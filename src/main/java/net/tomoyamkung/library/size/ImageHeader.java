@@ -0,0 +1,189 @@
+package net.tomoyamkung.library.size;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 画像ファイルのヘッダから読み取った情報を保持するクラス。
+ *
+ * @author tomoyamkung
+ *
+ */
+public class ImageHeader {
+
+	/**
+	 * 向きの既定値（回転も反転もしない）。
+	 */
+	public static final int NORMAL_ORIENTATION = 1;
+
+	/**
+	 * 画像の幅と高さ。
+	 */
+	private final Size size;
+
+	/**
+	 * Exif（TIFF）の Orientation タグの値（1 から 8）。
+	 */
+	private final int orientation;
+
+	/**
+	 * 色の表し方。
+	 */
+	private final ColorModel colorModel;
+
+	/**
+	 * フレーム（ページ）の数。
+	 */
+	private final int frameCount;
+
+	/**
+	 * アニメーションの各フレームの表示時間と破棄の方法。アニメーションではない場合は空とする。
+	 */
+	private final List<Frame> frames;
+
+	/**
+	 * ICC プロファイルを含むか。
+	 */
+	private final boolean iccProfile;
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param size
+	 *            画像の幅と高さ
+	 * @param orientation
+	 *            Orientation タグの値。範囲外の場合は <code>NORMAL_ORIENTATION</code> とする
+	 * @param colorModel
+	 *            色の表し方
+	 * @param frameCount
+	 *            フレーム（ページ）の数
+	 */
+	public ImageHeader(Size size, int orientation, ColorModel colorModel,
+			int frameCount) {
+		this(size, orientation, colorModel, frameCount, false);
+	}
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * @param size
+	 *            画像の幅と高さ
+	 * @param orientation
+	 *            Orientation タグの値。範囲外の場合は <code>NORMAL_ORIENTATION</code> とする
+	 * @param colorModel
+	 *            色の表し方
+	 * @param frameCount
+	 *            フレーム（ページ）の数
+	 * @param iccProfile
+	 *            ICC プロファイル（JPEG の APP2 の ICC_PROFILE、PNG の iCCP チャンクなど）を含む場合は true
+	 */
+	public ImageHeader(Size size, int orientation, ColorModel colorModel,
+			int frameCount, boolean iccProfile) {
+		this(size, orientation, colorModel, frameCount, Collections
+				.<Frame> emptyList(), iccProfile);
+	}
+
+	/**
+	 * コンストラクタ。
+	 *
+	 * GIF、WebP のアニメーションのフレームを指定する。 フレーム数は <code>frames</code> の件数とする。
+	 *
+	 * @param size
+	 *            画像（キャンバス）の幅と高さ
+	 * @param orientation
+	 *            Orientation タグの値。範囲外の場合は <code>NORMAL_ORIENTATION</code> とする
+	 * @param colorModel
+	 *            色の表し方
+	 * @param frames
+	 *            各フレームの表示時間と破棄の方法
+	 */
+	public ImageHeader(Size size, int orientation, ColorModel colorModel,
+			List<Frame> frames) {
+		this(size, orientation, colorModel, frames.size(), Collections
+				.unmodifiableList(new ArrayList<Frame>(frames)), false);
+	}
+
+	private ImageHeader(Size size, int orientation, ColorModel colorModel,
+			int frameCount, List<Frame> frames, boolean iccProfile) {
+		this.size = size;
+		this.orientation = 1 <= orientation && orientation <= 8 ? orientation
+				: NORMAL_ORIENTATION;
+		this.colorModel = colorModel;
+		this.frameCount = frameCount;
+		this.frames = frames;
+		this.iccProfile = iccProfile;
+	}
+
+	public Size getSize() {
+		return size;
+	}
+
+	public int getWidth() {
+		return size.getWidth();
+	}
+
+	public int getHeight() {
+		return size.getHeight();
+	}
+
+	public int getOrientation() {
+		return orientation;
+	}
+
+	/**
+	 * 表示する際に幅と高さが入れ替わるかを判定する。
+	 *
+	 * 向きが 5 から 8（90 度、もしくは、270 度の回転を伴う）の場合に入れ替わる。
+	 *
+	 * @return 入れ替わる場合は true
+	 */
+	public boolean isTransposed() {
+		return orientation >= 5;
+	}
+
+	/**
+	 * 向きを補正して表示する際の幅と高さを取得する。
+	 *
+	 * @return 幅と高さを格納したオブジェクト
+	 */
+	public Size getOrientedSize() {
+		return isTransposed() ? new Size(size.getHeight(), size.getWidth())
+				: size;
+	}
+
+	public ColorModel getColorModel() {
+		return colorModel;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	public List<Frame> getFrames() {
+		return frames;
+	}
+
+	public boolean hasIccProfile() {
+		return iccProfile;
+	}
+
+	/**
+	 * 複数のフレームを持つアニメーション（GIF、WebP）かを判定する。
+	 *
+	 * 複数ページの TIFF はアニメーションとして扱わない。
+	 *
+	 * @return アニメーションの場合は true
+	 */
+	public boolean isAnimated() {
+		return frames.size() > 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"size:%s, orientation:%s, colorModel:%s, frameCount:%s, iccProfile:%s",
+				size, orientation, colorModel, frameCount, iccProfile);
+	}
+
+}
@@ -1,11 +1,8 @@
 package net.tomoyamkung.library.size;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 
-import javax.imageio.ImageIO;
-
 /**
  * 画像の幅と高さを保持するクラス。
  * 
@@ -29,16 +26,18 @@ public class Size {
 	 * 
 	 * 幅と高さを計算する画像の <code>File</code> オブジェクトを受け取る。
 	 * 
+	 * 画像全体はデコードせず、<code>DimensionProbe</code> でヘッダのみを読み込む。
+	 * 
 	 * @param file
 	 *            幅と高さを計算する画像の <code>File</code> オブジェクト
 	 * @throws IOException
 	 *             画像の読み込みに失敗した場合
 	 */
 	public Size(File file) throws IOException {
-		BufferedImage image = ImageIO.read(file);
+		Size size = DimensionProbe.probe(file);
 
-		width = image.getWidth();
-		height = image.getHeight();
+		width = size.getWidth();
+		height = size.getHeight();
 	}
 
 	/**
@@ -64,6 +63,15 @@ public class Size {
 		return height;
 	}
 
+	/**
+	 * 幅と高さのジオメトリ（<code>WxH</code>）に変換する。
+	 * 
+	 * @return <code>Geometry</code> オブジェクト
+	 */
+	public Geometry toGeometry() {
+		return Geometry.of(width, height);
+	}
+
 	@Override
 	public String toString() {
 		return String.format("%sx%s", width, height);
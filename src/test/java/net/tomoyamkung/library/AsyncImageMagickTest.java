@@ -0,0 +1,208 @@
+package net.tomoyamkung.library;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import net.tomoyamkung.library.AsyncImageMagick.RejectionPolicy;
+import net.tomoyamkung.library.process.ProcessResult;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>AsyncImageMagick</code> クラスのテストケース。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class AsyncImageMagickTest {
+
+	/**
+	 * テストで使用する画像ファイル。
+	 */
+	private static final File src = new File("./src/test/resources/src.jpg");
+
+	/**
+	 * テストで作成される画像ファイル。
+	 */
+	private static final File dest = new File("./src/test/resources/dest.jpg");
+
+	public static class 異常系 {
+
+		private AsyncImageMagick imageMagick;
+
+		@After
+		public void tearDown() throws Exception {
+			if (imageMagick != null) {
+				imageMagick.shutdown(10, TimeUnit.SECONDS);
+			}
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void 同時実行数が0の場合() throws Exception {
+			// Setup
+			// Exercise
+			imageMagick = new AsyncImageMagick(0);
+			// Verify
+		}
+
+		@Test
+		public void 操作で発生した例外がFutureに格納される() throws Exception {
+			// Setup
+			imageMagick = new AsyncImageMagick(1);
+
+			// Exercise
+			CompletableFuture<ProcessResult> future = imageMagick.resize(null, src,
+					dest, SquareSide.portrait, 1);
+
+			// Verify
+			try {
+				future.get();
+				fail();
+			} catch (ExecutionException e) {
+				assertThat(e.getCause(),
+						is(instanceOf(IllegalArgumentException.class)));
+			}
+		}
+
+		@Test
+		public void abortの場合はキューが満杯になると受け付けない() throws Exception {
+			// Setup
+			imageMagick = new AsyncImageMagick(1, 1, RejectionPolicy.abort);
+			imageMagick.runProcessDirectly(sleep());
+			imageMagick.runProcessDirectly(sleep());
+
+			// Exercise
+			try {
+				imageMagick.runProcessDirectly(sleep());
+				fail();
+			} catch (RejectedExecutionException e) {
+				// Verify
+				assertThat(imageMagick.getQueuedCount(), is(1));
+			}
+		}
+
+		@Test
+		public void 終了処理後に投入された場合() throws Exception {
+			for (RejectionPolicy policy : RejectionPolicy.values()) {
+				// Setup
+				imageMagick = new AsyncImageMagick(1, 1, policy);
+				imageMagick.close();
+
+				// Exercise
+				CompletableFuture<ProcessResult> future = imageMagick
+						.runProcessDirectly(sleep());
+
+				// Verify
+				try {
+					future.get(10, TimeUnit.SECONDS);
+					fail(policy.name());
+				} catch (ExecutionException e) {
+					assertThat(e.getCause(),
+							is(instanceOf(RejectedExecutionException.class)));
+				}
+			}
+		}
+
+		@Test
+		public void callerRunsの場合は終了処理後に投入された操作を実行しない() throws Exception {
+			// Setup
+			imageMagick = new AsyncImageMagick(1, 1, RejectionPolicy.callerRuns);
+			imageMagick.runProcessDirectly(sleep());
+			imageMagick.close();
+			final boolean[] called = new boolean[1];
+
+			// Exercise
+			CompletableFuture<Object> future = imageMagick.submit(() -> {
+				called[0] = true;
+				return null;
+			});
+
+			// Verify
+			assertThat(future.isCompletedExceptionally(), is(true));
+			assertThat(called[0], is(false));
+		}
+
+	}
+
+	public static class 正常系 {
+
+		private AsyncImageMagick imageMagick;
+
+		@After
+		public void tearDown() throws Exception {
+			imageMagick.shutdown(10, TimeUnit.SECONDS);
+		}
+
+		@Test
+		public void 同時実行数の既定値はCPUのコア数() throws Exception {
+			// Setup
+			// Exercise
+			imageMagick = new AsyncImageMagick();
+
+			// Verify
+			assertThat(imageMagick.getMaxConcurrency(), is(Runtime
+					.getRuntime().availableProcessors()));
+		}
+
+		@Test
+		public void blockの場合はキューに空きができるまで待機して全て実行する() throws Exception {
+			// Setup
+			imageMagick = new AsyncImageMagick(1, 1, RejectionPolicy.block);
+
+			// Exercise
+			CompletableFuture<?>[] futures = new CompletableFuture<?>[3];
+			for (int i = 0; i < futures.length; i++) {
+				futures[i] = imageMagick.runProcessDirectly(sleep());
+			}
+
+			// Verify
+			CompletableFuture.allOf(futures).get(10, TimeUnit.SECONDS);
+			for (CompletableFuture<?> future : futures) {
+				assertThat(future.isCompletedExceptionally(), is(false));
+			}
+		}
+
+		@Test
+		public void 同じ引数の操作は1回にまとめる() throws Exception {
+			// Setup
+			imageMagick = new AsyncImageMagick(1, 4, RejectionPolicy.abort);
+			ImageMagick.setCoalescing(true);
+			try {
+				imageMagick.runProcessDirectly(sleep());
+
+				// Exercise
+				CompletableFuture<ProcessResult> first = imageMagick
+						.createThumbnail("echo", src, dest, "200x100");
+				CompletableFuture<ProcessResult> second = imageMagick
+						.createThumbnail("echo", new File(src.getParentFile(),
+								"../resources/src.jpg"), dest, "200x100");
+
+				// Verify
+				assertThat(imageMagick.getQueuedCount(), is(1));
+				assertThat(second.get(10, TimeUnit.SECONDS),
+						is(sameInstance(first.get(10, TimeUnit.SECONDS))));
+			} finally {
+				ImageMagick.setCoalescing(false);
+			}
+		}
+
+	}
+
+	/**
+	 * 少しの間だけ実行されるコマンドを作成する。
+	 */
+	private static Command sleep() {
+		return new Command("sleep").addParameter("0.2");
+	}
+
+}
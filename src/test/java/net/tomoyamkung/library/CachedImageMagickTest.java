@@ -0,0 +1,150 @@
+package net.tomoyamkung.library;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import net.tomoyamkung.library.cache.RenditionCache;
+import net.tomoyamkung.library.process.ProcessExecutor;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>CachedImageMagick</code> クラスのテストケース。
+ *
+ * convert コマンドの代わりに、生成元のファイルを生成先にコピーするスクリプトを使用する。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class CachedImageMagickTest {
+
+	/**
+	 * テストで使用する画像ファイル。
+	 */
+	private static final File src = new File("./src/test/resources/src.jpg");
+
+	public static class 異常系 {
+
+		@Test(expected = IllegalArgumentException.class)
+		public void cacheがNullの場合() throws Exception {
+			// Setup
+			// Exercise
+			new CachedImageMagick(null);
+			// Verify
+		}
+
+	}
+
+	public static class 正常系 {
+
+		@Rule
+		public TemporaryFolder folder = new TemporaryFolder();
+
+		private String fakeConvertPath;
+
+		private CachedImageMagick imageMagick;
+
+		@Before
+		public void setUp() throws Exception {
+			File fakeConvert = folder.newFile("convert");
+			Files.write(fakeConvert.toPath(),
+					("#!/bin/sh\neval last=\\${$#}\n"
+							+ "for a; do if [ -f \"$a\" ]; then cp \"$a\" \"$last\"; exit 0; fi; done\n")
+							.getBytes(StandardCharsets.UTF_8));
+			fakeConvert.setExecutable(true);
+			fakeConvertPath = fakeConvert.getAbsolutePath();
+
+			imageMagick = new CachedImageMagick(new RenditionCache(
+					folder.newFolder("cache"), 1024 * 1024));
+		}
+
+		@Test
+		public void 同じ生成元と同じ操作の場合はImageMagickを実行しない() throws Exception {
+			// Setup
+			ProcessExecutor executor = ImageMagick.getProcessExecutor();
+			long before = executor.getLaunchCount("createThumbnail");
+			File dest1 = new File(folder.getRoot(), "dest1.jpg");
+			File dest2 = new File(folder.getRoot(), "dest2.jpg");
+
+			// Exercise
+			boolean first = imageMagick.createThumbnail(fakeConvertPath, src,
+					dest1, "200x100");
+			boolean second = imageMagick.createThumbnail(fakeConvertPath, src,
+					dest2, "200x100");
+
+			// Verify
+			assertThat(first, is(false));
+			assertThat(second, is(true));
+			assertThat(executor.getLaunchCount("createThumbnail") - before, is(1L));
+			assertThat(dest2.length(), is(src.length()));
+			assertThat(imageMagick.getCache().getHitCount(), is(1L));
+		}
+
+		@Test
+		public void 操作が異なる場合はImageMagickを実行する() throws Exception {
+			// Setup
+			File dest = new File(folder.getRoot(), "dest.jpg");
+
+			// Exercise
+			imageMagick.createThumbnail(fakeConvertPath, src, dest, "200x100");
+			boolean actual = imageMagick.createThumbnail(fakeConvertPath, src,
+					dest, "100x100");
+
+			// Verify
+			assertThat(actual, is(false));
+			assertThat(imageMagick.getCache().getMissCount(), is(2L));
+		}
+
+		@Test
+		public void 出力が変わる設定が異なる場合はImageMagickを実行する() throws Exception {
+			// Setup
+			File dest = new File(folder.getRoot(), "dest.jpg");
+			int scale = ImageMagick.getDecodeSizeHintScale();
+			imageMagick.createThumbnail(fakeConvertPath, src, dest, "200x100");
+
+			// Exercise
+			ImageMagick.setDecodeSizeHintScale(scale + 1);
+			boolean actual;
+			try {
+				actual = imageMagick.createThumbnail(fakeConvertPath, src, dest,
+						"200x100");
+			} finally {
+				ImageMagick.setDecodeSizeHintScale(scale);
+			}
+
+			// Verify
+			assertThat(actual, is(false));
+			assertThat(imageMagick.getCache().getMissCount(), is(2L));
+		}
+
+		@Test
+		public void コマンドのパスが異なる場合はImageMagickを実行する() throws Exception {
+			// Setup
+			File dest = new File(folder.getRoot(), "dest.jpg");
+			File otherConvert = new File(folder.newFolder("other"), "convert");
+			Files.copy(new File(fakeConvertPath).toPath(), otherConvert.toPath());
+			otherConvert.setExecutable(true);
+			imageMagick.removeExif(fakeConvertPath, src, dest);
+
+			// Exercise
+			boolean actual = imageMagick.removeExif(
+					otherConvert.getAbsolutePath(), src, dest);
+
+			// Verify
+			assertThat(actual, is(false));
+			assertThat(imageMagick.getCache().getMissCount(), is(2L));
+		}
+
+	}
+
+}
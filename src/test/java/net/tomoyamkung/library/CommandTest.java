@@ -0,0 +1,159 @@
+package net.tomoyamkung.library;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>Command</code> クラスのテストケース。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class CommandTest {
+
+	/**
+	 * convert コマンドのパス。
+	 */
+	private static final String CONVERT_PATH = "/usr/bin/convert";
+
+	public static class 異常系 {
+
+		@Test(expected = IllegalArgumentException.class)
+		public void プレースホルダの値を指定していない場合() throws Exception {
+			// Setup
+			Command command = new Command(CONVERT_PATH).addPlaceholder("src")
+					.addParameter("-strip").addPlaceholder("dest");
+			Map<String, String> values = new HashMap<String, String>();
+			values.put("src", "/tmp/src.jpg");
+
+			// Exercise
+			command.getCommand(values);
+			// Verify
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void プレースホルダの名前がNullの場合() throws Exception {
+			// Setup
+			// Exercise
+			new Command(CONVERT_PATH).addPlaceholder(null);
+			// Verify
+		}
+
+		@Test(expected = UnsupportedOperationException.class)
+		public void 取得したコマンドは変更できない() throws Exception {
+			// Setup
+			List<String> actual = new Command(CONVERT_PATH).addParameter(
+					"-version").getCommand();
+
+			// Exercise
+			actual.add("-list");
+			// Verify
+		}
+
+	}
+
+	public static class 正常系 {
+
+		@Test
+		public void 繰り返し取得しても同じコマンドを返す() throws Exception {
+			// Setup
+			Command command = new Command(CONVERT_PATH).addParameter(
+					"/tmp/src.jpg").addParameter("-strip").addParameter(
+					"/tmp/dest.jpg");
+
+			// Exercise
+			List<String> first = command.getCommand();
+			List<String> second = command.getCommand();
+
+			// Verify
+			List<String> expected = Arrays.asList(CONVERT_PATH, "/tmp/src.jpg",
+					"-strip", "/tmp/dest.jpg");
+			assertThat(first, is(expected));
+			assertThat(second, is(expected));
+		}
+
+		@Test
+		public void プレースホルダに値を差し込む() throws Exception {
+			// Setup
+			Command command = new Command(CONVERT_PATH).addPlaceholder("src")
+					.addParameter("-thumbnail").addPlaceholder("size")
+					.addPlaceholder("dest");
+
+			// Exercise
+			List<String> actual = command.getCommand(values("1"));
+
+			// Verify
+			assertThat(actual, is(Arrays.asList(CONVERT_PATH, "/tmp/src1.jpg",
+					"-thumbnail", "200x100", "/tmp/dest1.jpg")));
+			assertThat(command.toString(), is("commandPath:" + CONVERT_PATH
+					+ ", parameters:[${src}, -thumbnail, ${size}, ${dest}]"));
+		}
+
+		@Test
+		public void 複数のスレッドから同時に値を差し込む() throws Exception {
+			// Setup
+			final Command command = new Command(CONVERT_PATH)
+					.addPlaceholder("src").addParameter("-thumbnail")
+					.addPlaceholder("size").addPlaceholder("dest");
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+			// Exercise
+			try {
+				for (int i = 0; i < 4; i++) {
+					final String id = String.valueOf(i);
+					results.add(executor.submit(new Callable<Boolean>() {
+						@Override
+						public Boolean call() throws Exception {
+							for (int n = 0; n < 10000; n++) {
+								List<String> actual = command
+										.getCommand(values(id));
+								if (!actual.get(1).equals(
+										"/tmp/src" + id + ".jpg")
+										|| actual.size() != 5) {
+									return false;
+								}
+							}
+							return true;
+						}
+					}));
+				}
+
+				// Verify
+				for (Future<Boolean> result : results) {
+					assertThat(result.get(), is(true));
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+
+	}
+
+	/**
+	 * プレースホルダの値を作成する。
+	 */
+	private static Map<String, String> values(String id) {
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("src", "/tmp/src" + id + ".jpg");
+		values.put("size", "200x100");
+		values.put("dest", "/tmp/dest" + id + ".jpg");
+		return values;
+	}
+
+}
@@ -4,23 +4,52 @@ import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import javax.imageio.ImageIO;
 
+import net.tomoyamkung.library.fastpath.FastPathPolicy;
+import net.tomoyamkung.library.fastpath.JavaImageEngine;
+import net.tomoyamkung.library.fastpath.MetadataStripper;
+import net.tomoyamkung.library.metrics.HistogramMetricsRecorder;
+import net.tomoyamkung.library.metrics.MetricsRecorder;
+import net.tomoyamkung.library.metrics.OperationStats;
+import net.tomoyamkung.library.process.ProcessExecutor;
+import net.tomoyamkung.library.process.ProcessResult;
+import net.tomoyamkung.library.process.ProcessTimeoutException;
+import net.tomoyamkung.library.process.ResourceLimits;
 import net.tomoyamkung.library.props.AppProperties;
+import net.tomoyamkung.library.size.Disposal;
+import net.tomoyamkung.library.size.Frame;
+import net.tomoyamkung.library.size.HeaderScannerTest;
 import net.tomoyamkung.library.size.Size;
 
 import org.hamcrest.beans.SamePropertyValuesAs;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 
 /**
@@ -43,6 +72,11 @@ public class ImageMagickTest {
 	 */
 	private static final String WRONG_COMMAND_CONVERT_PATH = "/path/to/imagemagick/convert";
 
+	/**
+	 * 何もせずに終了するコマンド。 ImageMagick を実行した回数を確認するために convert コマンドの代わりに使用する。
+	 */
+	private static final String COMMAND_TRUE_PATH = "true";
+
 	/**
 	 * テストで使用する画像ファイル。
 	 */
@@ -131,6 +165,15 @@ public class ImageMagickTest {
 						SquareSide.portrait, 0);
 				// Verify
 			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void timeoutが負の場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.resize(COMMAND_CONVERT_PATH, src, dest,
+						SquareSide.portrait, 1, -1, TimeUnit.SECONDS);
+				// Verify
+			}
 		}
 
 		public static class 正常系 {
@@ -156,6 +199,20 @@ public class ImageMagickTest {
 						is(SamePropertyValuesAs.samePropertyValuesAs(new Size(
 								400, 300))));
 			}
+
+			@Test
+			public void ImageMagickの処理は1回だけ実行する() throws Exception {
+				// Setup
+				ProcessExecutor executor = ImageMagick.getProcessExecutor();
+				long before = executor.getLaunchCount("resize");
+
+				// Exercise
+				ImageMagick.resize(COMMAND_TRUE_PATH, src, dest,
+						SquareSide.landscape, 400);
+
+				// Verify
+				assertThat(executor.getLaunchCount("resize") - before, is(1L));
+			}
 		}
 
 	}
@@ -523,6 +580,74 @@ public class ImageMagickTest {
 						is(100));
 			}
 
+			@Test
+			public void ImageMagickの処理は1回だけ実行する() throws Exception {
+				// Setup
+				ProcessExecutor executor = ImageMagick.getProcessExecutor();
+				long before = executor.getLaunchCount("createThumbnail");
+
+				// Exercise
+				ImageMagick.createThumbnail(COMMAND_TRUE_PATH, src, dest, SIZE);
+
+				// Verify
+				assertThat(executor.getLaunchCount("createThumbnail") - before,
+						is(1L));
+			}
+
+			@Test
+			public void 生成先の2倍の大きさをデコード時のヒントとして渡す() throws Exception {
+				// Setup
+				// Exercise
+				ProcessResult actual = ImageMagick.createThumbnail("echo", src,
+						dest, SIZE);
+
+				// Verify
+				assertThat(new String(actual.getStdout(), "UTF-8"),
+						startsWith("-define jpeg:size=400x200 "
+								+ src.getAbsolutePath()));
+			}
+
+			@Test
+			public void 倍率が0の場合はデコード時のヒントを渡さない() throws Exception {
+				// Setup
+				ImageMagick.setDecodeSizeHintScale(0);
+
+				// Exercise
+				ProcessResult actual;
+				try {
+					actual = ImageMagick.createThumbnail("echo", src, dest, SIZE);
+				} finally {
+					ImageMagick
+							.setDecodeSizeHintScale(ImageMagick.DEFAULT_DECODE_SIZE_HINT_SCALE);
+				}
+
+				// Verify
+				assertThat(new String(actual.getStdout(), "UTF-8"),
+						startsWith(src.getAbsolutePath()));
+			}
+
+			@Test
+			public void 設定したMetricsRecorderに計測値を記録する() throws Exception {
+				// Setup
+				HistogramMetricsRecorder recorder = new HistogramMetricsRecorder();
+				ImageMagick.setMetricsRecorder(recorder);
+
+				// Exercise
+				try {
+					ImageMagick.createThumbnail(COMMAND_TRUE_PATH, src, dest,
+							SIZE);
+				} finally {
+					ImageMagick.setMetricsRecorder(MetricsRecorder.NOOP);
+				}
+
+				// Verify
+				OperationStats actual = recorder.getStats("createThumbnail");
+				assertThat(actual.getCount(), is(1L));
+				assertThat(actual.getExitCodeCounts().get(0), is(1L));
+				assertThat(actual.getInputBytes().getMax(), is(src.length()));
+				assertThat(actual.getWallNanos().getMax() > 0, is(true));
+			}
+
 		}
 	}
 
@@ -669,6 +794,31 @@ public class ImageMagickTest {
 				// Verify
 			}
 
+			@Test(expected = ProcessTimeoutException.class)
+			public void 制限時間内に終了しない場合() throws Exception {
+				// Setup
+				Command command = new Command("sleep");
+				command.addParameter("30").setTimeout(200,
+						TimeUnit.MILLISECONDS);
+
+				// Exercise
+				ImageMagick.runProcessDirectly(command);
+				// Verify
+			}
+
+			@Test(expected = IOException.class)
+			public void JVM内の処理の表記を指定した場合() throws Exception {
+				// Setup
+				Command command = new Command(MetadataStripper.COMMAND);
+				command.addParameter(src.getAbsolutePath())
+						.addParameter("-strip").addParameter("unknown")
+						.addParameter("dest.jpg");
+
+				// Exercise
+				ImageMagick.runProcessDirectly(command);
+				// Verify
+			}
+
 		}
 
 		public static class 正常系 {
@@ -741,15 +891,1283 @@ public class ImageMagickTest {
 	}
 
 	/**
-	 * テスト用のファイルを削除する。
+	 * <code>ImageMagick#createRenditions</code> についてのテストケース。
+	 * 
+	 * @author tomoyamkung
+	 * 
 	 */
-	private static void deleteTestFiles() {
-		if (dest.exists()) {
-			dest.delete();
+	@RunWith(Enclosed.class)
+	public static class CreateRenditions {
+
+		/**
+		 * テストで作成される 2 つ目の画像ファイル。
+		 */
+		private static final File dest2 = new File(
+				"./src/test/resources/dest2.png");
+
+		public static class 異常系 {
+
+			@Test(expected = IllegalArgumentException.class)
+			public void renditionsがNullの場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.createRenditions(COMMAND_CONVERT_PATH, src, null);
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void renditionsが空の場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.createRenditions(COMMAND_CONVERT_PATH, src,
+						new ArrayList<Rendition>());
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void destがNullの場合() throws Exception {
+				// Setup
+				List<Rendition> renditions = new ArrayList<Rendition>();
+				renditions.add(new Rendition(null));
+
+				// Exercise
+				ImageMagick.createRenditions(COMMAND_CONVERT_PATH, src,
+						renditions);
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void sizeの書式が異なる場合() throws Exception {
+				// Setup
+				List<Rendition> renditions = new ArrayList<Rendition>();
+				renditions.add(new Rendition(dest).setSize("ax!00"));
+
+				// Exercise
+				ImageMagick.createRenditions(COMMAND_CONVERT_PATH, src,
+						renditions);
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void qualityが範囲外の場合() throws Exception {
+				// Setup
+				List<Rendition> renditions = new ArrayList<Rendition>();
+				renditions.add(new Rendition(dest).setQuality(101));
+
+				// Exercise
+				ImageMagick.createRenditions(COMMAND_CONVERT_PATH, src,
+						renditions);
+				// Verify
+			}
+
+			@Test(expected = FileNotFoundException.class)
+			public void srcのファイルが存在しない場合() throws Exception {
+				// Setup
+				List<Rendition> renditions = new ArrayList<Rendition>();
+				renditions.add(new Rendition(dest));
+
+				// Exercise
+				ImageMagick.createRenditions(COMMAND_CONVERT_PATH, notFound,
+						renditions);
+				// Verify
+			}
+
 		}
-		if (notFound.exists()) {
-			notFound.delete();
+
+		public static class 正常系 {
+
+			@Before
+			public void setUp() throws Exception {
+				deleteTestFiles();
+				dest2.delete();
+			}
+
+			@After
+			public void tearDown() throws Exception {
+				deleteTestFiles();
+				dest2.delete();
+			}
+
+			@Test
+			public void 元画像を1度だけ読み込むコマンドを組み立てる() throws Exception {
+				// Setup
+				List<Rendition> renditions = new ArrayList<Rendition>();
+				renditions.add(new Rendition(dest).setSize(SIZE).setQuality(80));
+				renditions.add(new Rendition(dest2).setSize(
+						SquareSide.landscape, 400).setStrip(true).setFormat("png"));
+
+				// Exercise
+				List<String> actual = ImageMagick.buildRenditionsCommand(
+						COMMAND_CONVERT_PATH, src, renditions);
+
+				// Verify
+				assertThat(actual, is(Arrays.asList(COMMAND_CONVERT_PATH,
+						src.getAbsolutePath(), "-respect-parentheses", "(",
+						"+clone", "-thumbnail", SIZE,
+						"-quality", "80", "-write", dest.getAbsolutePath(),
+						"+delete", ")", "(", "+clone", "-thumbnail", "400x300",
+						"-strip", "-write", "png:" + dest2.getAbsolutePath(),
+						"+delete", ")", "null:")));
+			}
+
+			@Test
+			public void 画質を指定した派生画像の後の派生画像には画質を引き継がない() throws Exception {
+				// Setup
+				File log = File.createTempFile("args", ".log");
+				File fake = File.createTempFile("convert", "");
+				try {
+					Files.write(fake.toPath(), ("#!/bin/sh\necho \"$@\" > " + log
+							+ "\n").getBytes(StandardCharsets.UTF_8));
+					fake.setExecutable(true);
+					List<Rendition> renditions = new ArrayList<Rendition>();
+					renditions.add(new Rendition(dest).setSize(SIZE).setQuality(
+							30));
+					renditions.add(new Rendition(dest2).setSize(SIZE).setFormat(
+							"png"));
+
+					// Exercise
+					ImageMagick.createRenditions(fake.getAbsolutePath(), src,
+							renditions);
+
+					// Verify
+					String args = new String(Files.readAllBytes(log.toPath()),
+							StandardCharsets.UTF_8).trim();
+					assertThat(args.startsWith(src.getAbsolutePath()
+							+ " -respect-parentheses ( "), is(true));
+					String second = args.substring(args.indexOf(") (") + 2);
+					assertThat(second.contains("-quality"), is(false));
+					assertThat(second.endsWith(" +delete ) null:"), is(true));
+				} finally {
+					log.delete();
+					fake.delete();
+				}
+			}
+
+			@Test
+			public void 複数の派生画像をまとめて作成する() throws Exception {
+				// Setup
+				List<Rendition> renditions = new ArrayList<Rendition>();
+				renditions.add(new Rendition(dest).setSize(SIZE));
+				renditions.add(new Rendition(dest2).setSize(
+						SquareSide.landscape, 400).setStrip(true));
+
+				// Exercise
+				ImageMagick.createRenditions(COMMAND_CONVERT_PATH, src,
+						renditions);
+
+				// Verify
+				assertThat(new Size(dest),
+						is(SamePropertyValuesAs.samePropertyValuesAs(new Size(
+								133, 100))));
+				assertThat(new Size(dest2),
+						is(SamePropertyValuesAs.samePropertyValuesAs(new Size(
+								400, 300))));
+			}
+
+		}
+	}
+
+	/**
+	 * <code>ImageMagick#createBatchMontage</code> についてのテストケース。
+	 * 
+	 * @author tomoyamkung
+	 * 
+	 */
+	@RunWith(Enclosed.class)
+	public static class CreateBatchMontage {
+
+		/**
+		 * 結合用画像ファイルを格納したリスト。
+		 */
+		private static final List<File> srcFiles = Arrays.asList(
+				CreateMontage.srcMontage25, CreateMontage.srcMontage50,
+				CreateMontage.srcMontage75, CreateMontage.srcMontage100,
+				CreateMontage.srcMontage25);
+
+		/**
+		 * 複数ページになる場合の 1 ページ目の画像ファイル。
+		 */
+		private static final File page1 = new File(
+				"./src/test/resources/dest-1.jpg");
+
+		/**
+		 * 複数ページになる場合の 2 ページ目の画像ファイル。
+		 */
+		private static final File page2 = new File(
+				"./src/test/resources/dest-2.jpg");
+
+		public static class 異常系 {
+
+			@Test(expected = IllegalArgumentException.class)
+			public void montageがNullの場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.createBatchMontage(
+						CreateMontage.COMMAND_MONTAGE_PATH, COMMAND_CONVERT_PATH,
+						srcFiles, null);
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void columnsが0の場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.createBatchMontage(
+						CreateMontage.COMMAND_MONTAGE_PATH, COMMAND_CONVERT_PATH,
+						srcFiles, new BatchMontage(dest).setGeometry("100x100"));
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void srcFilesが空の場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.createBatchMontage(
+						CreateMontage.COMMAND_MONTAGE_PATH, COMMAND_CONVERT_PATH,
+						new ArrayList<File>(), new BatchMontage(dest).setColumns(
+								2).setGeometry("100x100"));
+				// Verify
+			}
+
+		}
+
+		public static class 正常系 {
+
+			@Before
+			public void setUp() throws Exception {
+				deleteTestFiles();
+				page1.delete();
+				page2.delete();
+			}
+
+			@After
+			public void tearDown() throws Exception {
+				deleteTestFiles();
+				page1.delete();
+				page2.delete();
+			}
+
+			@Test
+			public void 結合元画像のパスをファイルリストで渡すコマンドを組み立てる() throws Exception {
+				// Setup
+				BatchMontage montage = new BatchMontage(dest).setColumns(2)
+						.setGeometry("100x100");
+				File list = new File("/tmp/strip.txt");
+				File strip = new File("/tmp/strip.miff");
+
+				// Exercise
+				List<String> actual = ImageMagick.buildStripCommand(
+						CreateMontage.COMMAND_MONTAGE_PATH, montage, list, strip);
+
+				// Verify
+				assertThat(actual, is(Arrays.asList(
+						CreateMontage.COMMAND_MONTAGE_PATH, "-tile", "2x1",
+						"-geometry", "100x100", "@/tmp/strip.txt",
+						"/tmp/strip.miff")));
+			}
+
+			@Test
+			public void ファイルリストには二重引用符で囲んだパスを1行ずつ書き込む() throws Exception {
+				// Setup
+				File list = File.createTempFile("imagemagick", ".txt");
+
+				// Exercise
+				try {
+					ImageMagick.writeFileList(
+							Arrays.asList(new File("/tmp/a b.png"), new File(
+									"/tmp/c.png")), list);
+
+					// Verify
+					assertThat(Files.readAllLines(list.toPath()),
+							is(Arrays.asList("\"/tmp/a b.png\"", "\"/tmp/c.png\"")));
+				} finally {
+					list.delete();
+				}
+			}
+
+			@Test
+			public void 複数ページになる場合は拡張子の前にページ番号を付ける() throws Exception {
+				// Setup
+				BatchMontage montage = new BatchMontage(dest);
+
+				// Exercise
+				// Verify
+				assertThat(montage.getPageFile(1, 1), is(dest));
+				assertThat(montage.getPageFile(2, 3),
+						is(new File(dest.getAbsoluteFile().getParentFile(),
+								"dest-2.jpg")));
+			}
+
+			@Test
+			public void 行ごとに並行して結合し複数ページのコンタクトシートを作成する() throws Exception {
+				// Setup
+				BatchMontage montage = new BatchMontage(dest).setColumns(2)
+						.setRowsPerPage(2).setGeometry("100x100");
+
+				// Exercise
+				List<File> actual = ImageMagick.createBatchMontage(
+						CreateMontage.COMMAND_MONTAGE_PATH, COMMAND_CONVERT_PATH,
+						srcFiles, montage);
+
+				// Verify
+				assertThat(actual.size(), is(2));
+				BufferedImage first = ImageIO.read(page1);
+				assertThat(first.getWidth(), is(200));
+				assertThat(first.getHeight(), is(200));
+				BufferedImage second = ImageIO.read(page2);
+				assertThat(second.getWidth(), is(100));
+				assertThat(second.getHeight(), is(100));
+			}
+
 		}
+
+	}
+
+	/**
+	 * 標準入力と標準出力を使用するメソッドのテストケース。
+	 * 
+	 * @author tomoyamkung
+	 * 
+	 */
+	@RunWith(Enclosed.class)
+	public static class Streaming {
+
+		public static class 異常系 {
+
+			@Test(expected = IllegalArgumentException.class)
+			public void srcがNullの場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.createThumbnail(COMMAND_CONVERT_PATH, null,
+						StreamSink.of(new ByteArrayOutputStream()), "jpg", SIZE);
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void destがNullの場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.removeExif(COMMAND_CONVERT_PATH,
+						StreamSource.of(ByteBuffer.wrap(readSrc())), null, "jpg");
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void formatが英数字以外を含む場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.resize(COMMAND_CONVERT_PATH,
+						StreamSource.of(ByteBuffer.wrap(readSrc())),
+						StreamSink.of(new ByteArrayOutputStream()), "jpg:-",
+						SquareSide.landscape, 400);
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void sizeの書式が異なる場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.createThumbnail(COMMAND_CONVERT_PATH,
+						StreamSource.of(ByteBuffer.wrap(readSrc())),
+						StreamSink.of(new ByteArrayOutputStream()), "jpg",
+						"ax!00");
+				// Verify
+			}
+
+		}
+
+		public static class 正常系 {
+
+			@Test
+			public void メモリ上の画像からサムネイル画像を作成する() throws Exception {
+				// Setup
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+				// Exercise
+				ImageMagick.createThumbnail(COMMAND_CONVERT_PATH,
+						StreamSource.of(ByteBuffer.wrap(readSrc())),
+						StreamSink.of(out), "png", SIZE);
+
+				// Verify
+				BufferedImage actual = ImageIO.read(new ByteArrayInputStream(
+						out.toByteArray()));
+				assertThat(actual.getWidth(), is(133));
+				assertThat(actual.getHeight(), is(100));
+			}
+
+		}
+
+		/**
+		 * テストで使用する画像ファイルを読み込む。
+		 */
+		private static byte[] readSrc() throws IOException {
+			return Files.readAllBytes(src.toPath());
+		}
+
+	}
+
+	/**
+	 * <code>ImageMagick#resizeBatch</code> についてのテストケース。
+	 * 
+	 * convert コマンドの代わりに、生成元のファイルを生成先にコピーするスクリプトを使用する。
+	 * 
+	 * @author tomoyamkung
+	 * 
+	 */
+	@RunWith(Enclosed.class)
+	public static class ResizeBatch {
+
+		public static class 異常系 {
+
+			@Test(expected = IllegalArgumentException.class)
+			public void batchがNullの場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.resizeBatch(COMMAND_TRUE_PATH,
+						Arrays.asList(new BatchItem(src, dest)), null);
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void 大きさを指定していない場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.resizeBatch(COMMAND_TRUE_PATH,
+						Arrays.asList(new BatchItem(src, dest)),
+						new BatchResize());
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void parallelismが0の場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.resizeBatch(COMMAND_TRUE_PATH,
+						Arrays.asList(new BatchItem(src, dest)),
+						new BatchResize().setSize(SIZE).setParallelism(0));
+				// Verify
+			}
+
+			@Test(expected = FileNotFoundException.class)
+			public void srcDirが存在しない場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.resizeBatch(COMMAND_TRUE_PATH, notFound, dest,
+						new BatchResize().setSize(SIZE));
+				// Verify
+			}
+
+		}
+
+		public static class 正常系 {
+
+			@Rule
+			public TemporaryFolder folder = new TemporaryFolder();
+
+			private String fakeConvertPath;
+
+			@Before
+			public void setUp() throws Exception {
+				File fakeConvert = folder.newFile("convert");
+				Files.write(fakeConvert.toPath(),
+						("#!/bin/sh\neval last=\\${$#}\n"
+							+ "for a; do if [ -f \"$a\" ]; then cp \"$a\" \"$last\"; exit 0; fi; done\n")
+								.getBytes(StandardCharsets.UTF_8));
+				fakeConvert.setExecutable(true);
+				fakeConvertPath = fakeConvert.getAbsolutePath();
+			}
+
+			@Test
+			public void ディレクトリ配下の画像を同じ相対パスに作成する() throws Exception {
+				// Setup
+				File srcDir = folder.newFolder("src");
+				Files.copy(src.toPath(), new File(srcDir, "a.jpg").toPath());
+				new File(srcDir, "sub").mkdir();
+				Files.copy(src.toPath(), new File(srcDir, "sub/b.jpg").toPath());
+				File destDir = new File(folder.getRoot(), "dest");
+
+				// Exercise
+				BatchReport actual = ImageMagick.resizeBatch(fakeConvertPath,
+						srcDir, destDir, new BatchResize().setSize(
+								SquareSide.landscape, 400).setParallelism(2));
+
+				// Verify
+				assertThat(actual.isSuccess(), is(true));
+				assertThat(actual.getSucceeded(), is(2L));
+				assertThat(new File(destDir, "a.jpg").exists(), is(true));
+				assertThat(new File(destDir, "sub/b.jpg").exists(), is(true));
+			}
+
+			@Test
+			public void 生成元の配下にある生成先のディレクトリと画像以外のファイルは対象としない()
+					throws Exception {
+				// Setup
+				File srcDir = folder.newFolder("src");
+				Files.copy(src.toPath(), new File(srcDir, "a.JPG").toPath());
+				Files.write(new File(srcDir, "readme.txt").toPath(),
+						"readme".getBytes(StandardCharsets.UTF_8));
+				File destDir = new File(srcDir, "thumbs");
+				destDir.mkdir();
+				Files.copy(src.toPath(), new File(destDir, "old.jpg").toPath());
+
+				// Exercise
+				BatchReport actual = ImageMagick.resizeBatch(fakeConvertPath,
+						srcDir, destDir, new BatchResize().setSize(SIZE));
+
+				// Verify
+				assertThat(actual.isSuccess(), is(true));
+				assertThat(actual.getSucceeded(), is(1L));
+				assertThat(new File(destDir, "a.JPG").exists(), is(true));
+				assertThat(new File(destDir, "readme.txt").exists(), is(false));
+				assertThat(new File(destDir, "thumbs").exists(), is(false));
+			}
+
+			@Test
+			public void 読めないサブディレクトリを失敗として記録して残りの件を処理する()
+					throws Exception {
+				// Setup
+				File srcDir = folder.newFolder("src");
+				Files.copy(src.toPath(), new File(srcDir, "a.jpg").toPath());
+				File locked = new File(srcDir, "locked");
+				locked.mkdir();
+				Files.copy(src.toPath(), new File(locked, "b.jpg").toPath());
+				new File(srcDir, "z").mkdir();
+				Files.copy(src.toPath(), new File(srcDir, "z/c.jpg").toPath());
+				File destDir = new File(folder.getRoot(), "dest");
+				locked.setReadable(false);
+
+				try {
+					// 権限を無視できるユーザ（root など）では読めないディレクトリを作成できない
+					Assume.assumeThat(locked.list(), is(nullValue()));
+
+					// Exercise
+					BatchReport actual = ImageMagick.resizeBatch(
+							fakeConvertPath, srcDir, destDir, new BatchResize()
+									.setSize(SIZE));
+
+					// Verify
+					assertThat(actual.getSucceeded(), is(2L));
+					assertThat(actual.getFailed(), is(1L));
+					assertThat(actual.getFailures().get(0).getItem().getSrc()
+							.getName(), is("locked"));
+					assertThat(actual.getFailures().get(0).getCause(),
+							is(instanceOf(IOException.class)));
+					assertThat(new File(destDir, "z/c.jpg").exists(), is(true));
+				} finally {
+					locked.setReadable(true);
+				}
+			}
+
+			@Test
+			public void 失敗した件を記録して残りの件を処理する() throws Exception {
+				// Setup
+				List<BatchItem> items = Arrays.asList(new BatchItem(src,
+						folder.newFile("1.jpg")), new BatchItem(notFound,
+						folder.newFile("2.jpg")), new BatchItem(src, folder
+						.newFile("3.jpg")));
+
+				// Exercise
+				BatchReport actual = ImageMagick.resizeBatch(fakeConvertPath,
+						items, new BatchResize().setSize(SIZE));
+
+				// Verify
+				assertThat(actual.getSucceeded(), is(2L));
+				assertThat(actual.getFailed(), is(1L));
+				assertThat(actual.getFailures().get(0).getItem().getSrc(),
+						is(notFound));
+				assertThat(actual.getFailures().get(0).getCause(),
+						is(instanceOf(FileNotFoundException.class)));
+			}
+
+			@Test
+			public void 生成先が最新の場合はスキップする() throws Exception {
+				// Setup
+				File upToDate = folder.newFile("up-to-date.jpg");
+				upToDate.setLastModified(src.lastModified() + 1000);
+				File outdated = folder.newFile("outdated.jpg");
+				outdated.setLastModified(src.lastModified() - 1000);
+				ProcessExecutor executor = ImageMagick.getProcessExecutor();
+				long before = executor.getLaunchCount("createThumbnail");
+
+				// Exercise
+				BatchReport actual = ImageMagick.resizeBatch(fakeConvertPath,
+						Stream.of(new BatchItem(src, upToDate), new BatchItem(
+								src, outdated)), new BatchResize()
+								.setSize(SIZE).setSkipUpToDate(true));
+
+				// Verify
+				assertThat(actual.getSkipped(), is(1L));
+				assertThat(actual.getSucceeded(), is(1L));
+				assertThat(executor.getLaunchCount("createThumbnail") - before,
+						is(1L));
+			}
+
+			@Test
+			public void 進捗を通知する() throws Exception {
+				// Setup
+				final List<BatchProgress> progresses = Collections
+						.synchronizedList(new ArrayList<BatchProgress>());
+				List<BatchItem> items = new ArrayList<BatchItem>();
+				for (int i = 0; i < 5; i++) {
+					items.add(new BatchItem(src, new File(folder.getRoot(), i
+							+ ".jpg")));
+				}
+
+				// Exercise
+				ImageMagick.resizeBatch(fakeConvertPath, items,
+						new BatchResize().setSize(SIZE).setProgressInterval(0,
+								TimeUnit.MILLISECONDS).setProgressListener(
+								progress -> progresses.add(progress)));
+
+				// Verify
+				assertThat(progresses.size() > 1, is(true));
+				BatchProgress last = progresses.get(progresses.size() - 1);
+				assertThat(last.getCompleted(), is(5L));
+				assertThat(last.getThroughput() > 0, is(true));
+			}
+
+		}
+
+	}
+
+	/**
+	 * テスト用のファイルを削除する。
+	 */
+	private static void deleteTestFiles() {
+		if (dest.exists()) {
+			dest.delete();
+		}
+		if (notFound.exists()) {
+			notFound.delete();
+		}
+	}
+
+
+	/**
+	 * <code>ImageMagick#setOutputStaging</code> についてのテストケース。
+	 * 
+	 * convert コマンドの代わりに、引数を記録して生成先を書き出すスクリプトを使用する。
+	 * 
+	 * @author tomoyamkung
+	 * 
+	 */
+	@RunWith(Enclosed.class)
+	public static class StageOutput {
+
+		public static class 異常系 {
+
+			@Test(expected = IllegalArgumentException.class)
+			public void outputStagingがNullの場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.setOutputStaging(null);
+				// Verify
+			}
+
+		}
+
+		public static class 正常系 {
+
+			@Rule
+			public TemporaryFolder folder = new TemporaryFolder();
+
+			private File srcFile;
+
+			private File destFile;
+
+			@Before
+			public void setUp() throws Exception {
+				srcFile = folder.newFile("src.jpg");
+				Files.copy(src.toPath(), srcFile.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+				destFile = new File(folder.getRoot(), "dest.jpg");
+				ImageMagick.setOutputStaging(OutputStaging.atomicSync);
+			}
+
+			@After
+			public void tearDown() throws Exception {
+				ImageMagick.setOutputStaging(OutputStaging.direct);
+			}
+
+			@Test
+			public void 一時ファイルに書き出してから生成先に移動する() throws Exception {
+				// Setup
+				File log = new File(folder.getRoot(), "args.log");
+				String convert = fakeConvert("echo \"$@\" > " + log + "\n"
+						+ "eval last=\\${$#}\ncp \"$1\" \"$last\"\n");
+
+				// Exercise
+				ImageMagick.removeExif(convert, srcFile, destFile);
+
+				// Verify
+				assertThat(Files.readAllBytes(destFile.toPath()),
+						is(Files.readAllBytes(srcFile.toPath())));
+				String args = new String(Files.readAllBytes(log.toPath()),
+						StandardCharsets.UTF_8);
+				assertThat(args.contains(destFile.getAbsolutePath()), is(false));
+				assertThat(args.contains(".dest.staging-"), is(true));
+				assertThat(stagingFiles(), is(0));
+			}
+
+			@Test
+			public void 生成元と同じファイルに書き出す場合は入力を置き換えない() throws Exception {
+				// Setup
+				File log = new File(folder.getRoot(), "args.log");
+				String convert = fakeConvert("echo \"$@\" > " + log + "\n"
+						+ "eval last=\\${$#}\ncp \"$1\" \"$last\"\n");
+				byte[] expected = Files.readAllBytes(srcFile.toPath());
+
+				// Exercise
+				ImageMagick.removeExif(convert, srcFile, srcFile);
+
+				// Verify
+				String args = new String(Files.readAllBytes(log.toPath()),
+						StandardCharsets.UTF_8);
+				assertThat(args.startsWith(srcFile.getAbsolutePath() + " "),
+						is(true));
+				assertThat(args.contains(".src.staging-"), is(true));
+				assertThat(Files.readAllBytes(srcFile.toPath()), is(expected));
+				assertThat(stagingFiles(), is(0));
+			}
+
+			@Test
+			public void 失敗した場合は生成先を変更しない() throws Exception {
+				// Setup
+				Files.write(destFile.toPath(), "old".getBytes(StandardCharsets.UTF_8));
+				String convert = fakeConvert("eval last=\\${$#}\n"
+						+ "printf half > \"$last\"\nexit 1\n");
+
+				// Exercise
+				try {
+					ImageMagick.removeExif(convert, srcFile, destFile);
+					fail();
+				} catch (IOException e) {
+					// Verify
+					assertThat(new String(Files.readAllBytes(destFile.toPath()),
+							StandardCharsets.UTF_8), is("old"));
+					assertThat(stagingFiles(), is(0));
+				}
+			}
+
+			@Test
+			public void 同じ生成先への同じ操作は1回だけ実行する() throws Exception {
+				// Setup
+				File counter = new File(folder.getRoot(), "counter.log");
+				final String convert = fakeConvert("echo run >> " + counter
+						+ "\nsleep 0.5\neval last=\\${$#}\n"
+						+ "cp \"$1\" \"$last\"\n");
+				ExecutorService executor = Executors.newFixedThreadPool(4);
+				List<Future<ProcessResult>> results = new ArrayList<Future<ProcessResult>>();
+
+				// Exercise
+				try {
+					for (int i = 0; i < 4; i++) {
+						results.add(executor.submit(() -> ImageMagick
+								.removeExif(convert, srcFile, destFile)));
+					}
+					for (Future<ProcessResult> result : results) {
+						result.get();
+					}
+				} finally {
+					executor.shutdownNow();
+				}
+
+				// Verify
+				assertThat(Files.readAllLines(counter.toPath()).size(), is(1));
+				assertThat(destFile.exists(), is(true));
+			}
+
+			/**
+			 * 指定した内容のシェルスクリプトを convert コマンドの代わりに作成する。
+			 */
+			private String fakeConvert(String script) throws IOException {
+				File fake = folder.newFile("convert");
+				Files.write(fake.toPath(), ("#!/bin/sh\n" + script)
+						.getBytes(StandardCharsets.UTF_8));
+				fake.setExecutable(true);
+				return fake.getAbsolutePath();
+			}
+
+			/**
+			 * 残っている一時ファイルの数を取得する。
+			 */
+			private int stagingFiles() {
+				int count = 0;
+				for (String name : folder.getRoot().list()) {
+					if (name.contains(".staging-")) {
+						count++;
+					}
+				}
+				return count;
+			}
+
+		}
+
+	}
+
+
+	/**
+	 * 子プロセスを起動せずに JVM 内で処理する場合のテストケース。
+	 * 
+	 * @author tomoyamkung
+	 * 
+	 */
+	@RunWith(Enclosed.class)
+	public static class FastPath {
+
+		public static class 異常系 {
+
+			@Test(expected = IllegalArgumentException.class)
+			public void fastPathPolicyがNullの場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.setFastPathPolicy(null);
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void jpegQualityが範囲外の場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.setFastPathPolicy(new FastPathPolicy()
+						.setJpegQuality(0));
+				// Verify
+			}
+
+		}
+
+		public static class 正常系 {
+
+			@Rule
+			public TemporaryFolder folder = new TemporaryFolder();
+
+			private File destFile;
+
+			@Before
+			public void setUp() throws Exception {
+				destFile = new File(folder.getRoot(), "dest.jpg");
+				ImageMagick.setFastPathPolicy(new FastPathPolicy()
+						.setEnabled(true));
+			}
+
+			@After
+			public void tearDown() throws Exception {
+				ImageMagick.setFastPathPolicy(new FastPathPolicy());
+			}
+
+			@Test
+			public void 条件を満たす縮小はconvertコマンドを実行しない() throws Exception {
+				// Setup
+				// Exercise
+				ProcessResult actual = ImageMagick.createThumbnail(
+						WRONG_COMMAND_CONVERT_PATH, src, destFile, "200x200");
+
+				// Verify
+				assertThat(actual.getCommand().get(0),
+						is(JavaImageEngine.COMMAND));
+				BufferedImage image = ImageIO.read(destFile);
+				assertThat(image.getWidth(), is(200));
+				assertThat(image.getHeight(), is(150));
+			}
+
+			@Test
+			public void 条件を満たすメタデータの削除はconvertコマンドを実行しない()
+					throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.removeExif(WRONG_COMMAND_CONVERT_PATH, src, destFile);
+
+				// Verify
+				BufferedImage image = ImageIO.read(destFile);
+				assertThat(image.getWidth(), is(800));
+				assertThat(image.getHeight(), is(600));
+			}
+
+			@Test
+			public void 再エンコードせずにメタデータを削除する() throws Exception {
+				// Setup
+				ImageMagick.setMetadataStripper(new MetadataStripper()
+						.setEnabled(true));
+
+				// Exercise
+				try {
+					ImageMagick.removeExif(WRONG_COMMAND_CONVERT_PATH, src,
+							destFile);
+				} finally {
+					ImageMagick.setMetadataStripper(new MetadataStripper());
+				}
+
+				// Verify
+				// src.jpg はメタデータを含まないため、内容は変わらない
+				assertThat(Files.readAllBytes(destFile.toPath()),
+						is(Files.readAllBytes(src.toPath())));
+			}
+
+			@Test
+			public void 画素数が上限を超える場合はconvertコマンドを実行する() throws Exception {
+				// Setup
+				ImageMagick.setFastPathPolicy(new FastPathPolicy().setEnabled(
+						true).setMaxPixels(100));
+
+				// Exercise
+				try {
+					ImageMagick.createThumbnail(WRONG_COMMAND_CONVERT_PATH, src,
+							destFile, "200x200");
+					fail();
+				} catch (IOException e) {
+					// Verify
+					assertThat(destFile.exists(), is(false));
+				}
+			}
+
+			@Test
+			public void ヘッダを読めない形式のメタデータの削除はconvertコマンドを実行する()
+					throws Exception {
+				// Setup
+				File svg = folder.newFile("src.svg");
+				Files.write(svg.toPath(), "<svg xmlns=\"http://www.w3.org/2000/svg\"/>"
+						.getBytes(StandardCharsets.UTF_8));
+
+				// Exercise
+				ProcessResult actual = ImageMagick.removeExif(COMMAND_TRUE_PATH,
+						svg, new File(folder.getRoot(), "dest.svg"));
+
+				// Verify
+				assertThat(actual.getCommand().get(0), is(COMMAND_TRUE_PATH));
+			}
+
+			@Test
+			public void ICCプロファイルを含むJPEGの縮小はconvertコマンドを実行する()
+					throws Exception {
+				// Setup
+				File icc = folder.newFile("icc.jpg");
+				Files.write(icc.toPath(), HeaderScannerTest.withIccProfile(Files
+						.readAllBytes(src.toPath())));
+
+				// Exercise
+				try {
+					ImageMagick.createThumbnail(WRONG_COMMAND_CONVERT_PATH, icc,
+							destFile, "200x200");
+					fail();
+				} catch (IOException e) {
+					// Verify
+					assertThat(destFile.exists(), is(false));
+				}
+			}
+
+			@Test
+			public void グレースケールのPNGの縮小はconvertコマンドを実行する() throws Exception {
+				// Setup
+				File gray = folder.newFile("gray.png");
+				ImageIO.write(new BufferedImage(400, 300,
+						BufferedImage.TYPE_BYTE_GRAY), "png", gray);
+				File dest = new File(folder.getRoot(), "dest.png");
+
+				// Exercise
+				try {
+					ImageMagick.createThumbnail(WRONG_COMMAND_CONVERT_PATH, gray,
+							dest, "200x200");
+					fail();
+				} catch (IOException e) {
+					// Verify
+					assertThat(dest.exists(), is(false));
+				}
+			}
+
+			@Test
+			public void 拡大する場合はconvertコマンドを実行する() throws Exception {
+				// Setup
+				// Exercise
+				try {
+					ImageMagick.createThumbnail(WRONG_COMMAND_CONVERT_PATH, src,
+							destFile, "1600x1600");
+					fail();
+				} catch (IOException e) {
+					// Verify
+					assertThat(destFile.exists(), is(false));
+				}
+			}
+
+		}
+
+	}
+
+
+	/**
+	 * Exif の向きを補正する場合のテストケース。
+	 * 
+	 * @author tomoyamkung
+	 * 
+	 */
+	@RunWith(Enclosed.class)
+	public static class AutoOrient {
+
+		public static class 正常系 {
+
+			@Rule
+			public TemporaryFolder folder = new TemporaryFolder();
+
+			private File log;
+
+			private String convert;
+
+			@Before
+			public void setUp() throws Exception {
+				log = new File(folder.getRoot(), "args.log");
+				File fake = folder.newFile("convert");
+				Files.write(fake.toPath(), ("#!/bin/sh\necho \"$@\" > " + log
+						+ "\n").getBytes(StandardCharsets.UTF_8));
+				fake.setExecutable(true);
+				convert = fake.getAbsolutePath();
+			}
+
+			@Test
+			public void 縦向きの写真は向きを補正してからリサイズする() throws Exception {
+				// Setup
+				File rotated = new File(folder.getRoot(), "rotated.jpg");
+				Files.write(rotated.toPath(), HeaderScannerTest.withOrientation(
+						Files.readAllBytes(src.toPath()), 6));
+
+				// Exercise
+				ImageMagick.resize(convert, rotated, new File(folder.getRoot(),
+						"dest.jpg"), SquareSide.landscape, 300);
+
+				// Verify
+				String args = new String(Files.readAllBytes(log.toPath()),
+						StandardCharsets.UTF_8);
+				assertThat(args.contains("jpeg:size=800x600 "
+						+ rotated.getAbsolutePath() + " -auto-orient -thumbnail 300x400 "),
+						is(true));
+			}
+
+			@Test
+			public void 向きを補正しない写真にはauto_orientを指定しない() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.resize(convert, src, new File(folder.getRoot(),
+						"dest.jpg"), SquareSide.landscape, 300);
+
+				// Verify
+				String args = new String(Files.readAllBytes(log.toPath()),
+						StandardCharsets.UTF_8);
+				assertThat(args.contains("-auto-orient"), is(false));
+				assertThat(args.contains("-thumbnail 300x225 "), is(true));
+			}
+
+		}
+
+	}
+
+	/**
+	 * <code>ImageMagick#createAnimatedThumbnail</code> についてのテストケース。
+	 * 
+	 * @author tomoyamkung
+	 * 
+	 */
+	@RunWith(Enclosed.class)
+	public static class CreateAnimatedThumbnail {
+
+		public static class 異常系 {
+
+			@Test(expected = IllegalArgumentException.class)
+			public void thumbnailがNullの場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.createAnimatedThumbnail(COMMAND_CONVERT_PATH, src,
+						null);
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void sizeを指定していない場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.createAnimatedThumbnail(COMMAND_CONVERT_PATH, src,
+						new AnimatedThumbnail(dest));
+				// Verify
+			}
+
+			@Test(expected = IllegalArgumentException.class)
+			public void maxFramesが負の場合() throws Exception {
+				// Setup
+				// Exercise
+				ImageMagick.createAnimatedThumbnail(COMMAND_CONVERT_PATH, src,
+						new AnimatedThumbnail(dest).setSize(SIZE).setMaxFrames(-1));
+				// Verify
+			}
+
+		}
+
+		public static class 正常系 {
+
+			@Rule
+			public TemporaryFolder folder = new TemporaryFolder();
+
+			private File log;
+
+			private String convert;
+
+			/**
+			 * 引数をログに追記し、生成先のファイルを作成する convert コマンドの代わりを用意する。
+			 * 
+			 * フレームを展開するコマンドの場合は 4 フレーム分のファイルを作成する。
+			 */
+			@Before
+			public void setUp() throws Exception {
+				log = new File(folder.getRoot(), "args.log");
+				File fake = folder.newFile("convert");
+				Files.write(fake.toPath(), ("#!/bin/sh\n"
+						+ "echo \"$@\" >> " + log + "\n"
+						+ "for last; do :; done\n"
+						+ "case \"$last\" in\n"
+						+ "*frame-%d.miff) dir=`dirname \"$last\"`;"
+						+ " for i in 0 1 2 3; do : > \"$dir/frame-$i.miff\"; done ;;\n"
+						+ "*) : > \"$last\" ;;\n"
+						+ "esac\n").getBytes(StandardCharsets.UTF_8));
+				fake.setExecutable(true);
+				convert = fake.getAbsolutePath();
+			}
+
+			@Test
+			public void フレームを分けて並行して縮小し表示時間を指定して連結する()
+					throws Exception {
+				// Setup
+				File animation = new File(folder.getRoot(), "src.gif");
+				Files.write(animation.toPath(), HeaderScannerTest.gif(320, 240,
+						new int[] { 10, 20, 30, 40 }, new int[] { 1, 2, 1, 2 }));
+				File animationDest = new File(folder.getRoot(), "dest.gif");
+
+				// Exercise
+				ImageMagick.createAnimatedThumbnail(convert, animation,
+						new AnimatedThumbnail(animationDest).setSize(SIZE)
+								.setParallelism(2));
+
+				// Verify
+				List<String> lines = Files.readAllLines(log.toPath(),
+						StandardCharsets.UTF_8);
+				assertThat(lines.size(), is(4));
+				assertThat(lines.get(0).startsWith(animation.getAbsolutePath()
+						+ " -coalesce +adjoin "), is(true));
+				String chunks = lines.get(1) + "\n" + lines.get(2);
+				assertThat(chunks.matches("(?s).*-dispose background -delay 10 \\S+/frame-0\\.miff "
+						+ "-delay 20 \\S+/frame-1\\.miff -thumbnail 200x100 .*"),
+						is(true));
+				assertThat(chunks.matches("(?s).*-dispose background -delay 30 \\S+/frame-2\\.miff "
+						+ "-delay 40 \\S+/frame-3\\.miff -thumbnail 200x100 .*"),
+						is(true));
+				assertThat(lines.get(3).matches("\\S+/chunk-0\\.miff \\S+/chunk-1\\.miff "
+						+ "-layers Optimize " + animationDest.getAbsolutePath()),
+						is(true));
+				assertThat(animationDest.exists(), is(true));
+			}
+
+			@Test
+			public void フレーム数の上限を超える場合は間引いて表示時間を合計する() throws Exception {
+				// Setup
+				AnimatedThumbnail thumbnail = new AnimatedThumbnail(dest)
+						.setSize(SIZE).setMaxFrames(2);
+				List<File> frameFiles = Arrays.asList(new File("/tmp/frame-0.miff"),
+						new File("/tmp/frame-1.miff"), new File("/tmp/frame-2.miff"),
+						new File("/tmp/frame-3.miff"), new File("/tmp/frame-4.miff"));
+				List<Frame> frames = Arrays.asList(new Frame(10, Disposal.none),
+						new Frame(20, Disposal.none), new Frame(30,
+								Disposal.background), new Frame(40, Disposal.none),
+						new Frame(50, Disposal.none));
+				int[] indexes = thumbnail.sampleFrames(frames.size());
+
+				// Exercise
+				List<String> actual = ImageMagick.buildAnimationChunkCommand(
+						convert, SIZE, frameFiles, frames, indexes, 0,
+						indexes.length, new File("/tmp/chunk-0.miff"));
+
+				// Verify
+				assertThat(actual, is(Arrays.asList(convert, "-dispose",
+						"background", "-delay", "30", "/tmp/frame-0.miff",
+						"-delay", "120", "/tmp/frame-2.miff", "-thumbnail", SIZE,
+						"/tmp/chunk-0.miff")));
+			}
+
+			@Test
+			public void アニメーションではない画像は分割せずに縮小する() throws Exception {
+				// Setup
+				File still = new File(folder.getRoot(), "still.gif");
+				Files.write(still.toPath(), HeaderScannerTest.gif(320, 240,
+						new int[] { 0 }, new int[] { 0 }));
+
+				// Exercise
+				ImageMagick.createAnimatedThumbnail(convert, still,
+						new AnimatedThumbnail(new File(folder.getRoot(),
+								"dest.gif")).setSize(SIZE));
+
+				// Verify
+				List<String> lines = Files.readAllLines(log.toPath(),
+						StandardCharsets.UTF_8);
+				assertThat(lines.size(), is(1));
+				assertThat(lines.get(0).contains(" -thumbnail 200x100 "),
+						is(true));
+				assertThat(lines.get(0).contains("-coalesce"), is(false));
+			}
+
+		}
+
+	}
+
+	/**
+	 * 同じコマンドの同時実行をまとめる場合のテストケース。
+	 * 
+	 * @author tomoyamkung
+	 * 
+	 */
+	public static class Coalescing {
+
+		private final List<String> command = Arrays.asList("convert",
+				"/tmp/src.jpg", "-thumbnail", "200x100", "/tmp/dest.jpg");
+
+		@Test
+		public void 既定ではまとめない() throws Exception {
+			// Verify
+			assertThat(ImageMagick.isCoalescing(), is(false));
+		}
+
+		@Test
+		public void 正規化したパスが同じコマンドは同じキーになる() throws Exception {
+			// Exercise
+			List<Object> actual = ImageMagick.coalescingKey("thumbnail",
+					Arrays.asList("convert", "/tmp/../tmp/src.jpg",
+							"-thumbnail", "200x100", "/tmp/./dest.jpg"),
+					1000, null);
+
+			// Verify
+			assertThat(actual, is(ImageMagick.coalescingKey("thumbnail",
+					command, 1000, null)));
+		}
+
+		@Test
+		public void 操作の種類が異なる場合は異なるキーになる() throws Exception {
+			// Exercise
+			List<Object> actual = ImageMagick.coalescingKey("resize",
+					command, 1000, null);
+
+			// Verify
+			assertThat(actual, is(not(ImageMagick.coalescingKey("thumbnail",
+					command, 1000, null))));
+		}
+
+		@Test
+		public void 資源の上限が異なる場合は異なるキーになる() throws Exception {
+			// Exercise
+			List<Object> actual = ImageMagick.coalescingKey("thumbnail",
+					command, 1000, new ResourceLimits().setThread(1));
+
+			// Verify
+			assertThat(actual, is(not(ImageMagick.coalescingKey("thumbnail",
+					command, 1000, new ResourceLimits().setThread(4)))));
+			assertThat(actual, is(not(ImageMagick.coalescingKey("thumbnail",
+					command, 1000, null))));
+			assertThat(actual, is(ImageMagick.coalescingKey("thumbnail",
+					command, 1000, new ResourceLimits().setThread(1))));
+		}
+
 	}
 
 }
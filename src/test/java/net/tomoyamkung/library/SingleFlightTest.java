@@ -0,0 +1,157 @@
+package net.tomoyamkung.library;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>SingleFlight</code> クラスのテストケース。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class SingleFlightTest {
+
+	public static class 異常系 {
+
+		private ExecutorService executor;
+
+		@Before
+		public void setUp() throws Exception {
+			executor = Executors.newFixedThreadPool(4);
+		}
+
+		@After
+		public void tearDown() throws Exception {
+			executor.shutdownNow();
+		}
+
+		@Test
+		public void 実行中の処理で発生した例外を共有する() throws Exception {
+			// Setup
+			final SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+			final CountDownLatch started = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			Future<String> owner = executor.submit(() -> singleFlight.execute(
+					"key", () -> {
+						started.countDown();
+						release.await();
+						throw new IOException("failed");
+					}));
+			started.await();
+
+			// Exercise
+			Future<String> waiter = executor.submit(() -> singleFlight.execute(
+					"key", () -> "not called"));
+			waitForWaiter();
+			release.countDown();
+
+			// Verify
+			assertThat(causeOf(owner).getMessage(), is("failed"));
+			assertThat(causeOf(waiter), is(sameInstance(causeOf(owner))));
+			assertThat(singleFlight.getInFlightCount(), is(0));
+		}
+
+		private static Throwable causeOf(Future<?> future) throws Exception {
+			try {
+				future.get(10, TimeUnit.SECONDS);
+				fail();
+				return null;
+			} catch (ExecutionException e) {
+				return e.getCause();
+			}
+		}
+
+	}
+
+	public static class 正常系 {
+
+		private ExecutorService executor;
+
+		@Before
+		public void setUp() throws Exception {
+			executor = Executors.newFixedThreadPool(4);
+		}
+
+		@After
+		public void tearDown() throws Exception {
+			executor.shutdownNow();
+		}
+
+		@Test
+		public void 同じキーの処理を1回だけ実行して結果を共有する() throws Exception {
+			// Setup
+			final SingleFlight<String, Object> singleFlight = new SingleFlight<String, Object>();
+			final AtomicInteger calls = new AtomicInteger();
+			final CountDownLatch started = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			SingleFlight.Call<Object> call = () -> {
+				calls.incrementAndGet();
+				started.countDown();
+				release.await();
+				return new Object();
+			};
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			results.add(executor.submit(() -> singleFlight.execute("key", call)));
+			started.await();
+
+			// Exercise
+			for (int i = 0; i < 3; i++) {
+				results.add(executor.submit(() -> singleFlight.execute("key",
+						call)));
+			}
+			waitForWaiter();
+			release.countDown();
+
+			// Verify
+			Object expected = results.get(0).get(10, TimeUnit.SECONDS);
+			for (Future<Object> result : results) {
+				assertThat(result.get(10, TimeUnit.SECONDS),
+						is(sameInstance(expected)));
+			}
+			assertThat(calls.get(), is(1));
+		}
+
+		@Test
+		public void 完了した後の要求は改めて実行する() throws Exception {
+			// Setup
+			SingleFlight<String, Integer> singleFlight = new SingleFlight<String, Integer>();
+			AtomicInteger calls = new AtomicInteger();
+
+			// Exercise
+			singleFlight.execute("key", () -> calls.incrementAndGet());
+			int actual = singleFlight.execute("key",
+					() -> calls.incrementAndGet());
+
+			// Verify
+			assertThat(actual, is(2));
+			assertThat(singleFlight.getInFlightCount(), is(0));
+		}
+
+	}
+
+	/**
+	 * 他のスレッドが実行中の処理の完了を待ち始めるまで待機する。
+	 */
+	private static void waitForWaiter() throws InterruptedException {
+		Thread.sleep(200);
+	}
+
+}
@@ -1,5 +1,7 @@
 package net.tomoyamkung.library;
 
+import java.io.File;
+
 import org.junit.Test;
 import org.junit.experimental.runners.Enclosed;
 import org.junit.runner.RunWith;
@@ -7,6 +9,35 @@ import org.junit.runner.RunWith;
 @RunWith(Enclosed.class)
 public class ValidatorTest {
 
+	public static class ValidateSize {
+
+		@Test(expected = IllegalArgumentException.class)
+		public void 幅のみが指定された場合() {
+			Validator.validateSize("200", "サムネイルサイズ");
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void フラグが指定された場合() {
+			Validator.validateSize("200x100>", "サムネイルサイズ");
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void 大文字のXで区切られた場合() {
+			Validator.validateSize("200X100", "サムネイルサイズ");
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void 幅がintの範囲を超える場合() {
+			Validator.validateSize("2147483648x100", "サムネイルサイズ");
+		}
+
+		@Test
+		public void 幅と高さが指定された場合() {
+			Validator.validateSize("200x100", "サムネイルサイズ");
+		}
+
+	}
+
 	public static class ValidatePixel {
 		
 		@Test(expected = IllegalArgumentException.class)
@@ -26,4 +57,20 @@ public class ValidatorTest {
 
 	}
 
+	public static class ValidateSrcPixels {
+
+		private static final File src = new File("./src/test/resources/src.jpg");
+
+		@Test(expected = IllegalArgumentException.class)
+		public void 画素数が上限を超える場合() throws Exception {
+			Validator.validateSrcPixels(src, 800 * 600 - 1);
+		}
+
+		@Test
+		public void 画素数が上限と等しい場合() throws Exception {
+			Validator.validateSrcPixels(src, 800 * 600);
+		}
+
+	}
+
 }
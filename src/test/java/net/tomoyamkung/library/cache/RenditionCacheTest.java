@@ -0,0 +1,200 @@
+package net.tomoyamkung.library.cache;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>RenditionCache</code> クラスのテストケース。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class RenditionCacheTest {
+
+	public static class 異常系 {
+
+		@Rule
+		public TemporaryFolder folder = new TemporaryFolder();
+
+		@Test(expected = IllegalArgumentException.class)
+		public void dirがNullの場合() throws Exception {
+			// Setup
+			// Exercise
+			new RenditionCache(null, 1024);
+			// Verify
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void maxBytesが0の場合() throws Exception {
+			// Setup
+			// Exercise
+			new RenditionCache(folder.newFolder(), 0);
+			// Verify
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void キーがダイジェストの形式ではない場合() throws Exception {
+			// Setup
+			RenditionCache cache = new RenditionCache(folder.newFolder(), 1024);
+
+			// Exercise
+			cache.put("../key", folder.newFile("rendered.jpg"));
+			// Verify
+		}
+
+	}
+
+	public static class 正常系 {
+
+		private static final String KEY = key('0');
+
+		private static final String A = key('a');
+
+		private static final String B = key('b');
+
+		private static final String C = key('c');
+
+		@Rule
+		public TemporaryFolder folder = new TemporaryFolder();
+
+		@Test
+		public void ファイル名が異なっても内容が同じであれば同じキーを作成する() throws Exception {
+			// Setup
+			File a = write("a.jpg", "image");
+			File b = write("b.jpg", "image");
+
+			// Exercise
+			String actual = RenditionCache.createKey(
+					Collections.singletonList(a), "thumbnail:size=200x100");
+
+			// Verify
+			assertThat(actual, is(RenditionCache.createKey(
+					Collections.singletonList(b), "thumbnail:size=200x100")));
+			assertThat(actual, is(not(RenditionCache.createKey(
+					Collections.singletonList(b), "thumbnail:size=100x100"))));
+		}
+
+		@Test
+		public void 保存したファイルから生成先のファイルを作成する() throws Exception {
+			// Setup
+			RenditionCache cache = new RenditionCache(folder.newFolder(), 1024);
+			File rendered = write("rendered.jpg", "thumbnail");
+			File dest = new File(folder.getRoot(), "dest.jpg");
+
+			// Exercise
+			boolean miss = cache.get(KEY, dest);
+			cache.put(KEY, rendered);
+			boolean hit = cache.get(KEY, dest);
+
+			// Verify
+			assertThat(miss, is(false));
+			assertThat(hit, is(true));
+			assertThat(read(dest), is("thumbnail"));
+			assertThat(cache.getHitCount(), is(1L));
+			assertThat(cache.getMissCount(), is(1L));
+		}
+
+		@Test
+		public void 上限を超えた場合は最も長く使われていないものから削除する() throws Exception {
+			// Setup
+			RenditionCache cache = new RenditionCache(folder.newFolder(), 10);
+			File dest = new File(folder.getRoot(), "dest.jpg");
+			cache.put(A, write("a.jpg", "1234"));
+			cache.put(B, write("b.jpg", "1234"));
+			cache.get(A, dest);
+
+			// Exercise
+			cache.put(C, write("c.jpg", "1234"));
+
+			// Verify
+			assertThat(cache.getEvictionCount(), is(1L));
+			assertThat(cache.getTotalBytes(), is(8L));
+			assertThat(cache.get(A, dest), is(true));
+			assertThat(cache.get(B, dest), is(false));
+			assertThat(cache.get(C, dest), is(true));
+		}
+
+		@Test
+		public void 作り直した場合は保存済みのファイルを読み込む() throws Exception {
+			// Setup
+			File dir = folder.newFolder();
+			new RenditionCache(dir, 1024).put(KEY, write("a.jpg", "image"));
+
+			// Exercise
+			RenditionCache actual = new RenditionCache(dir, 1024);
+
+			// Verify
+			assertThat(actual.getEntryCount(), is(1));
+			assertThat(actual.get(KEY, new File(folder.getRoot(), "dest.jpg")),
+					is(true));
+		}
+
+		@Test
+		public void キーの形式ではないファイルは読み込まず削除しない() throws Exception {
+			// Setup
+			File dir = folder.newFolder();
+			File other = new File(dir, "other.jpg");
+			Files.write(other.toPath(), "0123456789".getBytes(StandardCharsets.UTF_8));
+			File temp = new File(dir, "notes.tmp");
+			Files.write(temp.toPath(), "memo".getBytes(StandardCharsets.UTF_8));
+			RenditionCache cache = new RenditionCache(dir, 5);
+
+			// Exercise
+			cache.put(A, write("a.jpg", "1234"));
+			cache.put(B, write("b.jpg", "1234"));
+
+			// Verify
+			assertThat(cache.getEntryCount(), is(1));
+			assertThat(cache.getTotalBytes(), is(4L));
+			assertThat(other.exists(), is(true));
+			assertThat(temp.exists(), is(true));
+			assertThat(new RenditionCache(dir, 1024).getEntryCount(), is(1));
+		}
+
+		@Test
+		public void ハードリンクで生成先のファイルを作成する() throws Exception {
+			// Setup
+			File dir = folder.newFolder();
+			RenditionCache cache = new RenditionCache(dir, 1024, true);
+			cache.put(KEY, write("a.jpg", "image"));
+			File dest = new File(folder.getRoot(), "dest.jpg");
+
+			// Exercise
+			cache.get(KEY, dest);
+
+			// Verify
+			assertThat(Files.isSameFile(dest.toPath(),
+					new File(dir, KEY).toPath()), is(true));
+		}
+
+		private File write(String name, String content) throws Exception {
+			File file = new File(folder.getRoot(), name);
+			Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+			file.setLastModified(System.currentTimeMillis());
+			return file;
+		}
+
+		private static String key(char c) {
+			return String.join("", Collections.nCopies(64, String.valueOf(c)));
+		}
+
+		private static String read(File file) throws Exception {
+			return new String(Files.readAllBytes(file.toPath()),
+					StandardCharsets.UTF_8);
+		}
+
+	}
+
+}
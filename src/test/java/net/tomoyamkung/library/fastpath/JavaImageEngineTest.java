@@ -0,0 +1,290 @@
+package net.tomoyamkung.library.fastpath;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import net.tomoyamkung.library.ImageMagick;
+import net.tomoyamkung.library.process.ProcessTimeoutException;
+import net.tomoyamkung.library.props.AppProperties;
+import net.tomoyamkung.library.size.ColorModel;
+import net.tomoyamkung.library.size.HeaderScanner;
+import net.tomoyamkung.library.size.HeaderScannerTest;
+import net.tomoyamkung.library.size.ImageHeader;
+import net.tomoyamkung.library.size.Size;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>JavaImageEngine</code> クラスのテストケース。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class JavaImageEngineTest {
+
+	/**
+	 * ImageMagick の convert コマンドのパス。
+	 */
+	private static final String COMMAND_CONVERT_PATH = AppProperties
+			.getInstance().get("path.to.imagemagick.convert");
+
+	/**
+	 * 見た目が変わらないとみなす PSNR（dB）の下限。
+	 */
+	private static final double MIN_PSNR = 30;
+
+	public static class 異常系 {
+
+		@Rule
+		public TemporaryFolder folder = new TemporaryFolder();
+
+		@Test(expected = UnsupportedImageException.class)
+		public void 読み込めない画像の場合() throws Exception {
+			// Setup
+			File src = folder.newFile("src.jpg");
+			Files.write(src.toPath(), "not an image".getBytes(StandardCharsets.UTF_8));
+
+			// Exercise
+			JavaImageEngine.thumbnail(src, new Size(10, 10), 92, new File(
+					folder.getRoot(), "dest.jpg"), 0);
+			// Verify
+		}
+
+		@Test
+		public void 制限時間を過ぎた場合() throws Exception {
+			// Setup
+			File src = new File(folder.getRoot(), "src.png");
+			ImageIO.write(pattern(2000, 2000), "png", src);
+			File dest = new File(folder.getRoot(), "dest.jpg");
+
+			// Exercise
+			try {
+				JavaImageEngine.thumbnail(src, new Size(100, 100), 92, dest, 1);
+				fail();
+			} catch (ProcessTimeoutException e) {
+				// Verify
+				assertThat(e.getTimeoutMillis(), is(1L));
+				assertThat(dest.exists(), is(false));
+			}
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void 拡大する場合() throws Exception {
+			// Setup
+			BufferedImage image = new BufferedImage(10, 10,
+					BufferedImage.TYPE_INT_RGB);
+
+			// Exercise
+			JavaImageEngine.downscale(image, 20, 10);
+			// Verify
+		}
+
+	}
+
+	public static class 正常系 {
+
+		@Rule
+		public TemporaryFolder folder = new TemporaryFolder();
+
+		private File src;
+
+		@Before
+		public void setUp() throws Exception {
+			src = new File(folder.getRoot(), "src.png");
+			ImageIO.write(pattern(800, 600), "png", src);
+		}
+
+		@After
+		public void tearDown() throws Exception {
+			ImageMagick.setFastPathPolicy(new FastPathPolicy());
+		}
+
+		@Test
+		public void 指定した大きさに縮小する() throws Exception {
+			// Setup
+			File dest = new File(folder.getRoot(), "dest.jpg");
+
+			// Exercise
+			JavaImageEngine.thumbnail(src, new Size(200, 150), 92, dest, 0);
+
+			// Verify
+			BufferedImage actual = ImageIO.read(dest);
+			assertThat(actual.getWidth(), is(200));
+			assertThat(actual.getHeight(), is(150));
+		}
+
+		@Test
+		public void 面積平均法で縮小した画像と見た目が変わらない() throws Exception {
+			// Setup
+			BufferedImage image = ImageIO.read(src);
+			BufferedImage expected = new BufferedImage(150, 113,
+					BufferedImage.TYPE_INT_RGB);
+			expected.getGraphics().drawImage(
+					image.getScaledInstance(150, 113, Image.SCALE_AREA_AVERAGING),
+					0, 0, null);
+
+			// Exercise
+			BufferedImage actual = JavaImageEngine.downscale(image, 150, 113);
+
+			// Verify
+			assertThat(psnr(expected, actual) >= MIN_PSNR, is(true));
+		}
+
+		@Test
+		public void convertコマンドで縮小した画像と見た目が変わらない() throws Exception {
+			// Setup
+			File expected = new File(folder.getRoot(), "expected.png");
+			File actual = new File(folder.getRoot(), "actual.png");
+			ImageMagick.createThumbnail(COMMAND_CONVERT_PATH, src, expected,
+					"200x200");
+
+			// Exercise
+			JavaImageEngine.thumbnail(src, new Size(200, 150), 92, actual, 0);
+
+			// Verify
+			assertThat(psnr(ImageIO.read(expected), ImageIO.read(actual)) >= MIN_PSNR,
+					is(true));
+		}
+
+		@Test
+		public void ICCプロファイルを含むJPEGは高速経路を有効にしても見た目とプロファイルが変わらない()
+				throws Exception {
+			// Setup
+			File jpeg = new File(folder.getRoot(), "icc.jpg");
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ImageIO.write(pattern(800, 600), "jpg", out);
+			Files.write(jpeg.toPath(), HeaderScannerTest.withIccProfile(out
+					.toByteArray()));
+			File expected = new File(folder.getRoot(), "expected.jpg");
+			File actual = new File(folder.getRoot(), "actual.jpg");
+			ImageMagick.createThumbnail(COMMAND_CONVERT_PATH, jpeg, expected,
+					"200x200");
+
+			// Exercise
+			ImageMagick.setFastPathPolicy(new FastPathPolicy().setEnabled(true));
+			ImageMagick.createThumbnail(COMMAND_CONVERT_PATH, jpeg, actual,
+					"200x200");
+
+			// Verify
+			assertThat(psnr(ImageIO.read(expected), ImageIO.read(actual)) >= MIN_PSNR,
+					is(true));
+			assertThat(HeaderScanner.scan(actual).hasIccProfile(), is(true));
+		}
+
+		@Test
+		public void グレースケールのPNGは高速経路を有効にしても見た目と色の表し方が変わらない()
+				throws Exception {
+			// Setup
+			File gray = new File(folder.getRoot(), "gray.png");
+			BufferedImage image = new BufferedImage(800, 600,
+					BufferedImage.TYPE_BYTE_GRAY);
+			image.getGraphics().drawImage(pattern(800, 600), 0, 0, null);
+			ImageIO.write(image, "png", gray);
+			File expected = new File(folder.getRoot(), "expected.png");
+			File actual = new File(folder.getRoot(), "actual.png");
+			ImageMagick.createThumbnail(COMMAND_CONVERT_PATH, gray, expected,
+					"200x200");
+
+			// Exercise
+			ImageMagick.setFastPathPolicy(new FastPathPolicy().setEnabled(true));
+			ImageMagick.createThumbnail(COMMAND_CONVERT_PATH, gray, actual,
+					"200x200");
+
+			// Verify
+			assertThat(psnr(ImageIO.read(expected), ImageIO.read(actual)) >= MIN_PSNR,
+					is(true));
+			ImageHeader header = HeaderScanner.scan(actual);
+			assertThat(header.getColorModel(), is(ColorModel.gray));
+		}
+
+		@Test
+		public void メタデータを削除する() throws Exception {
+			// Setup
+			File jpeg = new File(folder.getRoot(), "exif.jpg");
+			Files.write(jpeg.toPath(), withExif(ImageIO.read(src)));
+			File dest = new File(folder.getRoot(), "dest.jpg");
+
+			// Exercise
+			JavaImageEngine.strip(jpeg, 92, dest, 0);
+
+			// Verify
+			String actual = new String(Files.readAllBytes(dest.toPath()),
+					StandardCharsets.ISO_8859_1);
+			assertThat(actual.contains("Exif"), is(false));
+			assertThat(ImageIO.read(dest).getWidth(), is(800));
+		}
+
+	}
+
+	/**
+	 * 滑らかな階調と細かい模様を含む画像を作成する。
+	 */
+	static BufferedImage pattern(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int r = x * 255 / width;
+				int g = y * 255 / height;
+				int b = ((x / 4 + y / 4) % 2) * 128 + 64;
+				image.setRGB(x, y, r << 16 | g << 8 | b);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Exif（APP1 セグメント）を含む JPEG を作成する。
+	 */
+	static byte[] withExif(BufferedImage image) throws Exception {
+		ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpg", jpeg);
+		byte[] bytes = jpeg.toByteArray();
+		byte[] exif = { (byte) 0xFF, (byte) 0xE1, 0, 16, 'E', 'x', 'i', 'f',
+				0, 0, 'M', 'M', 0, 42, 0, 0, 0, 8 };
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(bytes, 0, 2);
+		out.write(exif);
+		out.write(bytes, 2, bytes.length - 2);
+		return out.toByteArray();
+	}
+
+	/**
+	 * 2 つの画像の PSNR（dB）を計算する。
+	 */
+	static double psnr(BufferedImage expected, BufferedImage actual) {
+		assertThat(actual.getWidth(), is(expected.getWidth()));
+		assertThat(actual.getHeight(), is(expected.getHeight()));
+		double sum = 0;
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				int e = expected.getRGB(x, y);
+				int a = actual.getRGB(x, y);
+				for (int shift = 0; shift < 24; shift += 8) {
+					int d = (e >> shift & 0xFF) - (a >> shift & 0xFF);
+					sum += d * d;
+				}
+			}
+		}
+		double mse = sum / (expected.getWidth() * expected.getHeight() * 3);
+		return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255
+				/ mse);
+	}
+
+}
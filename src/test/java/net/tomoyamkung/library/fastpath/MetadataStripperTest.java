@@ -0,0 +1,260 @@
+package net.tomoyamkung.library.fastpath;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>MetadataStripper</code> クラスのテストケース。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class MetadataStripperTest {
+
+	public static class 異常系 {
+
+		@Rule
+		public TemporaryFolder folder = new TemporaryFolder();
+
+		@Test(expected = UnsupportedImageException.class)
+		public void JPEGでもPNGでもない場合() throws Exception {
+			// Setup
+			File src = folder.newFile("src.jpg");
+			Files.write(src.toPath(), "GIF89a".getBytes(StandardCharsets.US_ASCII));
+
+			// Exercise
+			new MetadataStripper().execute(src,
+					new File(folder.getRoot(), "dest.jpg"), 0);
+			// Verify
+		}
+
+		@Test(expected = UnsupportedImageException.class)
+		public void セグメントが途中で終わっている場合() throws Exception {
+			// Setup
+			byte[] jpeg = jpeg(segment(0xE1, "Exif\0", 100));
+			File src = folder.newFile("src.jpg");
+			Files.write(src.toPath(), Arrays.copyOf(jpeg, 40));
+
+			// Exercise
+			new MetadataStripper().execute(src,
+					new File(folder.getRoot(), "dest.jpg"), 0);
+			// Verify
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void removedが空の場合() throws Exception {
+			// Setup
+			// Exercise
+			new MetadataStripper().setRemoved().validate();
+			// Verify
+		}
+
+	}
+
+	public static class 正常系 {
+
+		@Rule
+		public TemporaryFolder folder = new TemporaryFolder();
+
+		private File dest;
+
+		@Before
+		public void setUp() throws Exception {
+			dest = new File(folder.getRoot(), "dest.jpg");
+		}
+
+		@Test
+		public void JPEGのメタデータのセグメントを全て削除する() throws Exception {
+			// Setup
+			byte[] plain = jpeg();
+			File src = write("src.jpg", jpeg(segment(0xE1, "Exif\0", 300),
+					segment(0xE1, "http://ns.adobe.com/xap/1.0/\0", 200),
+					segment(0xE2, "ICC_PROFILE\0", 500),
+					segment(0xED, "Photoshop 3.0\0", 50),
+					segment(0xFE, "comment", 10)));
+
+			// Exercise
+			new MetadataStripper().execute(src, dest, 0);
+
+			// Verify
+			assertThat(Files.readAllBytes(dest.toPath()), is(plain));
+		}
+
+		@Test
+		public void 指定した種類のメタデータだけを削除する() throws Exception {
+			// Setup
+			byte[] icc = segment(0xE2, "ICC_PROFILE\0", 500);
+			File src = write("src.jpg", jpeg(segment(0xE1, "Exif\0", 300), icc));
+
+			// Exercise
+			new MetadataStripper().setRemoved(
+					Metadata.exif).execute(src, dest, 0);
+
+			// Verify
+			assertThat(Files.readAllBytes(dest.toPath()), is(jpeg(icc)));
+		}
+
+		@Test
+		public void 生成先の既存の内容を残さない() throws Exception {
+			// Setup
+			File src = write("src.jpg", jpeg(segment(0xE1, "Exif\0", 300)));
+			Files.write(dest.toPath(), new byte[100 * 1024]);
+
+			// Exercise
+			new MetadataStripper().execute(src, dest, 0);
+
+			// Verify
+			assertThat(Files.readAllBytes(dest.toPath()), is(jpeg()));
+		}
+
+		@Test
+		public void 生成元と同じファイルに書き出す場合も生成元を失わない() throws Exception {
+			// Setup
+			File src = write("src.jpg", jpeg(segment(0xE1, "Exif\0", 300),
+					segment(0xFE, "comment", 10)));
+
+			// Exercise
+			new MetadataStripper().execute(src, src, 0);
+
+			// Verify
+			assertThat(Files.readAllBytes(src.toPath()), is(jpeg()));
+			assertThat(folder.getRoot().list().length, is(1));
+		}
+
+		@Test
+		public void 生成元と同じファイルで処理できない場合は生成元を残す() throws Exception {
+			// Setup
+			byte[] gif = "GIF89a".getBytes(StandardCharsets.US_ASCII);
+			File src = write("src.jpg", gif);
+
+			// Exercise
+			try {
+				new MetadataStripper().execute(src, src, 0);
+				fail();
+			} catch (UnsupportedImageException e) {
+				// Verify
+				assertThat(Files.readAllBytes(src.toPath()), is(gif));
+				assertThat(folder.getRoot().list().length, is(1));
+			}
+		}
+
+		@Test
+		public void PNGのテキストとExifのチャンクを削除する() throws Exception {
+			// Setup
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ImageIO.write(new BufferedImage(32, 16, BufferedImage.TYPE_INT_RGB),
+					"png", out);
+			byte[] plain = out.toByteArray();
+			File src = write("src.png", png(plain, chunk("tEXt", "Comment\0text"),
+					chunk("iTXt", "XML:com.adobe.xmp\0\0\0\0\0<x/>"),
+					chunk("eXIf", "MM\0*")));
+			File pngDest = new File(folder.getRoot(), "dest.png");
+
+			// Exercise
+			new MetadataStripper().execute(src, pngDest, 0);
+
+			// Verify
+			assertThat(Files.readAllBytes(pngDest.toPath()), is(plain));
+			assertThat(ImageIO.read(pngDest).getWidth(), is(32));
+		}
+
+		@Test
+		public void 拡張子の形式が異なる場合は処理しない() throws Exception {
+			// Setup
+			MetadataStripper stripper = new MetadataStripper().setEnabled(true);
+
+			// Exercise
+			boolean actual = stripper.accepts(new File("src.jpg"), new File(
+					"dest.png"));
+
+			// Verify
+			assertThat(actual, is(false));
+			assertThat(stripper.accepts(new File("src.JPG"), new File(
+					"dest.jpeg")), is(true));
+		}
+
+		private File write(String name, byte[] content) throws Exception {
+			File file = new File(folder.getRoot(), name);
+			Files.write(file.toPath(), content);
+			return file;
+		}
+
+	}
+
+	/**
+	 * SOI の直後に指定したセグメントを挿入した JPEG を作成する。
+	 */
+	static byte[] jpeg(byte[]... segments) throws Exception {
+		ByteArrayOutputStream image = new ByteArrayOutputStream();
+		ImageIO.write(JavaImageEngineTest.pattern(64, 48), "jpg", image);
+		byte[] bytes = image.toByteArray();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(bytes, 0, 2);
+		for (byte[] segment : segments) {
+			out.write(segment);
+		}
+		out.write(bytes, 2, bytes.length - 2);
+		return out.toByteArray();
+	}
+
+	/**
+	 * 識別子に続けて指定の長さの内容を持つ JPEG のセグメントを作成する。
+	 */
+	static byte[] segment(int marker, String identifier, int length) {
+		byte[] id = identifier.getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer buffer = ByteBuffer.allocate(4 + id.length + length);
+		buffer.put((byte) 0xFF).put((byte) marker)
+				.putShort((short) (2 + id.length + length)).put(id);
+		return buffer.array();
+	}
+
+	/**
+	 * IHDR の直後に指定したチャンクを挿入した PNG を作成する。
+	 */
+	static byte[] png(byte[] plain, byte[]... chunks) throws Exception {
+		// シグネチャ（8 バイト）と IHDR（25 バイト）
+		int ihdrEnd = 8 + 25;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(plain, 0, ihdrEnd);
+		for (byte[] chunk : chunks) {
+			out.write(chunk);
+		}
+		out.write(plain, ihdrEnd, plain.length - ihdrEnd);
+		return out.toByteArray();
+	}
+
+	/**
+	 * PNG のチャンクを作成する。
+	 */
+	static byte[] chunk(String type, String data) {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		byte[] dataBytes = data.getBytes(StandardCharsets.ISO_8859_1);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(dataBytes);
+		ByteBuffer buffer = ByteBuffer.allocate(12 + dataBytes.length);
+		buffer.putInt(dataBytes.length).put(typeBytes).put(dataBytes)
+				.putInt((int) crc.getValue());
+		return buffer.array();
+	}
+
+}
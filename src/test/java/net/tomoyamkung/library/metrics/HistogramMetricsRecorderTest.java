@@ -0,0 +1,103 @@
+package net.tomoyamkung.library.metrics;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>HistogramMetricsRecorder</code> クラスのテストケース。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class HistogramMetricsRecorderTest {
+
+	public static class 異常系 {
+
+		@Test(expected = IllegalArgumentException.class)
+		public void percentileが100を超える場合() throws Exception {
+			// Setup
+			Histogram histogram = new Histogram();
+
+			// Exercise
+			histogram.getPercentile(101);
+			// Verify
+		}
+
+	}
+
+	public static class 正常系 {
+
+		@Test
+		public void 操作ごとに件数と終了コードと制限時間の超過を集計する() throws Exception {
+			// Setup
+			HistogramMetricsRecorder recorder = new HistogramMetricsRecorder();
+
+			// Exercise
+			recorder.record(invocation("resize", 1000, 0, false));
+			recorder.record(invocation("resize", 2000, 1, false));
+			recorder.record(invocation("resize", 3000, -1, true));
+			recorder.record(invocation("removeExif", 4000, 0, false));
+
+			// Verify
+			OperationStats resize = recorder.getStats("resize");
+			assertThat(resize.getCount(), is(3L));
+			assertThat(resize.getTimeoutCount(), is(1L));
+			assertThat(resize.getExitCodeCounts().get(0), is(1L));
+			assertThat(resize.getExitCodeCounts().get(1), is(1L));
+			assertThat(resize.getWallNanos().getMax(), is(3000L));
+			assertThat(recorder.getStats("removeExif").getCount(), is(1L));
+			assertThat(recorder.getStats("createMontage"), is(nullValue()));
+			assertThat(recorder.getAllStats().keySet().toString(),
+					is("[removeExif, resize]"));
+		}
+
+		@Test
+		public void パーセンタイルは誤差12_5パーセント以内で推定する() throws Exception {
+			// Setup
+			Histogram histogram = new Histogram();
+
+			// Exercise
+			for (long i = 1; i <= 1000; i++) {
+				histogram.record(i * 1000);
+			}
+
+			// Verify
+			assertThat(histogram.getCount(), is(1000L));
+			assertThat(histogram.getMax(), is(1000000L));
+			assertWithin(histogram.getPercentile(50), 500000);
+			assertWithin(histogram.getPercentile(99), 990000);
+			assertThat(histogram.getPercentile(100), is(1000000L));
+		}
+
+		@Test
+		public void 負の値は記録しない() throws Exception {
+			// Setup
+			Histogram histogram = new Histogram();
+
+			// Exercise
+			histogram.record(-1);
+
+			// Verify
+			assertThat(histogram.getCount(), is(0L));
+			assertThat(histogram.getPercentile(50), is(0L));
+		}
+
+		private static void assertWithin(long actual, long expected) {
+			assertThat(actual + " は " + expected + " の近似値であること",
+					Math.abs(actual - expected) <= expected / 8, is(true));
+		}
+
+	}
+
+	private static Invocation invocation(String operation, long wallNanos,
+			int exitCode, boolean timedOut) {
+		return new Invocation(operation, 0, 100, wallNanos, -1, 10, 20,
+				exitCode, timedOut);
+	}
+
+}
@@ -0,0 +1,245 @@
+package net.tomoyamkung.library.process;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>ProcessExecutor</code> クラスのテストケース。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class ProcessExecutorTest {
+
+	public static class 異常系 {
+
+		@Test(expected = IOException.class)
+		public void コマンドパスが存在しない場合() throws Exception {
+			// Setup
+			ProcessExecutor executor = new ProcessExecutor();
+
+			// Exercise
+			executor.execute(Arrays.asList("/path/to/imagemagick/convert"));
+			// Verify
+		}
+
+		@Test
+		public void 終了コードが0以外の場合は実行結果を格納した例外を生成する() throws Exception {
+			// Setup
+			ProcessExecutor executor = new ProcessExecutor();
+
+			// Exercise
+			try {
+				executor.execute(shell("echo 'convert: corrupt image' >&2; exit 3"));
+				fail();
+			} catch (ProcessFailedException e) {
+				// Verify
+				assertThat(e.getResult().getExitCode(), is(3));
+				assertThat(e.getResult().getStderr(),
+						is("convert: corrupt image\n"));
+			}
+		}
+
+		@Test
+		public void 制限時間内に終了しない場合は子孫のプロセスも含めて強制終了する() throws Exception {
+			// Setup
+			File pidFile = File.createTempFile("imagemagick", ".pid");
+			ProcessExecutor executor = new ProcessExecutor(0, 0, 200,
+					TimeUnit.MILLISECONDS);
+
+			// Exercise
+			long start = System.nanoTime();
+			try {
+				executor.execute(shell("sleep 30 & echo $! > "
+						+ pidFile.getAbsolutePath() + "; wait"));
+				fail();
+			} catch (ProcessTimeoutException e) {
+				// Verify
+				assertThat(e.getTimeoutMillis(), is(200L));
+				assertThat("制限時間を過ぎたらすぐに戻ること", TimeUnit.NANOSECONDS
+						.toSeconds(System.nanoTime() - start) < 5, is(true));
+
+				long pid = Long.parseLong(new String(Files.readAllBytes(pidFile
+						.toPath()), "UTF-8").trim());
+				ProcessHandle child = ProcessHandle.of(pid).orElse(null);
+				if (child != null) {
+					child.onExit().get(5, TimeUnit.SECONDS);
+				}
+			} finally {
+				pidFile.delete();
+			}
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void 制限時間が負の場合() throws Exception {
+			// Setup
+			// Exercise
+			new ProcessExecutor(0, 0, -1, TimeUnit.SECONDS);
+			// Verify
+		}
+
+		@Test
+		public void 標準入力を読み込まずに異常終了した場合は終了コードを格納した例外を生成する()
+				throws Exception {
+			// Setup
+			ProcessExecutor executor = new ProcessExecutor();
+			byte[] input = new byte[1048576];
+
+			// Exercise
+			try {
+				executor.execute(shell("exit 1"), 0,
+						Channels.newChannel(new ByteArrayInputStream(input)),
+						Channels.newChannel(new ByteArrayOutputStream()));
+				fail();
+			} catch (ProcessFailedException e) {
+				// Verify
+				assertThat(e.getResult().getExitCode(), is(1));
+			}
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void 出力の上限が負の場合() throws Exception {
+			// Setup
+			// Exercise
+			new ProcessExecutor(-1, 0);
+			// Verify
+		}
+
+	}
+
+	public static class 正常系 {
+
+		@Test
+		public void 標準出力と標準エラー出力と実行時間を取得する() throws Exception {
+			// Setup
+			ProcessExecutor executor = new ProcessExecutor();
+
+			// Exercise
+			ProcessResult actual = executor
+					.execute(shell("printf out; printf err >&2"));
+
+			// Verify
+			assertThat(actual.isSuccess(), is(true));
+			assertThat(new String(actual.getStdout(), "UTF-8"), is("out"));
+			assertThat(actual.getStderr(), is("err"));
+			assertThat(actual.getElapsedNanos() > 0, is(true));
+		}
+
+		@Test
+		public void 観測する間隔より早く終了したプロセスのCPU時間を取得する() throws Exception {
+			// Setup
+			ProcessExecutor executor = new ProcessExecutor();
+
+			// Exercise
+			ProcessResult actual = executor.execute(shell("sleep 0.02"));
+
+			// Verify
+			assertThat(actual.getCpuNanos() >= 0, is(true));
+		}
+
+		@Test
+		public void 資源の上限を環境変数として子プロセスに適用する() throws Exception {
+			// Setup
+			ProcessExecutor executor = new ProcessExecutor();
+			executor.setResourceLimits(new ResourceLimits().setMemory("256MiB"));
+
+			// Exercise
+			ProcessResult actual = executor.execute(
+					shell("printf %s,%s \"$MAGICK_THREAD_LIMIT\" \"$MAGICK_MEMORY_LIMIT\""),
+					0, new ResourceLimits().setThread(2).setMemory("1GiB"));
+
+			// Verify
+			assertThat(new String(actual.getStdout(), "UTF-8"), is("2,256MiB"));
+		}
+
+		@Test
+		public void 子プロセスを起動した回数を数える() throws Exception {
+			// Setup
+			ProcessExecutor executor = new ProcessExecutor();
+
+			// Exercise
+			executor.execute(shell("exit 0"));
+			executor.execute(shell("exit 0"));
+
+			// Verify
+			assertThat(executor.getLaunchCount(), is(2L));
+		}
+
+		@Test
+		public void 子プロセスを起動した回数を操作の種類ごとに数える() throws Exception {
+			// Setup
+			ProcessExecutor executor = new ProcessExecutor();
+
+			// Exercise
+			executor.execute("resize", shell("exit 0"), 0, null);
+			executor.execute("resize", shell("exit 0"), 0, null);
+			executor.execute("createThumbnail", shell("exit 0"), 0, null);
+			executor.execute(shell("exit 0"));
+
+			// Verify
+			assertThat(executor.getLaunchCount(), is(4L));
+			assertThat(executor.getLaunchCount("resize"), is(2L));
+			assertThat(executor.getLaunchCount("createThumbnail"), is(1L));
+			assertThat(executor.getLaunchCount("removeExif"), is(0L));
+		}
+
+		@Test
+		public void パイプのバッファを超える出力があっても停止せず上限まで格納する() throws Exception {
+			// Setup
+			ProcessExecutor executor = new ProcessExecutor(0, 1024);
+
+			// Exercise
+			ProcessResult actual = executor
+					.execute(shell("head -c 1048576 /dev/zero; head -c 1048576 /dev/zero >&2"));
+
+			// Verify
+			assertThat("標準出力は破棄する", actual.getStdout().length, is(0));
+			assertThat(actual.getStderr().length(), is(1024));
+			assertThat(actual.getStderrTruncated(), is(1048576L - 1024L));
+		}
+
+		@Test
+		public void 標準入力と標準出力をパイプのバッファを超える大きさでも転送する() throws Exception {
+			// Setup
+			ProcessExecutor executor = new ProcessExecutor();
+			byte[] input = new byte[4 * 1048576];
+			new Random(0).nextBytes(input);
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+			// Exercise
+			ProcessResult actual = executor.execute(Arrays.asList("cat"), 0,
+					Channels.newChannel(new ByteArrayInputStream(input)),
+					Channels.newChannel(output));
+
+			// Verify
+			assertThat(actual.isSuccess(), is(true));
+			assertThat("標準出力はバッファに格納しない", actual.getStdout().length, is(0));
+			assertThat(Arrays.equals(output.toByteArray(), input), is(true));
+		}
+
+	}
+
+	/**
+	 * シェルで実行するコマンドを作成する。
+	 */
+	private static List<String> shell(String script) {
+		return Arrays.asList("sh", "-c", script);
+	}
+
+}
@@ -0,0 +1,78 @@
+package net.tomoyamkung.library.process;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>ResourceLimits</code> クラスのテストケース。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class ResourceLimitsTest {
+
+	public static class 異常系 {
+
+		@Test(expected = IllegalArgumentException.class)
+		public void 大きさの形式に当てはまっていない場合() throws Exception {
+			// Setup
+			// Exercise
+			new ResourceLimits().setMemory("256 MiB");
+			// Verify
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void 同時実行数が0の場合() throws Exception {
+			// Setup
+			// Exercise
+			ResourceLimits.forConcurrency(0);
+			// Verify
+		}
+
+	}
+
+	public static class 正常系 {
+
+		@Test
+		public void 同時実行数に応じてスレッド数の上限を求める() throws Exception {
+			// Setup
+			int cores = Runtime.getRuntime().availableProcessors();
+
+			// Exercise
+			ResourceLimits single = ResourceLimits.forConcurrency(1);
+			ResourceLimits many = ResourceLimits.forConcurrency(cores * 4);
+
+			// Verify
+			assertThat(single.getThread(), is(cores));
+			assertThat(many.getThread(), is(1));
+		}
+
+		@Test
+		public void 指定していない項目のみ既定値で補う() throws Exception {
+			// Setup
+			ResourceLimits limits = new ResourceLimits().setMemory("256MiB");
+			ResourceLimits defaults = new ResourceLimits().setThread(2)
+					.setMemory("1GiB").setArea("128M");
+
+			// Exercise
+			Map<String, String> actual = limits.withDefaults(defaults)
+					.toEnvironment();
+
+			// Verify
+			assertThat(actual.get("MAGICK_THREAD_LIMIT"), is("2"));
+			assertThat(actual.get("MAGICK_MEMORY_LIMIT"), is("256MiB"));
+			assertThat(actual.get("MAGICK_AREA_LIMIT"), is("128M"));
+			assertThat(actual.containsKey("MAGICK_DISK_LIMIT"), is(false));
+			assertThat(limits.getThread(), is(0));
+		}
+
+	}
+
+}
@@ -0,0 +1,302 @@
+package net.tomoyamkung.library.process;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>WorkerPoolExecutor</code> クラスのテストケース。
+ *
+ * 常駐させるプロセスには、<code>-print</code> の行に応答し、crash を含む行で異常終了し、hang
+ * を含む行で応答しなくなり、unreadable を含む行で ImageMagick と同じ形式のエラーを出力して処理を続ける sh
+ * のスクリプトを使用する。 ImageMagick の動作に依存するテストは、magick コマンドがインストールされている場合のみ実行する。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class WorkerPoolExecutorTest {
+
+	/**
+	 * 常駐させたプロセスで実行する convert コマンドのパス。
+	 */
+	private static final String CONVERT_PATH = "/path/to/imagemagick/convert";
+
+	/**
+	 * <code>magick -script -</code> の代わりに常駐させるスクリプト。
+	 */
+	private static final List<String> FAKE_WORKER = Arrays.asList("sh", "-c",
+			"while IFS= read -r line; do case \"$line\" in "
+					+ "'-print \"'*) t=${line#-print \\\"}; printf '%s\\n' \"${t%\\\\n\\\"}\";; "
+					+ "*crash*) echo 'magick: crash' >&2; exit 2;; "
+					+ "*hang*) sleep 30;; "
+					+ "*unreadable*) echo \"magick: unable to open image 'unreadable.jpg'"
+					+ " @ error/blob.c/OpenBlob/3573.\" >&2;; " + "esac; done");
+
+	/**
+	 * PATH から探した magick コマンドのパス。 見つからない場合は null とする。
+	 */
+	private static final String MAGICK_PATH = findMagick();
+
+	public static class 正常系 {
+
+		private WorkerPoolExecutor executor;
+
+		@After
+		public void tearDown() throws Exception {
+			if (executor != null) {
+				executor.close();
+			}
+		}
+
+		@Test
+		public void convertコマンドの処理は常駐させたプロセスを再利用して実行する() throws Exception {
+			// Setup
+			executor = new WorkerPoolExecutor(CONVERT_PATH, FAKE_WORKER, 1,
+					100, 30000, 0, TimeUnit.MILLISECONDS);
+
+			// Exercise
+			for (int i = 0; i < 5; i++) {
+				ProcessResult actual = executor.execute(convert("src.jpg",
+						"dest.jpg"));
+				assertThat(actual.isSuccess(), is(true));
+			}
+
+			// Verify
+			assertThat(executor.getStartedWorkerCount(), is(1));
+			assertThat(executor.getIdleWorkerCount(), is(1));
+			assertThat(executor.getJobCount(), is(5L));
+			assertThat(executor.getLaunchCount(), is(1L));
+		}
+
+		@Test
+		public void 指定した件数を処理したプロセスは作り直す() throws Exception {
+			// Setup
+			executor = new WorkerPoolExecutor(CONVERT_PATH, FAKE_WORKER, 1, 2,
+					30000, 0, TimeUnit.MILLISECONDS);
+
+			// Exercise
+			for (int i = 0; i < 5; i++) {
+				executor.execute(convert("src.jpg", "dest.jpg"));
+			}
+
+			// Verify
+			assertThat(executor.getStartedWorkerCount(), is(3));
+		}
+
+		@Test
+		public void 使われていないプロセスは応答を確認してから再利用する() throws Exception {
+			// Setup
+			executor = new WorkerPoolExecutor(CONVERT_PATH, FAKE_WORKER, 1,
+					100, 0, 0, TimeUnit.MILLISECONDS);
+
+			// Exercise
+			executor.execute(convert("src.jpg", "dest.jpg"));
+			executor.execute(convert("src.jpg", "dest.jpg"));
+
+			// Verify
+			assertThat(executor.getStartedWorkerCount(), is(1));
+		}
+
+		@Test
+		public void convertコマンド以外は子プロセスを起動して実行する() throws Exception {
+			// Setup
+			executor = new WorkerPoolExecutor(CONVERT_PATH, FAKE_WORKER, 1,
+					100, 30000, 0, TimeUnit.MILLISECONDS);
+
+			// Exercise
+			ProcessResult actual = executor.execute(Arrays.asList("sh", "-c",
+					"printf montage"));
+
+			// Verify
+			assertThat(new String(actual.getStdout(), "UTF-8"), is("montage"));
+			assertThat(executor.getStartedWorkerCount(), is(0));
+		}
+
+		@Test
+		public void convertコマンドの形式をスクリプトの1行に変換する() throws Exception {
+			// Setup
+			// Exercise
+			String actual = MagickWorker.toScript(Arrays.asList(CONVERT_PATH,
+					"/tmp/src \"1\".jpg", "-thumbnail", "200x100",
+					"/tmp/dest.jpg"));
+
+			// Verify
+			assertThat(actual, is("-respect-parentheses ( "
+					+ "\"/tmp/src \\\"1\\\".jpg\" \"-thumbnail\" "
+					+ "\"200x100\" -write \"/tmp/dest.jpg\" ) -delete 0--1\n"));
+		}
+
+	}
+
+	public static class 異常系 {
+
+		private WorkerPoolExecutor executor;
+
+		@After
+		public void tearDown() throws Exception {
+			if (executor != null) {
+				executor.close();
+			}
+		}
+
+		@Test
+		public void 処理中にプロセスが終了した場合は例外を生成して作り直す() throws Exception {
+			// Setup
+			executor = new WorkerPoolExecutor(CONVERT_PATH, FAKE_WORKER, 1,
+					100, 30000, 0, TimeUnit.MILLISECONDS);
+
+			// Exercise
+			try {
+				executor.execute(convert("crash.jpg", "dest.jpg"));
+				fail();
+			} catch (ProcessFailedException e) {
+				// Verify
+				assertThat(e.getResult().getExitCode(), is(2));
+			}
+			executor.execute(convert("src.jpg", "dest.jpg"));
+			assertThat(executor.getStartedWorkerCount(), is(2));
+		}
+
+		@Test
+		public void 制限時間内に処理が完了しない場合は例外を生成して作り直す() throws Exception {
+			// Setup
+			executor = new WorkerPoolExecutor(CONVERT_PATH, FAKE_WORKER, 1,
+					100, 30000, 200, TimeUnit.MILLISECONDS);
+
+			// Exercise
+			try {
+				executor.execute(convert("hang.jpg", "dest.jpg"));
+				fail();
+			} catch (ProcessTimeoutException e) {
+				// Verify
+				assertThat(e.getTimeoutMillis(), is(200L));
+			}
+			executor.execute(convert("src.jpg", "dest.jpg"));
+			assertThat(executor.getStartedWorkerCount(), is(2));
+		}
+
+		@Test
+		public void ImageMagickがエラーを出力した場合は例外を生成して作り直す()
+				throws Exception {
+			// Setup
+			executor = new WorkerPoolExecutor(CONVERT_PATH, FAKE_WORKER, 1,
+					100, 30000, 0, TimeUnit.MILLISECONDS);
+
+			// Exercise
+			try {
+				executor.execute(convert("unreadable.jpg", "dest.jpg"));
+				fail();
+			} catch (ProcessFailedException e) {
+				// Verify
+				assertThat(e.getResult().getExitCode(), is(1));
+				assertThat(e.getResult().getStderr().contains("@ error/blob.c/OpenBlob"), is(true));
+			}
+			executor.execute(convert("src.jpg", "dest.jpg"));
+			assertThat(executor.getStartedWorkerCount(), is(2));
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void poolSizeが0の場合() throws Exception {
+			// Setup
+			// Exercise
+			executor = new WorkerPoolExecutor(CONVERT_PATH, "magick", 0, 100);
+			// Verify
+		}
+
+	}
+
+	/**
+	 * 常駐させた magick コマンドで実行する場合のテストケース。 magick コマンドがない場合は実行しない。
+	 */
+	public static class ImageMagickで実行 {
+
+		@Rule
+		public TemporaryFolder folder = new TemporaryFolder();
+
+		private WorkerPoolExecutor executor;
+
+		@After
+		public void tearDown() throws Exception {
+			if (executor != null) {
+				executor.close();
+			}
+		}
+
+		@Test
+		public void 読み込めない画像を指定した場合は例外を生成する() throws Exception {
+			// Setup
+			Assume.assumeTrue(MAGICK_PATH != null);
+			executor = new WorkerPoolExecutor(CONVERT_PATH, MAGICK_PATH, 1, 100);
+
+			// Exercise
+			try {
+				executor.execute(Arrays.asList(CONVERT_PATH, new File(folder
+						.getRoot(), "notfound.jpg").getAbsolutePath(), new File(
+						folder.getRoot(), "dest.jpg").getAbsolutePath()));
+				fail();
+			} catch (ProcessFailedException e) {
+				// Verify
+				assertThat(e.getResult().getExitCode(), is(1));
+			}
+		}
+
+		@Test
+		public void 処理の設定は次の処理に引き継がない() throws Exception {
+			// Setup
+			Assume.assumeTrue(MAGICK_PATH != null);
+			executor = new WorkerPoolExecutor(CONVERT_PATH, MAGICK_PATH, 1, 100);
+			File low = new File(folder.getRoot(), "low.jpg");
+			File normal = new File(folder.getRoot(), "normal.jpg");
+
+			// Exercise
+			executor.execute(Arrays.asList(CONVERT_PATH, "-size", "256x256",
+					"pattern:checkerboard", "-quality", "5",
+					low.getAbsolutePath()));
+			executor.execute(Arrays.asList(CONVERT_PATH, "-size", "256x256",
+					"pattern:checkerboard", normal.getAbsolutePath()));
+
+			// Verify
+			assertThat(executor.getStartedWorkerCount(), is(1));
+			assertThat(normal.length() > low.length(), is(true));
+		}
+
+	}
+
+	/**
+	 * PATH から magick コマンドを探す。
+	 */
+	private static String findMagick() {
+		String path = System.getenv("PATH");
+		if (path == null) {
+			return null;
+		}
+		for (String dir : path.split(File.pathSeparator)) {
+			File magick = new File(dir, "magick");
+			if (magick.canExecute()) {
+				return magick.getAbsolutePath();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * convert コマンドの形式の処理を作成する。
+	 */
+	private static List<String> convert(String src, String dest) {
+		return Arrays.asList(CONVERT_PATH, src, "-thumbnail", "200x100", dest);
+	}
+
+}
@@ -4,11 +4,19 @@ import static net.tomoyamkung.library.SquareSide.*;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.nio.file.Files;
+
 import org.hamcrest.beans.SamePropertyValuesAs;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class AspectRatioTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	/**
 	 * 横幅を基準にサイズを測る。
 	 * 
@@ -31,4 +39,19 @@ public class AspectRatioTest {
 				actual, is(SamePropertyValuesAs.samePropertyValuesAs(new Size(150, 300))));
 	}
 
+	/**
+	 * Exif の向きを補正した画像の横幅を基準にサイズを測る。
+	 * 
+	 */
+	@Test
+	public void measureRotatedByExif() throws Exception {
+		File src = folder.newFile("rotated.jpg");
+		Files.write(src.toPath(), HeaderScannerTest.withOrientation(Files
+				.readAllBytes(new File("./src/test/resources/src.jpg").toPath()), 6));
+
+		Size actual = AspectRatio.measure(src, landscape, 300);
+		assertThat("800x600 の画像を 90 度回転して横幅を 300px にリサイズする",
+				actual, is(SamePropertyValuesAs.samePropertyValuesAs(new Size(300, 400))));
+	}
+
 }
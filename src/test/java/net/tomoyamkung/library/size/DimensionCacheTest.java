@@ -0,0 +1,161 @@
+package net.tomoyamkung.library.size;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>DimensionCache</code> クラスのテストケース。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class DimensionCacheTest {
+
+	public static class 異常系 {
+
+		@Test(expected = IllegalArgumentException.class)
+		public void maxEntriesが負の場合() throws Exception {
+			// Setup
+			// Exercise
+			new DimensionCache(-1, 0, TimeUnit.SECONDS);
+			// Verify
+		}
+
+	}
+
+	public static class 正常系 {
+
+		@Rule
+		public TemporaryFolder folder = new TemporaryFolder();
+
+		@Test
+		public void 同じファイルは読み込み直さない() throws Exception {
+			// Setup
+			DimensionCache cache = new DimensionCache();
+			File image = write("a.png", 40, 30);
+
+			// Exercise
+			cache.get(image);
+			Size actual = cache.get(image);
+
+			// Verify
+			assertThat(actual.toString(), is("40x30"));
+			assertThat(cache.getHitCount(), is(1L));
+			assertThat(cache.getMissCount(), is(1L));
+			assertThat(cache.getHitRate(), is(0.5));
+		}
+
+		@Test
+		public void フレームを辿らずに読み込んだ場合はフレームを要求されたときに読み込み直す()
+				throws Exception {
+			// Setup
+			DimensionCache cache = new DimensionCache();
+			File image = folder.newFile("a.gif");
+			Files.write(image.toPath(), HeaderScannerTest.gif(20, 10,
+					new int[] { 10, 20 }, new int[] { 1, 1 }));
+
+			// Exercise
+			cache.get(image);
+			ImageHeader actual = cache.getHeader(image);
+			cache.getHeader(image, false);
+
+			// Verify
+			assertThat(actual.getFrameCount(), is(2));
+			assertThat(cache.getHitCount(), is(1L));
+			assertThat(cache.getMissCount(), is(2L));
+		}
+
+		@Test
+		public void ファイルが変わった場合は読み込み直す() throws Exception {
+			// Setup
+			DimensionCache cache = new DimensionCache();
+			File image = write("a.png", 40, 30);
+			cache.get(image);
+			write("a.png", 80, 60);
+			image.setLastModified(image.lastModified() + 2000);
+
+			// Exercise
+			Size actual = cache.get(image);
+
+			// Verify
+			assertThat(actual.toString(), is("80x60"));
+			assertThat(cache.getHitCount(), is(0L));
+		}
+
+		@Test
+		public void 上限を超えた場合は最も長く使われていないものから破棄する() throws Exception {
+			// Setup
+			DimensionCache cache = new DimensionCache(2, 0, TimeUnit.SECONDS);
+			File a = write("a.png", 10, 10);
+			File b = write("b.png", 20, 20);
+			cache.get(a);
+			cache.get(b);
+			cache.get(a);
+
+			// Exercise
+			cache.get(write("c.png", 30, 30));
+			cache.get(a);
+			cache.get(b);
+
+			// Verify
+			assertThat(cache.size(), is(2));
+			assertThat(cache.getHitCount(), is(2L));
+			assertThat(cache.getMissCount(), is(4L));
+		}
+
+		@Test
+		public void 保持する時間が経過した場合は読み込み直す() throws Exception {
+			// Setup
+			DimensionCache cache = new DimensionCache(10, 1,
+					TimeUnit.MILLISECONDS);
+			File image = write("a.png", 40, 30);
+			cache.get(image);
+			Thread.sleep(10);
+
+			// Exercise
+			cache.get(image);
+
+			// Verify
+			assertThat(cache.getHitCount(), is(0L));
+		}
+
+		@Test
+		public void 上限が0の場合は保持しない() throws Exception {
+			// Setup
+			DimensionCache cache = new DimensionCache(0, 0, TimeUnit.SECONDS);
+			File image = write("a.png", 40, 30);
+
+			// Exercise
+			cache.get(image);
+			cache.get(image);
+
+			// Verify
+			assertThat(cache.size(), is(0));
+			assertThat(cache.getMissCount(), is(2L));
+		}
+
+		private File write(String name, int width, int height)
+				throws Exception {
+			File file = new File(folder.getRoot(), name);
+			ImageIO.write(new BufferedImage(width, height,
+					BufferedImage.TYPE_INT_RGB), "png", file);
+			return file;
+		}
+
+	}
+
+}
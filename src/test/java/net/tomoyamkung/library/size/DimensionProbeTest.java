@@ -0,0 +1,222 @@
+package net.tomoyamkung.library.size;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.hamcrest.beans.SamePropertyValuesAs;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>DimensionProbe</code> クラスのテストケース。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class DimensionProbeTest {
+
+	/**
+	 * テストで作成される画像ファイル。
+	 */
+	private static final File dest = new File("./src/test/resources/probe.tmp");
+
+	public static class 正常系 {
+
+		@After
+		public void tearDown() throws Exception {
+			dest.delete();
+		}
+
+		@Test
+		public void JPEGのヘッダから幅と高さを取得する() throws Exception {
+			// Setup
+			File src = new File("./src/test/resources/src.jpg");
+			BufferedImage expected = ImageIO.read(src);
+
+			// Exercise
+			Size actual = DimensionProbe.probe(src);
+
+			// Verify
+			assertThat(actual, is(SamePropertyValuesAs.samePropertyValuesAs(new Size(
+					expected.getWidth(), expected.getHeight()))));
+		}
+
+		@Test
+		public void PNGのヘッダから幅と高さを取得する() throws Exception {
+			// Setup
+			File src = new File("./src/test/resources/src_montage_25.png");
+			BufferedImage expected = ImageIO.read(src);
+
+			// Exercise
+			Size actual = DimensionProbe.probe(src);
+
+			// Verify
+			assertThat(actual, is(SamePropertyValuesAs.samePropertyValuesAs(new Size(
+					expected.getWidth(), expected.getHeight()))));
+		}
+
+		@Test
+		public void GIFのヘッダから幅と高さを取得する() throws Exception {
+			// Setup
+			writeImage("gif", 123, 45);
+
+			// Exercise
+			Size actual = DimensionProbe.probe(dest);
+
+			// Verify
+			assertThat(actual, is(SamePropertyValuesAs.samePropertyValuesAs(new Size(
+					123, 45))));
+		}
+
+		@Test
+		public void BMPのヘッダから幅と高さを取得する() throws Exception {
+			// Setup
+			writeImage("bmp", 67, 89);
+
+			// Exercise
+			Size actual = DimensionProbe.probe(dest);
+
+			// Verify
+			assertThat(actual, is(SamePropertyValuesAs.samePropertyValuesAs(new Size(
+					67, 89))));
+		}
+
+		@Test
+		public void WebPのヘッダから幅と高さを取得する() throws Exception {
+			// Setup
+			// VP8X チャンクのみを持つ最小限のヘッダ（キャンバス 640x480）
+			byte[] header = new byte[] { 'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W',
+					'E', 'B', 'P', 'V', 'P', '8', 'X', 10, 0, 0, 0, 0, 0, 0, 0,
+					(byte) 0x7F, 0x02, 0x00, (byte) 0xDF, 0x01, 0x00, 0, 0, 0,
+					0, 0, 0, 0, 0, 0, 0, 0, 0 };
+			writeBytes(header);
+
+			// Exercise
+			Size actual = DimensionProbe.probe(dest);
+
+			// Verify
+			assertThat(actual, is(SamePropertyValuesAs.samePropertyValuesAs(new Size(
+					640, 480))));
+		}
+
+		@Test
+		public void 小さなWebPのヘッダから幅と高さを取得する() throws Exception {
+			// Setup
+			// VP8L チャンクを持つ 1x1 の画像（全体で 38 バイト）
+			byte[] header = new byte[] { 'R', 'I', 'F', 'F', 30, 0, 0, 0, 'W',
+					'E', 'B', 'P', 'V', 'P', '8', 'L', 17, 0, 0, 0, 0x2F, 0, 0,
+					0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+			writeBytes(header);
+
+			// Exercise
+			Size actual = DimensionProbe.probe(dest);
+
+			// Verify
+			assertThat(actual, is(SamePropertyValuesAs.samePropertyValuesAs(new Size(
+					1, 1))));
+		}
+
+		@Test
+		public void TIFFのヘッダから幅と高さを取得する() throws Exception {
+			// Setup
+			writeImage("tiff", 321, 123);
+
+			// Exercise
+			Size actual = DimensionProbe.probe(dest);
+
+			// Verify
+			assertThat(actual, is(SamePropertyValuesAs.samePropertyValuesAs(new Size(
+					321, 123))));
+		}
+
+		@Test
+		public void ヘッダを解析できない形式はImageReaderで取得する() throws Exception {
+			// Setup
+			writeImage("wbmp", 30, 20);
+
+			// Exercise
+			Size actual = DimensionProbe.probe(dest);
+
+			// Verify
+			assertThat(actual, is(SamePropertyValuesAs.samePropertyValuesAs(new Size(
+					30, 20))));
+		}
+
+	}
+
+	public static class 異常系 {
+
+		@After
+		public void tearDown() throws Exception {
+			dest.delete();
+		}
+
+		@Test(expected = IOException.class)
+		public void 画像ファイルではない場合() throws Exception {
+			// Setup
+			writeBytes("this is not an image file.".getBytes("UTF-8"));
+
+			// Exercise
+			DimensionProbe.probe(dest);
+			// Verify
+		}
+
+		@Test(expected = IOException.class)
+		public void JPEGのヘッダが途中で切れている場合() throws Exception {
+			// Setup
+			writeBytes(new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF,
+					(byte) 0xE0, 0x00, 0x10, 0, 0, 0, 0, 0, 0 });
+
+			// Exercise
+			DimensionProbe.probe(dest);
+			// Verify
+		}
+
+		@Test(expected = IOException.class)
+		public void WebPのヘッダが途中で切れている場合() throws Exception {
+			// Setup
+			// VP8X チャンクのキャンバスの大きさの途中で終わっている
+			writeBytes(new byte[] { 'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E',
+					'B', 'P', 'V', 'P', '8', 'X', 10, 0, 0, 0, 0, 0, 0, 0,
+					(byte) 0x7F, 0x02 });
+
+			// Exercise
+			DimensionProbe.probe(dest);
+			// Verify
+		}
+
+	}
+
+	/**
+	 * 指定した形式と大きさの画像ファイルを作成する。
+	 */
+	private static void writeImage(String formatName, int width, int height)
+			throws IOException {
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_BYTE_BINARY);
+		ImageIO.write(image, formatName, dest);
+	}
+
+	/**
+	 * 指定したバイト列をファイルに書き込む。
+	 */
+	private static void writeBytes(byte[] bytes) throws IOException {
+		FileOutputStream out = new FileOutputStream(dest);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+package net.tomoyamkung.library.size;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import net.tomoyamkung.library.size.Geometry.Flag;
+
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>Geometry</code> クラスのテストケース。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class GeometryTest {
+
+	public static class 異常系 {
+
+		@Test(expected = IllegalArgumentException.class)
+		public void geometryがNullの場合() throws Exception {
+			// Setup
+			// Exercise
+			Geometry.parse(null);
+			// Verify
+		}
+
+		@Test
+		public void ジオメトリの形式に当てはまっていない場合はnullを返す() throws Exception {
+			// Setup
+			String[] invalids = { "", "x", "200x100x50", "200y100", "200x100+10",
+					"+10", "a200", "200x100 ", "-200x100", "2147483648x1" };
+
+			// Exercise
+			for (String invalid : invalids) {
+				// Verify
+				assertThat(invalid, Geometry.tryParse(invalid), is(nullValue()));
+			}
+		}
+
+	}
+
+	public static class 正常系 {
+
+		@Test
+		public void 幅と高さを解釈する() throws Exception {
+			// Setup
+			// Exercise
+			Geometry actual = Geometry.parse("200x100");
+
+			// Verify
+			assertThat(actual.getWidth(), is(200));
+			assertThat(actual.getHeight(), is(100));
+			assertThat(actual.isSize(), is(true));
+			assertThat(actual, is(Geometry.of(200, 100)));
+		}
+
+		@Test
+		public void 幅のみと高さのみを解釈する() throws Exception {
+			// Setup
+			// Exercise
+			Geometry width = Geometry.parse("200");
+			Geometry height = Geometry.parse("x100");
+
+			// Verify
+			assertThat(width.getWidth(), is(200));
+			assertThat(width.hasHeight(), is(false));
+			assertThat(height.hasWidth(), is(false));
+			assertThat(height.getHeight(), is(100));
+			assertThat(width.isSize(), is(false));
+		}
+
+		@Test
+		public void オフセットを解釈する() throws Exception {
+			// Setup
+			// Exercise
+			Geometry actual = Geometry.parse("200x100+10-20");
+
+			// Verify
+			assertThat(actual.hasOffset(), is(true));
+			assertThat(actual.getX(), is(10));
+			assertThat(actual.getY(), is(-20));
+			assertThat(actual.isSize(), is(false));
+		}
+
+		@Test
+		public void フラグを解釈する() throws Exception {
+			// Setup
+			// Exercise
+			Geometry percent = Geometry.parse("50%x25%");
+			Geometry flags = Geometry.parse("200x100^!><");
+			Geometry area = Geometry.parse("10000@");
+
+			// Verify
+			assertThat(percent.hasFlag(Flag.percent), is(true));
+			assertThat(percent.getHeight(), is(25));
+			assertThat(flags.hasFlag(Flag.fill), is(true));
+			assertThat(flags.hasFlag(Flag.ignoreAspectRatio), is(true));
+			assertThat(flags.hasFlag(Flag.shrinkOnly), is(true));
+			assertThat(flags.hasFlag(Flag.enlargeOnly), is(true));
+			assertThat(flags.hasFlag(Flag.percent), is(false));
+			assertThat(area.hasFlag(Flag.area), is(true));
+			assertThat(area.getWidth(), is(10000));
+		}
+
+		@Test
+		public void ImageMagickに指定する形式に戻す() throws Exception {
+			// Setup
+			// Exercise
+			// Verify
+			assertThat(Geometry.parse("200x100").toString(), is("200x100"));
+			assertThat(Geometry.parse("x100>").toString(), is("x100>"));
+			assertThat(Geometry.parse("50%").toString(), is("50%"));
+			assertThat(Geometry.parse("200x100+0-5").toString(),
+					is("200x100+0-5"));
+		}
+
+		@Test
+		public void Sizeと相互に変換する() throws Exception {
+			// Setup
+			Size size = new Size(400, 300);
+
+			// Exercise
+			Geometry actual = size.toGeometry();
+
+			// Verify
+			assertThat(actual.toString(), is("400x300"));
+			assertThat(actual.toSize().getWidth(), is(400));
+			assertThat(actual.toSize().getHeight(), is(300));
+		}
+
+	}
+
+}
@@ -0,0 +1,575 @@
+package net.tomoyamkung.library.size;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/**
+ * <code>HeaderScanner</code> クラスのテストケース。
+ *
+ * @author tomoyamkung
+ *
+ */
+@RunWith(Enclosed.class)
+public class HeaderScannerTest {
+
+	public static class 正常系 {
+
+		@Rule
+		public TemporaryFolder folder = new TemporaryFolder();
+
+		@Test
+		public void 複数ページのTIFFのページ数を取得する() throws Exception {
+			// Setup
+			File src = folder.newFile("src.tif");
+			ImageWriter writer = ImageIO.getImageWritersByFormatName("tiff")
+					.next();
+			try (ImageOutputStream out = ImageIO.createImageOutputStream(src)) {
+				writer.setOutput(out);
+				writer.prepareWriteSequence(null);
+				for (int i = 0; i < 3; i++) {
+					writer.writeToSequence(new IIOImage(new BufferedImage(120,
+							80, BufferedImage.TYPE_INT_RGB), null, null), null);
+				}
+				writer.endWriteSequence();
+			} finally {
+				writer.dispose();
+			}
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(actual.getWidth(), is(120));
+			assertThat(actual.getHeight(), is(80));
+			assertThat(actual.getColorModel(), is(ColorModel.rgb));
+			assertThat(actual.getFrameCount(), is(3));
+		}
+
+		@Test
+		public void TIFFの向きと色の表し方を取得する() throws Exception {
+			// Setup
+			File src = write(tiff(ByteOrder.BIG_ENDIAN, 8, 4000, 3000, 5, 6));
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(actual.getSize().toString(), is("4000x3000"));
+			assertThat(actual.getOrientation(), is(6));
+			assertThat(actual.getColorModel(), is(ColorModel.cmyk));
+			assertThat(actual.getFrameCount(), is(1));
+		}
+
+		@Test
+		public void BigTIFFのヘッダを読む() throws Exception {
+			// Setup
+			ByteBuffer buffer = ByteBuffer.allocate(16 + 8 + 20 * 2 + 8).order(
+					ByteOrder.LITTLE_ENDIAN);
+			buffer.put((byte) 'I').put((byte) 'I').putShort((short) 43)
+					.putShort((short) 8).putShort((short) 0).putLong(16);
+			buffer.putLong(2);
+			buffer.putShort((short) 256).putShort((short) 16).putLong(1)
+					.putLong(100000);
+			buffer.putShort((short) 257).putShort((short) 4).putLong(1)
+					.putInt(70000).putInt(0);
+			buffer.putLong(0);
+			File src = write(buffer.array());
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(actual.getSize().toString(), is("100000x70000"));
+		}
+
+		@Test
+		public void PSDのヘッダとExifの向きを取得する() throws Exception {
+			// Setup
+			byte[] exif = tiff(ByteOrder.LITTLE_ENDIAN, 8, 0, 0, -1, 8);
+			ByteArrayOutputStream resources = new ByteArrayOutputStream();
+			resources.write(psdResource(0x0409, new byte[10]));
+			resources.write(psdResource(0x0422, exif));
+			ByteBuffer psd = ByteBuffer.allocate(34 + resources.size());
+			psd.put("8BPS".getBytes("US-ASCII")).putShort((short) 1)
+					.put(new byte[6]).putShort((short) 4).putInt(2000)
+					.putInt(3000).putShort((short) 8).putShort((short) 4);
+			psd.putInt(0).putInt(resources.size()).put(resources.toByteArray());
+			File src = write(psd.array());
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(actual.getSize().toString(), is("3000x2000"));
+			assertThat(actual.getOrientation(), is(8));
+			assertThat(actual.getColorModel(), is(ColorModel.cmyk));
+			assertThat(actual.getFrameCount(), is(1));
+		}
+
+		@Test
+		public void JPEGのExifの向きを取得する() throws Exception {
+			// Setup
+			File src = write(withOrientation(Files.readAllBytes(new File(
+					"./src/test/resources/src.jpg").toPath()), 6));
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(actual.getSize().toString(), is("800x600"));
+			assertThat(actual.getOrientation(), is(6));
+			assertThat(actual.isTransposed(), is(true));
+			assertThat(actual.getOrientedSize().toString(), is("600x800"));
+			assertThat(actual.getColorModel(), is(ColorModel.rgb));
+		}
+
+		@Test
+		public void JPEGのICCプロファイルを検出する() throws Exception {
+			// Setup
+			File src = write(withIccProfile(Files.readAllBytes(new File(
+					"./src/test/resources/src.jpg").toPath())));
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(actual.getSize().toString(), is("800x600"));
+			assertThat(actual.hasIccProfile(), is(true));
+			assertThat(HeaderScanner.scan(
+					new File("./src/test/resources/src.jpg")).hasIccProfile(),
+					is(false));
+		}
+
+		@Test
+		public void PNGの色の表し方とICCプロファイルを取得する() throws Exception {
+			// Setup
+			File gray = write(png(new BufferedImage(30, 20,
+					BufferedImage.TYPE_BYTE_GRAY)));
+			File rgb = write(pngWithIccProfile(png(new BufferedImage(30, 20,
+					BufferedImage.TYPE_INT_RGB))));
+
+			// Exercise
+			ImageHeader actualGray = HeaderScanner.scan(gray);
+			ImageHeader actualRgb = HeaderScanner.scan(rgb);
+
+			// Verify
+			assertThat(actualGray.getSize().toString(), is("30x20"));
+			assertThat(actualGray.getColorModel(), is(ColorModel.gray));
+			assertThat(actualGray.hasIccProfile(), is(false));
+			assertThat(actualRgb.getColorModel(), is(ColorModel.rgb));
+			assertThat(actualRgb.hasIccProfile(), is(true));
+			assertThat(HeaderScanner.scan(
+					new File("./src/test/resources/src_montage_25.png"))
+					.getColorModel(), is(ColorModel.palette));
+		}
+
+		@Test
+		public void Exifを含まないJPEGは向きを補正しない() throws Exception {
+			// Setup
+			File src = new File("./src/test/resources/src.jpg");
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(actual.getSize().toString(), is("800x600"));
+			assertThat(actual.getOrientation(),
+					is(ImageHeader.NORMAL_ORIENTATION));
+			assertThat(actual.isTransposed(), is(false));
+		}
+
+		@Test
+		public void アニメーションGIFのフレーム数と表示時間と破棄の方法を取得する()
+				throws Exception {
+			// Setup
+			File src = write(gif(320, 240, new int[] { 10, 20, 30 }, new int[] {
+					1, 2, 3 }));
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(actual.getSize().toString(), is("320x240"));
+			assertThat(actual.getColorModel(), is(ColorModel.palette));
+			assertThat(actual.getFrameCount(), is(3));
+			assertThat(actual.isAnimated(), is(true));
+			assertThat(actual.getFrames().get(0).getDelay(), is(10));
+			assertThat(actual.getFrames().get(0).getDisposal(),
+					is(Disposal.none));
+			assertThat(actual.getFrames().get(1).getDisposal(),
+					is(Disposal.background));
+			assertThat(actual.getFrames().get(2).getDelay(), is(30));
+			assertThat(actual.getFrames().get(2).getDisposal(),
+					is(Disposal.previous));
+		}
+
+		@Test
+		public void 一度に読む大きさを超えるGIFのフレームを最後まで辿る() throws Exception {
+			// Setup
+			// 1 フレームは 23 バイトのため、3000 フレームで 64KB を超える
+			int[] delays = new int[3000];
+			Arrays.fill(delays, 5);
+			delays[delays.length - 1] = 99;
+			File src = write(gif(16, 8, delays, new int[delays.length]));
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(src.length() > 64 * 1024, is(true));
+			assertThat(actual.getFrameCount(), is(3000));
+			assertThat(actual.getFrames().get(2999).getDelay(), is(99));
+		}
+
+		@Test
+		public void 静止画のGIFはアニメーションとして扱わない() throws Exception {
+			// Setup
+			File src = write(gif(16, 8, new int[] { 0 }, new int[] { 0 }));
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(actual.getFrameCount(), is(1));
+			assertThat(actual.isAnimated(), is(false));
+		}
+
+		@Test
+		public void アニメーションWebPのフレーム数と表示時間と破棄の方法を取得する()
+				throws Exception {
+			// Setup
+			File src = write(animatedWebp(640, 480, new int[] { 100, 250 },
+					new boolean[] { false, true }));
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(actual.getSize().toString(), is("640x480"));
+			assertThat(actual.getFrameCount(), is(2));
+			assertThat(actual.isAnimated(), is(true));
+			assertThat(actual.getFrames().get(0).getDelay(), is(10));
+			assertThat(actual.getFrames().get(0).getDisposal(),
+					is(Disposal.none));
+			assertThat(actual.getFrames().get(1).getDelay(), is(25));
+			assertThat(actual.getFrames().get(1).getDisposal(),
+					is(Disposal.background));
+		}
+
+		@Test
+		public void フレームを要求しない場合はGIFのフレームを辿らない() throws Exception {
+			// Setup
+			byte[] bytes = gif(320, 240, new int[] { 10, 20 }, new int[] { 1,
+					1 });
+			// 論理スクリーン記述子より後ろのブロックを壊す
+			Arrays.fill(bytes, 13 + 6, bytes.length, (byte) 0x7F);
+			File src = write(bytes);
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src, false);
+
+			// Verify
+			assertThat(actual.getSize().toString(), is("320x240"));
+			assertThat(actual.getColorModel(), is(ColorModel.palette));
+			assertThat(actual.getFrameCount(), is(1));
+		}
+
+		@Test
+		public void GIFにイメージ記述子がない場合は幅と高さのみを取得する() throws Exception {
+			// Setup
+			File src = write(gif(10, 20, new int[0], new int[0]));
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(actual.getSize().toString(), is("10x20"));
+			assertThat(actual.getColorModel(), is(ColorModel.unknown));
+			assertThat(actual.getFrameCount(), is(1));
+		}
+
+		@Test
+		public void GIFのブロックが不正な場合は幅と高さのみを取得する() throws Exception {
+			// Setup
+			byte[] bytes = gif(320, 240, new int[] { 10, 20 }, new int[] { 1,
+					1 });
+			// アプリケーション拡張の導入子を不明な値にする
+			bytes[13 + 6] = 0x7F;
+			File src = write(bytes);
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(actual.getSize().toString(), is("320x240"));
+			assertThat(actual.isAnimated(), is(false));
+		}
+
+		@Test
+		public void 対応していない形式は幅と高さのみを取得する() throws Exception {
+			// Setup
+			File src = folder.newFile("src.bmp");
+			ImageIO.write(new BufferedImage(40, 30,
+					BufferedImage.TYPE_INT_RGB), "bmp", src);
+			BufferedImage expected = ImageIO.read(src);
+
+			// Exercise
+			ImageHeader actual = HeaderScanner.scan(src);
+
+			// Verify
+			assertThat(actual.getWidth(), is(expected.getWidth()));
+			assertThat(actual.getHeight(), is(expected.getHeight()));
+			assertThat(actual.getOrientation(),
+					is(ImageHeader.NORMAL_ORIENTATION));
+			assertThat(actual.getColorModel(), is(ColorModel.unknown));
+		}
+
+		private File write(byte[] bytes) throws IOException {
+			File file = folder.newFile();
+			Files.write(file.toPath(), bytes);
+			return file;
+		}
+
+	}
+
+	public static class 異常系 {
+
+		@Rule
+		public TemporaryFolder folder = new TemporaryFolder();
+
+		@Test(expected = IOException.class)
+		public void IFDが循環している場合() throws Exception {
+			// Setup
+			byte[] bytes = tiff(ByteOrder.LITTLE_ENDIAN, 8, 10, 10, 2, 1);
+			// 次の IFD のオフセットに自身を指定する
+			ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)
+					.putInt(bytes.length - 4, 8);
+			File src = folder.newFile();
+			Files.write(src.toPath(), bytes);
+
+			// Exercise
+			HeaderScanner.scan(src);
+			// Verify
+		}
+
+		@Test(expected = IOException.class)
+		public void IFDがファイルの終端を超える場合() throws Exception {
+			// Setup
+			byte[] bytes = tiff(ByteOrder.BIG_ENDIAN, 8, 10, 10, 2, 1);
+			File src = folder.newFile();
+			Files.write(src.toPath(), Arrays.copyOf(bytes, 20));
+
+			// Exercise
+			HeaderScanner.scan(src);
+			// Verify
+		}
+
+	}
+
+	/**
+	 * 1 つの IFD を持つ TIFF 構造を作成する。
+	 *
+	 * 幅と高さが 0 の場合、PhotometricInterpretation が負の場合は、そのタグを含めない。
+	 */
+	static byte[] tiff(ByteOrder order, int ifdOffset, int width, int height,
+			int photometric, int orientation) {
+		int entries = (width > 0 ? 2 : 0) + (photometric >= 0 ? 1 : 0) + 1;
+		ByteBuffer buffer = ByteBuffer.allocate(ifdOffset + 2 + entries * 12 + 4)
+				.order(order);
+		byte mark = (byte) (order == ByteOrder.LITTLE_ENDIAN ? 'I' : 'M');
+		buffer.put(mark).put(mark).putShort((short) 42).putInt(ifdOffset);
+		buffer.position(ifdOffset);
+		buffer.putShort((short) entries);
+		if (width > 0) {
+			buffer.putShort((short) 256).putShort((short) 4).putInt(1)
+					.putInt(width);
+			buffer.putShort((short) 257).putShort((short) 4).putInt(1)
+					.putInt(height);
+		}
+		if (photometric >= 0) {
+			buffer.putShort((short) 262).putShort((short) 3).putInt(1)
+					.putShort((short) photometric).putShort((short) 0);
+		}
+		buffer.putShort((short) 274).putShort((short) 3).putInt(1)
+				.putShort((short) orientation).putShort((short) 0);
+		buffer.putInt(0);
+		return buffer.array();
+	}
+
+	/**
+	 * SOI の直後に向きを格納した Exif（APP1 セグメント）を挿入した JPEG を作成する。
+	 */
+	public static byte[] withOrientation(byte[] jpeg, int orientation) {
+		byte[] exif = tiff(ByteOrder.BIG_ENDIAN, 8, 0, 0, -1, orientation);
+		ByteBuffer buffer = ByteBuffer.allocate(jpeg.length + 10 + exif.length);
+		buffer.put(jpeg, 0, 2).put((byte) 0xFF).put((byte) 0xE1)
+				.putShort((short) (2 + 6 + exif.length))
+				.put(new byte[] { 'E', 'x', 'i', 'f', 0, 0 }).put(exif)
+				.put(jpeg, 2, jpeg.length - 2);
+		return buffer.array();
+	}
+
+	/**
+	 * SOI の直後に ICC プロファイル（APP2 セグメント）を挿入した JPEG を作成する。
+	 *
+	 * プロファイルには sRGB と見た目が異なるリニア RGB のプロファイルを使用する。
+	 */
+	public static byte[] withIccProfile(byte[] jpeg) {
+		byte[] profile = ICC_Profile.getInstance(ColorSpace.CS_LINEAR_RGB)
+				.getData();
+		ByteBuffer buffer = ByteBuffer.allocate(jpeg.length + 4 + 14
+				+ profile.length);
+		buffer.put(jpeg, 0, 2).put((byte) 0xFF).put((byte) 0xE2)
+				.putShort((short) (2 + 14 + profile.length))
+				.put("ICC_PROFILE".getBytes(StandardCharsets.US_ASCII))
+				.put((byte) 0).put((byte) 1).put((byte) 1).put(profile)
+				.put(jpeg, 2, jpeg.length - 2);
+		return buffer.array();
+	}
+
+	/**
+	 * 画像を PNG で書き出す。
+	 */
+	public static byte[] png(BufferedImage image) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * IHDR チャンクの直後に ICC プロファイル（iCCP チャンク）を挿入した PNG を作成する。
+	 *
+	 * プロファイルには sRGB と見た目が異なるリニア RGB のプロファイルを使用する。
+	 */
+	public static byte[] pngWithIccProfile(byte[] png) throws IOException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		data.write(new byte[] { 'i', 'c', 'c', 0, 0 });
+		try (DeflaterOutputStream deflater = new DeflaterOutputStream(data)) {
+			deflater.write(ICC_Profile.getInstance(ColorSpace.CS_LINEAR_RGB)
+					.getData());
+		}
+		byte[] body = data.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update("iCCP".getBytes(StandardCharsets.US_ASCII));
+		crc.update(body);
+
+		// シグネチャ（8 バイト）と IHDR チャンク（25 バイト）の後に挿入する
+		int ihdrEnd = 8 + 25;
+		ByteBuffer buffer = ByteBuffer.allocate(png.length + 12 + body.length);
+		buffer.put(png, 0, ihdrEnd).putInt(body.length)
+				.put("iCCP".getBytes(StandardCharsets.US_ASCII)).put(body)
+				.putInt((int) crc.getValue())
+				.put(png, ihdrEnd, png.length - ihdrEnd);
+		return buffer.array();
+	}
+
+	/**
+	 * 1 色のフレームを並べたアニメーション GIF を作成する。
+	 *
+	 * @param delays
+	 *            各フレームの表示時間（1/100 秒）
+	 * @param disposals
+	 *            各フレームの破棄の方法（グラフィック制御拡張の値）
+	 */
+	public static byte[] gif(int width, int height, int[] delays,
+			int[] disposals) {
+		ByteBuffer buffer = ByteBuffer.allocate(13 + 6 + 19 + delays.length
+				* (8 + 10 + 1 + 4) + 1).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put("GIF89a".getBytes(StandardCharsets.US_ASCII))
+				.putShort((short) width).putShort((short) height)
+				.put((byte) 0x80).put((byte) 0).put((byte) 0);
+		buffer.put(new byte[6]);
+		// 繰り返し回数を指定するアプリケーション拡張
+		buffer.put((byte) 0x21).put((byte) 0xFF).put((byte) 11)
+				.put("NETSCAPE2.0".getBytes(StandardCharsets.US_ASCII))
+				.put((byte) 3).put((byte) 1).putShort((short) 0).put((byte) 0);
+		for (int i = 0; i < delays.length; i++) {
+			buffer.put((byte) 0x21).put((byte) 0xF9).put((byte) 4)
+					.put((byte) (disposals[i] << 2)).putShort((short) delays[i])
+					.put((byte) 0).put((byte) 0);
+			buffer.put((byte) 0x2C).putShort((short) 0).putShort((short) 0)
+					.putShort((short) width).putShort((short) height)
+					.put((byte) 0);
+			buffer.put((byte) 2).put((byte) 2).put((byte) 0x44)
+					.put((byte) 0x01).put((byte) 0);
+		}
+		buffer.put((byte) 0x3B);
+		return buffer.array();
+	}
+
+	/**
+	 * アニメーション WebP を作成する。 フレームのデータは 1 バイトのみとし、チャンクの埋め草を含める。
+	 *
+	 * @param durations
+	 *            各フレームの表示時間（ミリ秒）
+	 * @param disposeToBackground
+	 *            各フレームを背景に戻す場合は true
+	 */
+	static byte[] animatedWebp(int width, int height, int[] durations,
+			boolean[] disposeToBackground) {
+		ByteBuffer buffer = ByteBuffer.allocate(12 + 18 + 14
+				+ durations.length * 26).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put("RIFF".getBytes(StandardCharsets.US_ASCII))
+				.putInt(buffer.capacity() - 8)
+				.put("WEBP".getBytes(StandardCharsets.US_ASCII));
+		buffer.put("VP8X".getBytes(StandardCharsets.US_ASCII)).putInt(10)
+				.put((byte) 0x02).put(new byte[3]);
+		putU24(buffer, width - 1);
+		putU24(buffer, height - 1);
+		buffer.put("ANIM".getBytes(StandardCharsets.US_ASCII)).putInt(6)
+				.putInt(0).putShort((short) 0);
+		for (int i = 0; i < durations.length; i++) {
+			buffer.put("ANMF".getBytes(StandardCharsets.US_ASCII)).putInt(17);
+			putU24(buffer, 0);
+			putU24(buffer, 0);
+			putU24(buffer, width - 1);
+			putU24(buffer, height - 1);
+			putU24(buffer, durations[i]);
+			buffer.put((byte) (disposeToBackground[i] ? 0x01 : 0x00))
+					.put((byte) 0).put((byte) 0);
+		}
+		return buffer.array();
+	}
+
+	private static void putU24(ByteBuffer buffer, int value) {
+		buffer.put((byte) value).put((byte) (value >> 8))
+				.put((byte) (value >> 16));
+	}
+
+	/**
+	 * 名前が空の PSD の画像リソースを作成する。
+	 */
+	static byte[] psdResource(int id, byte[] data) {
+		int padded = data.length + (data.length & 1);
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 2 + 2 + 4 + padded);
+		buffer.put(new byte[] { '8', 'B', 'I', 'M' }).putShort((short) id)
+				.putShort((short) 0).putInt(data.length).put(data);
+		return buffer.array();
+	}
+
+}